@@ -0,0 +1,23 @@
+from django.db import migrations, models
+
+
+class Migration(migrations.Migration):
+
+    dependencies = [
+        ('auth_app', '0003_categoriavehiculo_alter_anuncio_tipo_vehiculo_and_more'),
+    ]
+
+    operations = [
+        migrations.AddIndex(
+            model_name='anuncio',
+            index=models.Index(
+                condition=models.Q(('activo', True)),
+                fields=['-fecha_creacion', '-id_anuncio'],
+                name='anuncios_activos_fecha_idx',
+            ),
+        ),
+        migrations.AddIndex(
+            model_name='anuncio',
+            index=models.Index(fields=['tipo_vehiculo', 'precio'], name='anuncios_tipo_precio_idx'),
+        ),
+    ]
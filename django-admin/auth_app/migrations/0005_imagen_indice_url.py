@@ -0,0 +1,15 @@
+from django.db import migrations, models
+
+
+class Migration(migrations.Migration):
+
+    dependencies = [
+        ('auth_app', '0004_anuncio_indices_listado'),
+    ]
+
+    operations = [
+        migrations.AddIndex(
+            model_name='imagen',
+            index=models.Index(fields=['url_imagen'], name='imagenes_url_imagen_idx'),
+        ),
+    ]
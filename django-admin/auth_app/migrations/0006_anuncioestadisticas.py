@@ -0,0 +1,27 @@
+import django.db.models.deletion
+from django.db import migrations, models
+
+
+class Migration(migrations.Migration):
+
+    dependencies = [
+        ('auth_app', '0005_imagen_indice_url'),
+    ]
+
+    operations = [
+        migrations.CreateModel(
+            name='AnuncioEstadisticas',
+            fields=[
+                ('anuncio', models.OneToOneField(db_column='id_anuncio', on_delete=django.db.models.deletion.CASCADE, primary_key=True, related_name='estadisticas', serialize=False, to='auth_app.anuncio')),
+                ('vistas', models.BigIntegerField(db_column='vistas', default=0)),
+                ('contactos', models.BigIntegerField(db_column='contactos', default=0)),
+                ('fecha_actualizacion', models.DateTimeField(auto_now=True, db_column='fecha_actualizacion')),
+            ],
+            options={
+                'verbose_name': 'Estadísticas de anuncio',
+                'verbose_name_plural': 'Estadísticas de anuncios',
+                'db_table': 'anuncio_estadisticas',
+                'indexes': [models.Index(fields=['-vistas'], name='anuncio_est_vistas_idx')],
+            },
+        ),
+    ]
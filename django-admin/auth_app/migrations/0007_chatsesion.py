@@ -0,0 +1,26 @@
+from django.db import migrations, models
+
+
+class Migration(migrations.Migration):
+
+    dependencies = [
+        ('auth_app', '0006_anuncioestadisticas'),
+    ]
+
+    operations = [
+        migrations.CreateModel(
+            name='ChatSesion',
+            fields=[
+                ('id_sesion', models.CharField(db_column='id_sesion', max_length=64, primary_key=True, serialize=False)),
+                ('resumen', models.TextField(blank=True, db_column='resumen', default='')),
+                ('turnos', models.JSONField(db_column='turnos', default=list)),
+                ('fecha_actualizacion', models.DateTimeField(auto_now=True, db_column='fecha_actualizacion')),
+            ],
+            options={
+                'verbose_name': 'Sesión de chat',
+                'verbose_name_plural': 'Sesiones de chat',
+                'db_table': 'chat_sesiones',
+                'indexes': [models.Index(fields=['fecha_actualizacion'], name='chat_sesion_fecha_idx')],
+            },
+        ),
+    ]
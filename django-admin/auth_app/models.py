@@ -92,6 +92,15 @@ class Anuncio(models.Model):
         verbose_name = 'Anuncio'
         verbose_name_plural = 'Anuncios'
         ordering = ['-fecha_creacion']
+        indexes = [
+            # Paginación por cursor del listado público (fecha_creacion DESC, id_anuncio DESC)
+            models.Index(
+                fields=['-fecha_creacion', '-id_anuncio'],
+                name='anuncios_activos_fecha_idx',
+                condition=models.Q(activo=True),
+            ),
+            models.Index(fields=['tipo_vehiculo', 'precio'], name='anuncios_tipo_precio_idx'),
+        ]
 
     def __str__(self):
         return f"{self.titulo or self.modelo} - {self.precio}"
@@ -122,11 +131,40 @@ class Imagen(models.Model):
         verbose_name = 'Imagen'
         verbose_name_plural = 'Imágenes'
         ordering = ['orden', 'fecha_subida']
+        indexes = [
+            # Conteo de referencias del almacén de imágenes (varias filas pueden compartir archivo)
+            models.Index(fields=['url_imagen'], name='imagenes_url_imagen_idx'),
+        ]
 
     def __str__(self):
         return f"Imagen {self.orden} - {self.anuncio}"
 
 
+class AnuncioEstadisticas(models.Model):
+    """Contadores de vistas y contactos por anuncio (los acumula en memoria y los vuelca spring-user)"""
+    anuncio = models.OneToOneField(
+        Anuncio,
+        on_delete=models.CASCADE,
+        primary_key=True,
+        related_name='estadisticas',
+        db_column='id_anuncio'
+    )
+    vistas = models.BigIntegerField(default=0, db_column='vistas')
+    contactos = models.BigIntegerField(default=0, db_column='contactos')
+    fecha_actualizacion = models.DateTimeField(auto_now=True, db_column='fecha_actualizacion')
+
+    class Meta:
+        db_table = 'anuncio_estadisticas'
+        verbose_name = 'Estadísticas de anuncio'
+        verbose_name_plural = 'Estadísticas de anuncios'
+        indexes = [
+            models.Index(fields=['-vistas'], name='anuncio_est_vistas_idx'),
+        ]
+
+    def __str__(self):
+        return f"{self.anuncio} - {self.vistas} vistas"
+
+
 class Notificacion(models.Model):
     """Modelo para notificaciones de interés en anuncios"""
     TIPO_CHOICES = [
@@ -195,3 +233,22 @@ class HistorialBusqueda(models.Model):
 
     def __str__(self):
         return f"{self.placa_consultada} - {self.fecha_consulta}"
+
+
+class ChatSesion(models.Model):
+    """Sesiones del asistente de chat que spring-user saca de memoria por inactividad"""
+    id_sesion = models.CharField(max_length=64, primary_key=True, db_column='id_sesion')
+    resumen = models.TextField(blank=True, default='', db_column='resumen')
+    turnos = models.JSONField(default=list, db_column='turnos')
+    fecha_actualizacion = models.DateTimeField(auto_now=True, db_column='fecha_actualizacion')
+
+    class Meta:
+        db_table = 'chat_sesiones'
+        verbose_name = 'Sesión de chat'
+        verbose_name_plural = 'Sesiones de chat'
+        indexes = [
+            models.Index(fields=['fecha_actualizacion'], name='chat_sesion_fecha_idx'),
+        ]
+
+    def __str__(self):
+        return f"{self.id_sesion} - {self.fecha_actualizacion}"
@@ -0,0 +1,316 @@
+package com.integrador.config;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cliente HTTP saliente compartido (Apache HttpClient 5) para la API SOAP de placas y DeepSeek.
+ * Un solo pool de conexiones keep-alive con límite por host, así no se paga un handshake TLS
+ * en cada consulta de placa o turno de chat.
+ * <p>
+ * El read timeout solo acota la espera entre dos lecturas: una respuesta que llega de a pocos bytes
+ * puede durar indefinidamente. Por eso cada RestTemplate tiene además un plazo total por llamada;
+ * al vencer se aborta el pedido, se descarta la conexión y la llamada falla con RestClientException
+ * como cualquier otro error de E/S.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Value("${placa.api.url:https://www.placaapi.pe/api/reg.asmx}")
+    private String placaApiUrl;
+
+    @Value("${deepseek.api.url:https://api.deepseek.com/v1/chat/completions}")
+    private String deepseekApiUrl;
+
+    @Value("${http.client.max-connections:50}")
+    private int maxConexiones;
+
+    @Value("${http.client.max-connections-per-route:10}")
+    private int maxConexionesPorRuta;
+
+    @Value("${http.client.placa.max-connections:10}")
+    private int maxConexionesPlaca;
+
+    @Value("${http.client.deepseek.max-connections:20}")
+    private int maxConexionesDeepseek;
+
+    @Value("${http.client.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${http.client.pool-timeout-ms:2000}")
+    private long poolTimeoutMs;
+
+    @Value("${http.client.connection-ttl-seconds:300}")
+    private long ttlConexionSegundos;
+
+    @Value("${http.client.idle-evict-seconds:30}")
+    private long inactividadSegundos;
+
+    @Value("${http.client.placa.read-timeout-ms:15000}")
+    private long readTimeoutPlacaMs;
+
+    @Value("${http.client.deepseek.read-timeout-ms:60000}")
+    private long readTimeoutDeepseekMs;
+
+    @Value("${http.client.placa.deadline-ms:20000}")
+    private long plazoPlacaMs;
+
+    // Cubre la respuesta en streaming completa del chat
+    @Value("${http.client.deepseek.deadline-ms:90000}")
+    private long plazoDeepseekMs;
+
+    // Hilo que aborta los pedidos que pasan su plazo total. No es un bean: un ScheduledExecutorService
+    // en el contexto reemplazaría al planificador de tareas que configura Spring Boot
+    private final ScheduledThreadPoolExecutor plazos = crearPlazos();
+
+    private static ScheduledThreadPoolExecutor crearPlazos() {
+        ScheduledThreadPoolExecutor plazos = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread hilo = new Thread(r, "plazos-http");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        // Casi todos los cortes se cancelan al cerrar la respuesta: que no queden en la cola hasta vencer
+        plazos.setRemoveOnCancelPolicy(true);
+        return plazos;
+    }
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager httpConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConexiones)
+                .setMaxConnPerRoute(maxConexionesPorRuta)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setTimeToLive(TimeValue.ofSeconds(ttlConexionSegundos))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                        .build())
+                .build();
+
+        // Límite de conexiones dedicado a cada integración
+        connectionManager.setMaxPerRoute(crearRuta(placaApiUrl), maxConexionesPlaca);
+        connectionManager.setMaxPerRoute(crearRuta(deepseekApiUrl), maxConexionesDeepseek);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager httpConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(httpConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                        // Tope para cualquier uso del cliente; cada RestTemplate lo ajusta con su read timeout
+                        .setResponseTimeout(Timeout.ofMilliseconds(Math.max(readTimeoutPlacaMs, readTimeoutDeepseekMs)))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(inactividadSegundos))
+                .build();
+    }
+
+    @PreDestroy
+    public void detener() {
+        plazos.shutdownNow();
+    }
+
+    @Bean
+    public RestTemplate placaRestTemplate(CloseableHttpClient httpClient) {
+        return new RestTemplate(crearRequestFactory(httpClient, readTimeoutPlacaMs, plazoPlacaMs));
+    }
+
+    @Bean
+    public RestTemplate deepseekRestTemplate(CloseableHttpClient httpClient) {
+        return new RestTemplate(crearRequestFactory(httpClient, readTimeoutDeepseekMs, plazoDeepseekMs));
+    }
+
+    HttpComponentsClientHttpRequestFactory crearRequestFactory(CloseableHttpClient httpClient, long readTimeoutMs, long plazoMs) {
+        HttpComponentsClientHttpRequestFactory factory = new FabricaConPlazo(httpClient, plazoMs, plazos);
+        factory.setConnectionRequestTimeout(Duration.ofMillis(poolTimeoutMs));
+        factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return factory;
+    }
+
+    /**
+     * Fábrica de pedidos que aborta cada uno si no terminó, incluida la lectura del cuerpo, dentro del
+     * plazo. El plazo corre desde que se ejecuta el pedido y el corte se cancela al cerrar la respuesta
+     * (RestTemplate siempre la cierra), o enseguida si la ejecución falla.
+     */
+    static class FabricaConPlazo extends HttpComponentsClientHttpRequestFactory {
+
+        private final long plazoMs;
+        private final ScheduledExecutorService plazos;
+        // El pedido de Apache que armó createHttpUriRequest, para createRequest en el mismo hilo
+        private final ThreadLocal<HttpUriRequestBase> creado = new ThreadLocal<>();
+
+        FabricaConPlazo(CloseableHttpClient httpClient, long plazoMs, ScheduledExecutorService plazos) {
+            super(httpClient);
+            this.plazoMs = plazoMs;
+            this.plazos = plazos;
+        }
+
+        @Override
+        protected ClassicHttpRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+            ClassicHttpRequest pedido = super.createHttpUriRequest(httpMethod, uri);
+            if (pedido instanceof HttpUriRequestBase base) {
+                creado.set(base);
+            }
+            return pedido;
+        }
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+            ClientHttpRequest pedido;
+            HttpUriRequestBase base;
+            try {
+                pedido = super.createRequest(uri, httpMethod);
+                base = creado.get();
+            } finally {
+                creado.remove();
+            }
+            if (plazoMs <= 0 || base == null) {
+                return pedido;
+            }
+            return new PedidoConPlazo(pedido, base);
+        }
+
+        private final class PedidoConPlazo implements ClientHttpRequest, StreamingHttpOutputMessage {
+
+            private final ClientHttpRequest pedido;
+            private final HttpUriRequestBase base;
+
+            private PedidoConPlazo(ClientHttpRequest pedido, HttpUriRequestBase base) {
+                this.pedido = pedido;
+                this.base = base;
+            }
+
+            @Override
+            public ClientHttpResponse execute() throws IOException {
+                ScheduledFuture<?> corte = plazos.schedule(base::cancel, plazoMs, TimeUnit.MILLISECONDS);
+                try {
+                    return new RespuestaConPlazo(pedido.execute(), corte);
+                } catch (IOException | RuntimeException e) {
+                    corte.cancel(false);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void setBody(Body body) {
+                if (pedido instanceof StreamingHttpOutputMessage streaming) {
+                    streaming.setBody(body);
+                } else {
+                    try {
+                        body.writeTo(pedido.getBody());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+
+            @Override
+            public OutputStream getBody() throws IOException {
+                return pedido.getBody();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return pedido.getHeaders();
+            }
+
+            @Override
+            public HttpMethod getMethod() {
+                return pedido.getMethod();
+            }
+
+            @Override
+            public URI getURI() {
+                return pedido.getURI();
+            }
+
+            @Override
+            public Map<String, Object> getAttributes() {
+                return pedido.getAttributes();
+            }
+        }
+
+        private static final class RespuestaConPlazo implements ClientHttpResponse {
+
+            private final ClientHttpResponse respuesta;
+            private final ScheduledFuture<?> corte;
+
+            private RespuestaConPlazo(ClientHttpResponse respuesta, ScheduledFuture<?> corte) {
+                this.respuesta = respuesta;
+                this.corte = corte;
+            }
+
+            @Override
+            public HttpStatusCode getStatusCode() throws IOException {
+                return respuesta.getStatusCode();
+            }
+
+            @Override
+            public String getStatusText() throws IOException {
+                return respuesta.getStatusText();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return respuesta.getHeaders();
+            }
+
+            @Override
+            public InputStream getBody() throws IOException {
+                return respuesta.getBody();
+            }
+
+            @Override
+            public void close() {
+                // El corte sigue vigente mientras se descarta lo que quede del cuerpo
+                try {
+                    respuesta.close();
+                } finally {
+                    corte.cancel(false);
+                }
+            }
+        }
+    }
+
+    private HttpRoute crearRuta(String url) {
+        URI uri = URI.create(url);
+        boolean seguro = "https".equalsIgnoreCase(uri.getScheme());
+        int puerto = uri.getPort() != -1 ? uri.getPort() : (seguro ? 443 : 80);
+        return new HttpRoute(new HttpHost(uri.getScheme(), uri.getHost(), puerto), null, seguro);
+    }
+}
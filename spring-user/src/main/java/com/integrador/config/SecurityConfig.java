@@ -35,6 +35,11 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
             .authorizeHttpRequests(authz -> authz
+                // Estadísticas internas (pool HTTP, cachés, almacén de imágenes, chat): requieren autenticación.
+                // Van antes que los permitAll de sus rutas, la primera regla que coincide es la que vale
+                .requestMatchers(HttpMethod.GET, "/api/public/http-pool", "/api/public/imagenes", "/api/public/catalogo").authenticated()
+                .requestMatchers(HttpMethod.GET, "/api/plate-search/cache/stats").authenticated()
+                .requestMatchers(HttpMethod.GET, "/api/chat/estadisticas").authenticated()
                 .requestMatchers("/api/public/**").permitAll()
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/plate-search/**").permitAll()
@@ -42,6 +47,7 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.GET, "/api/anuncios").permitAll()
                 .requestMatchers(HttpMethod.GET, "/api/anuncios/").permitAll()
                 .requestMatchers(HttpMethod.GET, "/api/anuncios/{id}").permitAll()
+                .requestMatchers(HttpMethod.GET, "/api/autocomplete").permitAll()
                 // POST, PUT, DELETE de anuncios: requieren autenticación
                 .requestMatchers(HttpMethod.POST, "/api/anuncios/**").authenticated()
                 .requestMatchers(HttpMethod.PUT, "/api/anuncios/**").authenticated()
@@ -1,9 +1,18 @@
 package com.integrador.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integrador.dto.AnuncioFiltro;
 import com.integrador.dto.AnuncioRequest;
+import com.integrador.dto.PaginaAnuncios;
 import com.integrador.entity.Anuncio;
 import com.integrador.service.AnuncioService;
+import com.integrador.service.ContadoresAnuncios;
+import com.integrador.service.FragmentosAnuncios;
+import com.integrador.service.IndiceAnuncios;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -11,11 +20,17 @@ import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/anuncios")
@@ -25,6 +40,15 @@ public class AnuncioController {
     @Autowired
     private AnuncioService anuncioService;
     
+    @Autowired
+    private FragmentosAnuncios fragmentosAnuncios;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private ContadoresAnuncios contadoresAnuncios;
+    
     @PostMapping(consumes = {"multipart/form-data"})
     public ResponseEntity<Map<String, Object>> crearAnuncio(
             @RequestPart("modelo") String modelo,
@@ -233,7 +257,35 @@ public class AnuncioController {
     }
     
     @GetMapping
-    public ResponseEntity<Map<String, Object>> obtenerTodosLosAnuncios() {
+    public ResponseEntity<StreamingResponseBody> obtenerTodosLosAnuncios(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String tipoVehiculo,
+            @RequestParam(required = false) BigDecimal precioMin,
+            @RequestParam(required = false) BigDecimal precioMax,
+            @RequestParam(required = false) Integer anioMin,
+            @RequestParam(required = false) Integer anioMax,
+            @RequestParam(required = false) Integer kilometrajeMax,
+            WebRequest webRequest) {
+        
+        AnuncioFiltro filtro = crearFiltro(tipoVehiculo, precioMin, precioMax, anioMin, anioMax, kilometrajeMax);
+        
+        // El ETag depende de la versión del catálogo en memoria: si no cambió se responde 304 sin tocar la BD
+        String etag;
+        try {
+            etag = anuncioService.obtenerEtagCatalogo(cursor, limit, filtro);
+        } catch (Exception e) {
+            etag = null;
+        }
+        if (etag != null && webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        
+        // Con cursor, limit o algún filtro se responde paginado; sin parámetros se mantiene la lista completa
+        if (cursor != null || limit != null || !filtro.estaVacio()) {
+            return obtenerPaginaAnuncios(filtro, cursor, limit);
+        }
+        
         try {
             System.out.println("=== GET /api/anuncios ===");
             System.out.println("Obteniendo todos los anuncios activos...");
@@ -248,38 +300,200 @@ public class AnuncioController {
                                  ", Imágenes: " + (anuncio.getImagenes() != null ? anuncio.getImagenes().size() : 0));
             });
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("anuncios", anuncios);
+            Map<String, Object> campos = new LinkedHashMap<>();
+            campos.put("success", true);
             
+            ResponseEntity<StreamingResponseBody> respuesta = responderListado(campos, anuncios, CacheControl.noCache());
             System.out.println("✅ Respuesta enviada con " + anuncios.size() + " anuncios");
-            return ResponseEntity.ok(response);
+            return respuesta;
             
         } catch (Exception e) {
             System.out.println("❌ Error al obtener anuncios: " + e.getMessage());
             e.printStackTrace();
+            return responderError(500, "Error al obtener los anuncios: " + e.getMessage());
+        }
+    }
+    
+    private ResponseEntity<StreamingResponseBody> obtenerPaginaAnuncios(AnuncioFiltro filtro, String cursor, Integer limit) {
+        try {
+            PaginaAnuncios pagina = anuncioService.obtenerPaginaAnunciosActivos(filtro, cursor, limit);
+            
+            Map<String, Object> campos = new LinkedHashMap<>();
+            campos.put("success", true);
+            campos.put("siguienteCursor", pagina.getSiguienteCursor());
+            campos.put("tieneMas", pagina.isTieneMas());
+            
+            return responderListado(campos, pagina.getAnuncios(), CacheControl.noCache());
+            
+        } catch (IllegalArgumentException e) {
+            return responderError(400, e.getMessage());
+        } catch (Exception e) {
+            System.out.println("❌ Error al obtener página de anuncios: " + e.getMessage());
+            e.printStackTrace();
+            return responderError(500, "Error al obtener los anuncios: " + e.getMessage());
+        }
+    }
+    
+    @GetMapping("/facets")
+    public ResponseEntity<Map<String, Object>> obtenerFacetas(
+            @RequestParam(required = false) String tipoVehiculo,
+            @RequestParam(required = false) BigDecimal precioMin,
+            @RequestParam(required = false) BigDecimal precioMax,
+            @RequestParam(required = false) Integer anioMin,
+            @RequestParam(required = false) Integer anioMax,
+            @RequestParam(required = false) Integer kilometrajeMax,
+            WebRequest webRequest) {
+        
+        AnuncioFiltro filtro = crearFiltro(tipoVehiculo, precioMin, precioMax, anioMin, anioMax, kilometrajeMax);
+        
+        try {
+            String etag = anuncioService.obtenerEtagFacetas(filtro);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+            
+            Map<String, Object> response = new HashMap<>(anuncioService.obtenerFacetas(filtro));
+            response.put("success", true);
+            
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(response);
+            
+        } catch (Exception e) {
+            System.out.println("❌ Error al obtener facetas: " + e.getMessage());
+            e.printStackTrace();
             return ResponseEntity.status(500)
-                .body(Map.of("error", "Error al obtener los anuncios: " + e.getMessage()));
+                .body(Map.of("error", "Error al obtener las facetas: " + e.getMessage()));
+        }
+    }
+    
+    // Copia el JSON ya serializado de cada anuncio en la respuesta en lugar de pasar las entidades por Jackson.
+    // Los fragmentos se obtienen aquí, antes de empezar a escribir: un error todavía se responde como error
+    private ResponseEntity<StreamingResponseBody> responderListado(Map<String, Object> campos, List<Anuncio> anuncios,
+                                                                   CacheControl cacheControl) {
+        List<byte[]> partes = fragmentosAnuncios.fragmentos(anuncios);
+        StreamingResponseBody body = outputStream -> fragmentosAnuncios.escribirFragmentos(outputStream, campos, "anuncios", partes);
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .cacheControl(cacheControl)
+            .body(body);
+    }
+    
+    // Los endpoints que responden en streaming devuelven también sus errores como {"error": ...}
+    private ResponseEntity<StreamingResponseBody> responderError(int status, String mensaje) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", mensaje);
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(error);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error serializando la respuesta de error", e);
+        }
+        return ResponseEntity.status(status)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(outputStream -> outputStream.write(json));
+    }
+    
+    private AnuncioFiltro crearFiltro(String tipoVehiculo, BigDecimal precioMin, BigDecimal precioMax,
+                                      Integer anioMin, Integer anioMax, Integer kilometrajeMax) {
+        AnuncioFiltro filtro = new AnuncioFiltro();
+        filtro.setTipoVehiculo(tipoVehiculo != null && !tipoVehiculo.trim().isEmpty() ? tipoVehiculo.trim() : null);
+        filtro.setPrecioMin(precioMin);
+        filtro.setPrecioMax(precioMax);
+        filtro.setAnioMin(anioMin);
+        filtro.setAnioMax(anioMax);
+        filtro.setKilometrajeMax(kilometrajeMax);
+        return filtro;
+    }
+    
+    @GetMapping("/mas-vistos")
+    public ResponseEntity<StreamingResponseBody> obtenerMasVistos(
+            @RequestParam(required = false) Integer limit) {
+        try {
+            List<Anuncio> anuncios = anuncioService.obtenerMasVistos(limit);
+            
+            List<Map<String, Object>> estadisticas = new ArrayList<>(anuncios.size());
+            for (Anuncio anuncio : anuncios) {
+                Map<String, Object> fila = new LinkedHashMap<>();
+                fila.put("idAnuncio", anuncio.getIdAnuncio());
+                fila.put("vistas", contadoresAnuncios.vistas(anuncio.getIdAnuncio()));
+                fila.put("contactos", contadoresAnuncios.contactos(anuncio.getIdAnuncio()));
+                estadisticas.add(fila);
+            }
+            
+            Map<String, Object> campos = new LinkedHashMap<>();
+            campos.put("success", true);
+            campos.put("estadisticas", estadisticas);
+            
+            // El ranking cambia con cada vista: basta con que sea reciente
+            return responderListado(campos, anuncios, CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic());
+            
+        } catch (Exception e) {
+            System.out.println("❌ Error al obtener los anuncios más vistos: " + e.getMessage());
+            e.printStackTrace();
+            return responderError(500, "Error al obtener los anuncios más vistos: " + e.getMessage());
+        }
+    }
+    
+    @GetMapping("/search")
+    public ResponseEntity<StreamingResponseBody> buscarAnuncios(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit,
+            WebRequest webRequest) {
+        
+        if (q == null || q.trim().isEmpty()) {
+            return responderError(400, "El parámetro q es requerido");
+        }
+        
+        try {
+            // Igual que el listado: mientras el catálogo no cambie, la misma búsqueda responde 304
+            String etag = anuncioService.obtenerEtagBusqueda(q, offset, limit);
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+            
+            IndiceAnuncios.ResultadoBusqueda resultado = anuncioService.buscarAnuncios(q, offset, limit);
+            
+            Map<String, Object> campos = new LinkedHashMap<>();
+            campos.put("success", true);
+            campos.put("query", q);
+            campos.put("total", resultado.getTotal());
+            
+            return responderListado(campos, resultado.getAnuncios(), CacheControl.noCache());
+            
+        } catch (IllegalArgumentException e) {
+            return responderError(400, e.getMessage());
+        } catch (Exception e) {
+            System.out.println("❌ Error al buscar anuncios: " + e.getMessage());
+            e.printStackTrace();
+            return responderError(500, "Error al buscar anuncios: " + e.getMessage());
         }
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Map<String, Object>> obtenerAnuncioPorId(@PathVariable Long id) {
+    public ResponseEntity<StreamingResponseBody> obtenerAnuncioPorId(@PathVariable Long id) {
         try {
             Anuncio anuncio = anuncioService.obtenerAnuncioPorId(id);
+            contadoresAnuncios.registrarVista(id);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("anuncio", anuncio);
+            // Los contadores van aparte: el fragmento del anuncio no cambia con cada vista
+            Map<String, Object> estadisticas = new LinkedHashMap<>();
+            estadisticas.put("vistas", contadoresAnuncios.vistas(id));
+            estadisticas.put("contactos", contadoresAnuncios.contactos(id));
             
-            return ResponseEntity.ok(response);
+            Map<String, Object> campos = new LinkedHashMap<>();
+            campos.put("success", true);
+            campos.put("estadisticas", estadisticas);
+            
+            byte[] json = fragmentosAnuncios.fragmento(anuncio);
+            StreamingResponseBody body = outputStream -> fragmentosAnuncios.escribirAnuncio(outputStream, campos, "anuncio", json);
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
             
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(404)
-                .body(Map.of("error", e.getMessage()));
+            return responderError(404, e.getMessage());
         } catch (Exception e) {
-            return ResponseEntity.status(500)
-                .body(Map.of("error", "Error al obtener el anuncio: " + e.getMessage()));
+            return responderError(500, "Error al obtener el anuncio: " + e.getMessage());
         }
     }
     
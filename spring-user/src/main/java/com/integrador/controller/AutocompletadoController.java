@@ -0,0 +1,49 @@
+package com.integrador.controller;
+
+import com.integrador.service.AutocompletadoService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("/api/autocomplete")
+@CrossOrigin(origins = "*")
+public class AutocompletadoController {
+
+    @Autowired
+    private AutocompletadoService autocompletadoService;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> sugerir(
+            @RequestParam(required = false, defaultValue = "") String q,
+            @RequestParam(required = false, defaultValue = "8") Integer limit) {
+        try {
+            List<Map<String, Object>> sugerencias = autocompletadoService.sugerir(q, limit).stream()
+                .map(sugerencia -> Map.<String, Object>of(
+                    "texto", sugerencia.getTexto(),
+                    "frecuencia", sugerencia.getFrecuencia()))
+                .toList();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("query", q);
+            response.put("sugerencias", sugerencias);
+
+            // Se pide en cada tecla: el navegador puede reutilizar la respuesta un rato
+            return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePublic())
+                .body(response);
+
+        } catch (Exception e) {
+            System.err.println("Error en autocompletado: " + e.getMessage());
+            return ResponseEntity.status(500)
+                .body(Map.of("error", "Error al obtener sugerencias: " + e.getMessage()));
+        }
+    }
+}
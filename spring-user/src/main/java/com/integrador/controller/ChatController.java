@@ -4,10 +4,21 @@ import com.integrador.dto.ChatMessage;
 import com.integrador.dto.ChatRequest;
 import com.integrador.dto.ChatResponse;
 import com.integrador.service.ChatService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integrador.service.RecuperacionAnuncios;
+import com.integrador.service.RespuestasChatCache;
+import com.integrador.service.SesionesChat;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,16 +30,31 @@ public class ChatController {
     @Autowired
     private ChatService chatService;
     
+    @Autowired
+    private RecuperacionAnuncios recuperacionAnuncios;
+    
+    @Autowired
+    private SesionesChat sesionesChat;
+    
+    @Autowired
+    private RespuestasChatCache respuestasChatCache;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     @PostMapping
     public ResponseEntity<Map<String, Object>> chat(@RequestBody ChatRequest request) {
         try {
+            SesionesChat.Sesion sesion = resolverSesion(request);
             ChatResponse response = chatService.processMessage(
                 request.getMessage(),
-                request.getConversationHistory()
+                sesion.historial()
             );
+            sesionesChat.registrarTurno(sesion, request.getMessage(), response.getResponse());
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
+            result.put("sessionId", sesion.getId());
             result.put("response", response.getResponse());
             result.put("recommendedAnuncioIds", response.getRecommendedAnuncioIds());
             result.put("hasRecommendations", response.isHasRecommendations());
@@ -42,5 +68,67 @@ public class ChatController {
             return ResponseEntity.status(500).body(error);
         }
     }
+    
+    /**
+     * Variante en streaming (Server-Sent Events): un evento "token" por cada trozo de texto que va
+     * generando el modelo y un evento "done" final con la respuesta completa y los IDs recomendados.
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> chatStream(@RequestBody ChatRequest request) {
+        SesionesChat.Sesion sesion = resolverSesion(request);
+        StreamingResponseBody body = outputStream -> {
+            ChatResponse response = chatService.processMessageStream(
+                request.getMessage(),
+                sesion.historial(),
+                texto -> enviarEvento(outputStream, "token", Map.of("text", texto))
+            );
+            sesionesChat.registrarTurno(sesion, request.getMessage(), response.getResponse());
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("sessionId", sesion.getId());
+            result.put("response", response.getResponse());
+            result.put("recommendedAnuncioIds", response.getRecommendedAnuncioIds());
+            result.put("hasRecommendations", response.isHasRecommendations());
+            enviarEvento(outputStream, "done", result);
+        };
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.TEXT_EVENT_STREAM)
+            .cacheControl(CacheControl.noCache())
+            // Evita que un proxy (nginx) acumule los eventos antes de reenviarlos
+            .header("X-Accel-Buffering", "no")
+            .body(body);
+    }
+    
+    // Los clientes que todavía mandan el historial completo arrancan una sesión con él
+    private SesionesChat.Sesion resolverSesion(ChatRequest request) {
+        boolean sinSesion = request.getSessionId() == null || request.getSessionId().isBlank();
+        if (sinSesion && request.getConversationHistory() != null && !request.getConversationHistory().isEmpty()) {
+            return sesionesChat.crear(request.getConversationHistory());
+        }
+        return sesionesChat.obtener(request.getSessionId());
+    }
+    
+    private void enviarEvento(OutputStream outputStream, String evento, Object datos) {
+        try {
+            outputStream.write(("event: " + evento + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            outputStream.write(objectMapper.writeValueAsBytes(datos));
+            outputStream.write("\n\n".getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+        } catch (IOException e) {
+            // El cliente cerró la conexión
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @GetMapping("/estadisticas")
+    public ResponseEntity<Map<String, Object>> estadisticas() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("recuperacion", recuperacionAnuncios.obtenerEstadisticas());
+        result.put("sesiones", sesionesChat.obtenerEstadisticas());
+        result.put("respuestas", chatService.obtenerEstadisticas());
+        result.put("cache", respuestasChatCache.obtenerEstadisticas());
+        return ResponseEntity.ok(result);
+    }
 }
-
@@ -0,0 +1,219 @@
+package com.integrador.controller;
+
+import com.integrador.service.AlmacenImagenesService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Pattern;
+
+/**
+ * Sirve las imágenes de /uploads/**. Los archivos direccionados por contenido (nombre = sha256,
+ * también sus variantes) nunca cambian, así que se envían con caché inmutable de un año;
+ * las URLs antiguas usan una caché corta con revalidación. Responde a peticiones condicionales
+ * (If-None-Match / If-Modified-Since) y a un rango de bytes, y usa sendfile de Tomcat cuando está disponible.
+ */
+@RestController
+@CrossOrigin(origins = "*")
+public class ImagenesController {
+
+    static final String CACHE_INMUTABLE = "public, max-age=31536000, immutable";
+    static final String CACHE_LEGADO = "public, max-age=3600, must-revalidate";
+
+    // Atributos del conector de Tomcat para enviar el archivo sin pasar por la JVM
+    private static final String SENDFILE_SOPORTADO = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_ARCHIVO = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_INICIO = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_FIN = "org.apache.tomcat.sendfile.end";
+
+    // <sha256>.<ext> o <sha256>-<variante>.jpg
+    private static final Pattern NOMBRE_POR_CONTENIDO = Pattern.compile("^[0-9a-f]{64}(-[a-z]+)?\\.[a-z0-9]+$");
+
+    @Autowired
+    private AlmacenImagenesService almacenImagenesService;
+
+    @GetMapping("/uploads/**")
+    public void servirImagen(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String url = UriUtils.decode(request.getRequestURI().substring(request.getContextPath().length()),
+                StandardCharsets.UTF_8);
+        Path archivo = almacenImagenesService.resolver(url);
+        BasicFileAttributes atributos;
+        try {
+            atributos = archivo != null ? Files.readAttributes(archivo, BasicFileAttributes.class) : null;
+        } catch (IOException e) {
+            atributos = null;
+        }
+        if (atributos == null || !atributos.isRegularFile()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String nombre = archivo.getFileName().toString();
+        boolean inmutable = NOMBRE_POR_CONTENIDO.matcher(nombre).matches();
+        long longitud = atributos.size();
+        long modificado = atributos.lastModifiedTime().toMillis();
+        // El nombre ya es el hash del contenido; para las URLs antiguas basta tamaño + fecha
+        String etag = inmutable
+                ? "\"" + nombre.substring(0, nombre.lastIndexOf('.')) + "\""
+                : "\"" + Long.toHexString(longitud) + "-" + Long.toHexString(modificado) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, inmutable ? CACHE_INMUTABLE : CACHE_LEGADO);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, modificado);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        if (noModificado(request, etag, modificado)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaTypeFactory.getMediaType(nombre)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        long inicio = 0;
+        long fin = longitud;
+        String rango = request.getHeader(HttpHeaders.RANGE);
+        if (rango != null && aplicaRango(request, etag, modificado)) {
+            long[] limites = parsearRango(rango, longitud);
+            if (limites == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + longitud);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (limites.length == 2) {
+                inicio = limites[0];
+                fin = limites[1] + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + inicio + "-" + limites[1] + "/" + longitud);
+            }
+        }
+        response.setContentLengthLong(fin - inicio);
+
+        if ("HEAD".equals(request.getMethod()) || fin == inicio) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SOPORTADO))) {
+            request.setAttribute(SENDFILE_ARCHIVO, archivo.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_INICIO, inicio);
+            request.setAttribute(SENDFILE_FIN, fin);
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            OutputStream salida = response.getOutputStream();
+            WritableByteChannel destino = Channels.newChannel(salida);
+            long posicion = inicio;
+            while (posicion < fin) {
+                long enviados = canal.transferTo(posicion, fin - posicion, destino);
+                if (enviados <= 0) {
+                    break;
+                }
+                posicion += enviados;
+            }
+            salida.flush();
+        }
+    }
+
+    private boolean noModificado(HttpServletRequest request, String etag, long modificado) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return coincideEtag(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = fechaCabecera(request, HttpHeaders.IF_MODIFIED_SINCE);
+        // Las fechas HTTP tienen resolución de segundos
+        return ifModifiedSince >= 0 && modificado / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Con If-Range el rango solo se respeta si el cliente sigue teniendo la misma versión del archivo.
+     */
+    private boolean aplicaRango(HttpServletRequest request, String etag, long modificado) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.trim().equals(etag);
+        }
+        long fecha = fechaCabecera(request, HttpHeaders.IF_RANGE);
+        return fecha >= 0 && modificado / 1000 == fecha / 1000;
+    }
+
+    private static boolean coincideEtag(String cabecera, String etag) {
+        for (String candidato : cabecera.split(",")) {
+            String valor = candidato.trim();
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if ("*".equals(valor) || etag.equals(valor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long fechaCabecera(HttpServletRequest request, String nombre) {
+        try {
+            return request.getDateHeader(nombre);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Interpreta una cabecera Range de un solo rango ("bytes=0-99", "bytes=100-", "bytes=-100").
+     * Devuelve {inicio, fin} inclusivos, un arreglo vacío si la cabecera se ignora
+     * (mal formada o con varios rangos: se envía el archivo completo) o null si el rango no se puede satisfacer.
+     */
+    static long[] parsearRango(String cabecera, long longitud) {
+        if (!cabecera.startsWith("bytes=") || cabecera.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String especificacion = cabecera.substring("bytes=".length()).trim();
+        int guion = especificacion.indexOf('-');
+        if (guion < 0) {
+            return new long[0];
+        }
+        try {
+            String desde = especificacion.substring(0, guion).trim();
+            String hasta = especificacion.substring(guion + 1).trim();
+            if (desde.isEmpty()) {
+                // Sufijo: los últimos N bytes
+                long sufijo = Long.parseLong(hasta);
+                if (sufijo <= 0 || longitud == 0) {
+                    return null;
+                }
+                return new long[]{Math.max(0, longitud - sufijo), longitud - 1};
+            }
+            long inicio = Long.parseLong(desde);
+            long fin = hasta.isEmpty() ? Long.MAX_VALUE : Long.parseLong(hasta);
+            if (fin < inicio) {
+                return new long[0];
+            }
+            if (inicio >= longitud) {
+                return null;
+            }
+            return new long[]{inicio, Math.min(fin, longitud - 1)};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
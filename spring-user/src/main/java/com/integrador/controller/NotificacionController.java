@@ -2,6 +2,7 @@ package com.integrador.controller;
 
 import com.integrador.dto.NotificacionDTO;
 import com.integrador.entity.Notificacion;
+import com.integrador.service.ContadoresAnuncios;
 import com.integrador.service.NotificacionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -24,6 +25,9 @@ public class NotificacionController {
     @Autowired
     private NotificacionService notificacionService;
     
+    @Autowired
+    private ContadoresAnuncios contadoresAnuncios;
+    
     private String obtenerUserId(Authentication authentication) {
         if (authentication instanceof JwtAuthenticationToken) {
             Jwt jwt = ((JwtAuthenticationToken) authentication).getToken();
@@ -94,6 +98,7 @@ public class NotificacionController {
             // Crear la notificación con información del comprador
             Notificacion notificacion = notificacionService.crearNotificacion(
                 idVendedor, idComprador, idAnuncio, mensaje, nombreComprador, emailComprador);
+            contadoresAnuncios.registrarContacto(idAnuncio);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -1,15 +1,22 @@
 package com.integrador.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.integrador.entity.HistorialBusqueda;
 import com.integrador.entity.Vehiculo;
+import com.integrador.service.PlacaApiNoDisponibleException;
 import com.integrador.service.PlateSearchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,32 +29,25 @@ public class PlateSearchController {
     @Autowired
     private PlateSearchService plateSearchService;
     
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     @PostMapping("/plate-search")
     public ResponseEntity<Map<String, Object>> searchPlate(@RequestBody Map<String, String> request) {
         try {
             String plateNumber = request.get("plateNumber");
             String userId = request.get("userId");
+            // Permite saltarse la caché y forzar una consulta nueva a la API
+            boolean forceRefresh = Boolean.parseBoolean(request.get("forceRefresh"));
             
             if (plateNumber == null || plateNumber.trim().isEmpty()) {
                 return ResponseEntity.badRequest()
                     .body(Map.of("error", "El número de placa es requerido"));
             }
             
-            // Si no hay userId, usar un valor por defecto (permite búsquedas sin autenticación)
-            if (userId == null || userId.trim().isEmpty()) {
-                // Intentar obtener userId del usuario autenticado si existe
-                Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-                if (authentication != null && authentication.isAuthenticated() && authentication.getPrincipal() instanceof OAuth2User) {
-                    OAuth2User oauth2User = (OAuth2User) authentication.getPrincipal();
-                    userId = oauth2User.getAttribute("sub");
-                }
-                // Si aún no hay userId, usar "guest" para permitir búsquedas sin autenticación
-                if (userId == null || userId.trim().isEmpty()) {
-                    userId = "guest";
-                }
-            }
+            userId = resolverUsuario(userId);
             
-            Map<String, Object> result = plateSearchService.searchPlate(plateNumber.toUpperCase(), userId);
+            Map<String, Object> result = plateSearchService.searchPlate(plateNumber.toUpperCase(), userId, forceRefresh);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -59,6 +59,11 @@ public class PlateSearchController {
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest()
                 .body(Map.of("error", e.getMessage(), "message", e.getMessage()));
+        } catch (PlacaApiNoDisponibleException e) {
+            // Circuito abierto o bulkhead lleno y sin snapshot guardado para esta placa
+            return ResponseEntity.status(503)
+                .header("Retry-After", "30")
+                .body(Map.of("error", e.getMessage(), "message", e.getMessage()));
         } catch (RuntimeException e) {
             // Errores de la API de placas o validaciones
             String errorMessage = e.getMessage();
@@ -78,6 +83,65 @@ public class PlateSearchController {
         }
     }
     
+    /**
+     * Búsqueda de varias placas a la vez. Responde NDJSON: una línea por placa en cuanto se resuelve
+     * (primero las que están en caché), con {placa, success, fuente, vehicle} o {placa, success, error}.
+     */
+    @PostMapping("/plate-search/batch")
+    public ResponseEntity<?> searchPlates(@RequestBody Map<String, Object> request) {
+        List<String> placas;
+        try {
+            Object plates = request.get("plates");
+            if (!(plates instanceof List)) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "La lista de placas es requerida"));
+            }
+            List<String> recibidas = new ArrayList<>();
+            for (Object placa : (List<?>) plates) {
+                if (placa != null) {
+                    recibidas.add(placa.toString());
+                }
+            }
+            placas = plateSearchService.prepararLote(recibidas);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", e.getMessage(), "message", e.getMessage()));
+        }
+        
+        Object userIdRecibido = request.get("userId");
+        String userId = resolverUsuario(userIdRecibido != null ? userIdRecibido.toString() : null);
+        
+        StreamingResponseBody body = outputStream -> plateSearchService.buscarPlacasEnLote(placas, userId, resultado -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(resultado));
+                outputStream.write('\n');
+                outputStream.flush();
+            } catch (IOException e) {
+                // El cliente cerró la conexión
+                throw new UncheckedIOException(e);
+            }
+        });
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+    
+    // Si no hay userId, usar el del usuario autenticado o "guest" (permite búsquedas sin autenticación)
+    private String resolverUsuario(String userId) {
+        if (userId == null || userId.trim().isEmpty()) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.isAuthenticated() && authentication.getPrincipal() instanceof OAuth2User) {
+                OAuth2User oauth2User = (OAuth2User) authentication.getPrincipal();
+                userId = oauth2User.getAttribute("sub");
+            }
+            if (userId == null || userId.trim().isEmpty()) {
+                userId = "guest";
+            }
+        }
+        return userId;
+    }
+    
     @GetMapping("/plate-search/history")
     public ResponseEntity<Map<String, Object>> getSearchHistory() {
         try {
@@ -122,6 +186,21 @@ public class PlateSearchController {
         }
     }
     
+    @GetMapping("/plate-search/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("cache", plateSearchService.getCacheStats());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            return ResponseEntity.status(500)
+                .body(Map.of("error", "Error al obtener estadísticas de caché: " + e.getMessage()));
+        }
+    }
+    
     @GetMapping("/plate-search/validate/{plate}")
     public ResponseEntity<Map<String, Object>> validatePlate(@PathVariable String plate) {
         try {
@@ -1,8 +1,17 @@
 package com.integrador.controller;
 
+import com.integrador.service.AlmacenImagenesService;
+import com.integrador.service.CatalogoAnunciosCache;
+import com.integrador.service.ContadoresAnuncios;
+import com.integrador.service.FragmentosAnuncios;
+import com.integrador.service.VariantesImagenService;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
 import java.util.Map;
 
 @RestController
@@ -10,6 +19,24 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class PublicController {
 
+    @Autowired
+    private PoolingHttpClientConnectionManager httpConnectionManager;
+
+    @Autowired
+    private AlmacenImagenesService almacenImagenesService;
+
+    @Autowired
+    private VariantesImagenService variantesImagenService;
+
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    @Autowired
+    private FragmentosAnuncios fragmentosAnuncios;
+
+    @Autowired
+    private ContadoresAnuncios contadoresAnuncios;
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> health() {
         return ResponseEntity.ok(Map.of("status", "OK", "service", "Spring Boot Supabase"));
@@ -22,4 +49,33 @@ public class PublicController {
             "auth_endpoint", "/api/auth"
         ));
     }
+
+    @GetMapping("/http-pool")
+    public ResponseEntity<Map<String, Object>> httpPool() {
+        PoolStats stats = httpConnectionManager.getTotalStats();
+        Map<String, Object> respuesta = new HashMap<>();
+        respuesta.put("enUso", stats.getLeased());
+        respuesta.put("disponibles", stats.getAvailable());
+        respuesta.put("enEspera", stats.getPending());
+        respuesta.put("maximo", stats.getMax());
+        respuesta.put("rutas", httpConnectionManager.getRoutes().size());
+        return ResponseEntity.ok(respuesta);
+    }
+
+    @GetMapping("/imagenes")
+    public ResponseEntity<Map<String, Object>> imagenes() {
+        Map<String, Object> respuesta = new HashMap<>();
+        respuesta.put("almacen", almacenImagenesService.obtenerEstadisticas());
+        respuesta.put("variantes", variantesImagenService.obtenerEstadisticas());
+        return ResponseEntity.ok(respuesta);
+    }
+
+    @GetMapping("/catalogo")
+    public ResponseEntity<Map<String, Object>> catalogo() {
+        Map<String, Object> respuesta = new HashMap<>();
+        respuesta.put("catalogo", catalogoAnunciosCache.obtenerEstadisticas());
+        respuesta.put("fragmentos", fragmentosAnuncios.obtenerEstadisticas());
+        respuesta.put("contadores", contadoresAnuncios.obtenerEstadisticas());
+        return ResponseEntity.ok(respuesta);
+    }
 }
@@ -0,0 +1,39 @@
+package com.integrador.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Filtros opcionales del listado público de anuncios. Un campo null no filtra.
+ */
+public class AnuncioFiltro {
+    private String tipoVehiculo;
+    private BigDecimal precioMin;
+    private BigDecimal precioMax;
+    private Integer anioMin;
+    private Integer anioMax;
+    private Integer kilometrajeMax;
+
+    public boolean estaVacio() {
+        return tipoVehiculo == null && precioMin == null && precioMax == null
+                && anioMin == null && anioMax == null && kilometrajeMax == null;
+    }
+
+    // Getters y Setters
+    public String getTipoVehiculo() { return tipoVehiculo; }
+    public void setTipoVehiculo(String tipoVehiculo) { this.tipoVehiculo = tipoVehiculo; }
+
+    public BigDecimal getPrecioMin() { return precioMin; }
+    public void setPrecioMin(BigDecimal precioMin) { this.precioMin = precioMin; }
+
+    public BigDecimal getPrecioMax() { return precioMax; }
+    public void setPrecioMax(BigDecimal precioMax) { this.precioMax = precioMax; }
+
+    public Integer getAnioMin() { return anioMin; }
+    public void setAnioMin(Integer anioMin) { this.anioMin = anioMin; }
+
+    public Integer getAnioMax() { return anioMax; }
+    public void setAnioMax(Integer anioMax) { this.anioMax = anioMax; }
+
+    public Integer getKilometrajeMax() { return kilometrajeMax; }
+    public void setKilometrajeMax(Integer kilometrajeMax) { this.kilometrajeMax = kilometrajeMax; }
+}
@@ -5,6 +5,8 @@ import java.util.List;
 public class ChatRequest {
     private String message;
     private List<ChatMessage> conversationHistory;
+    // Sesión guardada en el servidor; con ella no hace falta mandar conversationHistory
+    private String sessionId;
     
     public ChatRequest() {}
     
@@ -28,5 +30,12 @@ public class ChatRequest {
     public void setConversationHistory(List<ChatMessage> conversationHistory) {
         this.conversationHistory = conversationHistory;
     }
+    
+    public String getSessionId() {
+        return sessionId;
+    }
+    
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
 }
-
@@ -0,0 +1,24 @@
+package com.integrador.dto;
+
+import com.integrador.entity.Anuncio;
+
+import java.util.List;
+
+/**
+ * Una página del listado de anuncios. siguienteCursor es null cuando no hay más resultados.
+ */
+public class PaginaAnuncios {
+    private final List<Anuncio> anuncios;
+    private final String siguienteCursor;
+
+    public PaginaAnuncios(List<Anuncio> anuncios, String siguienteCursor) {
+        this.anuncios = anuncios;
+        this.siguienteCursor = siguienteCursor;
+    }
+
+    public List<Anuncio> getAnuncios() { return anuncios; }
+
+    public String getSiguienteCursor() { return siguienteCursor; }
+
+    public boolean isTieneMas() { return siguienteCursor != null; }
+}
@@ -1,10 +1,12 @@
 package com.integrador.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Entity
 @Table(name = "imagenes")
@@ -38,6 +40,12 @@ public class Imagen {
     @Column(name = "orden")
     private Integer orden;
     
+    // URLs de las versiones reducidas (thumb, medium, full); null mientras no se hayan generado.
+    // Volátil: en las imágenes del catálogo en memoria la escribe un hilo de fondo mientras otros la leen
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private volatile Map<String, String> variantes;
+    
     // Constructores
     public Imagen() {}
     
@@ -116,5 +124,12 @@ public class Imagen {
     public void setOrden(Integer orden) {
         this.orden = orden;
     }
+    
+    public Map<String, String> getVariantes() {
+        return variantes;
+    }
+    
+    public void setVariantes(Map<String, String> variantes) {
+        this.variantes = variantes;
+    }
 }
-
@@ -1,11 +1,15 @@
 package com.integrador.repository;
 
 import com.integrador.entity.Anuncio;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -19,6 +23,34 @@ public interface AnuncioRepository extends JpaRepository<Anuncio, Long> {
     @Query("SELECT DISTINCT a FROM Anuncio a LEFT JOIN FETCH a.imagenes WHERE a.activo = true ORDER BY a.fechaCreacion DESC")
     List<Anuncio> findAllActivos();
     
+    /**
+     * Ids de una página del listado público, en orden (fechaCreacion DESC, idAnuncio DESC).
+     * Paginación por cursor (keyset): cursorFecha/cursorId son los del último anuncio de la página anterior.
+     * Las imágenes se cargan aparte con findByIdsWithImagenes para que el LIMIT se aplique en la BD.
+     */
+    @Query("SELECT a.idAnuncio FROM Anuncio a WHERE a.activo = true " +
+           "AND (:tipoVehiculo IS NULL OR a.tipoVehiculo = :tipoVehiculo) " +
+           "AND (:precioMin IS NULL OR a.precio >= :precioMin) " +
+           "AND (:precioMax IS NULL OR a.precio <= :precioMax) " +
+           "AND (:anioMin IS NULL OR a.anio >= :anioMin) " +
+           "AND (:anioMax IS NULL OR a.anio <= :anioMax) " +
+           "AND (:kilometrajeMax IS NULL OR a.kilometraje <= :kilometrajeMax) " +
+           "AND (:cursorFecha IS NULL OR a.fechaCreacion < :cursorFecha " +
+           "     OR (a.fechaCreacion = :cursorFecha AND a.idAnuncio < :cursorId)) " +
+           "ORDER BY a.fechaCreacion DESC, a.idAnuncio DESC")
+    List<Long> findIdsPaginaActivos(@Param("tipoVehiculo") String tipoVehiculo,
+                                    @Param("precioMin") BigDecimal precioMin,
+                                    @Param("precioMax") BigDecimal precioMax,
+                                    @Param("anioMin") Integer anioMin,
+                                    @Param("anioMax") Integer anioMax,
+                                    @Param("kilometrajeMax") Integer kilometrajeMax,
+                                    @Param("cursorFecha") LocalDateTime cursorFecha,
+                                    @Param("cursorId") Long cursorId,
+                                    Pageable pageable);
+    
+    @Query("SELECT DISTINCT a FROM Anuncio a LEFT JOIN FETCH a.imagenes WHERE a.idAnuncio IN :ids")
+    List<Anuncio> findByIdsWithImagenes(@Param("ids") Collection<Long> ids);
+    
     @Query("SELECT DISTINCT a FROM Anuncio a LEFT JOIN FETCH a.imagenes WHERE a.idAnuncio = :id")
     java.util.Optional<Anuncio> findByIdWithImagenes(@Param("id") Long id);
 }
@@ -0,0 +1,21 @@
+package com.integrador.repository;
+
+import com.integrador.entity.Imagen;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ImagenRepository extends JpaRepository<Imagen, Long> {
+    
+    // Referencias a un archivo del almacén: varias imágenes pueden compartir el mismo contenido
+    long countByUrlImagen(String urlImagen);
+    
+    // De un lote de URLs, las que alguna imagen sigue usando (barrido de archivos huérfanos)
+    @Query("SELECT DISTINCT i.urlImagen FROM Imagen i WHERE i.urlImagen IN :urls")
+    List<String> findUrlsReferenciadas(@Param("urls") Collection<String> urls);
+}
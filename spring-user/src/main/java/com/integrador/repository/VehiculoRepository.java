@@ -2,9 +2,11 @@ package com.integrador.repository;
 
 import com.integrador.entity.Vehiculo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -22,6 +24,64 @@ public interface VehiculoRepository extends JpaRepository<Vehiculo, Long> {
     @Query("SELECT v FROM Vehiculo v WHERE v.anioRegistroApi = :anio")
     List<Vehiculo> findByAnioRegistroApi(@Param("anio") String anio);
     
+    // Cuántos vehículos consultados hay de cada marca/modelo (fuente del autocompletado)
+    @Query("SELECT v.marca, v.modelo, COUNT(v) FROM Vehiculo v WHERE v.marca IS NOT NULL GROUP BY v.marca, v.modelo")
+    List<Object[]> contarPorMarcaYModelo();
+    
     @Query("SELECT v FROM Vehiculo v ORDER BY v.fechaActualizacionApi DESC")
     List<Vehiculo> findTop10ByOrderByFechaActualizacionApiDesc();
+    
+    String INSERTAR_VEHICULO = "INSERT INTO vehiculos (placa, descripcion_api, marca, modelo, anio_registro_api, vin, uso, " +
+           "propietario, delivery_point, image_url_api, datos_api, fecha_registro_api, fecha_actualizacion_api) ";
+    
+    // En una actualización se conservan los valores existentes si la API no devolvió el campo.
+    // También lo usa el INSERT multi-fila de EscrituraDiferidaService.
+    String CONFLICTO_PLACA = "ON CONFLICT (placa) DO UPDATE SET " +
+           "descripcion_api = COALESCE(EXCLUDED.descripcion_api, vehiculos.descripcion_api), " +
+           "marca = COALESCE(EXCLUDED.marca, vehiculos.marca), " +
+           "modelo = COALESCE(EXCLUDED.modelo, vehiculos.modelo), " +
+           "anio_registro_api = COALESCE(EXCLUDED.anio_registro_api, vehiculos.anio_registro_api), " +
+           "vin = COALESCE(EXCLUDED.vin, vehiculos.vin), " +
+           "uso = COALESCE(EXCLUDED.uso, vehiculos.uso), " +
+           "propietario = COALESCE(EXCLUDED.propietario, vehiculos.propietario), " +
+           "delivery_point = COALESCE(EXCLUDED.delivery_point, vehiculos.delivery_point), " +
+           "image_url_api = COALESCE(EXCLUDED.image_url_api, vehiculos.image_url_api), " +
+           "datos_api = EXCLUDED.datos_api, " +
+           "fecha_actualizacion_api = EXCLUDED.fecha_actualizacion_api";
+    
+    // Inserta o actualiza el vehículo por placa en una sola sentencia (sin SELECT previo ni excepción por duplicado).
+    @Modifying
+    @Transactional
+    @Query(value = INSERTAR_VEHICULO +
+           "VALUES (:placa, :descripcionApi, :marca, :modelo, :anioRegistroApi, :vin, :uso, " +
+           ":propietario, :deliveryPoint, :imageUrlApi, CAST(:datosApi AS jsonb), now(), now()) " +
+           CONFLICTO_PLACA,
+           nativeQuery = true)
+    int upsertPorPlaca(@Param("placa") String placa,
+                       @Param("descripcionApi") String descripcionApi,
+                       @Param("marca") String marca,
+                       @Param("modelo") String modelo,
+                       @Param("anioRegistroApi") String anioRegistroApi,
+                       @Param("vin") String vin,
+                       @Param("uso") String uso,
+                       @Param("propietario") String propietario,
+                       @Param("deliveryPoint") String deliveryPoint,
+                       @Param("imageUrlApi") String imageUrlApi,
+                       @Param("datosApi") String datosApi);
+    
+    default int upsert(Vehiculo vehiculo) {
+        return upsertPorPlaca(
+            vehiculo.getPlaca(),
+            vehiculo.getDescripcionApi(),
+            vehiculo.getMarca(),
+            vehiculo.getModelo(),
+            vehiculo.getAnioRegistroApi(),
+            vehiculo.getVin(),
+            vehiculo.getUso(),
+            vehiculo.getPropietario(),
+            vehiculo.getDeliveryPoint(),
+            vehiculo.getImageUrlApi(),
+            vehiculo.getDatosApi() != null ? vehiculo.getDatosApi().toString() : "{}"
+        );
+    }
 }
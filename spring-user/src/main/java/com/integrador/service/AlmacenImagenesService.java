@@ -0,0 +1,468 @@
+package com.integrador.service;
+
+import com.integrador.repository.ImagenRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Almacén de imágenes direccionado por contenido: cada archivo se guarda como
+ * uploads/ab/cd/<sha256>.<ext>, repartido en subdirectorios por los primeros bytes del hash.
+ * El mismo contenido se guarda una sola vez y el archivo solo se borra cuando ninguna fila
+ * de imagenes lo referencia. Las URLs antiguas (uploads/<uuid>.<ext>) se siguen resolviendo igual.
+ *
+ * Los borrados se encolan tras el commit y los hace un hilo en segundo plano. Ese mismo hilo
+ * recorre periódicamente el directorio, unos pocos subdirectorios por ciclo, y borra los archivos
+ * que ninguna fila referencia (subidas de transacciones revertidas, caídas a mitad de un borrado...).
+ * Es la única vía por la que desaparece una subida revertida: otra subida pudo reutilizar ese mismo
+ * contenido antes de que la primera se revirtiera. Un borrado y la reutilización del mismo archivo
+ * en la ingesta se serializan con un cerrojo por archivo (ver cerrojo), y la ingesta deja el archivo
+ * reservado hasta que termina la transacción que lo va a referenciar (ver reservar): el borrado tras
+ * el commit mira esa reserva, no la fecha del archivo, así que una foto reemplazada a los pocos
+ * minutos de subirla se borra en el momento.
+ */
+@Service
+public class AlmacenImagenesService {
+
+    static final String PREFIJO_URL = "/uploads/";
+
+    // Cerrojos repartidos por nombre de archivo: el nombre es el hash del contenido
+    private static final Object[] CERROJOS = new Object[256];
+
+    // Archivos que una subida publicó o reutilizó y cuya fila todavía no se confirmó (cuántas subidas)
+    private static final Map<Path, Integer> RESERVADOS = new ConcurrentHashMap<>();
+    // Reservas hechas por cerrojo: si cambia entre la consulta a la BD y el borrado, una subida se coló
+    private static final long[] GENERACIONES = new long[CERROJOS.length];
+
+    static {
+        for (int i = 0; i < CERROJOS.length; i++) {
+            CERROJOS[i] = new Object();
+        }
+    }
+
+    @Value("${app.upload.dir:uploads}")
+    private String uploadDir;
+
+    // El barrido no toca los archivos modificados hace menos de esto: pueden ser de una escritura en curso
+    @Value("${imagenes.barrido.gracia-minutos:60}")
+    private long graciaMinutos = 60;
+
+    @Value("${imagenes.barrido.intervalo-minutos:60}")
+    private long intervaloMinutos = 60;
+
+    @Value("${imagenes.barrido.directorios-por-ciclo:16}")
+    private int directoriosPorCiclo = 16;
+
+    @Value("${imagenes.barrido.tamano-lote:200}")
+    private int tamanoLote = 200;
+
+    @Value("${imagenes.limpieza.cola:1000}")
+    private int capacidadCola = 1000;
+
+    @Autowired
+    private ImagenRepository imagenRepository;
+
+    @Autowired
+    private VariantesImagenService variantesImagenService;
+
+    private ScheduledExecutorService limpieza;
+    private final AtomicInteger enCola = new AtomicInteger();
+
+    // Último subdirectorio barrido; el siguiente ciclo continúa desde ahí
+    private String ultimoDirectorio = null;
+
+    private final AtomicLong borradas = new AtomicLong();
+    private final AtomicLong huerfanasBorradas = new AtomicLong();
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong reservadasOmitidas = new AtomicLong();
+    private final AtomicLong ciclos = new AtomicLong();
+
+    @PostConstruct
+    public void iniciar() {
+        limpieza = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "limpieza-imagenes");
+            hilo.setDaemon(true);
+            hilo.setPriority(Thread.MIN_PRIORITY);
+            return hilo;
+        });
+        limpieza.scheduleWithFixedDelay(this::barrerSeguro, intervaloMinutos, intervaloMinutos, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void detener() {
+        limpieza.shutdown();
+        try {
+            // Terminar los borrados ya encolados; el barrido periódico pendiente se descarta
+            limpieza.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Path getDirectorioBase() {
+        return Paths.get(uploadDir);
+    }
+
+    /**
+     * Ruta relativa al directorio de uploads para un contenido: ab/cd/<sha256>.<ext>
+     */
+    public static String rutaRelativa(String sha256, String extension) {
+        return sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + extension.toLowerCase(Locale.ROOT);
+    }
+
+    public static String url(String rutaRelativa) {
+        return PREFIJO_URL + rutaRelativa;
+    }
+
+    /**
+     * Cerrojo del archivo. La ingesta lo toma para decidir entre publicar un contenido nuevo o reutilizar
+     * (y renovar la fecha de) uno existente; los borrados, para mirar la fecha y borrar. Así un borrado
+     * nunca se cuela entre que una subida ve el archivo y lo renueva.
+     */
+    static Object cerrojo(Path ruta) {
+        return CERROJOS[indice(ruta)];
+    }
+
+    /**
+     * Marca el archivo como en uso por una subida cuya fila aún no está confirmada. La ingesta lo llama
+     * con el cerrojo tomado al publicar o reutilizar el archivo; cada reserva se suelta una vez con soltar.
+     */
+    static void reservar(Path ruta) {
+        Path clave = clave(ruta);
+        synchronized (cerrojo(clave)) {
+            RESERVADOS.merge(clave, 1, Integer::sum);
+            GENERACIONES[indice(clave)]++;
+        }
+    }
+
+    static void soltar(Path ruta) {
+        Path clave = clave(ruta);
+        synchronized (cerrojo(clave)) {
+            RESERVADOS.computeIfPresent(clave, (r, subidas) -> subidas > 1 ? subidas - 1 : null);
+        }
+    }
+
+    static boolean reservado(Path ruta) {
+        return RESERVADOS.containsKey(clave(ruta));
+    }
+
+    private static Path clave(Path ruta) {
+        return ruta.toAbsolutePath().normalize();
+    }
+
+    private static int indice(Path ruta) {
+        return Math.floorMod(ruta.getFileName().toString().hashCode(), CERROJOS.length);
+    }
+
+    /**
+     * Ruta en disco de una URL /uploads/...; null si la URL no es del almacén o intenta salir de él.
+     */
+    public Path resolver(String urlImagen) {
+        if (urlImagen == null || !urlImagen.startsWith(PREFIJO_URL)) {
+            return null;
+        }
+        String relativa = urlImagen.substring(PREFIJO_URL.length());
+        if (relativa.isEmpty()) {
+            return null;
+        }
+        Path base = getDirectorioBase().toAbsolutePath().normalize();
+        Path ruta = base.resolve(relativa).normalize();
+        return ruta.startsWith(base) ? ruta : null;
+    }
+
+    /**
+     * Suelta las referencias de imágenes borradas o reemplazadas. Cuando la transacción se confirma,
+     * se encola el borrado de cada archivo (y sus variantes) que ya no tenga ninguna fila que lo use.
+     * Si la transacción se revierte no se toca nada.
+     */
+    public void liberar(Collection<String> urls) {
+        if (urls == null || urls.isEmpty()) {
+            return;
+        }
+        List<String> candidatas = new ArrayList<>(new LinkedHashSet<>(urls));
+        DespuesDelCommit.ejecutar(() -> encolarBorrado(candidatas));
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("borradas", borradas.get());
+        estadisticas.put("huerfanasBorradas", huerfanasBorradas.get());
+        estadisticas.put("descartadas", descartadas.get());
+        estadisticas.put("reservadasOmitidas", reservadasOmitidas.get());
+        estadisticas.put("enCola", enCola.get());
+        estadisticas.put("ciclosBarrido", ciclos.get());
+        return estadisticas;
+    }
+
+    private void encolarBorrado(List<String> urls) {
+        // Cola llena: los archivos quedan huérfanos y los recoge el barrido
+        if (enCola.incrementAndGet() > capacidadCola) {
+            enCola.decrementAndGet();
+            descartadas.addAndGet(urls.size());
+            return;
+        }
+        try {
+            limpieza.execute(() -> {
+                try {
+                    urls.forEach(this::borrarSiNoTieneReferencias);
+                } finally {
+                    enCola.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            enCola.decrementAndGet();
+            descartadas.addAndGet(urls.size());
+        }
+    }
+
+    void borrarSiNoTieneReferencias(String urlImagen) {
+        Path ruta = resolver(urlImagen);
+        if (ruta == null) {
+            return;
+        }
+        try {
+            long generacion;
+            synchronized (cerrojo(ruta)) {
+                if (reservado(ruta)) {
+                    // Una subida sin confirmar reutiliza este contenido: si se confirma lo referencia y, si se
+                    // revierte, lo recoge el barrido
+                    reservadasOmitidas.incrementAndGet();
+                    return;
+                }
+                generacion = GENERACIONES[indice(ruta)];
+            }
+            // Una subida que soltó su reserva antes de este punto ya tiene su fila confirmada
+            if (imagenRepository.countByUrlImagen(urlImagen) > 0) {
+                // Otro anuncio comparte el mismo contenido
+                return;
+            }
+            synchronized (cerrojo(ruta)) {
+                if (GENERACIONES[indice(ruta)] != generacion) {
+                    // Hubo una reserva en el mismo cerrojo durante la consulta: ante la duda, queda para el barrido
+                    reservadasOmitidas.incrementAndGet();
+                    return;
+                }
+                if (!Files.deleteIfExists(ruta)) {
+                    return;
+                }
+            }
+            borradas.incrementAndGet();
+            System.out.println("Imagen física eliminada: " + urlImagen);
+            variantesImagenService.eliminarVariantes(urlImagen);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error al eliminar imagen " + urlImagen + ": " + e.getMessage());
+        }
+    }
+
+    private void barrerSeguro() {
+        try {
+            barrer();
+        } catch (RuntimeException e) {
+            System.err.println("Error en el barrido de imágenes huérfanas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Un ciclo del barrido: revisa los siguientes directoriosPorCiclo subdirectorios (ab/, cd/...)
+     * y, al completar la vuelta, los archivos sueltos de la raíz (URLs antiguas).
+     * Devuelve cuántos archivos borró.
+     */
+    int barrer() {
+        Path base = getDirectorioBase().toAbsolutePath().normalize();
+        if (!Files.isDirectory(base)) {
+            return 0;
+        }
+        ciclos.incrementAndGet();
+        long limite = System.currentTimeMillis() - graciaMs();
+        Path baseVariantes = base.resolve(VariantesImagenService.DIRECTORIO_VARIANTES);
+
+        List<String> directorios = new ArrayList<>(directoriosAlmacen(base, baseVariantes));
+        List<String> turno = new ArrayList<>();
+        for (String directorio : directorios) {
+            if (turno.size() < directoriosPorCiclo && (ultimoDirectorio == null || directorio.compareTo(ultimoDirectorio) > 0)) {
+                turno.add(directorio);
+            }
+        }
+        boolean finDeVuelta = turno.size() < directoriosPorCiclo;
+        ultimoDirectorio = finDeVuelta ? null : turno.get(turno.size() - 1);
+
+        int borrados = 0;
+        try {
+            for (String directorio : turno) {
+                borrados += barrerOriginales(base, recorrer(base.resolve(directorio), Integer.MAX_VALUE), limite);
+                borrados += barrerVariantes(base, baseVariantes, recorrer(baseVariantes.resolve(directorio), Integer.MAX_VALUE), limite);
+            }
+            if (finDeVuelta) {
+                borrados += barrerOriginales(base, recorrer(base, 1), limite);
+                borrados += barrerVariantes(base, baseVariantes, recorrer(baseVariantes, 1), limite);
+            }
+        } catch (IOException e) {
+            System.err.println("Error recorriendo " + base + ": " + e.getMessage());
+        }
+        if (borrados > 0) {
+            huerfanasBorradas.addAndGet(borrados);
+            System.out.println("Barrido de imágenes: " + borrados + " archivos huérfanos eliminados");
+        }
+        return borrados;
+    }
+
+    // Subdirectorios de primer nivel del almacén (y de variantes), en orden para poder continuar por donde se quedó
+    private Set<String> directoriosAlmacen(Path base, Path baseVariantes) {
+        Set<String> directorios = new TreeSet<>();
+        for (Path raiz : List.of(base, baseVariantes)) {
+            if (!Files.isDirectory(raiz)) {
+                continue;
+            }
+            try (DirectoryStream<Path> entradas = Files.newDirectoryStream(raiz, Files::isDirectory)) {
+                for (Path entrada : entradas) {
+                    directorios.add(entrada.getFileName().toString());
+                }
+            } catch (IOException e) {
+                System.err.println("Error listando " + raiz + ": " + e.getMessage());
+            }
+        }
+        directorios.remove(VariantesImagenService.DIRECTORIO_VARIANTES);
+        return directorios;
+    }
+
+    private List<Path> recorrer(Path directorio, int profundidad) throws IOException {
+        if (!Files.isDirectory(directorio)) {
+            return List.of();
+        }
+        try (Stream<Path> archivos = Files.walk(directorio, profundidad)) {
+            return archivos.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    // Originales: se consulta la BD por lotes con las URLs de los archivos que ya pasaron el periodo de gracia
+    private int barrerOriginales(Path base, List<Path> archivos, long limite) {
+        int borrados = 0;
+        Map<String, Path> lote = new LinkedHashMap<>();
+        for (Path archivo : archivos) {
+            if (recienModificado(archivo, limite)) {
+                continue;
+            }
+            if (esTemporal(archivo)) {
+                borrados += borrar(archivo) ? 1 : 0;
+                continue;
+            }
+            lote.put(url(base.relativize(archivo).toString().replace('\\', '/')), archivo);
+            if (lote.size() >= tamanoLote) {
+                borrados += reconciliar(lote, limite);
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) {
+            borrados += reconciliar(lote, limite);
+        }
+        return borrados;
+    }
+
+    private int reconciliar(Map<String, Path> lote, long limite) {
+        Set<String> referenciadas = new HashSet<>(imagenRepository.findUrlsReferenciadas(lote.keySet()));
+        int borrados = 0;
+        for (Map.Entry<String, Path> entrada : lote.entrySet()) {
+            if (referenciadas.contains(entrada.getKey())) {
+                continue;
+            }
+            boolean borrado;
+            synchronized (cerrojo(entrada.getValue())) {
+                // Se vuelve a mirar la fecha justo antes de borrar por si una subida acaba de reutilizarlo
+                borrado = !reservado(entrada.getValue()) && !recienModificado(entrada.getValue(), limite)
+                        && borrar(entrada.getValue());
+            }
+            if (borrado) {
+                borrados++;
+                variantesImagenService.eliminarVariantes(entrada.getKey());
+            }
+        }
+        return borrados;
+    }
+
+    // Variantes: sobran cuando ya no existe el original del que salieron (<base>-<variante>.jpg → <base>.*)
+    private int barrerVariantes(Path base, Path baseVariantes, List<Path> archivos, long limite) {
+        int borrados = 0;
+        for (Path archivo : archivos) {
+            if (recienModificado(archivo, limite)) {
+                continue;
+            }
+            String nombre = archivo.getFileName().toString();
+            int guion = nombre.lastIndexOf('-');
+            if (esTemporal(archivo) || guion <= 0) {
+                borrados += borrar(archivo) ? 1 : 0;
+                continue;
+            }
+            Path directorioOriginal = base.resolve(baseVariantes.relativize(archivo.getParent()).toString());
+            if (!existeOriginal(directorioOriginal, nombre.substring(0, guion))) {
+                borrados += borrar(archivo) ? 1 : 0;
+            }
+        }
+        return borrados;
+    }
+
+    private boolean existeOriginal(Path directorio, String nombreBase) {
+        if (!Files.isDirectory(directorio)) {
+            return false;
+        }
+        try (DirectoryStream<Path> candidatos = Files.newDirectoryStream(directorio,
+                p -> p.getFileName().toString().startsWith(nombreBase + ".") && Files.isRegularFile(p))) {
+            return candidatos.iterator().hasNext();
+        } catch (IOException e) {
+            // Ante la duda no se borra
+            return true;
+        }
+    }
+
+    private boolean esTemporal(Path archivo) {
+        String nombre = archivo.getFileName().toString();
+        return nombre.startsWith(".") && nombre.endsWith(".tmp");
+    }
+
+    private boolean recienModificado(Path archivo, long limite) {
+        try {
+            return Files.getLastModifiedTime(archivo).toMillis() > limite;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private boolean borrar(Path archivo) {
+        try {
+            return Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            System.err.println("Error al eliminar " + archivo + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private long graciaMs() {
+        return TimeUnit.MINUTES.toMillis(graciaMinutos);
+    }
+}
@@ -1,31 +1,59 @@
 package com.integrador.service;
 
+import com.integrador.dto.AnuncioFiltro;
 import com.integrador.dto.AnuncioRequest;
+import com.integrador.dto.PaginaAnuncios;
 import com.integrador.entity.Anuncio;
 import com.integrador.entity.Imagen;
 import com.integrador.repository.AnuncioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class AnuncioService {
     
+    private static final int LIMITE_PAGINA_DEFECTO = 20;
+    private static final int LIMITE_PAGINA_MAXIMO = 100;
+    
     @Autowired
     private AnuncioRepository anuncioRepository;
     
-    @Value("${app.upload.dir:uploads}")
-    private String uploadDir;
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+    
+    @Autowired
+    private ImagenIngestaService imagenIngestaService;
+    
+    @Autowired
+    private VariantesImagenService variantesImagenService;
+    
+    @Autowired
+    private AlmacenImagenesService almacenImagenesService;
+    
+    @Autowired
+    private IndiceAnuncios indiceAnuncios;
+    
+    @Autowired
+    private FacetasAnuncios facetasAnuncios;
+    
+    @Autowired
+    private FragmentosAnuncios fragmentosAnuncios;
+    
+    @Autowired
+    private ContadoresAnuncios contadoresAnuncios;
     
     public Anuncio crearAnuncio(String idUsuario, AnuncioRequest request, List<MultipartFile> imagenes) {
         // Validaciones
@@ -67,50 +95,36 @@ public class AnuncioService {
         anuncio.setTitulo(titulo);
         anuncio.setActivo(true);
         
-        // Guardar el anuncio primero para obtener el ID
-        anuncio = anuncioRepository.save(anuncio);
-        
-        // Crear directorio de uploads si no existe
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            try {
-                Files.createDirectories(uploadPath);
-            } catch (IOException e) {
-                throw new RuntimeException("Error al crear directorio de uploads", e);
-            }
-        }
+        // Escribir las imágenes en paralelo antes de tocar la BD: si falla alguna no queda un anuncio sin imágenes
+        List<ImagenIngestaService.ImagenGuardada> guardadas = imagenIngestaService.guardar(imagenes);
         
         // Guardar las imágenes usando addImagen() para mantener la referencia de la colección
-        for (int i = 0; i < imagenes.size(); i++) {
-            MultipartFile archivo = imagenes.get(i);
-            if (archivo != null && !archivo.isEmpty()) {
-                try {
-                    // Generar nombre único para el archivo
-                    String extension = obtenerExtension(archivo.getOriginalFilename());
-                    String nombreArchivo = UUID.randomUUID().toString() + extension;
-                    Path rutaArchivo = uploadPath.resolve(nombreArchivo);
-                    
-                    // Guardar el archivo
-                    Files.copy(archivo.getInputStream(), rutaArchivo, StandardCopyOption.REPLACE_EXISTING);
-                    
-                    // Crear entidad Imagen
-                    Imagen imagen = new Imagen();
-                    imagen.setUrlImagen("/uploads/" + nombreArchivo);
-                    imagen.setNombreArchivo(archivo.getOriginalFilename());
-                    imagen.setTipoArchivo(archivo.getContentType());
-                    imagen.setTamanoArchivo(archivo.getSize());
-                    imagen.setOrden(i + 1);
-                    
-                    // Usar addImagen() en lugar de setImagenes() para mantener la referencia
-                    anuncio.addImagen(imagen);
-                } catch (IOException e) {
-                    throw new RuntimeException("Error al guardar la imagen: " + e.getMessage(), e);
-                }
-            }
+        for (int i = 0; i < guardadas.size(); i++) {
+            anuncio.addImagen(crearImagen(guardadas.get(i), i + 1));
         }
         
-        // Guardar el anuncio con las imágenes
-        return anuncioRepository.save(anuncio);
+        // Guardar el anuncio con las imágenes. Si falla, los archivos escritos quedan sin referencias
+        // y los borra el barrido de huérfanos (otra subida pudo haber reutilizado el mismo contenido)
+        Anuncio anuncioGuardado;
+        try {
+            anuncioGuardado = anuncioRepository.save(anuncio);
+        } finally {
+            // Ya con las filas confirmadas (o sin ellas): una liberación puede volver a mirar estos archivos
+            imagenIngestaService.soltarAlTerminar(guardadas);
+        }
+        catalogoAnunciosCache.anuncioGuardado(anuncioGuardado);
+        variantesImagenService.programar(anuncioGuardado.getImagenes());
+        return anuncioGuardado;
+    }
+    
+    private Imagen crearImagen(ImagenIngestaService.ImagenGuardada guardada, int orden) {
+        Imagen imagen = new Imagen();
+        imagen.setUrlImagen(guardada.getUrl());
+        imagen.setNombreArchivo(guardada.getNombreOriginal());
+        imagen.setTipoArchivo(guardada.getTipoContenido());
+        imagen.setTamanoArchivo(guardada.getTamano());
+        imagen.setOrden(orden);
+        return imagen;
     }
     
     public List<Anuncio> obtenerAnunciosPorUsuario(String idUsuario) {
@@ -144,6 +158,7 @@ public class AnuncioService {
         List<Anuncio> anuncios = anuncioRepository.findByIdUsuario(userIdFinal);
         
         System.out.println("Anuncios encontrados en repositorio: " + anuncios.size());
+        variantesImagenService.completar(anuncios);
         
         anuncios.forEach(anuncio -> {
             System.out.println("  ✅ Anuncio ID: " + anuncio.getIdAnuncio() + 
@@ -156,22 +171,150 @@ public class AnuncioService {
     
     public List<Anuncio> obtenerTodosLosAnunciosActivos() {
         System.out.println("=== SERVICIO: obtenerTodosLosAnunciosActivos ===");
-        List<Anuncio> anuncios = anuncioRepository.findAllActivos();
-        System.out.println("Anuncios encontrados en BD: " + anuncios.size());
-        anuncios.forEach(anuncio -> {
-            System.out.println("  - ID: " + anuncio.getIdAnuncio() + 
-                             ", Modelo: " + anuncio.getModelo() + 
-                             ", Activo: " + anuncio.getActivo() +
-                             ", Imágenes: " + (anuncio.getImagenes() != null ? anuncio.getImagenes().size() : 0));
-        });
+        // Snapshot en memoria: solo se consulta la BD si no hay uno cargado o venció
+        List<Anuncio> anuncios = catalogoAnunciosCache.obtener().getAnuncios();
+        System.out.println("Anuncios en catálogo: " + anuncios.size());
         return anuncios;
     }
     
+    /**
+     * Página del listado público con filtros opcionales. Dos consultas acotadas por página:
+     * los ids (keyset sobre fecha_creacion, id_anuncio) y luego esos anuncios con sus imágenes.
+     */
     @Transactional(readOnly = true)
+    public PaginaAnuncios obtenerPaginaAnunciosActivos(AnuncioFiltro filtro, String cursor, Integer limite) {
+        int tamano = limite == null ? LIMITE_PAGINA_DEFECTO : Math.max(1, Math.min(limite, LIMITE_PAGINA_MAXIMO));
+        LocalDateTime cursorFecha = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] partes = decodificarCursor(cursor);
+            cursorFecha = LocalDateTime.parse(partes[0]);
+            cursorId = Long.parseLong(partes[1]);
+        }
+        
+        // Se pide un elemento extra solo para saber si hay una página siguiente
+        List<Long> ids = anuncioRepository.findIdsPaginaActivos(
+            filtro.getTipoVehiculo(), filtro.getPrecioMin(), filtro.getPrecioMax(),
+            filtro.getAnioMin(), filtro.getAnioMax(), filtro.getKilometrajeMax(),
+            cursorFecha, cursorId, PageRequest.of(0, tamano + 1));
+        boolean hayMas = ids.size() > tamano;
+        if (hayMas) {
+            ids = ids.subList(0, tamano);
+        }
+        if (ids.isEmpty()) {
+            return new PaginaAnuncios(new ArrayList<>(), null);
+        }
+        
+        // La consulta con JOIN FETCH no conserva el orden: reordenar según los ids de la página
+        Map<Long, Anuncio> porId = new HashMap<>();
+        for (Anuncio anuncio : anuncioRepository.findByIdsWithImagenes(ids)) {
+            porId.put(anuncio.getIdAnuncio(), anuncio);
+        }
+        List<Anuncio> anuncios = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Anuncio anuncio = porId.get(id);
+            if (anuncio != null) {
+                anuncios.add(anuncio);
+            }
+        }
+        
+        variantesImagenService.completar(anuncios);
+        
+        String siguienteCursor = null;
+        if (hayMas && !anuncios.isEmpty()) {
+            Anuncio ultimo = anuncios.get(anuncios.size() - 1);
+            siguienteCursor = codificarCursor(ultimo.getFechaCreacion(), ultimo.getIdAnuncio());
+        }
+        return new PaginaAnuncios(anuncios, siguienteCursor);
+    }
+    
+    /**
+     * ETag del listado: versión del catálogo en memoria más los parámetros de la consulta.
+     * Cualquier cambio en un anuncio activo cambia la versión y con ella todos los ETag.
+     */
+    public String obtenerEtagCatalogo(String cursor, Integer limite, AnuncioFiltro filtro) {
+        String etag = catalogoAnunciosCache.obtener().getEtag();
+        if (cursor == null && limite == null && filtro.estaVacio()) {
+            return etag;
+        }
+        return etagDeConsulta(etag, Objects.hash(cursor, limite, filtro.getTipoVehiculo(), filtro.getPrecioMin(),
+            filtro.getPrecioMax(), filtro.getAnioMin(), filtro.getAnioMax(), filtro.getKilometrajeMax()));
+    }
+    
+    /**
+     * Búsqueda de texto sobre los anuncios activos, ordenada por relevancia. Se resuelve en el índice
+     * en memoria, sin consultar la BD mientras el catálogo esté vigente.
+     */
+    public IndiceAnuncios.ResultadoBusqueda buscarAnuncios(String consulta, Integer desde, Integer limite) {
+        if (consulta == null || consulta.trim().isEmpty()) {
+            throw new IllegalArgumentException("El texto de búsqueda es requerido");
+        }
+        int tamano = limite == null ? LIMITE_PAGINA_DEFECTO : Math.max(1, Math.min(limite, LIMITE_PAGINA_MAXIMO));
+        int inicio = desde == null ? 0 : Math.max(0, desde);
+        return indiceAnuncios.buscar(consulta, inicio, tamano);
+    }
+    
+    public String obtenerEtagBusqueda(String consulta, Integer desde, Integer limite) {
+        return etagDeConsulta(catalogoAnunciosCache.obtener().getEtag(), Objects.hash("search", consulta, desde, limite));
+    }
+    
+    /**
+     * Conteos por tipo de vehículo y rangos de año, precio y kilometraje para la selección de filtros actual.
+     * Salen de los bitsets en memoria, sin consultar la BD mientras el catálogo esté vigente.
+     */
+    public Map<String, Object> obtenerFacetas(AnuncioFiltro filtro) {
+        return facetasAnuncios.contar(filtro);
+    }
+    
+    public String obtenerEtagFacetas(AnuncioFiltro filtro) {
+        return etagDeConsulta(catalogoAnunciosCache.obtener().getEtag(), Objects.hash("facets", filtro.getTipoVehiculo(),
+            filtro.getPrecioMin(), filtro.getPrecioMax(), filtro.getAnioMin(), filtro.getAnioMax(), filtro.getKilometrajeMax()));
+    }
+    
+    /**
+     * Anuncios activos con más vistas. Los contadores están en memoria: no se consulta la BD.
+     */
+    public List<Anuncio> obtenerMasVistos(Integer limite) {
+        int tamano = limite == null ? 10 : Math.max(1, Math.min(limite, LIMITE_PAGINA_MAXIMO));
+        return contadoresAnuncios.masVistos(catalogoAnunciosCache.obtener().getAnuncios(), tamano);
+    }
+    
+    private String etagDeConsulta(String etagCatalogo, int consulta) {
+        return etagCatalogo.substring(0, etagCatalogo.length() - 1) + "-" + Integer.toHexString(consulta) + "\"";
+    }
+    
+    // El cursor es opaco para el cliente: "fechaCreacion|idAnuncio" en Base64 URL-safe
+    private String codificarCursor(LocalDateTime fechaCreacion, Long idAnuncio) {
+        String valor = fechaCreacion + "|" + idAnuncio;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private String[] decodificarCursor(String cursor) {
+        try {
+            String valor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] partes = valor.split("\\|");
+            if (partes.length != 2) {
+                throw new IllegalArgumentException("Cursor inválido");
+            }
+            LocalDateTime.parse(partes[0]);
+            Long.parseLong(partes[1]);
+            return partes;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+    
     public Anuncio obtenerAnuncioPorId(Long id) {
+        // Los anuncios activos salen del catálogo en memoria (ya con sus variantes); solo los inactivos van a la BD
+        Anuncio enCatalogo = catalogoAnunciosCache.obtener().buscar(id);
+        if (enCatalogo != null) {
+            return enCatalogo;
+        }
         // Usar el método que carga las imágenes con JOIN FETCH para evitar problemas de lazy loading
-        return anuncioRepository.findByIdWithImagenes(id)
+        Anuncio anuncio = anuncioRepository.findByIdWithImagenes(id)
             .orElseThrow(() -> new IllegalArgumentException("Anuncio no encontrado"));
+        variantesImagenService.completar(List.of(anuncio));
+        return anuncio;
     }
     
     @Transactional
@@ -217,64 +360,23 @@ public class AnuncioService {
         
         // Si se proporcionan nuevas imágenes, reemplazar las existentes
         if (imagenes != null && !imagenes.isEmpty()) {
-            // Eliminar imágenes antiguas del sistema de archivos
+            // Escribir primero las nuevas: si fallan, el anuncio conserva sus imágenes actuales
+            // Si la transacción se revierte, los archivos nuevos quedan para el barrido de huérfanos
+            List<ImagenIngestaService.ImagenGuardada> guardadas = imagenIngestaService.guardar(imagenes);
+            // Quedan reservadas hasta que la transacción termine
+            imagenIngestaService.soltarAlTerminar(guardadas);
+            
+            // Soltar las imágenes antiguas: sus archivos se borran tras el commit si ya nadie los usa
             List<Imagen> imagenesAntiguas = anuncio.getImagenes();
             if (imagenesAntiguas != null && !imagenesAntiguas.isEmpty()) {
-                for (Imagen imagen : imagenesAntiguas) {
-                    try {
-                        String urlImagen = imagen.getUrlImagen();
-                        if (urlImagen != null && urlImagen.startsWith("/uploads/")) {
-                            String nombreArchivo = urlImagen.replace("/uploads/", "");
-                            Path rutaImagen = Paths.get(uploadDir, nombreArchivo);
-                            if (Files.exists(rutaImagen)) {
-                                Files.delete(rutaImagen);
-                            }
-                        }
-                    } catch (IOException e) {
-                        System.err.println("Error al eliminar imagen antigua: " + e.getMessage());
-                    }
-                }
+                almacenImagenesService.liberar(imagenesAntiguas.stream().map(Imagen::getUrlImagen).toList());
                 // Limpiar la colección de imágenes
                 anuncio.getImagenes().clear();
             }
             
-            // Crear directorio de uploads si no existe
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                try {
-                    Files.createDirectories(uploadPath);
-                } catch (IOException e) {
-                    throw new RuntimeException("Error al crear directorio de uploads", e);
-                }
-            }
-            
-            // Guardar las nuevas imágenes
-            for (int i = 0; i < imagenes.size(); i++) {
-                MultipartFile archivo = imagenes.get(i);
-                if (archivo != null && !archivo.isEmpty()) {
-                    try {
-                        // Generar nombre único para el archivo
-                        String extension = obtenerExtension(archivo.getOriginalFilename());
-                        String nombreArchivo = UUID.randomUUID().toString() + extension;
-                        Path rutaArchivo = uploadPath.resolve(nombreArchivo);
-                        
-                        // Guardar el archivo
-                        Files.copy(archivo.getInputStream(), rutaArchivo, StandardCopyOption.REPLACE_EXISTING);
-                        
-                        // Crear entidad Imagen
-                        Imagen imagen = new Imagen();
-                        imagen.setUrlImagen("/uploads/" + nombreArchivo);
-                        imagen.setNombreArchivo(archivo.getOriginalFilename());
-                        imagen.setTipoArchivo(archivo.getContentType());
-                        imagen.setTamanoArchivo(archivo.getSize());
-                        imagen.setOrden(i + 1);
-                        
-                        // Agregar la imagen al anuncio
-                        anuncio.addImagen(imagen);
-                    } catch (IOException e) {
-                        throw new RuntimeException("Error al guardar la imagen: " + e.getMessage(), e);
-                    }
-                }
+            // Agregar las nuevas imágenes al anuncio
+            for (int i = 0; i < guardadas.size(); i++) {
+                anuncio.addImagen(crearImagen(guardadas.get(i), i + 1));
             }
         }
         
@@ -282,8 +384,14 @@ public class AnuncioService {
         Anuncio anuncioGuardado = anuncioRepository.save(anuncio);
         
         // Recargar el anuncio con las imágenes para evitar problemas de lazy loading en la serialización
-        return anuncioRepository.findByIdWithImagenes(idAnuncio)
+        Anuncio anuncioActualizado = anuncioRepository.findByIdWithImagenes(idAnuncio)
             .orElse(anuncioGuardado);
+        catalogoAnunciosCache.anuncioGuardado(anuncioActualizado);
+        DespuesDelCommit.ejecutar(() -> fragmentosAnuncios.invalidar(idAnuncio));
+        if (imagenes != null && !imagenes.isEmpty()) {
+            variantesImagenService.programar(anuncioActualizado.getImagenes());
+        }
+        return anuncioActualizado;
     }
     
     @Transactional
@@ -304,39 +412,15 @@ public class AnuncioService {
             int cantidadImagenes = imagenes.size();
             System.out.println("Eliminando " + cantidadImagenes + " imágenes del anuncio " + idAnuncio);
             
-            // Eliminar las imágenes físicas del sistema de archivos
-            for (Imagen imagen : imagenes) {
-                try {
-                    String urlImagen = imagen.getUrlImagen();
-                    if (urlImagen != null && urlImagen.startsWith("/uploads/")) {
-                        String nombreArchivo = urlImagen.replace("/uploads/", "");
-                        Path rutaImagen = Paths.get(uploadDir, nombreArchivo);
-                        if (Files.exists(rutaImagen)) {
-                            Files.delete(rutaImagen);
-                            System.out.println("Imagen física eliminada: " + nombreArchivo);
-                        }
-                    }
-                } catch (IOException e) {
-                    System.err.println("Error al eliminar imagen física: " + e.getMessage());
-                    // Continuar aunque falle la eliminación de una imagen
-                }
-            }
+            // Los archivos se borran tras el commit, solo si ningún otro anuncio comparte el mismo contenido
+            almacenImagenesService.liberar(imagenes.stream().map(Imagen::getUrlImagen).toList());
         }
         
         // Eliminar el anuncio (las imágenes se eliminan automáticamente por cascade)
         anuncioRepository.delete(anuncio);
+        catalogoAnunciosCache.anuncioEliminado(idAnuncio);
+        DespuesDelCommit.ejecutar(() -> fragmentosAnuncios.invalidar(idAnuncio));
         System.out.println("Anuncio " + idAnuncio + " eliminado exitosamente");
     }
-    
-    private String obtenerExtension(String nombreArchivo) {
-        if (nombreArchivo == null || nombreArchivo.isEmpty()) {
-            return "";
-        }
-        int ultimoPunto = nombreArchivo.lastIndexOf('.');
-        if (ultimoPunto == -1) {
-            return "";
-        }
-        return nombreArchivo.substring(ultimoPunto);
-    }
 }
 
@@ -0,0 +1,228 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.VehiculoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sugerencias de marca/modelo mientras se escribe. El trie se construye con los modelos de los anuncios
+ * activos y las marcas/modelos de los vehículos consultados por placa, ponderados por frecuencia.
+ * Las consultas solo leen el trie vigente; se reconstruye cuando cambia el catálogo o vence el conteo
+ * de vehículos, en un hilo propio: los pedidos siguen respondiendo con el trie anterior mientras tanto.
+ * Solo el primer pedido, cuando todavía no hay trie, espera a que se construya. Si el conteo de vehículos
+ * falla se conservan las frecuencias anteriores y se reintenta al minuto.
+ */
+@Service
+public class AutocompletadoService implements CatalogoAnunciosCache.Oyente {
+
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    @Autowired
+    private VehiculoRepository vehiculoRepository;
+
+    @Value("${autocompletado.vehiculos.ttl-segundos:600}")
+    private long ttlVehiculosSegundos = 600;
+
+    private volatile TrieAutocompletado trie;
+    // Versión con la que se construyó el trie y última versión avisada por el catálogo
+    private volatile long versionCatalogo = -1;
+    private volatile long versionNotificada = -1;
+
+    private static final long REINTENTO_VEHICULOS_MS = 60_000;
+
+    // Solo se tocan con el cerrojo de construcción
+    private Map<String, Long> frecuenciasVehiculos;
+    private volatile long proximoConteoVehiculos = 0;
+
+    private ExecutorService reconstructor;
+    private final AtomicBoolean reconstruccionProgramada = new AtomicBoolean();
+    private final ReentrantLock construccion = new ReentrantLock();
+    private final AtomicLong construcciones = new AtomicLong();
+    private final AtomicLong consultas = new AtomicLong();
+
+    @PostConstruct
+    public void registrar() {
+        reconstructor = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "autocompletado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        catalogoAnunciosCache.registrarOyente(this);
+    }
+
+    @PreDestroy
+    public void detener() {
+        reconstructor.shutdownNow();
+    }
+
+    @Override
+    public void catalogoCargado(CatalogoAnunciosCache.Snapshot snapshot) {
+        versionNotificada = snapshot.getVersion();
+        programarReconstruccion();
+    }
+
+    @Override
+    public void anuncioCambiado(CatalogoAnunciosCache.Snapshot snapshot, Long idAnuncio, Anuncio nuevo) {
+        versionNotificada = snapshot.getVersion();
+        programarReconstruccion();
+    }
+
+    public List<TrieAutocompletado.Sugerencia> sugerir(String prefijo, int limite) {
+        consultas.incrementAndGet();
+        return obtenerTrie().sugerir(prefijo, Math.max(1, Math.min(limite, TrieAutocompletado.MAX_SUGERENCIAS)));
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        TrieAutocompletado actual = trie;
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("sugerencias", actual != null ? actual.getTamano() : 0);
+        estadisticas.put("nodos", actual != null ? actual.getNodos() : 0);
+        estadisticas.put("versionCatalogo", versionCatalogo);
+        estadisticas.put("construcciones", construcciones.get());
+        estadisticas.put("consultas", consultas.get());
+        return estadisticas;
+    }
+
+    private TrieAutocompletado obtenerTrie() {
+        TrieAutocompletado actual = trie;
+        if (actual != null) {
+            if (desactualizado()) {
+                // Se responde con el trie anterior; el nuevo se arma fuera del pedido
+                programarReconstruccion();
+            }
+            return actual;
+        }
+        construccion.lock();
+        try {
+            if (trie == null) {
+                reconstruir();
+            }
+            return trie;
+        } finally {
+            construccion.unlock();
+        }
+    }
+
+    private boolean desactualizado() {
+        return versionNotificada > versionCatalogo || System.currentTimeMillis() >= proximoConteoVehiculos;
+    }
+
+    // Una sola reconstrucción en cola a la vez: los avisos que llegan mientras tanto los cubre esa misma
+    private void programarReconstruccion() {
+        if (trie != null && reconstruccionProgramada.compareAndSet(false, true)) {
+            try {
+                reconstructor.execute(this::reconstruirSeguro);
+            } catch (RejectedExecutionException e) {
+                // Deteniéndose
+                reconstruccionProgramada.set(false);
+            }
+        }
+    }
+
+    private void reconstruirSeguro() {
+        reconstruccionProgramada.set(false);
+        construccion.lock();
+        try {
+            if (desactualizado()) {
+                reconstruir();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error reconstruyendo el autocompletado: " + e.getMessage());
+        } finally {
+            construccion.unlock();
+        }
+    }
+
+    private void reconstruir() {
+        trie = construir();
+        construcciones.incrementAndGet();
+    }
+
+    private TrieAutocompletado construir() {
+        CatalogoAnunciosCache.Snapshot snapshot = catalogoAnunciosCache.obtener();
+
+        // Primero los anuncios: su forma de escribir el modelo es la que se muestra
+        Map<String, Long> frecuencias = new LinkedHashMap<>();
+        for (Anuncio anuncio : snapshot.getAnuncios()) {
+            if (anuncio.getModelo() != null && !anuncio.getModelo().isBlank()) {
+                frecuencias.merge(anuncio.getModelo().trim(), 1L, Long::sum);
+            }
+        }
+        if (frecuenciasVehiculos == null || System.currentTimeMillis() >= proximoConteoVehiculos) {
+            Map<String, Long> contadas = contarVehiculos();
+            if (contadas != null) {
+                frecuenciasVehiculos = contadas;
+                proximoConteoVehiculos = System.currentTimeMillis() + ttlVehiculosSegundos * 1000L;
+            } else {
+                // Se sigue con el último conteo bueno (o sin vehículos si nunca lo hubo) y se reintenta pronto
+                if (frecuenciasVehiculos == null) {
+                    frecuenciasVehiculos = Map.of();
+                }
+                proximoConteoVehiculos = System.currentTimeMillis() + Math.min(REINTENTO_VEHICULOS_MS, ttlVehiculosSegundos * 1000L);
+            }
+        }
+        frecuenciasVehiculos.forEach((texto, cantidad) -> frecuencias.merge(texto, cantidad, Long::sum));
+
+        versionCatalogo = snapshot.getVersion();
+        return TrieAutocompletado.construir(frecuencias);
+    }
+
+    // null si la consulta falla, para no confundir un error con "no hay vehículos"
+    private Map<String, Long> contarVehiculos() {
+        Map<String, Long> frecuencias = new LinkedHashMap<>();
+        try {
+            for (Object[] fila : vehiculoRepository.contarPorMarcaYModelo()) {
+                String marca = presentar((String) fila[0]);
+                String modelo = presentar((String) fila[1]);
+                long cantidad = ((Number) fila[2]).longValue();
+                if (marca.isEmpty()) {
+                    continue;
+                }
+                frecuencias.merge(marca, cantidad, Long::sum);
+                if (!modelo.isEmpty()) {
+                    frecuencias.merge(marca + " " + modelo, cantidad, Long::sum);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Sin BD se sigue sugiriendo con los anuncios y el último conteo bueno
+            System.err.println("Error cargando marcas/modelos para autocompletado: " + e.getMessage());
+            return null;
+        }
+        return frecuencias;
+    }
+
+    // La API de placas devuelve todo en mayúsculas: "TOYOTA COROLLA" → "Toyota Corolla"
+    static String presentar(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return "";
+        }
+        String limpio = texto.trim().replaceAll("\\s+", " ");
+        if (!limpio.equals(limpio.toUpperCase(Locale.ROOT))) {
+            return limpio;
+        }
+        StringBuilder resultado = new StringBuilder(limpio.length());
+        boolean inicioPalabra = true;
+        for (char c : limpio.toCharArray()) {
+            resultado.append(inicioPalabra ? c : Character.toLowerCase(c));
+            inicioPalabra = c == ' ' || c == '-';
+        }
+        return resultado.toString();
+    }
+}
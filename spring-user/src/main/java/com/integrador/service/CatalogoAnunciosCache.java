@@ -0,0 +1,277 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.AnuncioRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshot en memoria e inmutable del catálogo de anuncios activos, con número de versión.
+ * Los cambios hechos desde esta API (crear, actualizar, eliminar) parchean el snapshot tras el commit;
+ * los hechos desde el admin de Django se recogen cuando vence el TTL, con una recarga en segundo plano
+ * mientras se sigue sirviendo el snapshot anterior. Si la recarga trae los mismos anuncios (id y fecha de
+ * actualización) se conserva la versión, y con ella los ETag y lo derivado del catálogo.
+ * Las estructuras derivadas del catálogo (índices de búsqueda, etc.) se registran como oyentes
+ * y se mantienen al día con cada versión.
+ */
+@Service
+public class CatalogoAnunciosCache {
+
+    /**
+     * Recibe cada versión nueva del catálogo, en orden y con el lock del catálogo tomado.
+     */
+    public interface Oyente {
+
+        /** Carga completa desde la BD. */
+        void catalogoCargado(Snapshot snapshot);
+
+        /** Un único anuncio cambió respecto a la versión anterior; nuevo es null si se quitó. */
+        default void anuncioCambiado(Snapshot snapshot, Long idAnuncio, Anuncio nuevo) {
+            catalogoCargado(snapshot);
+        }
+    }
+
+    // Orden del listado: más recientes primero, desempatando por id
+    static final Comparator<Anuncio> ORDEN_LISTADO = Comparator
+            .comparing(Anuncio::getFechaCreacion, Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+            .thenComparing(Anuncio::getIdAnuncio, Comparator.nullsLast(Comparator.<Long>reverseOrder()));
+
+    @Autowired
+    private AnuncioRepository anuncioRepository;
+
+    @Value("${catalogo.cache.ttl-segundos:300}")
+    private long ttlSegundos;
+
+    // Distingue las versiones de este proceso de las de un arranque anterior en los ETag
+    private final String arranque = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong versiones = new AtomicLong();
+    private final AtomicLong cargas = new AtomicLong();
+    private final AtomicLong parches = new AtomicLong();
+    private final AtomicLong sinCambios = new AtomicLong();
+    private final AtomicBoolean recargando = new AtomicBoolean();
+
+    // Un solo hilo: nunca hay dos recargas a la vez
+    private final ExecutorService recargador = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "catalogo-anuncios");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    private volatile Snapshot snapshot;
+
+    private final List<Oyente> oyentes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Devuelve el snapshot vigente. Solo espera a la base de datos si todavía no hay uno; vencido el TTL
+     * devuelve el anterior y deja la recarga a un único hilo en segundo plano.
+     */
+    public Snapshot obtener() {
+        Snapshot actual = snapshot;
+        if (actual != null) {
+            if (actual.vencido(ttlSegundos) && recargando.compareAndSet(false, true)) {
+                try {
+                    recargador.execute(this::recargarSeguro);
+                } catch (RejectedExecutionException e) {
+                    // La aplicación se está cerrando
+                    recargando.set(false);
+                }
+            }
+            return actual;
+        }
+        synchronized (this) {
+            actual = snapshot;
+            if (actual == null) {
+                actual = publicarCarga(anuncioRepository.findAllActivos(), snapshot);
+            }
+            return actual;
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        recargador.shutdownNow();
+    }
+
+    /**
+     * Sustituye (o agrega) el anuncio en el snapshot cuando se confirme la transacción.
+     * Si el anuncio ya no está activo se quita.
+     */
+    public void anuncioGuardado(Anuncio anuncio) {
+        DespuesDelCommit.ejecutar(() -> parchear(anuncio.getIdAnuncio(), Boolean.TRUE.equals(anuncio.getActivo()) ? anuncio : null));
+    }
+
+    public void anuncioEliminado(Long idAnuncio) {
+        DespuesDelCommit.ejecutar(() -> parchear(idAnuncio, null));
+    }
+
+    public void registrarOyente(Oyente oyente) {
+        oyentes.add(oyente);
+    }
+
+    private void recargarSeguro() {
+        try {
+            Snapshot anterior = snapshot;
+            // La consulta va fuera del lock: los parches y las lecturas no esperan a la BD
+            List<Anuncio> anuncios = anuncioRepository.findAllActivos();
+            synchronized (this) {
+                if (snapshot != anterior) {
+                    // Lo leído puede ser anterior a un parche ya aplicado: la próxima lectura vuelve a intentar
+                    return;
+                }
+                publicarCarga(anuncios, anterior);
+            }
+        } catch (Exception e) {
+            System.err.println("Error recargando el catálogo de anuncios: " + e.getMessage());
+        } finally {
+            recargando.set(false);
+        }
+    }
+
+    // Con el lock tomado
+    private Snapshot publicarCarga(List<Anuncio> anuncios, Snapshot anterior) {
+        cargas.incrementAndGet();
+        long ahora = System.currentTimeMillis();
+        if (anterior != null && mismosAnuncios(anterior.getAnuncios(), anuncios)) {
+            // Nada cambió: misma versión (los ETag siguen valiendo) y sin avisar a los oyentes
+            sinCambios.incrementAndGet();
+            Snapshot renovado = new Snapshot(anterior.getVersion(), arranque, anterior.getAnuncios(), ahora);
+            snapshot = renovado;
+            return renovado;
+        }
+        Snapshot cargado = publicar(anuncios, ahora);
+        for (Oyente oyente : oyentes) {
+            notificar(oyente, cargado, () -> oyente.catalogoCargado(cargado));
+        }
+        return cargado;
+    }
+
+    private static boolean mismosAnuncios(List<Anuncio> anteriores, List<Anuncio> cargados) {
+        if (anteriores.size() != cargados.size()) {
+            return false;
+        }
+        for (int i = 0; i < anteriores.size(); i++) {
+            Anuncio antes = anteriores.get(i);
+            Anuncio ahora = cargados.get(i);
+            if (!Objects.equals(antes.getIdAnuncio(), ahora.getIdAnuncio())
+                    || !Objects.equals(antes.getFechaActualizacion(), ahora.getFechaActualizacion())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void invalidar() {
+        synchronized (this) {
+            snapshot = null;
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        Snapshot actual = snapshot;
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("version", actual != null ? actual.getVersion() : null);
+        estadisticas.put("anuncios", actual != null ? actual.getAnuncios().size() : 0);
+        estadisticas.put("cargas", cargas.get());
+        estadisticas.put("cargasSinCambios", sinCambios.get());
+        estadisticas.put("parches", parches.get());
+        estadisticas.put("ttlSegundos", ttlSegundos);
+        return estadisticas;
+    }
+
+    private synchronized void parchear(Long idAnuncio, Anuncio nuevo) {
+        Snapshot actual = snapshot;
+        if (actual == null) {
+            // No hay nada cargado: la próxima lectura ya traerá el cambio
+            return;
+        }
+        List<Anuncio> anuncios = new ArrayList<>(actual.getAnuncios().size() + 1);
+        for (Anuncio anuncio : actual.getAnuncios()) {
+            if (!Objects.equals(anuncio.getIdAnuncio(), idAnuncio)) {
+                anuncios.add(anuncio);
+            }
+        }
+        if (nuevo != null) {
+            anuncios.add(nuevo);
+            anuncios.sort(ORDEN_LISTADO);
+        }
+        // El parche no renueva el TTL: los cambios externos se siguen recogiendo a tiempo
+        Snapshot parcheado = publicar(anuncios, actual.cargadoEn);
+        parches.incrementAndGet();
+        for (Oyente oyente : oyentes) {
+            notificar(oyente, parcheado, () -> oyente.anuncioCambiado(parcheado, idAnuncio, nuevo));
+        }
+    }
+
+    // Un oyente que falla no debe impedir que el catálogo se publique
+    private void notificar(Oyente oyente, Snapshot version, Runnable aviso) {
+        try {
+            aviso.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error notificando la versión " + version.getVersion() + " del catálogo a "
+                    + oyente.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private Snapshot publicar(List<Anuncio> anuncios, long cargadoEn) {
+        Snapshot nuevo = new Snapshot(versiones.incrementAndGet(), arranque, Collections.unmodifiableList(anuncios), cargadoEn);
+        snapshot = nuevo;
+        return nuevo;
+    }
+
+    public static final class Snapshot {
+        private final long version;
+        private final String etag;
+        private final List<Anuncio> anuncios;
+        private final Map<Long, Anuncio> porId;
+        private final long cargadoEn;
+
+        private Snapshot(long version, String arranque, List<Anuncio> anuncios, long cargadoEn) {
+            this.version = version;
+            this.etag = "\"catalogo-" + arranque + "-" + version + "\"";
+            this.anuncios = anuncios;
+            this.porId = new HashMap<>(anuncios.size() * 2);
+            for (Anuncio anuncio : anuncios) {
+                porId.put(anuncio.getIdAnuncio(), anuncio);
+            }
+            this.cargadoEn = cargadoEn;
+        }
+
+        private boolean vencido(long ttlSegundos) {
+            return System.currentTimeMillis() - cargadoEn > ttlSegundos * 1000L;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public List<Anuncio> getAnuncios() {
+            return anuncios;
+        }
+
+        /** El anuncio activo con ese id, o null si no está en esta versión. */
+        public Anuncio buscar(Long idAnuncio) {
+            return porId.get(idAnuncio);
+        }
+    }
+}
@@ -6,12 +6,22 @@ import com.integrador.dto.ChatMessage;
 import com.integrador.dto.ChatResponse;
 import com.integrador.entity.Anuncio;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -20,7 +30,10 @@ import java.util.stream.Collectors;
 public class ChatService {
     
     @Autowired
-    private AnuncioService anuncioService;
+    private RecuperacionAnuncios recuperacionAnuncios;
+    
+    @Autowired
+    private RespuestasChatCache respuestasChatCache;
     
     @Value("${deepseek.api.key:}")
     private String deepseekApiKey;
@@ -28,42 +41,47 @@ public class ChatService {
     @Value("${deepseek.api.url:https://api.deepseek.com/v1/chat/completions}")
     private String deepseekApiUrl;
     
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    @Qualifier("deepseekRestTemplate")
+    private RestTemplate restTemplate;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
     
+    private static final int MAXIMO_RECOMENDADOS = 5;
+    
+    private final AtomicLong respuestasLocales = new AtomicLong();
+    private final AtomicLong llamadasModelo = new AtomicLong();
+    private final AtomicLong respaldos = new AtomicLong();
+    
     private static final String SYSTEM_PROMPT = "Eres un asistente virtual especializado en ayudar a los usuarios a encontrar el vehículo perfecto. " +
             "Tu tarea es hacer preguntas sobre las características que el usuario busca en un auto (tipo de vehículo, año, precio, kilometraje, etc.) " +
             "y luego recomendar los vehículos más adecuados de la lista disponible. " +
             "Sé amigable, profesional y específico en tus recomendaciones. " +
-            "Cuando recomiendes vehículos, menciona los IDs de los anuncios recomendados al final de tu respuesta en el formato: [RECOMMEND: id1, id2, id3]";
+            "Cuando recomiendes vehículos, menciona los IDs de los anuncios recomendados al final de tu respuesta en el formato: [RECOMMEND: id1, id2, id3]. " +
+            "Recomienda solo anuncios de la lista que se te da.";
     
     public ChatResponse processMessage(String userMessage, List<ChatMessage> conversationHistory) {
+        RecuperacionAnuncios.Seleccion seleccion = null;
         try {
-            // Obtener todos los anuncios activos
-            List<Anuncio> anuncios = anuncioService.obtenerTodosLosAnunciosActivos();
-            
-            // Construir el contexto con los anuncios disponibles
-            String anunciosContext = buildAnunciosContext(anuncios);
-            
-            // Construir el mensaje del sistema con el contexto
-            String systemMessageWithContext = SYSTEM_PROMPT + "\n\nAnuncios disponibles:\n" + anunciosContext;
-            
-            // Construir la lista de mensajes para OpenAI
-            List<Map<String, String>> messages = new ArrayList<>();
-            messages.add(Map.of("role", "system", "content", systemMessageWithContext));
-            
-            // Agregar historial de conversación
-            if (conversationHistory != null) {
-                for (ChatMessage msg : conversationHistory) {
-                    messages.add(Map.of("role", msg.getRole(), "content", msg.getContent()));
-                }
+            // Solo los anuncios más relevantes para la conversación, no todo el catálogo
+            seleccion = recuperacionAnuncios.seleccionar(userMessage, conversationHistory);
+            if (seleccion.isRespuestaDirecta()) {
+                // Consulta de solo filtros: se responde con el ranking local, sin esperar al modelo
+                respuestasLocales.incrementAndGet();
+                return respuestaLocal(seleccion);
             }
             
-            // Agregar el mensaje actual del usuario
-            messages.add(Map.of("role", "user", "content", userMessage));
+            // La misma pregunta, en el mismo punto de la conversación y con el mismo catálogo
+            String clave = respuestasChatCache.clave(seleccion, userMessage, conversationHistory);
+            ChatResponse enCache = respuestasChatCache.obtener(clave);
+            if (enCache != null) {
+                return enCache;
+            }
             
             // Llamar a DeepSeek
-            String aiResponse = callDeepSeek(messages);
+            llamadasModelo.incrementAndGet();
+            long inicio = System.nanoTime();
+            String aiResponse = callDeepSeek(construirMensajes(seleccion, userMessage, conversationHistory));
             
             // Extraer IDs de anuncios recomendados
             List<Long> recommendedIds = extractRecommendedIds(aiResponse);
@@ -71,35 +89,90 @@ public class ChatService {
             // Limpiar la respuesta removiendo el formato de recomendación
             String cleanResponse = cleanResponse(aiResponse);
             
-            return new ChatResponse(cleanResponse, recommendedIds);
+            ChatResponse respuesta = new ChatResponse(cleanResponse, recommendedIds);
+            respuestasChatCache.guardar(clave, respuesta, (System.nanoTime() - inicio) / 1_000_000);
+            return respuesta;
             
         } catch (Exception e) {
             // Si falla la llamada a DeepSeek, usar un sistema de recomendación básico
-            return fallbackRecommendation(userMessage);
+            return fallbackRecommendation(seleccion);
         }
     }
     
-    private String buildAnunciosContext(List<Anuncio> anuncios) {
-        if (anuncios.isEmpty()) {
-            return "No hay anuncios disponibles en este momento.";
-        }
-        
-        StringBuilder context = new StringBuilder();
-        for (Anuncio anuncio : anuncios) {
-            context.append(String.format(
-                "ID: %d | Modelo: %s | Año: %d | Precio: %s | Kilometraje: %d km | Tipo: %s | Descripción: %s\n",
-                anuncio.getIdAnuncio(),
-                anuncio.getModelo(),
-                anuncio.getAnio(),
-                anuncio.getPrecio().toString(),
-                anuncio.getKilometraje(),
-                anuncio.getTipoVehiculo() != null ? anuncio.getTipoVehiculo() : "No especificado",
-                anuncio.getDescripcion().length() > 100 
-                    ? anuncio.getDescripcion().substring(0, 100) + "..." 
-                    : anuncio.getDescripcion()
-            ));
-        }
-        return context.toString();
+    /**
+     * Igual que processMessage, pero pide la respuesta a DeepSeek en modo streaming y pasa cada trozo de
+     * texto a alTexto en cuanto llega. El marcador [RECOMMEND: ...] no se reenvía: sus IDs vuelven en la
+     * ChatResponse final, junto con el texto completo ya limpio.
+     */
+    public ChatResponse processMessageStream(String userMessage, List<ChatMessage> conversationHistory,
+                                             Consumer<String> alTexto) {
+        FiltroRecomendacion filtro = new FiltroRecomendacion(alTexto);
+        RecuperacionAnuncios.Seleccion seleccion = null;
+        try {
+            seleccion = recuperacionAnuncios.seleccionar(userMessage, conversationHistory);
+            if (seleccion.isRespuestaDirecta()) {
+                respuestasLocales.incrementAndGet();
+                ChatResponse local = respuestaLocal(seleccion);
+                alTexto.accept(local.getResponse());
+                return local;
+            }
+            String clave = respuestasChatCache.clave(seleccion, userMessage, conversationHistory);
+            ChatResponse enCache = respuestasChatCache.obtener(clave);
+            if (enCache != null) {
+                alTexto.accept(enCache.getResponse());
+                return enCache;
+            }
+            llamadasModelo.incrementAndGet();
+            long inicio = System.nanoTime();
+            callDeepSeekStream(construirMensajes(seleccion, userMessage, conversationHistory), filtro::agregar);
+            filtro.terminar();
+            // Solo se guardan las respuestas que llegaron completas
+            ChatResponse respuesta = new ChatResponse(filtro.getTexto().trim(), filtro.getIds());
+            respuestasChatCache.guardar(clave, respuesta, (System.nanoTime() - inicio) / 1_000_000);
+            return respuesta;
+        } catch (UncheckedIOException e) {
+            // El cliente cerró la conexión: no tiene sentido seguir leyendo del proveedor
+            throw e;
+        } catch (Exception e) {
+            if (filtro.huboTexto()) {
+                // Ya se envió parte de la respuesta: se cierra con lo recibido hasta el corte
+                System.err.println("Streaming de DeepSeek interrumpido: " + e.getMessage());
+                filtro.terminar();
+                return new ChatResponse(filtro.getTexto().trim(), filtro.getIds());
+            }
+            ChatResponse respaldo = fallbackRecommendation(seleccion);
+            alTexto.accept(respaldo.getResponse());
+            return respaldo;
+        }
+    }
+    
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("respuestasLocales", respuestasLocales.get());
+        estadisticas.put("llamadasModelo", llamadasModelo.get());
+        estadisticas.put("respaldos", respaldos.get());
+        return estadisticas;
+    }
+    
+    private List<Map<String, String>> construirMensajes(RecuperacionAnuncios.Seleccion seleccion, String userMessage,
+                                                        List<ChatMessage> conversationHistory) {
+        // Construir el mensaje del sistema con el contexto (el encabezado lleva los filtros detectados)
+        String systemMessageWithContext = SYSTEM_PROMPT + "\n\n" + seleccion.getEncabezado() + ":\n" + seleccion.getContexto();
+        
+        // Construir la lista de mensajes para OpenAI
+        List<Map<String, String>> messages = new ArrayList<>();
+        messages.add(Map.of("role", "system", "content", systemMessageWithContext));
+        
+        // Agregar historial de conversación
+        if (conversationHistory != null) {
+            for (ChatMessage msg : conversationHistory) {
+                messages.add(Map.of("role", msg.getRole(), "content", msg.getContent()));
+            }
+        }
+        
+        // Agregar el mensaje actual del usuario
+        messages.add(Map.of("role", "user", "content", userMessage));
+        return messages;
     }
     
     private String callDeepSeek(List<Map<String, String>> messages) throws Exception {
@@ -107,11 +180,7 @@ public class ChatService {
             throw new Exception("DeepSeek API key no configurada");
         }
         
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", "deepseek-chat");
-        requestBody.put("messages", messages);
-        requestBody.put("temperature", 0.7);
-        requestBody.put("max_tokens", 2000);
+        Map<String, Object> requestBody = crearCuerpo(messages);
         
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -134,6 +203,59 @@ public class ChatService {
         }
     }
     
+    private void callDeepSeekStream(List<Map<String, String>> messages, Consumer<String> alTexto) throws Exception {
+        if (deepseekApiKey == null || deepseekApiKey.isEmpty()) {
+            throw new Exception("DeepSeek API key no configurada");
+        }
+        
+        Map<String, Object> requestBody = crearCuerpo(messages);
+        requestBody.put("stream", true);
+        
+        // Los errores HTTP los lanza el manejador de errores del RestTemplate antes de leer el cuerpo
+        restTemplate.execute(deepseekApiUrl, HttpMethod.POST, request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.getHeaders().setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+            request.getHeaders().setBearerAuth(deepseekApiKey);
+            objectMapper.writeValue(request.getBody(), requestBody);
+        }, response -> {
+            leerEventos(response.getBody(), alTexto);
+            return null;
+        });
+    }
+    
+    /**
+     * Lee las líneas "data: {...}" del stream del proveedor hasta "data: [DONE]" y pasa el texto de cada
+     * delta. Las líneas vacías y los comentarios de keep-alive (": ...") se ignoran. Si la conexión se
+     * cierra antes de "[DONE]" la respuesta quedó cortada: se lanza EOFException para no tomarla por completa.
+     */
+    void leerEventos(InputStream cuerpo, Consumer<String> alTexto) throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(cuerpo, StandardCharsets.UTF_8));
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            if (!linea.startsWith("data:")) {
+                continue;
+            }
+            String datos = linea.substring(5).trim();
+            if ("[DONE]".equals(datos)) {
+                return;
+            }
+            JsonNode contenido = objectMapper.readTree(datos).path("choices").path(0).path("delta").path("content");
+            if (contenido.isTextual() && !contenido.asText().isEmpty()) {
+                alTexto.accept(contenido.asText());
+            }
+        }
+        throw new EOFException("El stream de DeepSeek terminó sin [DONE]");
+    }
+    
+    private Map<String, Object> crearCuerpo(List<Map<String, String>> messages) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "deepseek-chat");
+        requestBody.put("messages", messages);
+        requestBody.put("temperature", 0.7);
+        requestBody.put("max_tokens", 2000);
+        return requestBody;
+    }
+    
     private List<Long> extractRecommendedIds(String response) {
         List<Long> ids = new ArrayList<>();
         Pattern pattern = Pattern.compile("\\[RECOMMEND:\\s*([0-9,\\s]+)\\]");
@@ -159,48 +281,140 @@ public class ChatService {
         return response.replaceAll("\\[RECOMMEND:[^\\]]+\\]", "").trim();
     }
     
-    private ChatResponse fallbackRecommendation(String userMessage) {
-        // Sistema de recomendación básico sin IA
-        List<Anuncio> anuncios = anuncioService.obtenerTodosLosAnunciosActivos();
-        String lowerMessage = userMessage.toLowerCase();
-        List<Anuncio> filtered = new ArrayList<>();
-        
-        // Filtrar por tipo de vehículo
-        if (lowerMessage.contains("suv") || lowerMessage.contains("s.u.v")) {
-            filtered = anuncios.stream()
-                .filter(a -> "suv".equalsIgnoreCase(a.getTipoVehiculo()))
-                .collect(Collectors.toList());
-        } else if (lowerMessage.contains("sedan") || lowerMessage.contains("sedán")) {
-            filtered = anuncios.stream()
-                .filter(a -> "sedan".equalsIgnoreCase(a.getTipoVehiculo()))
-                .collect(Collectors.toList());
-        } else if (lowerMessage.contains("hatchback")) {
-            filtered = anuncios.stream()
-                .filter(a -> "hatchback".equalsIgnoreCase(a.getTipoVehiculo()))
-                .collect(Collectors.toList());
-        } else if (lowerMessage.contains("coupe") || lowerMessage.contains("coupé")) {
-            filtered = anuncios.stream()
-                .filter(a -> "coupe".equalsIgnoreCase(a.getTipoVehiculo()))
-                .collect(Collectors.toList());
-        } else if (lowerMessage.contains("deportivo")) {
-            filtered = anuncios.stream()
-                .filter(a -> "deportivo".equalsIgnoreCase(a.getTipoVehiculo()))
-                .collect(Collectors.toList());
+    private ChatResponse fallbackRecommendation(RecuperacionAnuncios.Seleccion seleccion) {
+        // Sistema de recomendación básico sin IA: el mismo ranking local, con lo que se haya entendido
+        respaldos.incrementAndGet();
+        if (seleccion == null || seleccion.getAnuncios().isEmpty()) {
+            return new ChatResponse(
+                "Lo siento, no encontré vehículos que coincidan con tus criterios. ¿Podrías ser más específico sobre qué tipo de vehículo buscas?",
+                new ArrayList<>());
+        }
+        return respuestaLocal(seleccion);
+    }
+    
+    // Respuesta armada con los primeros anuncios del ranking local
+    private ChatResponse respuestaLocal(RecuperacionAnuncios.Seleccion seleccion) {
+        List<Anuncio> anuncios = seleccion.getAnuncios();
+        List<Anuncio> recomendados = anuncios.subList(0, Math.min(MAXIMO_RECOMENDADOS, anuncios.size()));
+        String filtros = ConsultaVehiculoParser.describir(seleccion.getFiltro());
+        
+        StringBuilder response = new StringBuilder();
+        if (seleccion.isFiltrosRelajados()) {
+            response.append("No encontré vehículos con ").append(filtros)
+                    .append(", pero estos son los más parecidos:");
         } else {
-            filtered = anuncios;
+            response.append("Encontré ").append(seleccion.getCandidatos()).append(" vehículo(s)");
+            if (!filtros.isEmpty()) {
+                response.append(" con ").append(filtros);
+            }
+            response.append(". Estos son los que mejor se ajustan:");
+        }
+        for (Anuncio anuncio : recomendados) {
+            response.append("\n- ").append(anuncio.getModelo()).append(' ').append(anuncio.getAnio());
+            if (anuncio.getPrecio() != null) {
+                response.append(", $").append(anuncio.getPrecio().toPlainString());
+            }
+            if (anuncio.getKilometraje() != null) {
+                response.append(", ").append(anuncio.getKilometraje()).append(" km");
+            }
         }
         
-        // Limitar a los primeros 5
-        List<Long> recommendedIds = filtered.stream()
-            .limit(5)
+        List<Long> recommendedIds = recomendados.stream()
             .map(Anuncio::getIdAnuncio)
             .collect(Collectors.toList());
+        return new ChatResponse(response.toString(), recommendedIds);
+    }
+    
+    /**
+     * Reenvía el texto del modelo a medida que llega, salvo el marcador [RECOMMEND: ...]. Un "[" que podría
+     * ser el comienzo del marcador se retiene hasta que llega lo suficiente para decidir; si resulta ser
+     * el marcador, se guardan sus IDs y no se reenvía.
+     */
+    static final class FiltroRecomendacion {
+        
+        private static final String MARCADOR = "[RECOMMEND:";
+        // Un marcador real es corto; más de esto sin "]" es texto normal
+        private static final int MAXIMO_RETENIDO = 512;
+        
+        private final Consumer<String> salida;
+        private final StringBuilder retenido = new StringBuilder();
+        private final StringBuilder texto = new StringBuilder();
+        private final List<Long> ids = new ArrayList<>();
+        
+        FiltroRecomendacion(Consumer<String> salida) {
+            this.salida = salida;
+        }
+        
+        void agregar(String trozo) {
+            retenido.append(trozo);
+            procesar(false);
+        }
+        
+        void terminar() {
+            procesar(true);
+        }
+        
+        boolean huboTexto() {
+            return texto.length() > 0;
+        }
         
-        String response = filtered.isEmpty() 
-            ? "Lo siento, no encontré vehículos que coincidan con tus criterios. ¿Podrías ser más específico sobre qué tipo de vehículo buscas?"
-            : "Encontré " + filtered.size() + " vehículo(s) que podrían interesarte. Aquí están mis recomendaciones:";
+        String getTexto() {
+            return texto.toString();
+        }
+        
+        List<Long> getIds() {
+            return ids;
+        }
         
-        return new ChatResponse(response, recommendedIds);
+        private void procesar(boolean fin) {
+            while (retenido.length() > 0) {
+                int corchete = retenido.indexOf("[");
+                if (corchete != 0) {
+                    emitir(corchete < 0 ? retenido.length() : corchete);
+                    continue;
+                }
+                int comparables = Math.min(retenido.length(), MARCADOR.length());
+                if (!MARCADOR.regionMatches(0, retenido.toString(), 0, comparables)) {
+                    // Un "[" cualquiera
+                    emitir(1);
+                    continue;
+                }
+                int cierre = comparables == MARCADOR.length() ? retenido.indexOf("]") : -1;
+                if (cierre > 0) {
+                    agregarIds(retenido.substring(MARCADOR.length(), cierre));
+                    retenido.delete(0, cierre + 1);
+                    continue;
+                }
+                if (comparables == MARCADOR.length() && fin) {
+                    // Marcador sin cerrar al final: se toman los IDs que alcanzaron a llegar
+                    agregarIds(retenido.substring(MARCADOR.length()));
+                    retenido.setLength(0);
+                } else if (fin || retenido.length() > MAXIMO_RETENIDO) {
+                    emitir(1);
+                    continue;
+                }
+                return;
+            }
+        }
+        
+        private void emitir(int hasta) {
+            if (hasta == 0) {
+                return;
+            }
+            String trozo = retenido.substring(0, hasta);
+            retenido.delete(0, hasta);
+            texto.append(trozo);
+            salida.accept(trozo);
+        }
+        
+        private void agregarIds(String lista) {
+            for (String id : lista.split(",")) {
+                try {
+                    ids.add(Long.parseLong(id.trim()));
+                } catch (NumberFormatException e) {
+                    // Ignorar IDs inválidos
+                }
+            }
+        }
     }
 }
-
@@ -0,0 +1,99 @@
+package com.integrador.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker de tres estados para una integración externa.
+ * CERRADO: las llamadas pasan; tras N fallos consecutivos se abre.
+ * ABIERTO: se rechaza todo hasta que pasa el tiempo de espera.
+ * SEMI_ABIERTO: se deja pasar una única llamada de prueba; si va bien se cierra, si falla se vuelve a abrir.
+ */
+public class CircuitBreaker {
+
+    public enum Estado { CERRADO, ABIERTO, SEMI_ABIERTO }
+
+    private final int umbralFallos;
+    private final long esperaAbiertoMs;
+    private final LongSupplier reloj;
+
+    private Estado estado = Estado.CERRADO;
+    private int fallosConsecutivos = 0;
+    private long abiertoDesde = 0;
+    private boolean pruebaEnCurso = false;
+
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong aperturas = new AtomicLong();
+
+    public CircuitBreaker(int umbralFallos, long esperaAbiertoMs) {
+        this(umbralFallos, esperaAbiertoMs, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int umbralFallos, long esperaAbiertoMs, LongSupplier reloj) {
+        this.umbralFallos = umbralFallos;
+        this.esperaAbiertoMs = esperaAbiertoMs;
+        this.reloj = reloj;
+    }
+
+    /**
+     * Indica si la llamada puede hacerse. Quien recibe true debe informar el resultado
+     * con registrarExito() o registrarFallo().
+     */
+    public synchronized boolean permitirLlamada() {
+        if (estado == Estado.ABIERTO && reloj.getAsLong() - abiertoDesde >= esperaAbiertoMs) {
+            estado = Estado.SEMI_ABIERTO;
+            pruebaEnCurso = false;
+        }
+        if (estado == Estado.CERRADO) {
+            return true;
+        }
+        if (estado == Estado.SEMI_ABIERTO && !pruebaEnCurso) {
+            pruebaEnCurso = true;
+            return true;
+        }
+        rechazadas.incrementAndGet();
+        return false;
+    }
+
+    public synchronized void registrarExito() {
+        fallosConsecutivos = 0;
+        pruebaEnCurso = false;
+        estado = Estado.CERRADO;
+    }
+
+    public synchronized void registrarFallo() {
+        fallosConsecutivos++;
+        pruebaEnCurso = false;
+        if (estado == Estado.SEMI_ABIERTO || fallosConsecutivos >= umbralFallos) {
+            if (estado != Estado.ABIERTO) {
+                aperturas.incrementAndGet();
+            }
+            estado = Estado.ABIERTO;
+            abiertoDesde = reloj.getAsLong();
+        }
+    }
+
+    /**
+     * Devuelve el permiso de una llamada que no llegó a ejecutarse, sin contarla como éxito ni fallo.
+     */
+    public synchronized void liberarPrueba() {
+        pruebaEnCurso = false;
+    }
+
+    public synchronized Estado getEstado() {
+        return estado;
+    }
+
+    public synchronized Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("estado", estado.name());
+        estadisticas.put("fallosConsecutivos", fallosConsecutivos);
+        estadisticas.put("umbralFallos", umbralFallos);
+        estadisticas.put("esperaAbiertoMs", esperaAbiertoMs);
+        estadisticas.put("rechazadas", rechazadas.get());
+        estadisticas.put("aperturas", aperturas.get());
+        return estadisticas;
+    }
+}
@@ -0,0 +1,296 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Interpretación local de consultas de vehículos en español: tipo, rango de precio, rango de años y
+ * kilometraje, con patrones precompilados sobre el texto normalizado. Cada fragmento reconocido
+ * se borra del texto antes de aplicar los patrones siguientes ("menos de 50 mil km" no vuelve a leerse
+ * como presupuesto). Lo que queda sin interpretar da la medida de la confianza: una consulta que son
+ * solo filtros se puede responder sin el modelo; una pregunta abierta, no.
+ */
+public final class ConsultaVehiculoParser {
+
+    private static final String NUMERO = "(\\d{1,3}(?:[.,]\\d{3})+|\\d+)\\s*(mil\\b|k\\b)?";
+    private static final String MONEDA = "(?:s/\\.?|\\$|us\\$|usd|dolares|soles)?\\s*";
+    private static final String ANIO = "((?:19|20)\\d{2})\\b";
+    private static final String HACIA_ARRIBA = "\\s*(?:en adelante|para arriba|o mas|o posterior)";
+    private static final String UNIDAD_KM = "\\s*(?:km|kms|kilometros)\\b";
+
+    private static final Pattern KILOMETRAJE_ENTRE = Pattern.compile(
+            "entre\\s*" + NUMERO + "\\s*y\\s*" + NUMERO + UNIDAD_KM);
+    private static final Pattern KILOMETRAJE_MAXIMO = Pattern.compile(
+            "(?:menos de|hasta|maximo|max|no mas de|por debajo de)\\s*" + NUMERO + UNIDAD_KM);
+    private static final Pattern KILOMETRAJE_MINIMO = Pattern.compile(
+            "(?:mas de|desde|minimo|por encima de|arriba de)\\s*" + NUMERO + UNIDAD_KM);
+    // Un número seguido de la unidad es kilometraje aunque ningún patrón de kilometraje lo haya tomado
+    private static final Pattern SEGUIDO_DE_KM = Pattern.compile(UNIDAD_KM);
+    private static final Pattern ANIO_ENTRE = Pattern.compile(
+            "(?:entre|del|de)\\s*(?:el |los |ano )?" + ANIO + "\\s*(?:y|al|a|-|hasta)\\s*(?:el )?" + ANIO);
+    private static final Pattern ANIO_EXACTO = Pattern.compile("(?:modelo|ano)\\s*" + ANIO);
+    private static final Pattern ANIO_MINIMO = Pattern.compile(
+            "(?:desde|a partir del?|posterior(?:es)? al?|mas nuevos? que|del)\\s*(?:el |ano )?" + ANIO + "(?:" + HACIA_ARRIBA + ")?"
+            + "|\\b" + ANIO + HACIA_ARRIBA);
+    private static final Pattern ANIO_MAXIMO = Pattern.compile(
+            "(?:hasta|antes del?|anterior(?:es)? al?|mas viejos? que)\\s*(?:el |ano )?" + ANIO
+            + "|\\b" + ANIO + "\\s*(?:o antes|o anterior|para abajo)");
+    private static final Pattern PRECIO_ENTRE = Pattern.compile(
+            "entre\\s*" + MONEDA + NUMERO + "\\s*y\\s*" + MONEDA + NUMERO);
+    private static final Pattern PRECIO_MAXIMO = Pattern.compile(
+            "(?:menos de|hasta|maximo|max|no mas de|por debajo de|presupuesto de|presupuesto)\\s*" + MONEDA + NUMERO);
+    private static final Pattern PRECIO_MINIMO = Pattern.compile(
+            "(?:desde|mas de|minimo|por encima de|arriba de)\\s*" + MONEDA + NUMERO);
+    // Lo que no es buscar por filtros: comparar, opinar, financiar... eso lo responde el modelo
+    private static final Pattern PREGUNTA_ABIERTA = Pattern.compile(
+            "\\b(?:compar|consum|financ|mantenimiento|diferencia)"
+            + "|\\b(?:por que|cual(?:es)? (?:es|son) (?:el |la |los |las )?mejor|que opinas|versus|vs|credito|cuotas?"
+            + "|seguro|garantia|confiable|fiable|vale la pena|como)\\b");
+
+    // Palabras de pedido que no aportan nada a la búsqueda (ya con raíz, como las deja TextoBusqueda)
+    private static final Set<String> PALABRAS_DE_PEDIDO = Stream.of(
+            "busco", "buscar", "buscando", "quiero", "queria", "necesito", "recomienda", "recomiendame",
+            "recomendar", "muestrame", "mostrar", "ver", "hay", "tiene", "tienes", "tienen", "me", "mi", "yo",
+            "hola", "gracias", "favor", "auto", "autos", "carro", "carros", "coche", "vehiculo", "vehiculos",
+            "algo", "alguno", "alguna", "opcion", "opciones", "dolares", "soles", "precio", "km", "mil")
+            .map(TextoBusqueda::raiz)
+            .collect(Collectors.toSet());
+
+    private ConsultaVehiculoParser() {
+    }
+
+    /**
+     * Filtros del texto y confianza de la interpretación. Los tipos se comparan con los del catálogo,
+     * sin tildes y admitiendo plurales ("sedanes" → "Sedán").
+     */
+    public static Consulta interpretar(String texto, List<String> tiposCatalogo) {
+        AnuncioFiltro filtro = new AnuncioFiltro();
+        if (texto == null || texto.isBlank()) {
+            return new Consulta(filtro, 0, 0, List.of(), false, null);
+        }
+        StringBuilder restante = new StringBuilder(TextoBusqueda.normalizar(texto));
+        boolean preguntaAbierta = PREGUNTA_ABIERTA.matcher(restante).find();
+        int interpretadas = 0;
+
+        // El kilometraje primero: "menos de 50 mil km" no es un presupuesto
+        Matcher m = KILOMETRAJE_ENTRE.matcher(restante);
+        if (m.find()) {
+            filtro.setKilometrajeMax(entero(numero(m.group(3), m.group(4))));
+            interpretadas += consumir(restante, m);
+        } else if ((m = KILOMETRAJE_MAXIMO.matcher(restante)).find()) {
+            filtro.setKilometrajeMax(entero(numero(m.group(1), m.group(2))));
+            interpretadas += consumir(restante, m);
+        }
+        Integer kilometrajeMin = null;
+        if ((m = KILOMETRAJE_MINIMO.matcher(restante)).find()) {
+            kilometrajeMin = entero(numero(m.group(1), m.group(2)));
+            interpretadas += consumir(restante, m);
+        }
+
+        // Los años antes que los precios: "hasta 2015" es un año, no un presupuesto
+        if ((m = ANIO_ENTRE.matcher(restante)).find()) {
+            int desde = Integer.parseInt(m.group(1));
+            int hasta = Integer.parseInt(m.group(2));
+            filtro.setAnioMin(Math.min(desde, hasta));
+            filtro.setAnioMax(Math.max(desde, hasta));
+            interpretadas += consumir(restante, m);
+        } else if ((m = ANIO_EXACTO.matcher(restante)).find()) {
+            filtro.setAnioMin(Integer.parseInt(m.group(1)));
+            filtro.setAnioMax(filtro.getAnioMin());
+            interpretadas += consumir(restante, m);
+        } else {
+            if ((m = ANIO_MINIMO.matcher(restante)).find()) {
+                filtro.setAnioMin(Integer.parseInt(m.group(1) != null ? m.group(1) : m.group(2)));
+                interpretadas += consumir(restante, m);
+            }
+            if ((m = ANIO_MAXIMO.matcher(restante)).find()) {
+                filtro.setAnioMax(Integer.parseInt(m.group(1) != null ? m.group(1) : m.group(2)));
+                interpretadas += consumir(restante, m);
+            }
+        }
+
+        if ((m = buscarPrecio(PRECIO_ENTRE, restante, false)) != null) {
+            // "entre 10 y 20 mil": el "mil" del segundo vale para los dos
+            String multiplicador = m.group(2) != null ? m.group(2) : m.group(4);
+            long desde = numero(m.group(1), multiplicador);
+            long hasta = numero(m.group(3), m.group(4));
+            filtro.setPrecioMin(BigDecimal.valueOf(Math.min(desde, hasta)));
+            filtro.setPrecioMax(BigDecimal.valueOf(Math.max(desde, hasta)));
+            interpretadas += consumir(restante, m);
+        } else {
+            if ((m = buscarPrecio(PRECIO_MAXIMO, restante, true)) != null) {
+                filtro.setPrecioMax(BigDecimal.valueOf(numero(m.group(1), m.group(2))));
+                interpretadas += consumir(restante, m);
+            }
+            if ((m = buscarPrecio(PRECIO_MINIMO, restante, true)) != null) {
+                filtro.setPrecioMin(BigDecimal.valueOf(numero(m.group(1), m.group(2))));
+                interpretadas += consumir(restante, m);
+            }
+        }
+
+        List<String> palabras = TextoBusqueda.tokenizar(restante.toString());
+        for (String tipo : tiposCatalogo) {
+            List<String> delTipo = TextoBusqueda.tokenizar(tipo);
+            if (!delTipo.isEmpty() && delTipo.stream().allMatch(t -> palabras.contains(t) || palabras.contains(t + "s"))) {
+                filtro.setTipoVehiculo(tipo);
+                for (String t : delTipo) {
+                    palabras.remove(palabras.contains(t) ? t : t + "s");
+                    interpretadas++;
+                }
+                break;
+            }
+        }
+
+        List<String> sinInterpretar = new ArrayList<>();
+        for (String palabra : palabras) {
+            if (!PALABRAS_DE_PEDIDO.contains(palabra)) {
+                sinInterpretar.add(palabra);
+            }
+        }
+        return new Consulta(filtro, criterios(filtro), interpretadas, sinInterpretar, preguntaAbierta, kilometrajeMin);
+    }
+
+    /**
+     * Los filtros en palabras, para el prompt y para las respuestas locales: "tipo SUV, precio hasta 20000".
+     */
+    public static String describir(AnuncioFiltro filtro) {
+        List<String> partes = new ArrayList<>();
+        if (filtro.getTipoVehiculo() != null) {
+            partes.add("tipo " + filtro.getTipoVehiculo());
+        }
+        if (filtro.getPrecioMin() != null && filtro.getPrecioMax() != null) {
+            partes.add("precio entre " + filtro.getPrecioMin().toPlainString() + " y " + filtro.getPrecioMax().toPlainString());
+        } else if (filtro.getPrecioMax() != null) {
+            partes.add("precio hasta " + filtro.getPrecioMax().toPlainString());
+        } else if (filtro.getPrecioMin() != null) {
+            partes.add("precio desde " + filtro.getPrecioMin().toPlainString());
+        }
+        if (filtro.getAnioMin() != null && filtro.getAnioMin().equals(filtro.getAnioMax())) {
+            partes.add("año " + filtro.getAnioMin());
+        } else if (filtro.getAnioMin() != null && filtro.getAnioMax() != null) {
+            partes.add("año entre " + filtro.getAnioMin() + " y " + filtro.getAnioMax());
+        } else if (filtro.getAnioMin() != null) {
+            partes.add("año desde " + filtro.getAnioMin());
+        } else if (filtro.getAnioMax() != null) {
+            partes.add("año hasta " + filtro.getAnioMax());
+        }
+        if (filtro.getKilometrajeMax() != null) {
+            partes.add("hasta " + filtro.getKilometrajeMax() + " km");
+        }
+        return String.join(", ", partes);
+    }
+
+    // Salta los números seguidos de "km" y, si se pide, los que parecen años sin "mil" ("hasta 2015"
+    // que no se leyó antes como año)
+    private static Matcher buscarPrecio(Pattern patron, CharSequence texto, boolean saltarAnios) {
+        Matcher m = patron.matcher(texto);
+        Matcher km = SEGUIDO_DE_KM.matcher(texto);
+        while (m.find()) {
+            if (km.region(m.end(), texto.length()).lookingAt()) {
+                continue;
+            }
+            long valor = numero(m.group(1), m.group(2));
+            if (saltarAnios && m.group(2) == null && valor >= 1900 && valor <= 2100) {
+                continue;
+            }
+            return m;
+        }
+        return null;
+    }
+
+    // Borra lo reconocido (con espacios, para no correr las posiciones) y devuelve cuántas palabras eran
+    private static int consumir(StringBuilder texto, Matcher m) {
+        int palabras = TextoBusqueda.tokenizar(texto.substring(m.start(), m.end())).size();
+        for (int i = m.start(); i < m.end(); i++) {
+            texto.setCharAt(i, ' ');
+        }
+        return palabras;
+    }
+
+    private static long numero(String digitos, String multiplicador) {
+        long valor = Long.parseLong(digitos.replace(".", "").replace(",", ""));
+        return multiplicador != null ? valor * 1000 : valor;
+    }
+
+    private static int entero(long valor) {
+        return (int) Math.min(Integer.MAX_VALUE, valor);
+    }
+
+    private static int criterios(AnuncioFiltro filtro) {
+        int criterios = 0;
+        if (filtro.getTipoVehiculo() != null) {
+            criterios++;
+        }
+        if (filtro.getPrecioMin() != null || filtro.getPrecioMax() != null) {
+            criterios++;
+        }
+        if (filtro.getAnioMin() != null || filtro.getAnioMax() != null) {
+            criterios++;
+        }
+        if (filtro.getKilometrajeMax() != null) {
+            criterios++;
+        }
+        return criterios;
+    }
+
+    public static final class Consulta {
+        private final AnuncioFiltro filtro;
+        private final int criterios;
+        private final List<String> sinInterpretar;
+        private final boolean preguntaAbierta;
+        private final Integer kilometrajeMin;
+        private final double confianza;
+
+        private Consulta(AnuncioFiltro filtro, int criterios, int interpretadas, List<String> sinInterpretar,
+                         boolean preguntaAbierta, Integer kilometrajeMin) {
+            this.filtro = filtro;
+            this.criterios = criterios;
+            this.sinInterpretar = sinInterpretar;
+            this.preguntaAbierta = preguntaAbierta;
+            this.kilometrajeMin = kilometrajeMin;
+            // El catálogo no filtra por kilometraje mínimo: esa consulta la resuelve el modelo
+            if (criterios == 0 || preguntaAbierta || kilometrajeMin != null) {
+                this.confianza = 0;
+            } else {
+                // Mitad por cuántos criterios se reconocieron, mitad por qué parte del texto se entendió
+                double cobertura = (double) interpretadas / (interpretadas + sinInterpretar.size());
+                this.confianza = 0.5 * Math.min(criterios, 3) / 3 + 0.5 * cobertura;
+            }
+        }
+
+        public AnuncioFiltro getFiltro() {
+            return filtro;
+        }
+
+        public int getCriterios() {
+            return criterios;
+        }
+
+        /** Palabras con contenido que no corresponden a ningún filtro ("familiar", "económico"...). */
+        public List<String> getSinInterpretar() {
+            return sinInterpretar;
+        }
+
+        public boolean isPreguntaAbierta() {
+            return preguntaAbierta;
+        }
+
+        /** "más de 50 mil km": se reconoce para no leerlo como precio, pero no es un filtro del catálogo. */
+        public Integer getKilometrajeMin() {
+            return kilometrajeMin;
+        }
+
+        /** Entre 0 y 1: 0 si no hay filtros o es una pregunta que necesita al modelo. */
+        public double getConfianza() {
+            return confianza;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de vistas y contactos por anuncio. Cada evento solo suma en un LongAdder (celdas separadas
+ * por hilo, sin contención ni acceso a la BD); un hilo en segundo plano vuelca los incrementos acumulados
+ * en anuncio_estadisticas con un único upsert por lote y se queda con los totales que devuelve.
+ * Los totales que se muestran son lo persistido más lo pendiente de volcar.
+ */
+@Service
+public class ContadoresAnuncios {
+
+    private static final String SQL_UPSERT =
+        "INSERT INTO anuncio_estadisticas (id_anuncio, vistas, contactos, fecha_actualizacion) " +
+        "SELECT v.id_anuncio, v.vistas, v.contactos, now() FROM (VALUES ";
+    private static final String VALORES = "(CAST(? AS bigint), CAST(? AS bigint), CAST(? AS bigint))";
+    private static final String SQL_CONFLICTO =
+        ") AS v(id_anuncio, vistas, contactos) " +
+        // Un anuncio eliminado mientras tanto se descarta en lugar de hacer fallar el lote por la clave foránea
+        "WHERE EXISTS (SELECT 1 FROM anuncios a WHERE a.id_anuncio = v.id_anuncio) " +
+        "ON CONFLICT (id_anuncio) DO UPDATE SET " +
+        "vistas = anuncio_estadisticas.vistas + EXCLUDED.vistas, " +
+        "contactos = anuncio_estadisticas.contactos + EXCLUDED.contactos, " +
+        "fecha_actualizacion = EXCLUDED.fecha_actualizacion " +
+        "RETURNING id_anuncio, vistas, contactos";
+    private static final String SQL_CARGAR = "SELECT id_anuncio, vistas, contactos FROM anuncio_estadisticas";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${anuncios.contadores.intervalo-segundos:30}")
+    private long intervaloSegundos = 30;
+
+    @Value("${anuncios.contadores.tamano-lote:500}")
+    private int tamanoLote = 500;
+
+    // Incrementos aún no volcados
+    private final Map<Long, Pendiente> pendientes = new ConcurrentHashMap<>();
+    // Últimos totales conocidos de la BD
+    private final Map<Long, Totales> persistidos = new ConcurrentHashMap<>();
+    // Pendientes ya sacados del mapa que recibieron un evento después: un hilo que los tomó justo antes
+    // de quitarlos sumó tarde. El próximo volcado escribe esa diferencia.
+    private final Set<Pendiente> porRevisar = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService volcador;
+
+    private final AtomicLong volcados = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+
+    @PostConstruct
+    public void iniciar() {
+        try {
+            cargar();
+        } catch (Exception e) {
+            // Sin los totales de la BD se muestra solo lo nuevo; cada volcado trae el total de lo que escribe
+            errores.incrementAndGet();
+            System.err.println("Error cargando contadores de anuncios: " + e.getMessage());
+        }
+        volcador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "contadores-anuncios");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        volcador.scheduleWithFixedDelay(this::volcarSeguro, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void detener() {
+        volcador.shutdown();
+        try {
+            volcador.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Volcar lo acumulado antes de que se cierre el pool de conexiones
+        volcarSeguro();
+    }
+
+    public void registrarVista(Long idAnuncio) {
+        if (idAnuncio != null) {
+            Pendiente pendiente = pendiente(idAnuncio);
+            pendiente.vistas.increment();
+            revisarSiRetirado(pendiente);
+        }
+    }
+
+    public void registrarContacto(Long idAnuncio) {
+        if (idAnuncio != null) {
+            Pendiente pendiente = pendiente(idAnuncio);
+            pendiente.contactos.increment();
+            revisarSiRetirado(pendiente);
+        }
+    }
+
+    public long vistas(Long idAnuncio) {
+        Totales totales = persistidos.get(idAnuncio);
+        Pendiente pendiente = pendientes.get(idAnuncio);
+        return (totales != null ? totales.vistas : 0) + (pendiente != null ? pendiente.vistas.sum() : 0);
+    }
+
+    public long contactos(Long idAnuncio) {
+        Totales totales = persistidos.get(idAnuncio);
+        Pendiente pendiente = pendientes.get(idAnuncio);
+        return (totales != null ? totales.contactos : 0) + (pendiente != null ? pendiente.contactos.sum() : 0);
+    }
+
+    /**
+     * Los anuncios con más vistas (al menos una), de mayor a menor; a igual cantidad, en el orden del listado.
+     */
+    public List<Anuncio> masVistos(List<Anuncio> anuncios, int limite) {
+        // Se ordena sobre una foto de las vistas: los contadores siguen cambiando mientras tanto
+        Comparator<Map.Entry<Anuncio, Long>> orden = Map.Entry.<Anuncio, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry::getKey, CatalogoAnunciosCache.ORDEN_LISTADO);
+        // Montículo con los "limite" mejores: el peor queda arriba para descartarlo
+        PriorityQueue<Map.Entry<Anuncio, Long>> mejores = new PriorityQueue<>(limite + 1, orden.reversed());
+        for (Anuncio anuncio : anuncios) {
+            long vistas = vistas(anuncio.getIdAnuncio());
+            if (vistas == 0) {
+                continue;
+            }
+            mejores.add(Map.entry(anuncio, vistas));
+            if (mejores.size() > limite) {
+                mejores.poll();
+            }
+        }
+        List<Map.Entry<Anuncio, Long>> ordenados = new ArrayList<>(mejores);
+        ordenados.sort(orden);
+        List<Anuncio> resultado = new ArrayList<>(ordenados.size());
+        for (Map.Entry<Anuncio, Long> entrada : ordenados) {
+            resultado.add(entrada.getKey());
+        }
+        return resultado;
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        long vistasPendientes = 0;
+        long contactosPendientes = 0;
+        for (Pendiente pendiente : pendientes.values()) {
+            vistasPendientes += pendiente.vistas.sum();
+            contactosPendientes += pendiente.contactos.sum();
+        }
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("anuncios", persistidos.size());
+        estadisticas.put("vistasPendientes", vistasPendientes);
+        estadisticas.put("contactosPendientes", contactosPendientes);
+        estadisticas.put("filasVolcadas", volcados.get());
+        estadisticas.put("lotes", lotes.get());
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("intervaloSegundos", intervaloSegundos);
+        return estadisticas;
+    }
+
+    private Pendiente pendiente(Long idAnuncio) {
+        Pendiente pendiente = pendientes.get(idAnuncio);
+        return pendiente != null ? pendiente : pendientes.computeIfAbsent(idAnuncio, Pendiente::new);
+    }
+
+    // El incremento ya está hecho: si el volcado todavía no lo marcó como retirado, lo verá al sumar
+    private void revisarSiRetirado(Pendiente pendiente) {
+        if (pendiente.retirado) {
+            porRevisar.add(pendiente);
+        }
+    }
+
+    private void volcarSeguro() {
+        try {
+            volcar();
+        } catch (Exception e) {
+            // Nunca dejar morir el hilo programado
+            errores.incrementAndGet();
+            System.err.println("Error volcando contadores de anuncios: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cada anuncio con incrementos se saca del mapa y se vuelca lo que acumuló: los eventos que llegan
+     * mientras tanto van a un Pendiente nuevo en lugar de perderse entre la suma y el reinicio.
+     */
+    void volcar() {
+        // Un mismo anuncio puede aparecer como retirado y como pendiente: se junta en una fila por lote
+        Map<Long, long[]> filas = new LinkedHashMap<>();
+        for (Iterator<Pendiente> it = porRevisar.iterator(); it.hasNext(); ) {
+            Pendiente tardio = it.next();
+            it.remove();
+            tardio.acumular(filas);
+        }
+        for (Long idAnuncio : pendientes.keySet()) {
+            Pendiente pendiente = pendientes.remove(idAnuncio);
+            if (pendiente != null) {
+                pendiente.retirado = true;
+                pendiente.acumular(filas);
+            }
+        }
+        List<long[]> lote = new ArrayList<>(tamanoLote);
+        for (long[] fila : filas.values()) {
+            lote.add(fila);
+            if (lote.size() == tamanoLote) {
+                escribir(lote);
+                lote = new ArrayList<>(tamanoLote);
+            }
+        }
+        if (!lote.isEmpty()) {
+            escribir(lote);
+        }
+    }
+
+    private void cargar() {
+        jdbcTemplate.query(SQL_CARGAR, fila -> {
+            persistidos.put(fila.getLong(1), new Totales(fila.getLong(2), fila.getLong(3)));
+        });
+    }
+
+    private void escribir(List<long[]> lote) {
+        StringBuilder sql = new StringBuilder(SQL_UPSERT);
+        List<Object> parametros = new ArrayList<>(lote.size() * 3);
+        for (int i = 0; i < lote.size(); i++) {
+            long[] fila = lote.get(i);
+            sql.append(i == 0 ? "" : ", ").append(VALORES);
+            parametros.add(fila[0]);
+            parametros.add(fila[1]);
+            parametros.add(fila[2]);
+        }
+        sql.append(SQL_CONFLICTO);
+        try {
+            jdbcTemplate.query(sql.toString(), fila -> {
+                persistidos.put(fila.getLong(1), new Totales(fila.getLong(2), fila.getLong(3)));
+            }, parametros.toArray());
+            volcados.addAndGet(lote.size());
+            lotes.incrementAndGet();
+        } catch (Exception e) {
+            // Devolver los incrementos para el próximo volcado en lugar de perderlos
+            for (long[] fila : lote) {
+                Pendiente pendiente = pendiente(fila[0]);
+                pendiente.vistas.add(fila[1]);
+                pendiente.contactos.add(fila[2]);
+            }
+            errores.incrementAndGet();
+            System.err.println("Error volcando contadores de " + lote.size() + " anuncios: " + e.getMessage());
+        }
+    }
+
+    private static final class Pendiente {
+        private final Long idAnuncio;
+        private final LongAdder vistas = new LongAdder();
+        private final LongAdder contactos = new LongAdder();
+        private volatile boolean retirado = false;
+        // Lo que ya se tomó para volcar (solo lo toca el hilo que vuelca)
+        private long vistasTomadas;
+        private long contactosTomados;
+
+        private Pendiente(Long idAnuncio) {
+            this.idAnuncio = idAnuncio;
+        }
+
+        // Suma a la fila del anuncio lo acumulado desde la última vez
+        private void acumular(Map<Long, long[]> filas) {
+            long totalVistas = vistas.sum();
+            long totalContactos = contactos.sum();
+            long nuevasVistas = totalVistas - vistasTomadas;
+            long nuevosContactos = totalContactos - contactosTomados;
+            vistasTomadas = totalVistas;
+            contactosTomados = totalContactos;
+            if (nuevasVistas == 0 && nuevosContactos == 0) {
+                return;
+            }
+            long[] fila = filas.computeIfAbsent(idAnuncio, id -> new long[]{id, 0, 0});
+            fila[1] += nuevasVistas;
+            fila[2] += nuevosContactos;
+        }
+    }
+
+    private static final class Totales {
+        private final long vistas;
+        private final long contactos;
+
+        private Totales(long vistas, long contactos) {
+            this.vistas = vistas;
+            this.contactos = contactos;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.integrador.service;
+
+import com.integrador.entity.HistorialBusqueda;
+import com.integrador.entity.Vehiculo;
+import com.integrador.repository.HistorialBusquedaRepository;
+import com.integrador.repository.VehiculoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Escritura diferida (write-behind) del historial de búsquedas y de los snapshots de vehículos.
+ * Las búsquedas solo encolan; un hilo en segundo plano vacía las colas en lotes con INSERT multi-fila.
+ * Si la cola está llena se escribe de forma síncrona en el hilo que llama (backpressure).
+ * Un lote que falla por un error temporal de la BD se reintenta entero en el próximo ciclo; si falla
+ * por los datos, se escribe fila por fila para descartar solo la fila inválida.
+ */
+@Service
+public class EscrituraDiferidaService {
+
+    private static final String SQL_INSERT_HISTORIAL =
+        "INSERT INTO historial_busqueda (id_usuario, placa_consultada, fecha_consulta, resultado_api) VALUES ";
+    private static final String VALORES_HISTORIAL = "(?, ?, ?, CAST(? AS jsonb))";
+
+    private static final String SQL_UPSERT_VEHICULOS = VehiculoRepository.INSERTAR_VEHICULO + "VALUES ";
+    private static final String VALORES_VEHICULO = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CAST(? AS jsonb), now(), now())";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private HistorialBusquedaRepository historialBusquedaRepository;
+
+    @Autowired
+    private VehiculoRepository vehiculoRepository;
+
+    @Value("${escritura.diferida.capacidad:2000}")
+    private int capacidad;
+
+    @Value("${escritura.diferida.tamano-lote:100}")
+    private int tamanoLote;
+
+    @Value("${escritura.diferida.intervalo-ms:500}")
+    private long intervaloMs;
+
+    @Value("${escritura.diferida.espera-encolar-ms:20}")
+    private long esperaEncolarMs;
+
+    private BlockingQueue<HistorialBusqueda> historiales;
+    private BlockingQueue<Vehiculo> vehiculos;
+    private ScheduledExecutorService drenador;
+    private volatile boolean cerrando = false;
+
+    // Lotes que fallaron por un error temporal: van primero en el próximo ciclo, antes que lo encolado
+    // después (así un snapshot viejo de un vehículo no pisa a uno nuevo). Solo los toca el hilo de escritura.
+    private final List<HistorialBusqueda> historialesDevueltos = new ArrayList<>();
+    private final List<Vehiculo> vehiculosDevueltos = new ArrayList<>();
+
+    private final AtomicLong historialesEscritos = new AtomicLong();
+    private final AtomicLong vehiculosEscritos = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong escriturasSincronas = new AtomicLong();
+    private final AtomicLong reintentos = new AtomicLong();
+    private final AtomicLong filasSueltas = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+
+    @PostConstruct
+    public void iniciar() {
+        historiales = new ArrayBlockingQueue<>(capacidad);
+        vehiculos = new ArrayBlockingQueue<>(capacidad);
+        drenador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "escritura-diferida");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        drenador.scheduleWithFixedDelay(this::drenarSeguro, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void detener() {
+        cerrando = true;
+        drenador.shutdown();
+        boolean terminado = false;
+        try {
+            terminado = drenador.awaitTermination(10, TimeUnit.SECONDS);
+            if (!terminado) {
+                // Un lote colgado en la BD: se interrumpe y se le da un margen para soltar las listas
+                drenador.shutdownNow();
+                terminado = drenador.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            drenador.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        int perdidos;
+        if (terminado) {
+            // Vaciar lo que quede antes de que se cierre el pool de conexiones
+            drenarSeguro();
+            perdidos = historialesDevueltos.size() + vehiculosDevueltos.size();
+        } else {
+            // El drenador sigue vivo: vaciar a la vez que él corrompería las listas de devueltos
+            perdidos = historiales.size() + vehiculos.size();
+            System.err.println("Escritura diferida: el drenador no terminó, se omite el vaciado final");
+        }
+        if (perdidos > 0) {
+            descartados.addAndGet(perdidos);
+            System.err.println("Escritura diferida: " + perdidos + " filas sin guardar al detener");
+        }
+        System.out.println("Escritura diferida detenida. Historiales: " + historialesEscritos.get() +
+                ", vehículos: " + vehiculosEscritos.get());
+    }
+
+    public void encolarHistorial(HistorialBusqueda historial) {
+        if (historial.getFechaConsulta() == null) {
+            historial.setFechaConsulta(LocalDateTime.now());
+        }
+        if (!cerrando && ofrecer(historiales, historial)) {
+            return;
+        }
+        escriturasSincronas.incrementAndGet();
+        historialBusquedaRepository.save(historial);
+    }
+
+    /**
+     * Historial de una búsqueda en lote: pasa por la misma cola acotada que el resto, así que el hilo
+     * de escritura lo junta en sus INSERT multi-fila. Lo que no cabe se escribe aquí mismo en una sola
+     * sentencia (backpressure).
+     */
+    public void encolarLoteHistorial(List<HistorialBusqueda> lote) {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<HistorialBusqueda> sinLugar = new ArrayList<>();
+        for (HistorialBusqueda historial : lote) {
+            if (historial.getFechaConsulta() == null) {
+                historial.setFechaConsulta(ahora);
+            }
+            // Tras el primer rechazo no se espera por cada fila: va todo lo que queda por la vía síncrona
+            if (!sinLugar.isEmpty() || cerrando || !ofrecer(historiales, historial)) {
+                sinLugar.add(historial);
+            }
+        }
+        if (!sinLugar.isEmpty()) {
+            escriturasSincronas.incrementAndGet();
+            descartados.addAndGet(escribirHistoriales(sinLugar).size());
+        }
+    }
+
+    public void encolarVehiculo(Vehiculo vehiculo) {
+        if (!cerrando && ofrecer(vehiculos, vehiculo)) {
+            return;
+        }
+        escriturasSincronas.incrementAndGet();
+        vehiculoRepository.upsert(vehiculo);
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("historialesPendientes", historiales.size());
+        estadisticas.put("vehiculosPendientes", vehiculos.size());
+        estadisticas.put("capacidad", capacidad);
+        estadisticas.put("historialesEscritos", historialesEscritos.get());
+        estadisticas.put("vehiculosEscritos", vehiculosEscritos.get());
+        estadisticas.put("lotes", lotes.get());
+        estadisticas.put("escriturasSincronas", escriturasSincronas.get());
+        estadisticas.put("reintentos", reintentos.get());
+        estadisticas.put("filasSueltas", filasSueltas.get());
+        estadisticas.put("descartados", descartados.get());
+        return estadisticas;
+    }
+
+    private <T> boolean ofrecer(BlockingQueue<T> cola, T elemento) {
+        try {
+            return cola.offer(elemento, esperaEncolarMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void drenarSeguro() {
+        try {
+            drenar();
+        } catch (Exception e) {
+            // Nunca dejar morir el hilo programado
+            System.err.println("Error en escritura diferida: " + e.getMessage());
+        }
+    }
+
+    void drenar() {
+        while (true) {
+            List<Vehiculo> lote = new ArrayList<>(vehiculosDevueltos);
+            vehiculosDevueltos.clear();
+            vehiculos.drainTo(lote, tamanoLote - lote.size());
+            if (lote.isEmpty()) {
+                break;
+            }
+            vehiculosDevueltos.addAll(escribirVehiculos(lote));
+            if (!vehiculosDevueltos.isEmpty()) {
+                // La BD no responde: no tiene sentido seguir sacando de la cola en este ciclo
+                break;
+            }
+        }
+
+        while (true) {
+            List<HistorialBusqueda> lote = new ArrayList<>(historialesDevueltos);
+            historialesDevueltos.clear();
+            historiales.drainTo(lote, Math.max(0, tamanoLote - lote.size()));
+            if (lote.isEmpty()) {
+                break;
+            }
+            historialesDevueltos.addAll(escribirHistoriales(lote));
+            if (!historialesDevueltos.isEmpty()) {
+                break;
+            }
+        }
+    }
+
+    // Devuelve las filas que hay que reintentar
+    private List<HistorialBusqueda> escribirHistoriales(List<HistorialBusqueda> lote) {
+        return escribirLote(lote, this::insertarHistoriales, historialesEscritos, "historial");
+    }
+
+    private List<Vehiculo> escribirVehiculos(List<Vehiculo> lote) {
+        // Un INSERT ... ON CONFLICT no puede tocar la misma fila dos veces: quedarse con el último snapshot por placa
+        Map<String, Vehiculo> porPlaca = new LinkedHashMap<>();
+        for (Vehiculo vehiculo : lote) {
+            porPlaca.put(vehiculo.getPlaca(), vehiculo);
+        }
+        return escribirLote(new ArrayList<>(porPlaca.values()), this::upsertVehiculos, vehiculosEscritos, "vehículos");
+    }
+
+    private <T> List<T> escribirLote(List<T> lote, Consumer<List<T>> insertar, AtomicLong escritos, String tipo) {
+        try {
+            insertar.accept(lote);
+            escritos.addAndGet(lote.size());
+            lotes.incrementAndGet();
+            return List.of();
+        } catch (Exception e) {
+            System.err.println("Error guardando lote de " + tipo + " (" + lote.size() + " filas): " + e.getMessage());
+            if (esTemporal(e)) {
+                reintentos.addAndGet(lote.size());
+                return lote;
+            }
+            if (lote.size() == 1) {
+                descartados.incrementAndGet();
+                return List.of();
+            }
+        }
+        // Error de datos: aislar la fila que lo provoca
+        for (int i = 0; i < lote.size(); i++) {
+            try {
+                insertar.accept(List.of(lote.get(i)));
+                escritos.incrementAndGet();
+                filasSueltas.incrementAndGet();
+            } catch (Exception e) {
+                if (esTemporal(e)) {
+                    List<T> resto = new ArrayList<>(lote.subList(i, lote.size()));
+                    reintentos.addAndGet(resto.size());
+                    return resto;
+                }
+                descartados.incrementAndGet();
+                System.err.println("Descartada fila de " + tipo + ": " + e.getMessage());
+            }
+        }
+        return List.of();
+    }
+
+    // Conexión caída, timeout, bloqueo: el mismo INSERT puede funcionar más tarde
+    private static boolean esTemporal(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    private void insertarHistoriales(List<HistorialBusqueda> lote) {
+        StringBuilder sql = new StringBuilder(SQL_INSERT_HISTORIAL);
+        List<Object> parametros = new ArrayList<>(lote.size() * 4);
+        for (int i = 0; i < lote.size(); i++) {
+            HistorialBusqueda historial = lote.get(i);
+            sql.append(i == 0 ? "" : ", ").append(VALORES_HISTORIAL);
+            parametros.add(historial.getIdUsuario());
+            parametros.add(historial.getPlacaConsultada());
+            parametros.add(Timestamp.valueOf(historial.getFechaConsulta()));
+            parametros.add(historial.getResultadoApi() != null ? historial.getResultadoApi().toString() : "{}");
+        }
+        jdbcTemplate.update(sql.toString(), parametros.toArray());
+    }
+
+    private void upsertVehiculos(List<Vehiculo> lote) {
+        StringBuilder sql = new StringBuilder(SQL_UPSERT_VEHICULOS);
+        List<Object> parametros = new ArrayList<>(lote.size() * 11);
+        for (int i = 0; i < lote.size(); i++) {
+            Vehiculo vehiculo = lote.get(i);
+            sql.append(i == 0 ? "" : ", ").append(VALORES_VEHICULO);
+            parametros.add(vehiculo.getPlaca());
+            parametros.add(vehiculo.getDescripcionApi());
+            parametros.add(vehiculo.getMarca());
+            parametros.add(vehiculo.getModelo());
+            parametros.add(vehiculo.getAnioRegistroApi());
+            parametros.add(vehiculo.getVin());
+            parametros.add(vehiculo.getUso());
+            parametros.add(vehiculo.getPropietario());
+            parametros.add(vehiculo.getDeliveryPoint());
+            parametros.add(vehiculo.getImageUrlApi());
+            parametros.add(vehiculo.getDatosApi() != null ? vehiculo.getDatosApi().toString() : "{}");
+        }
+        sql.append(' ').append(VehiculoRepository.CONFLICTO_PLACA);
+        jdbcTemplate.update(sql.toString(), parametros.toArray());
+    }
+}
@@ -0,0 +1,358 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import com.integrador.entity.Anuncio;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Conteos por faceta del catálogo activo (tipo de vehículo y rangos de año, precio y kilometraje),
+ * mantenidos en memoria con un BitSet por valor. Cada anuncio ocupa una posición fija; filtrar es hacer
+ * AND de bitsets y contar es cardinality(), sin recorrer los anuncios. Los conteos de una faceta se calculan
+ * con los filtros de las demás (facetado disyuntivo), para que la interfaz muestre las alternativas.
+ * Se alimenta de las versiones de CatalogoAnunciosCache igual que el índice de búsqueda.
+ */
+@Service
+public class FacetasAnuncios implements CatalogoAnunciosCache.Oyente {
+
+    static final String TIPO = "tipoVehiculo";
+    static final String ANIO = "anio";
+    static final String PRECIO = "precio";
+    static final String KILOMETRAJE = "kilometraje";
+
+    // Límites de los rangos: [límite i-1, límite i); el primero y el último quedan abiertos
+    private static final long[] LIMITES_ANIO = {2000, 2005, 2010, 2015, 2020};
+    private static final long[] LIMITES_PRECIO = {10000, 20000, 30000, 50000, 80000};
+    private static final long[] LIMITES_KILOMETRAJE = {20000, 50000, 100000, 150000};
+
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Anuncio[] porPosicion = new Anuncio[64];
+    private final Map<Long, Integer> posiciones = new HashMap<>();
+    private final Deque<Integer> libres = new ArrayDeque<>();
+    private int siguientePosicion = 0;
+
+    private final BitSet activos = new BitSet();
+    private final Map<String, BitSet> porTipo = new TreeMap<>();
+    private final BitSet[] porAnio = nuevosRangos(LIMITES_ANIO);
+    private final BitSet[] porPrecio = nuevosRangos(LIMITES_PRECIO);
+    private final BitSet[] porKilometraje = nuevosRangos(LIMITES_KILOMETRAJE);
+    private long version = -1;
+
+    private final AtomicLong reconstrucciones = new AtomicLong();
+    private final AtomicLong actualizaciones = new AtomicLong();
+
+    @PostConstruct
+    public void registrar() {
+        catalogoAnunciosCache.registrarOyente(this);
+    }
+
+    @Override
+    public void catalogoCargado(CatalogoAnunciosCache.Snapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            if (snapshot.getVersion() > version) {
+                reconstruir(snapshot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void anuncioCambiado(CatalogoAnunciosCache.Snapshot snapshot, Long idAnuncio, Anuncio nuevo) {
+        lock.writeLock().lock();
+        try {
+            if (snapshot.getVersion() <= version) {
+                return;
+            }
+            if (snapshot.getVersion() != version + 1) {
+                reconstruir(snapshot);
+                return;
+            }
+            quitar(idAnuncio);
+            if (nuevo != null) {
+                agregar(nuevo);
+            }
+            version = snapshot.getVersion();
+            actualizaciones.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Conteos de cada faceta para la selección actual y total de anuncios que cumplen todo el filtro.
+     */
+    public Map<String, Object> contar(AnuncioFiltro filtro) {
+        bloquearVigente();
+        try {
+            Map<String, Object> facetas = new LinkedHashMap<>();
+            facetas.put(TIPO, contarTipos(filtrar(filtro, TIPO)));
+            facetas.put(ANIO, contarRangos(porAnio, LIMITES_ANIO, filtrar(filtro, ANIO)));
+            facetas.put(PRECIO, contarRangos(porPrecio, LIMITES_PRECIO, filtrar(filtro, PRECIO)));
+            facetas.put(KILOMETRAJE, contarRangos(porKilometraje, LIMITES_KILOMETRAJE, filtrar(filtro, KILOMETRAJE)));
+
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("total", filtrar(filtro, null).cardinality());
+            resultado.put("facetas", facetas);
+            resultado.put("version", version);
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Anuncios activos que cumplen todo el filtro, sin un orden en particular.
+     */
+    public List<Anuncio> buscar(AnuncioFiltro filtro) {
+        bloquearVigente();
+        try {
+            BitSet cumplen = filtrar(filtro, null);
+            List<Anuncio> anuncios = new ArrayList<>(cumplen.cardinality());
+            for (int i = cumplen.nextSetBit(0); i >= 0; i = cumplen.nextSetBit(i + 1)) {
+                anuncios.add(porPosicion[i]);
+            }
+            return anuncios;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tipos de vehículo con al menos un anuncio activo, tal como están escritos en el catálogo.
+     */
+    public List<String> tiposVehiculo() {
+        bloquearVigente();
+        try {
+            return new ArrayList<>(porTipo.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> estadisticas = new HashMap<>();
+            estadisticas.put("version", version);
+            estadisticas.put("anuncios", activos.cardinality());
+            estadisticas.put("tipos", porTipo.size());
+            estadisticas.put("reconstrucciones", reconstrucciones.get());
+            estadisticas.put("actualizaciones", actualizaciones.get());
+            return estadisticas;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Toma el lock de lectura con los bitsets al día respecto del snapshot vigente
+    private void bloquearVigente() {
+        CatalogoAnunciosCache.Snapshot snapshot = catalogoAnunciosCache.obtener();
+        lock.readLock().lock();
+        if (version < snapshot.getVersion()) {
+            lock.readLock().unlock();
+            catalogoCargado(snapshot);
+            lock.readLock().lock();
+        }
+    }
+
+    // Anuncios que cumplen el filtro, sin aplicar la faceta que se está contando
+    private BitSet filtrar(AnuncioFiltro filtro, String excluida) {
+        BitSet resultado = (BitSet) activos.clone();
+        if (filtro == null) {
+            return resultado;
+        }
+        if (filtro.getTipoVehiculo() != null && !TIPO.equals(excluida)) {
+            resultado.and(porTipo.getOrDefault(filtro.getTipoVehiculo(), new BitSet()));
+        }
+        if ((filtro.getAnioMin() != null || filtro.getAnioMax() != null) && !ANIO.equals(excluida)) {
+            Integer min = filtro.getAnioMin();
+            Integer max = filtro.getAnioMax();
+            resultado.and(enRango(porAnio, LIMITES_ANIO, limite(min, Double.NEGATIVE_INFINITY), limite(max, Double.POSITIVE_INFINITY),
+                    i -> cumple(porPosicion[i].getAnio(), min, max)));
+        }
+        if ((filtro.getPrecioMin() != null || filtro.getPrecioMax() != null) && !PRECIO.equals(excluida)) {
+            BigDecimal min = filtro.getPrecioMin();
+            BigDecimal max = filtro.getPrecioMax();
+            resultado.and(enRango(porPrecio, LIMITES_PRECIO,
+                    min != null ? min.doubleValue() : Double.NEGATIVE_INFINITY, max != null ? max.doubleValue() : Double.POSITIVE_INFINITY,
+                    i -> cumplePrecio(porPosicion[i].getPrecio(), min, max)));
+        }
+        if (filtro.getKilometrajeMax() != null && !KILOMETRAJE.equals(excluida)) {
+            Integer max = filtro.getKilometrajeMax();
+            resultado.and(enRango(porKilometraje, LIMITES_KILOMETRAJE, Double.NEGATIVE_INFINITY, max,
+                    i -> cumple(porPosicion[i].getKilometraje(), null, max)));
+        }
+        return resultado;
+    }
+
+    /**
+     * Anuncios con valor en [min, max]: los rangos contenidos enteros se suman con OR y solo se
+     * revisan uno a uno los anuncios de los rangos de los extremos.
+     */
+    private BitSet enRango(BitSet[] rangos, long[] limites, double min, double max, IntPredicate cumple) {
+        BitSet resultado = new BitSet();
+        for (int r = 0; r < rangos.length; r++) {
+            // Valores del rango: desde <= valor < hasta
+            double desde = r == 0 ? Double.NEGATIVE_INFINITY : limites[r - 1];
+            double hasta = r == limites.length ? Double.POSITIVE_INFINITY : limites[r];
+            if (hasta <= min || desde > max) {
+                continue;
+            }
+            if (desde >= min && hasta <= max) {
+                resultado.or(rangos[r]);
+            } else {
+                BitSet rango = rangos[r];
+                for (int i = rango.nextSetBit(0); i >= 0; i = rango.nextSetBit(i + 1)) {
+                    if (cumple.test(i)) {
+                        resultado.set(i);
+                    }
+                }
+            }
+        }
+        return resultado;
+    }
+
+    private List<Map<String, Object>> contarTipos(BitSet filtro) {
+        List<Map<String, Object>> conteos = new ArrayList<>();
+        for (Map.Entry<String, BitSet> entrada : porTipo.entrySet()) {
+            Map<String, Object> conteo = new LinkedHashMap<>();
+            conteo.put("valor", entrada.getKey());
+            conteo.put("cantidad", interseccion(entrada.getValue(), filtro));
+            conteos.add(conteo);
+        }
+        return conteos;
+    }
+
+    private List<Map<String, Object>> contarRangos(BitSet[] rangos, long[] limites, BitSet filtro) {
+        List<Map<String, Object>> conteos = new ArrayList<>();
+        for (int r = 0; r < rangos.length; r++) {
+            Long desde = r == 0 ? null : limites[r - 1];
+            Long hasta = r == limites.length ? null : limites[r];
+            Map<String, Object> conteo = new LinkedHashMap<>();
+            conteo.put("valor", (desde != null ? desde : "") + "-" + (hasta != null ? hasta : ""));
+            // desde incluido, hasta excluido; null = sin límite
+            conteo.put("desde", desde);
+            conteo.put("hasta", hasta);
+            conteo.put("cantidad", interseccion(rangos[r], filtro));
+            conteos.add(conteo);
+        }
+        return conteos;
+    }
+
+    private int interseccion(BitSet valor, BitSet filtro) {
+        BitSet comun = (BitSet) valor.clone();
+        comun.and(filtro);
+        return comun.cardinality();
+    }
+
+    private void reconstruir(CatalogoAnunciosCache.Snapshot snapshot) {
+        porPosicion = new Anuncio[Math.max(64, snapshot.getAnuncios().size() * 2)];
+        posiciones.clear();
+        libres.clear();
+        siguientePosicion = 0;
+        activos.clear();
+        porTipo.clear();
+        for (BitSet[] rangos : List.of(porAnio, porPrecio, porKilometraje)) {
+            for (BitSet rango : rangos) {
+                rango.clear();
+            }
+        }
+        for (Anuncio anuncio : snapshot.getAnuncios()) {
+            agregar(anuncio);
+        }
+        version = snapshot.getVersion();
+        reconstrucciones.incrementAndGet();
+    }
+
+    private void agregar(Anuncio anuncio) {
+        if (anuncio.getIdAnuncio() == null) {
+            return;
+        }
+        // Se reutilizan las posiciones liberadas para que los bitsets no crezcan sin límite
+        int posicion = libres.isEmpty() ? siguientePosicion++ : libres.pop();
+        if (posicion >= porPosicion.length) {
+            porPosicion = Arrays.copyOf(porPosicion, porPosicion.length * 2);
+        }
+        porPosicion[posicion] = anuncio;
+        posiciones.put(anuncio.getIdAnuncio(), posicion);
+        activos.set(posicion);
+        if (anuncio.getTipoVehiculo() != null) {
+            porTipo.computeIfAbsent(anuncio.getTipoVehiculo(), t -> new BitSet()).set(posicion);
+        }
+        if (anuncio.getAnio() != null) {
+            porAnio[rango(LIMITES_ANIO, anuncio.getAnio())].set(posicion);
+        }
+        if (anuncio.getPrecio() != null) {
+            porPrecio[rango(LIMITES_PRECIO, anuncio.getPrecio().longValue())].set(posicion);
+        }
+        if (anuncio.getKilometraje() != null) {
+            porKilometraje[rango(LIMITES_KILOMETRAJE, anuncio.getKilometraje())].set(posicion);
+        }
+    }
+
+    private void quitar(Long idAnuncio) {
+        Integer posicion = posiciones.remove(idAnuncio);
+        if (posicion == null) {
+            return;
+        }
+        porPosicion[posicion] = null;
+        activos.clear(posicion);
+        porTipo.values().removeIf(bits -> {
+            bits.clear(posicion);
+            return bits.isEmpty();
+        });
+        for (BitSet[] rangos : List.of(porAnio, porPrecio, porKilometraje)) {
+            for (BitSet rango : rangos) {
+                rango.clear(posicion);
+            }
+        }
+        libres.push(posicion);
+    }
+
+    private static BitSet[] nuevosRangos(long[] limites) {
+        BitSet[] rangos = new BitSet[limites.length + 1];
+        for (int i = 0; i < rangos.length; i++) {
+            rangos[i] = new BitSet();
+        }
+        return rangos;
+    }
+
+    static int rango(long[] limites, long valor) {
+        int posicion = Arrays.binarySearch(limites, valor);
+        return posicion >= 0 ? posicion + 1 : -posicion - 1;
+    }
+
+    private static double limite(Integer valor, double sinLimite) {
+        return valor != null ? valor : sinLimite;
+    }
+
+    private static boolean cumple(Integer valor, Integer min, Integer max) {
+        return valor != null && (min == null || valor >= min) && (max == null || valor <= max);
+    }
+
+    private static boolean cumplePrecio(BigDecimal valor, BigDecimal min, BigDecimal max) {
+        return valor != null && (min == null || valor.compareTo(min) >= 0) && (max == null || valor.compareTo(max) <= 0);
+    }
+}
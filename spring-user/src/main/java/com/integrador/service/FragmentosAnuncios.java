@@ -0,0 +1,242 @@
+package com.integrador.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integrador.entity.Anuncio;
+import com.integrador.entity.Imagen;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JSON ya serializado de cada anuncio (con sus imágenes y variantes), listo para copiarse en las respuestas.
+ * Los listados se arman concatenando fragmentos en vez de pasar cada entidad por Jackson en cada pedido.
+ * Cada fragmento lleva una firma (fecha de actualización e imágenes con sus variantes): si el anuncio que
+ * se va a responder no coincide, se vuelve a serializar. La firma guarda los valores tal cual y se compara
+ * con equals, así dos versiones distintas nunca pueden confundirse. Al llenarse se descarta el fragmento
+ * usado hace más tiempo, como en PlacaCacheService. Además se invalidan al modificar o eliminar un
+ * anuncio desde AnuncioService y todos juntos en cada carga completa del catálogo.
+ */
+@Service
+public class FragmentosAnuncios implements CatalogoAnunciosCache.Oyente {
+
+    private static final byte[] COMA = {','};
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    @Value("${anuncios.fragmentos.max-entradas:5000}")
+    private int maxEntradas = 5000;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong serializaciones = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+
+    // LinkedHashMap en orden de acceso: el primer elemento es siempre el menos usado recientemente
+    private final LinkedHashMap<Long, Fragmento> fragmentos = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Fragmento> eldest) {
+            if (size() > maxEntradas) {
+                expulsiones.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    @PostConstruct
+    public void registrar() {
+        catalogoAnunciosCache.registrarOyente(this);
+    }
+
+    @Override
+    public void catalogoCargado(CatalogoAnunciosCache.Snapshot snapshot) {
+        // Una carga completa puede traer cambios hechos desde el admin de Django
+        invalidarTodo();
+    }
+
+    @Override
+    public void anuncioCambiado(CatalogoAnunciosCache.Snapshot snapshot, Long idAnuncio, Anuncio nuevo) {
+        invalidar(idAnuncio);
+    }
+
+    /**
+     * JSON del anuncio tal como lo escribiría Jackson. Las variantes de sus imágenes ya deben estar completadas.
+     */
+    public byte[] fragmento(Anuncio anuncio) {
+        Firma firma = firma(anuncio);
+        Long id = anuncio.getIdAnuncio();
+        Fragmento actual = null;
+        if (id != null) {
+            synchronized (fragmentos) {
+                actual = fragmentos.get(id);
+            }
+        }
+        if (actual != null && actual.firma.equals(firma)) {
+            aciertos.incrementAndGet();
+            return actual.json;
+        }
+        // Se serializa fuera del cerrojo: no bloquea a los que piden otros anuncios
+        byte[] json = serializar(anuncio);
+        serializaciones.incrementAndGet();
+        if (id != null) {
+            synchronized (fragmentos) {
+                fragmentos.put(id, new Fragmento(firma, json));
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Escribe {campos..., "nombre": [anuncio, anuncio, ...]} copiando los fragmentos tal cual.
+     * Todos los fragmentos se obtienen antes de escribir el primer byte, así un error de serialización
+     * todavía puede responderse como error.
+     */
+    public void escribirListado(OutputStream salida, Map<String, Object> campos, String nombre, List<Anuncio> anuncios) throws IOException {
+        escribirFragmentos(salida, campos, nombre, fragmentos(anuncios));
+    }
+
+    /**
+     * Los fragmentos de todos los anuncios, en orden. Para obtenerlos antes de empezar una respuesta en
+     * streaming y escribirlos después con escribirFragmentos.
+     */
+    public List<byte[]> fragmentos(List<Anuncio> anuncios) {
+        List<byte[]> partes = new ArrayList<>(anuncios.size());
+        for (Anuncio anuncio : anuncios) {
+            partes.add(fragmento(anuncio));
+        }
+        return partes;
+    }
+
+    public void escribirFragmentos(OutputStream salida, Map<String, Object> campos, String nombre, List<byte[]> partes) throws IOException {
+        escribirCampos(salida, campos);
+        salida.write(nombre(nombre, !campos.isEmpty()));
+        salida.write('[');
+        for (int i = 0; i < partes.size(); i++) {
+            if (i > 0) {
+                salida.write(COMA);
+            }
+            salida.write(partes.get(i));
+        }
+        salida.write(']');
+        salida.write('}');
+    }
+
+    /**
+     * Escribe {campos..., "nombre": anuncio} para la respuesta de un único anuncio.
+     */
+    public void escribirAnuncio(OutputStream salida, Map<String, Object> campos, String nombre, Anuncio anuncio) throws IOException {
+        escribirAnuncio(salida, campos, nombre, fragmento(anuncio));
+    }
+
+    public void escribirAnuncio(OutputStream salida, Map<String, Object> campos, String nombre, byte[] json) throws IOException {
+        escribirCampos(salida, campos);
+        salida.write(nombre(nombre, !campos.isEmpty()));
+        salida.write(json);
+        salida.write('}');
+    }
+
+    public void invalidar(Long idAnuncio) {
+        if (idAnuncio == null) {
+            return;
+        }
+        synchronized (fragmentos) {
+            if (fragmentos.remove(idAnuncio) != null) {
+                invalidaciones.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidarTodo() {
+        synchronized (fragmentos) {
+            fragmentos.clear();
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        long bytes = 0;
+        int cantidad;
+        synchronized (fragmentos) {
+            for (Fragmento fragmento : fragmentos.values()) {
+                bytes += fragmento.json.length;
+            }
+            cantidad = fragmentos.size();
+        }
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("fragmentos", cantidad);
+        estadisticas.put("maxEntradas", maxEntradas);
+        estadisticas.put("bytes", bytes);
+        estadisticas.put("aciertos", aciertos.get());
+        estadisticas.put("serializaciones", serializaciones.get());
+        estadisticas.put("invalidaciones", invalidaciones.get());
+        estadisticas.put("expulsiones", expulsiones.get());
+        return estadisticas;
+    }
+
+    private void escribirCampos(OutputStream salida, Map<String, Object> campos) throws IOException {
+        salida.write('{');
+        boolean primero = true;
+        for (Map.Entry<String, Object> campo : campos.entrySet()) {
+            salida.write(nombre(campo.getKey(), !primero));
+            salida.write(objectMapper.writeValueAsBytes(campo.getValue()));
+            primero = false;
+        }
+    }
+
+    // "nombre": con la coma delante si no es el primer campo
+    private byte[] nombre(String nombre, boolean conComa) throws JsonProcessingException {
+        String clave = objectMapper.writeValueAsString(nombre) + ":";
+        return (conComa ? "," + clave : clave).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] serializar(Anuncio anuncio) {
+        try {
+            return objectMapper.writeValueAsBytes(anuncio);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error serializando el anuncio " + anuncio.getIdAnuncio(), e);
+        }
+    }
+
+    // Cambia si cambia el anuncio, alguna de sus imágenes o si terminaron de generarse sus variantes
+    static Firma firma(Anuncio anuncio) {
+        List<FirmaImagen> imagenes = new ArrayList<>();
+        if (anuncio.getImagenes() != null) {
+            for (Imagen imagen : anuncio.getImagenes()) {
+                imagenes.add(new FirmaImagen(imagen.getIdImagen(), imagen.getUrlImagen(), imagen.getVariantes() != null));
+            }
+        }
+        return new Firma(anuncio.getFechaActualizacion(), anuncio.getActivo(), imagenes);
+    }
+
+    record Firma(LocalDateTime fechaActualizacion, Boolean activo, List<FirmaImagen> imagenes) {
+    }
+
+    record FirmaImagen(Long idImagen, String urlImagen, boolean conVariantes) {
+    }
+
+    private static final class Fragmento {
+        private final Firma firma;
+        private final byte[] json;
+
+        private Fragmento(Firma firma, byte[] json) {
+            this.firma = firma;
+            this.json = json;
+        }
+    }
+}
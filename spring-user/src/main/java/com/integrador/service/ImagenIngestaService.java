@@ -0,0 +1,307 @@
+package com.integrador.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Guarda las imágenes de un anuncio en el almacén direccionado por contenido (ver AlmacenImagenesService).
+ * Cada archivo se escribe en paralelo a un temporal, calculando tamaño y SHA-256 en la misma pasada,
+ * y luego se mueve de forma atómica a ab/cd/<sha256>.<ext>. Si la subida ya está en disco (el contenedor
+ * la volcó a un temporal) la copia la hace el kernel con transferFrom y el hash se calcula releyendo el
+ * temporal, que sigue en caché: una sola copia al espacio de usuario en lugar de dos. Si ese contenido
+ * ya existía el temporal se descarta. Solo se aceptan extensiones de imagen (ver EXTENSIONES). Los fsync van al final, cuando ya terminaron todas las escrituras: primero los archivos
+ * nuevos, en paralelo, y después una vez cada directorio tocado.
+ */
+@Service
+public class ImagenIngestaService {
+
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    // Lo que se sirve desde /uploads no puede ser HTML ni SVG: el navegador lo ejecutaría en nuestro dominio
+    private static final Set<String> EXTENSIONES = Set.of("", ".jpg", ".jpeg", ".png", ".gif", ".webp", ".bmp");
+
+    @Value("${app.upload.dir:uploads}")
+    private String uploadDir;
+
+    private final ExecutorService escritores;
+
+    public ImagenIngestaService(@Value("${imagenes.ingesta.hilos:4}") int hilos) {
+        this.escritores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "ingesta-imagenes");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PreDestroy
+    public void detener() {
+        escritores.shutdown();
+    }
+
+    /**
+     * Escribe todas las imágenes o ninguna: si alguna falla se lanza la excepción y las ya escritas quedan
+     * sin referencias, para el barrido de huérfanos (no se borran aquí: otra subida pudo reutilizar el
+     * mismo contenido). Los archivos vacíos o null se ignoran. Devuelve las imágenes en el mismo orden recibido.
+     * <p>
+     * Cada archivo devuelto queda reservado para que una liberación no lo borre antes de que exista su
+     * fila: quien llama debe soltarlas con soltarAlTerminar.
+     */
+    public List<ImagenGuardada> guardar(List<MultipartFile> archivos) {
+        Path directorio = Paths.get(uploadDir);
+        try {
+            Files.createDirectories(directorio);
+        } catch (IOException e) {
+            throw new RuntimeException("Error al crear directorio de uploads", e);
+        }
+
+        // Se validan todas antes de escribir ninguna
+        List<MultipartFile> validos = new ArrayList<>();
+        List<String> extensiones = new ArrayList<>();
+        for (MultipartFile archivo : archivos) {
+            if (archivo != null && !archivo.isEmpty()) {
+                validos.add(archivo);
+                extensiones.add(obtenerExtension(archivo.getOriginalFilename()));
+            }
+        }
+
+        List<Future<ImagenGuardada>> escrituras = new ArrayList<>();
+        for (int i = 0; i < validos.size(); i++) {
+            MultipartFile archivo = validos.get(i);
+            String extension = extensiones.get(i);
+            escrituras.add(escritores.submit(() -> escribir(archivo, extension, directorio)));
+        }
+
+        List<ImagenGuardada> guardadas = new ArrayList<>(escrituras.size());
+        Exception error = null;
+        for (Future<ImagenGuardada> escritura : escrituras) {
+            try {
+                guardadas.add(escritura.get());
+            } catch (ExecutionException e) {
+                error = error != null ? error : (Exception) e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = error != null ? error : e;
+            }
+        }
+        if (error != null) {
+            soltar(guardadas);
+            throw new RuntimeException("Error al guardar la imagen: " + error.getMessage(), error);
+        }
+
+        // Los datos de los archivos nuevos primero, en paralelo; luego las entradas de directorio de los renombrados
+        List<Future<?>> sincronizaciones = new ArrayList<>();
+        Set<Path> directorios = new LinkedHashSet<>();
+        for (ImagenGuardada guardada : guardadas) {
+            if (guardada.isNueva()) {
+                sincronizaciones.add(escritores.submit(() -> sincronizar(guardada.getRuta(), StandardOpenOption.WRITE)));
+                directorios.add(guardada.getRuta().getParent());
+            }
+        }
+        for (Future<?> sincronizacion : sincronizaciones) {
+            try {
+                sincronizacion.get();
+            } catch (ExecutionException e) {
+                soltar(guardadas);
+                throw new RuntimeException("Error al guardar la imagen: " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                soltar(guardadas);
+                throw new RuntimeException("Error al guardar la imagen: interrumpido", e);
+            }
+        }
+        for (Path tocado : directorios) {
+            try {
+                sincronizar(tocado, StandardOpenOption.READ);
+            } catch (IOException e) {
+                // No soportado en Windows: no crítico
+            }
+        }
+        return guardadas;
+    }
+
+    /**
+     * Suelta las reservas de guardar cuando termina la transacción actual (o ya, si no hay): para entonces
+     * las filas que referencian los archivos están confirmadas o no van a existir.
+     */
+    public void soltarAlTerminar(List<ImagenGuardada> guardadas) {
+        DespuesDelCommit.alTerminar(() -> soltar(guardadas));
+    }
+
+    private void soltar(List<ImagenGuardada> guardadas) {
+        for (ImagenGuardada guardada : guardadas) {
+            AlmacenImagenesService.soltar(guardada.getRuta());
+        }
+    }
+
+    private ImagenGuardada escribir(MultipartFile archivo, String extension, Path directorio) throws IOException {
+        Path temporal = directorio.resolve(".ingesta-" + UUID.randomUUID() + ".tmp");
+
+        MessageDigest sha256 = crearDigest();
+        long tamano = 0;
+        try (InputStream entrada = archivo.getInputStream();
+             FileChannel salida = FileChannel.open(temporal,
+                     StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BUFFER);
+            if (entrada instanceof FileInputStream enDisco) {
+                // Archivo contra archivo: copia el kernel y el digest relee el temporal recién escrito
+                FileChannel origen = enDisco.getChannel();
+                long restante = origen.size() - origen.position();
+                while (tamano < restante) {
+                    long copiados = salida.transferFrom(origen, tamano, restante - tamano);
+                    if (copiados <= 0) {
+                        break;
+                    }
+                    tamano += copiados;
+                }
+                for (long posicion = 0; posicion < tamano; buffer.clear()) {
+                    int leidos = salida.read(buffer, posicion);
+                    if (leidos < 0) {
+                        break;
+                    }
+                    buffer.flip();
+                    sha256.update(buffer);
+                    posicion += leidos;
+                }
+            } else {
+                // En memoria: un solo buffer directo, lo que se escribe al disco es lo mismo que se pasa al digest
+                ReadableByteChannel origen = Channels.newChannel(entrada);
+                while (origen.read(buffer) != -1) {
+                    buffer.flip();
+                    sha256.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        tamano += salida.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+
+        String hash = HexFormat.of().formatHex(sha256.digest());
+        String rutaRelativa = AlmacenImagenesService.rutaRelativa(hash, extension);
+        Path destino = directorio.resolve(rutaRelativa);
+        boolean nueva;
+        try {
+            // Con el cerrojo del archivo: un borrado no puede colarse entre el exists y el move o la renovación
+            synchronized (AlmacenImagenesService.cerrojo(destino)) {
+                // Un archivo de otro tamaño con ese hash es una escritura que no llegó al disco (caída
+                // antes del fsync): se reemplaza en lugar de reutilizarlo
+                nueva = !Files.exists(destino) || Files.size(destino) != tamano;
+                if (nueva) {
+                    Files.createDirectories(destino.getParent());
+                    try {
+                        Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } else {
+                    // Mismo contenido ya almacenado: se reutiliza. Se renueva la fecha para que el barrido no lo
+                    // borre mientras el anuncio que lo va a usar aún no ha hecho commit
+                    Files.setLastModifiedTime(destino, FileTime.fromMillis(System.currentTimeMillis()));
+                }
+                AlmacenImagenesService.reservar(destino);
+            }
+            if (!nueva) {
+                Files.delete(temporal);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+
+        return new ImagenGuardada(rutaRelativa, destino, nueva, tamano, hash,
+                archivo.getOriginalFilename(), archivo.getContentType());
+    }
+
+    private Void sincronizar(Path ruta, StandardOpenOption modo) throws IOException {
+        try (FileChannel canal = FileChannel.open(ruta, modo)) {
+            canal.force(true);
+        }
+        return null;
+    }
+
+    private MessageDigest crearDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String obtenerExtension(String nombreArchivo) {
+        if (nombreArchivo == null || nombreArchivo.isEmpty()) {
+            return "";
+        }
+        int ultimoPunto = nombreArchivo.lastIndexOf('.');
+        if (ultimoPunto == -1) {
+            return "";
+        }
+        String extension = nombreArchivo.substring(ultimoPunto).toLowerCase(Locale.ROOT);
+        if (!EXTENSIONES.contains(extension)) {
+            throw new IllegalArgumentException("Tipo de archivo no permitido: " + extension);
+        }
+        return extension;
+    }
+
+    public static final class ImagenGuardada {
+        private final String rutaRelativa;
+        private final Path ruta;
+        private final boolean nueva;
+        private final long tamano;
+        private final String sha256;
+        private final String nombreOriginal;
+        private final String tipoContenido;
+
+        private ImagenGuardada(String rutaRelativa, Path ruta, boolean nueva, long tamano, String sha256,
+                               String nombreOriginal, String tipoContenido) {
+            this.rutaRelativa = rutaRelativa;
+            this.ruta = ruta;
+            this.nueva = nueva;
+            this.tamano = tamano;
+            this.sha256 = sha256;
+            this.nombreOriginal = nombreOriginal;
+            this.tipoContenido = tipoContenido;
+        }
+
+        public String getRutaRelativa() { return rutaRelativa; }
+        public String getUrl() { return AlmacenImagenesService.url(rutaRelativa); }
+        public Path getRuta() { return ruta; }
+        public boolean isNueva() { return nueva; }
+        public long getTamano() { return tamano; }
+        public String getSha256() { return sha256; }
+        public String getNombreOriginal() { return nombreOriginal; }
+        public String getTipoContenido() { return tipoContenido; }
+    }
+}
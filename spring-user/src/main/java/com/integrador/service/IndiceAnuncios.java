@@ -0,0 +1,305 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria sobre los anuncios activos (modelo, título, tipo de vehículo y descripción)
+ * con ranking BM25. Cada término de la consulta debe aparecer en el anuncio, ya sea completo o como
+ * prefijo de una palabra ("toyo" encuentra "Toyota"). Se alimenta de las versiones de CatalogoAnunciosCache:
+ * las cargas completas lo reconstruyen y los parches de un anuncio se aplican de forma incremental.
+ */
+@Service
+public class IndiceAnuncios implements CatalogoAnunciosCache.Oyente {
+
+    // Parámetros habituales de BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Las coincidencias por prefijo puntúan algo menos que la palabra exacta
+    private static final double FACTOR_PREFIJO = 0.7;
+    private static final int MAX_EXPANSIONES_PREFIJO = 64;
+    private static final int LONGITUD_MINIMA_PREFIJO = 2;
+
+    // Peso de cada campo: equivale a repetir sus términos al calcular la frecuencia
+    private static final int PESO_MODELO = 3;
+    private static final int PESO_TIPO = 2;
+    private static final int PESO_TITULO = 1;
+    private static final int PESO_DESCRIPCION = 1;
+
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // termino -> (idAnuncio -> frecuencia ponderada)
+    private final TreeMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+    private final Map<Long, Documento> documentos = new HashMap<>();
+    private long longitudTotal = 0;
+    private long version = -1;
+
+    private final AtomicLong reconstrucciones = new AtomicLong();
+    private final AtomicLong actualizaciones = new AtomicLong();
+    private final AtomicLong busquedas = new AtomicLong();
+
+    @PostConstruct
+    public void registrar() {
+        catalogoAnunciosCache.registrarOyente(this);
+    }
+
+    @Override
+    public void catalogoCargado(CatalogoAnunciosCache.Snapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            if (snapshot.getVersion() > version) {
+                reconstruir(snapshot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void anuncioCambiado(CatalogoAnunciosCache.Snapshot snapshot, Long idAnuncio, Anuncio nuevo) {
+        lock.writeLock().lock();
+        try {
+            if (snapshot.getVersion() <= version) {
+                return;
+            }
+            if (snapshot.getVersion() != version + 1) {
+                // Se perdió alguna versión intermedia: no se puede parchear
+                reconstruir(snapshot);
+                return;
+            }
+            quitar(idAnuncio);
+            if (nuevo != null) {
+                agregar(nuevo);
+            }
+            version = snapshot.getVersion();
+            actualizaciones.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca en el catálogo vigente. Devuelve la página [desde, desde + limite) de los resultados ordenados
+     * por relevancia (a igual puntuación, en el orden del listado) y el total de coincidencias.
+     */
+    public ResultadoBusqueda buscar(String consulta, int desde, int limite) {
+        bloquearVigente();
+        try {
+            busquedas.incrementAndGet();
+            return buscarEnIndice(TextoBusqueda.tokenizar(consulta), desde, limite);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Puntuación BM25 de cada anuncio que contiene al menos uno de los términos, sumando los términos
+     * que coinciden. A diferencia de buscar no exige todos: sirve para ordenar texto libre (el chat).
+     */
+    public Map<Long, Double> puntuar(String texto) {
+        List<String> terminos = TextoBusqueda.tokenizar(texto);
+        bloquearVigente();
+        try {
+            Map<Long, Double> puntuaciones = new HashMap<>();
+            if (terminos.isEmpty() || documentos.isEmpty()) {
+                return puntuaciones;
+            }
+            double longitudMedia = (double) longitudTotal / documentos.size();
+            for (String termino : terminos.stream().distinct().toList()) {
+                puntuarTermino(termino, longitudMedia).forEach((id, puntos) -> puntuaciones.merge(id, puntos, Double::sum));
+            }
+            return puntuaciones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> estadisticas = new HashMap<>();
+            estadisticas.put("version", version);
+            estadisticas.put("documentos", documentos.size());
+            estadisticas.put("terminos", postings.size());
+            estadisticas.put("reconstrucciones", reconstrucciones.get());
+            estadisticas.put("actualizaciones", actualizaciones.get());
+            estadisticas.put("busquedas", busquedas.get());
+            return estadisticas;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Toma el lock de lectura con el índice al día respecto del snapshot vigente
+    private void bloquearVigente() {
+        CatalogoAnunciosCache.Snapshot snapshot = catalogoAnunciosCache.obtener();
+        lock.readLock().lock();
+        if (version < snapshot.getVersion()) {
+            // El índice se registró después de la última carga o aún no ha recibido esta versión
+            lock.readLock().unlock();
+            catalogoCargado(snapshot);
+            lock.readLock().lock();
+        }
+    }
+
+    private ResultadoBusqueda buscarEnIndice(List<String> terminos, int desde, int limite) {
+        if (terminos.isEmpty() || documentos.isEmpty()) {
+            return new ResultadoBusqueda(Collections.emptyList(), 0);
+        }
+        double longitudMedia = (double) longitudTotal / documentos.size();
+        Map<Long, Double> puntuaciones = null;
+        for (String termino : terminos.stream().distinct().toList()) {
+            Map<Long, Double> delTermino = puntuarTermino(termino, longitudMedia);
+            if (puntuaciones == null) {
+                puntuaciones = delTermino;
+            } else {
+                // Todos los términos deben coincidir
+                Map<Long, Double> interseccion = new HashMap<>();
+                for (Map.Entry<Long, Double> entrada : puntuaciones.entrySet()) {
+                    Double puntos = delTermino.get(entrada.getKey());
+                    if (puntos != null) {
+                        interseccion.put(entrada.getKey(), entrada.getValue() + puntos);
+                    }
+                }
+                puntuaciones = interseccion;
+            }
+            if (puntuaciones.isEmpty()) {
+                return new ResultadoBusqueda(Collections.emptyList(), 0);
+            }
+        }
+
+        List<Map.Entry<Long, Double>> ordenadas = new ArrayList<>(puntuaciones.entrySet());
+        ordenadas.sort(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(entrada -> documentos.get(entrada.getKey()).anuncio, CatalogoAnunciosCache.ORDEN_LISTADO));
+        List<Anuncio> pagina = new ArrayList<>();
+        for (int i = desde; i < ordenadas.size() && pagina.size() < limite; i++) {
+            pagina.add(documentos.get(ordenadas.get(i).getKey()).anuncio);
+        }
+        return new ResultadoBusqueda(pagina, ordenadas.size());
+    }
+
+    // Puntuación BM25 de un término de la consulta; con varias expansiones por prefijo cuenta la mejor
+    private Map<Long, Double> puntuarTermino(String termino, double longitudMedia) {
+        Map<Long, Double> puntuaciones = new HashMap<>();
+        NavigableMap<String, Map<Long, Integer>> candidatos = termino.length() >= LONGITUD_MINIMA_PREFIJO
+                ? postings.subMap(termino, true, termino + Character.MAX_VALUE, false)
+                : postings.subMap(termino, true, termino, true);
+        int expansiones = 0;
+        for (Map.Entry<String, Map<Long, Integer>> entrada : candidatos.entrySet()) {
+            if (expansiones++ >= MAX_EXPANSIONES_PREFIJO) {
+                break;
+            }
+            double factor = entrada.getKey().equals(termino) ? 1.0 : FACTOR_PREFIJO;
+            Map<Long, Integer> lista = entrada.getValue();
+            double idf = Math.log(1 + (documentos.size() - lista.size() + 0.5) / (lista.size() + 0.5));
+            for (Map.Entry<Long, Integer> posting : lista.entrySet()) {
+                int frecuencia = posting.getValue();
+                int longitud = documentos.get(posting.getKey()).longitud;
+                double puntos = factor * idf * frecuencia * (K1 + 1)
+                        / (frecuencia + K1 * (1 - B + B * longitud / longitudMedia));
+                puntuaciones.merge(posting.getKey(), puntos, Math::max);
+            }
+        }
+        return puntuaciones;
+    }
+
+    private void reconstruir(CatalogoAnunciosCache.Snapshot snapshot) {
+        postings.clear();
+        documentos.clear();
+        longitudTotal = 0;
+        for (Anuncio anuncio : snapshot.getAnuncios()) {
+            agregar(anuncio);
+        }
+        version = snapshot.getVersion();
+        reconstrucciones.incrementAndGet();
+    }
+
+    private void agregar(Anuncio anuncio) {
+        if (anuncio.getIdAnuncio() == null) {
+            return;
+        }
+        Map<String, Integer> frecuencias = new HashMap<>();
+        contar(frecuencias, anuncio.getModelo(), PESO_MODELO);
+        contar(frecuencias, anuncio.getTipoVehiculo(), PESO_TIPO);
+        contar(frecuencias, anuncio.getTitulo(), PESO_TITULO);
+        contar(frecuencias, anuncio.getDescripcion(), PESO_DESCRIPCION);
+
+        int longitud = 0;
+        for (Map.Entry<String, Integer> entrada : frecuencias.entrySet()) {
+            postings.computeIfAbsent(entrada.getKey(), t -> new HashMap<>()).put(anuncio.getIdAnuncio(), entrada.getValue());
+            longitud += entrada.getValue();
+        }
+        documentos.put(anuncio.getIdAnuncio(), new Documento(anuncio, frecuencias.keySet().toArray(new String[0]), longitud));
+        longitudTotal += longitud;
+    }
+
+    private void quitar(Long idAnuncio) {
+        Documento documento = documentos.remove(idAnuncio);
+        if (documento == null) {
+            return;
+        }
+        for (String termino : documento.terminos) {
+            Map<Long, Integer> lista = postings.get(termino);
+            if (lista != null) {
+                lista.remove(idAnuncio);
+                if (lista.isEmpty()) {
+                    postings.remove(termino);
+                }
+            }
+        }
+        longitudTotal -= documento.longitud;
+    }
+
+    private void contar(Map<String, Integer> frecuencias, String texto, int peso) {
+        for (String termino : TextoBusqueda.tokenizar(texto)) {
+            frecuencias.merge(termino, peso, Integer::sum);
+        }
+    }
+
+    private static final class Documento {
+        private final Anuncio anuncio;
+        private final String[] terminos;
+        private final int longitud;
+
+        private Documento(Anuncio anuncio, String[] terminos, int longitud) {
+            this.anuncio = anuncio;
+            this.terminos = terminos;
+            this.longitud = longitud;
+        }
+    }
+
+    public static final class ResultadoBusqueda {
+        private final List<Anuncio> anuncios;
+        private final int total;
+
+        public ResultadoBusqueda(List<Anuncio> anuncios, int total) {
+            this.anuncios = anuncios;
+            this.total = total;
+        }
+
+        public List<Anuncio> getAnuncios() {
+            return anuncios;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+}
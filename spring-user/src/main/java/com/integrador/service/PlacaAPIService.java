@@ -1,28 +1,55 @@
 package com.integrador.service;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
-import java.io.StringReader;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 @Service
 public class PlacaAPIService {
 
-    private final String SOAP_URL = "https://www.placaapi.pe/api/reg.asmx";
+    // Patrones precompilados: se buscan sin crear una copia en minúsculas de toda la respuesta
+    private static final Pattern PATRON_ERROR_AUTENTICACION = Pattern.compile(
+            "invalid|unauthorized|token|credential|authentication|forbidden",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    private static final Pattern PATRON_PLACA_NO_ENCONTRADA = Pattern.compile(
+            "no se encontró|not found|no existe|does not exist",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
     
     @Value("${placa.api.username:jhom12}")
     private String username;
 
+    // La misma propiedad con la que HttpClientConfig fija el límite de conexiones de esta integración
+    @Value("${placa.api.url:https://www.placaapi.pe/api/reg.asmx}")
+    private String soapUrl;
+
     private final RestTemplate restTemplate;
 
-    public PlacaAPIService(RestTemplate restTemplate) {
+    // Circuit breaker y bulkhead propios de la integración SOAP: si placaapi.pe se cae o se pone lenta,
+    // las búsquedas fallan rápido en vez de ocupar todos los hilos de Tomcat
+    private final CircuitBreaker circuitBreaker;
+    private final Semaphore bulkhead;
+    private final int maxConcurrentes;
+    private final long esperaBulkheadMs;
+
+    public PlacaAPIService(@Qualifier("placaRestTemplate") RestTemplate restTemplate,
+                           @Value("${placa.api.circuit.umbral-fallos:5}") int umbralFallos,
+                           @Value("${placa.api.circuit.espera-abierto-ms:30000}") long esperaAbiertoMs,
+                           @Value("${placa.api.bulkhead.max-concurrentes:8}") int maxConcurrentes,
+                           @Value("${placa.api.bulkhead.espera-ms:200}") long esperaBulkheadMs) {
         this.restTemplate = restTemplate;
+        this.circuitBreaker = new CircuitBreaker(umbralFallos, esperaAbiertoMs);
+        this.bulkhead = new Semaphore(maxConcurrentes);
+        this.maxConcurrentes = maxConcurrentes;
+        this.esperaBulkheadMs = esperaBulkheadMs;
     }
 
     public String consultarPlacaReal(String placa) {
@@ -31,7 +58,7 @@ public class PlacaAPIService {
 
             System.out.println("=== CONSULTANDO PLACA: " + placaLimpia + " ===");
             System.out.println("Username configurado: " + username);
-            System.out.println("URL de la API: " + SOAP_URL);
+            System.out.println("URL de la API: " + soapUrl);
 
             // Crear XML SOAP request
             String soapRequest = crearSOAPRequest(placaLimpia, username);
@@ -45,23 +72,47 @@ public class PlacaAPIService {
 
             System.out.println("Enviando request SOAP...");
 
+            if (!circuitBreaker.permitirLlamada()) {
+                throw new PlacaApiNoDisponibleException(
+                        "La API de placas no está disponible temporalmente. Intenta nuevamente en unos segundos.");
+            }
+            if (!adquirirBulkhead()) {
+                // La llamada no llegó a hacerse: liberar una posible prueba semiabierta sin contarla como fallo
+                circuitBreaker.liberarPrueba();
+                throw new PlacaApiNoDisponibleException(
+                        "La API de placas está saturada. Intenta nuevamente en unos segundos.");
+            }
+
             // Enviar request SOAP
             ResponseEntity<String> response;
+            // Solo cuentan como fallo del circuito los errores de transporte y los 5xx sin SOAP Fault;
+            // un Fault (placa no encontrada, sin créditos) significa que el servicio respondió
+            boolean falloTransporte = true;
             try {
                 response = restTemplate.exchange(
-                        SOAP_URL, HttpMethod.POST, entity, String.class);
+                        soapUrl, HttpMethod.POST, entity, String.class);
+                falloTransporte = false;
             } catch (org.springframework.web.client.HttpServerErrorException e) {
                 // Si hay un error HTTP 500, intentar extraer el mensaje del body
                 String errorBody = e.getResponseBodyAsString();
                 System.err.println("Error HTTP 500 recibido. Body: " + errorBody);
                 
                 if (errorBody != null && errorBody.contains("<soap:Fault>")) {
+                    falloTransporte = false;
                     String errorMessage = extraerMensajeErrorSOAP(errorBody);
                     throw new RuntimeException(crearMensajeErrorPersonalizado(errorMessage, placaLimpia));
                 }
                 throw new RuntimeException("Error del servidor al consultar la API de placas: " + e.getMessage());
             } catch (org.springframework.web.client.RestClientException e) {
+                falloTransporte = !(e instanceof HttpClientErrorException);
                 throw new RuntimeException("Error de conexión con la API de placas: " + e.getMessage());
+            } finally {
+                bulkhead.release();
+                if (falloTransporte) {
+                    circuitBreaker.registrarFallo();
+                } else {
+                    circuitBreaker.registrarExito();
+                }
             }
 
             System.out.println("Response Status: " + response.getStatusCode());
@@ -85,14 +136,10 @@ public class PlacaAPIService {
             if (response.getStatusCode() == HttpStatus.OK) {
                 // Verificar si la respuesta contiene errores de autenticación o tokens
                 if (soapResponse != null) {
-                    String responseLower = soapResponse.toLowerCase();
-                    if (responseLower.contains("invalid") || responseLower.contains("unauthorized") ||
-                        responseLower.contains("token") || responseLower.contains("credential") ||
-                        responseLower.contains("authentication") || responseLower.contains("forbidden")) {
+                    if (PATRON_ERROR_AUTENTICACION.matcher(soapResponse).find()) {
                         throw new RuntimeException("Error de autenticación con la API de placas. Verifica las credenciales configuradas.");
                     }
-                    if (responseLower.contains("no se encontró") || responseLower.contains("not found") ||
-                        responseLower.contains("no existe") || responseLower.contains("does not exist")) {
+                    if (PATRON_PLACA_NO_ENCONTRADA.matcher(soapResponse).find()) {
                         throw new RuntimeException("La placa " + placaLimpia + " no fue encontrada en el sistema.");
                     }
                 }
@@ -112,6 +159,22 @@ public class PlacaAPIService {
         }
     }
 
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new HashMap<>(circuitBreaker.obtenerEstadisticas());
+        estadisticas.put("bulkheadMaxConcurrentes", maxConcurrentes);
+        estadisticas.put("bulkheadEnUso", maxConcurrentes - bulkhead.availablePermits());
+        return estadisticas;
+    }
+
+    private boolean adquirirBulkhead() {
+        try {
+            return bulkhead.tryAcquire(esperaBulkheadMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     private String crearSOAPRequest(String placa, String username) {
         String soapRequest = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
                 "<soap:Envelope xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" " +
@@ -137,43 +200,25 @@ public class PlacaAPIService {
 
             System.out.println("Parseando SOAP response...");
 
-            // Parsear XML
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new InputSource(new StringReader(soapResponse)));
-
-            // Buscar el elemento vehicleJson
-            NodeList nodeList = document.getElementsByTagName("vehicleJson");
-            if (nodeList.getLength() == 0) {
-                // Intentar con otro nombre posible
-                nodeList = document.getElementsByTagName("VehicleJson");
-                if (nodeList.getLength() == 0) {
-                    System.out.println("No se encontró vehicleJson, buscando cualquier texto JSON...");
-                    // Buscar manualmente en el texto
-                    if (soapResponse.contains("\"Description\"")) {
-                        int start = soapResponse.indexOf("\"Description\"");
-                        int end = soapResponse.indexOf("}", start) + 1;
-                        if (start != -1 && end != -1) {
-                            String jsonContent = soapResponse.substring(start - 1, end);
-                            System.out.println("JSON encontrado manualmente: " + jsonContent);
-                            return jsonContent;
-                        }
+            // Buscar el elemento vehicleJson en una sola pasada (StAX, sin DOM)
+            String jsonContent = SoapRespuestaParser.parsear(soapResponse).getVehicleJson();
+            if (jsonContent == null) {
+                System.out.println("No se encontró vehicleJson, buscando cualquier texto JSON...");
+                // Buscar manualmente en el texto
+                int start = soapResponse.indexOf("\"Description\"");
+                if (start > 0) {
+                    int end = soapResponse.indexOf("}", start) + 1;
+                    if (end > 0) {
+                        jsonContent = soapResponse.substring(start - 1, end);
+                        System.out.println("JSON encontrado manualmente: " + jsonContent);
+                        return jsonContent;
                     }
-                    throw new RuntimeException("No se encontró JSON en la respuesta SOAP");
                 }
+                throw new RuntimeException("No se encontró JSON en la respuesta SOAP");
             }
 
-            String jsonContent = nodeList.item(0).getTextContent();
-
-            // Limpiar el JSON de caracteres XML
-            jsonContent = jsonContent.replace("&quot;", "\"")
-                    .replace("&amp;", "&")
-                    .replace("&lt;", "<")
-                    .replace("&gt;", ">")
-                    .replace("&apos;", "'");
-
-            // Limpiar espacios en blanco al inicio y final
-            jsonContent = jsonContent.trim();
+            // Limpiar entidades XML que vengan escapadas dentro del texto y espacios al inicio y final
+            jsonContent = SoapRespuestaParser.decodificarEntidades(jsonContent).trim();
 
             System.out.println("JSON extraído (primeros 500 chars): " + 
                     (jsonContent.length() > 500 ? jsonContent.substring(0, 500) + "..." : jsonContent));
@@ -195,45 +240,26 @@ public class PlacaAPIService {
         }
     }
 
-    private String limpiarPlaca(String placa) {
-        return placa.toUpperCase().replace("-", "").replace(" ", "");
+    public static String limpiarPlaca(String placa) {
+        return placa.trim().toUpperCase().replace("-", "").replace(" ", "");
     }
     
     private String extraerMensajeErrorSOAP(String soapResponse) {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new InputSource(new StringReader(soapResponse)));
-            
-            // Buscar el elemento faultstring (con y sin namespace)
-            NodeList faultStringList = document.getElementsByTagName("faultstring");
-            if (faultStringList.getLength() == 0) {
-                // Intentar con namespace
-                faultStringList = document.getElementsByTagNameNS("http://schemas.xmlsoap.org/soap/envelope/", "faultstring");
-            }
-            if (faultStringList.getLength() > 0) {
-                String faultString = faultStringList.item(0).getTextContent();
-                // Limpiar caracteres XML
-                faultString = faultString.replace("&quot;", "\"")
-                        .replace("&amp;", "&")
-                        .replace("&lt;", "<")
-                        .replace("&gt;", ">")
-                        .replace("&apos;", "'");
-                return faultString.trim();
+            SoapRespuestaParser.Resultado resultado = SoapRespuestaParser.parsear(soapResponse);
+            if (resultado.getFaultString() != null) {
+                return SoapRespuestaParser.decodificarEntidades(resultado.getFaultString()).trim();
             }
             
-            // Si no hay faultstring, buscar en faultcode
-            NodeList faultCodeList = document.getElementsByTagName("faultcode");
-            if (faultCodeList.getLength() > 0) {
-                return faultCodeList.item(0).getTextContent().trim();
+            // Si no hay faultstring, usar faultcode
+            if (resultado.getFaultCode() != null) {
+                return resultado.getFaultCode().trim();
             }
             
             return "Error desconocido en la respuesta SOAP";
         } catch (Exception e) {
             // Si no se puede parsear, buscar manualmente
-            String lowerResponse = soapResponse.toLowerCase();
-            if (lowerResponse.contains("faultstring")) {
+            if (soapResponse.contains("faultstring")) {
                 // Buscar con diferentes variantes
                 String[] patterns = {"<faultstring>", "<soap:faultstring>", "faultstring>"};
                 for (String pattern : patterns) {
@@ -245,14 +271,8 @@ public class PlacaAPIService {
                             end = soapResponse.indexOf("<", start);
                         }
                         if (end != -1 && end > start) {
-                            String faultString = soapResponse.substring(start, end).trim();
                             // Limpiar caracteres XML
-                            faultString = faultString.replace("&quot;", "\"")
-                                    .replace("&amp;", "&")
-                                    .replace("&lt;", "<")
-                                    .replace("&gt;", ">")
-                                    .replace("&apos;", "'");
-                            return faultString;
+                            return SoapRespuestaParser.decodificarEntidades(soapResponse.substring(start, end).trim());
                         }
                     }
                 }
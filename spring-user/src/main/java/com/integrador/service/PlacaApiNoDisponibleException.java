@@ -0,0 +1,15 @@
+package com.integrador.service;
+
+/**
+ * La API de placas no se consultó porque el circuito está abierto o el bulkhead está lleno.
+ * A diferencia de los errores de negocio (placa no encontrada, sin créditos), permite
+ * responder en modo degradado con el último snapshot guardado.
+ */
+public class PlacaApiNoDisponibleException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PlacaApiNoDisponibleException(String message) {
+        super(message);
+    }
+}
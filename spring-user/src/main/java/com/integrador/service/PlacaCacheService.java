@@ -0,0 +1,159 @@
+package com.integrador.service;
+
+import com.integrador.entity.Vehiculo;
+import com.integrador.repository.VehiculoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de consultas de placas en dos niveles:
+ * 1. Memoria: LRU acotado por tamaño y con TTL por entrada.
+ * 2. Base de datos: el último resultado guardado en vehiculos.datos_api.
+ */
+@Service
+public class PlacaCacheService {
+
+    @Autowired
+    private VehiculoRepository vehiculoRepository;
+
+    @Value("${placa.cache.max-entries:500}")
+    private int maxEntradas;
+
+    @Value("${placa.cache.ttl-minutes:60}")
+    private long ttlMinutos;
+
+    @Value("${placa.cache.db-ttl-hours:24}")
+    private long ttlBaseDatosHoras;
+
+    private final AtomicLong aciertosMemoria = new AtomicLong();
+    private final AtomicLong aciertosBaseDatos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+    private final AtomicLong expiradas = new AtomicLong();
+
+    // LinkedHashMap en orden de acceso: el primer elemento es siempre el menos usado recientemente
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+            if (size() > maxEntradas) {
+                expulsiones.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Devuelve el JSON de la placa si está en memoria o en la base de datos y no ha expirado.
+     * Retorna null si hay que consultar la API.
+     */
+    public String obtener(String placa) {
+        String clave = normalizar(placa);
+        if (clave == null) {
+            return null;
+        }
+
+        // Nivel 1: memoria
+        synchronized (entradas) {
+            Entrada entrada = entradas.get(clave);
+            if (entrada != null) {
+                if (entrada.expiraEn > System.currentTimeMillis()) {
+                    aciertosMemoria.incrementAndGet();
+                    return entrada.json;
+                }
+                entradas.remove(clave);
+                expiradas.incrementAndGet();
+            }
+        }
+
+        // Nivel 2: último resultado guardado en la tabla vehiculos
+        try {
+            Optional<Vehiculo> vehiculo = vehiculoRepository.findByPlaca(clave);
+            if (vehiculo.isPresent() && esSnapshotVigente(vehiculo.get())) {
+                String json = vehiculo.get().getDatosApi().toString();
+                aciertosBaseDatos.incrementAndGet();
+                guardar(clave, json);
+                return json;
+            }
+        } catch (Exception e) {
+            System.err.println("Error consultando caché de placas en BD (no crítico): " + e.getMessage());
+        }
+
+        fallos.incrementAndGet();
+        return null;
+    }
+
+    public void guardar(String placa, String json) {
+        String clave = normalizar(placa);
+        if (clave == null || json == null) {
+            return;
+        }
+        long expiraEn = System.currentTimeMillis() + ttlMinutos * 60_000L;
+        synchronized (entradas) {
+            entradas.put(clave, new Entrada(json, expiraEn));
+        }
+    }
+
+    public void invalidar(String placa) {
+        String clave = normalizar(placa);
+        if (clave == null) {
+            return;
+        }
+        synchronized (entradas) {
+            entradas.remove(clave);
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        long hitsMemoria = aciertosMemoria.get();
+        long hitsBaseDatos = aciertosBaseDatos.get();
+        long misses = fallos.get();
+        long total = hitsMemoria + hitsBaseDatos + misses;
+
+        Map<String, Object> estadisticas = new HashMap<>();
+        synchronized (entradas) {
+            estadisticas.put("entradas", entradas.size());
+        }
+        estadisticas.put("maxEntradas", maxEntradas);
+        estadisticas.put("aciertosMemoria", hitsMemoria);
+        estadisticas.put("aciertosBaseDatos", hitsBaseDatos);
+        estadisticas.put("fallos", misses);
+        estadisticas.put("expulsiones", expulsiones.get());
+        estadisticas.put("expiradas", expiradas.get());
+        estadisticas.put("tasaAciertos", total == 0 ? 0.0 : (double) (hitsMemoria + hitsBaseDatos) / total);
+        return estadisticas;
+    }
+
+    private boolean esSnapshotVigente(Vehiculo vehiculo) {
+        if (vehiculo.getDatosApi() == null || vehiculo.getDatosApi().isEmpty()) {
+            return false;
+        }
+        LocalDateTime actualizado = vehiculo.getFechaActualizacionApi();
+        return actualizado != null && actualizado.isAfter(LocalDateTime.now().minusHours(ttlBaseDatosHoras));
+    }
+
+    private String normalizar(String placa) {
+        if (placa == null || placa.trim().isEmpty()) {
+            return null;
+        }
+        return PlacaAPIService.limpiarPlaca(placa);
+    }
+
+    private static final class Entrada {
+        private final String json;
+        private final long expiraEn;
+
+        private Entrada(String json, long expiraEn) {
+            this.json = json;
+            this.expiraEn = expiraEn;
+        }
+    }
+}
@@ -7,13 +7,29 @@ import com.integrador.repository.HistorialBusquedaRepository;
 import com.integrador.repository.VehiculoRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 public class PlateSearchService {
@@ -27,64 +43,70 @@ public class PlateSearchService {
     @Autowired
     private PlacaAPIService placaAPIService;
     
+    @Autowired
+    private PlacaCacheService placaCacheService;
+    
+    @Autowired
+    private EscrituraDiferidaService escrituraDiferidaService;
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
     
+    private final SingleFlight<String, ConsultaPlaca> consultasEnCurso = new SingleFlight<>();
+    
+    @Value("${placa.batch.max-placas:50}")
+    private int maxPlacasLote = 50;
+    
+    @Value("${placa.batch.timeout-ms:60000}")
+    private long timeoutLoteMs = 60000;
+    
+    // Tamaño del pool para las consultas a la API de las búsquedas en lote
+    @Value("${placa.batch.hilos:4}")
+    private int hilosLote = 4;
+    
+    // Pool acotado para las consultas a la API de las búsquedas en lote; los hilos se crean bajo demanda
+    private ExecutorService consultasLote;
+    
+    @PostConstruct
+    public void iniciar() {
+        consultasLote = Executors.newFixedThreadPool(hilosLote, r -> {
+            Thread hilo = new Thread(r, "consulta-placas-lote");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+    
     public Map<String, Object> searchPlate(String plateNumber, String userId) {
+        return searchPlate(plateNumber, userId, false);
+    }
+    
+    public Map<String, Object> searchPlate(String plateNumber, String userId, boolean forceRefresh) {
         try {
             System.out.println("=== INICIANDO BÚSQUEDA DE PLACA: " + plateNumber + " ===");
 
-            // 1. Consultar la API SOAP
-            String jsonResponse = placaAPIService.consultarPlacaReal(plateNumber);
-
-            System.out.println("JSON obtenido (primeros 500 chars): " + 
-                    (jsonResponse != null && jsonResponse.length() > 500 ? 
-                     jsonResponse.substring(0, 500) + "..." : jsonResponse));
+            String placaNormalizada = PlacaAPIService.limpiarPlaca(plateNumber);
 
-            // Verificar si el JSON está vacío o es inválido
-            if (jsonResponse == null || jsonResponse.trim().isEmpty()) {
-                throw new RuntimeException("La API devolvió una respuesta vacía");
+            // 1. Consultar la caché (memoria y BD); si no hay datos vigentes, consultar la API SOAP.
+            // Las búsquedas concurrentes de la misma placa comparten una sola llamada a la API.
+            ConsultaPlaca consulta = forceRefresh ? null : consultarCache(placaNormalizada);
+            if (consulta == null) {
+                consulta = consultarApi(placaNormalizada);
+            } else {
+                System.out.println("Placa servida desde caché: " + placaNormalizada);
             }
 
-            // Verificar si el JSON es válido
-            if (!jsonResponse.trim().startsWith("{") && !jsonResponse.trim().startsWith("[")) {
-                System.err.println("JSON inválido recibido: " + jsonResponse);
-                throw new RuntimeException("La API devolvió un formato de respuesta inválido");
-            }
-
-            // 2. Parsear el JSON a objeto
-            PlacaAPIResponse apiResponse;
-            try {
-                apiResponse = objectMapper.readValue(jsonResponse, PlacaAPIResponse.class);
-                System.out.println("Objeto parseado exitosamente. Propiedades: " + apiResponse.getProperties().keySet());
-            } catch (Exception parseError) {
-                System.err.println("Error parseando JSON: " + parseError.getMessage());
-                System.err.println("JSON recibido: " + jsonResponse);
-                throw new RuntimeException("Error al procesar la respuesta de la API: " + parseError.getMessage(), parseError);
-            }
-
-            // 3. Convertir a nuestro formato
-            Map<String, Object> vehicleInfo = convertirAVehicleInfo(apiResponse, plateNumber);
+            // 2. Convertir a nuestro formato
+            Map<String, Object> vehicleInfo = construirVehicleInfo(consulta, plateNumber);
             System.out.println("Datos convertidos: " + vehicleInfo);
 
-            // 4. Intentar guardar en base de datos (no crítico si falla)
+            // 3. Encolar el registro en historial; se escribe en segundo plano (no crítico si falla)
             try {
-                Vehiculo vehicle = createVehicleFromApiResponse(plateNumber, apiResponse);
-                vehiculoRepository.save(vehicle);
-                System.out.println("Vehículo guardado: " + vehicle.getMarca() + " " + vehicle.getModelo());
-            } catch (Exception dbError) {
-                System.err.println("Error guardando en BD (no crítico): " + dbError.getMessage());
-                // Continuar aunque falle el guardado
-            }
-
-            // 5. Intentar registrar en historial (no crítico si falla)
-            try {
-                saveSearchHistory(userId, plateNumber, jsonResponse);
+                saveSearchHistory(userId, plateNumber, consulta.json);
             } catch (Exception historyError) {
                 System.err.println("Error guardando historial (no crítico): " + historyError.getMessage());
                 // Continuar aunque falle el historial
             }
 
-            // 6. Verificar que tenemos datos mínimos
+            // 4. Verificar que tenemos datos mínimos
             if (vehicleInfo.isEmpty() || 
                 (vehicleInfo.get("marca") == null && vehicleInfo.get("modelo") == null)) {
                 System.err.println("Advertencia: Los datos del vehículo están vacíos o incompletos");
@@ -109,6 +131,229 @@ public class PlateSearchService {
         }
     }
     
+    /**
+     * Valida, normaliza y quita duplicados de las placas de una búsqueda en lote, conservando el orden.
+     */
+    public List<String> prepararLote(List<String> placas) {
+        if (placas == null || placas.isEmpty()) {
+            throw new IllegalArgumentException("Debe enviar al menos una placa");
+        }
+        Set<String> unicas = new LinkedHashSet<>();
+        for (String placa : placas) {
+            if (placa != null && !placa.trim().isEmpty()) {
+                unicas.add(PlacaAPIService.limpiarPlaca(placa));
+            }
+        }
+        if (unicas.isEmpty()) {
+            throw new IllegalArgumentException("Debe enviar al menos una placa");
+        }
+        if (unicas.size() > maxPlacasLote) {
+            throw new IllegalArgumentException("Se permiten como máximo " + maxPlacasLote + " placas por consulta");
+        }
+        return new ArrayList<>(unicas);
+    }
+
+    /**
+     * Búsqueda en lote: las placas en caché se entregan de inmediato y las demás se consultan a la API
+     * en paralelo (acotado por el pool del lote y el bulkhead de PlacaAPIService). Cada resultado se
+     * entrega a alResultado en el hilo que llama, en el orden en que termina. El historial de todo el
+     * lote se encola junto al final.
+     */
+    public void buscarPlacasEnLote(List<String> placas, String userId, Consumer<Map<String, Object>> alResultado) {
+        List<HistorialBusqueda> historiales = new ArrayList<>(placas.size());
+        CompletionService<Map<String, Object>> completadas = new ExecutorCompletionService<>(consultasLote);
+        Map<Future<Map<String, Object>>, String> pendientes = new HashMap<>();
+
+        try {
+            for (String placa : placas) {
+                ConsultaPlaca consulta = consultarCache(placa);
+                if (consulta != null) {
+                    alResultado.accept(resultadoLote(placa, consulta, "cache"));
+                    // Las tareas ya enviadas agregan a la misma lista desde otros hilos
+                    synchronized (historiales) {
+                        historiales.add(crearHistorial(userId, placa, consulta.json));
+                    }
+                } else {
+                    pendientes.put(completadas.submit(() -> consultarParaLote(placa, userId, historiales)), placa);
+                }
+            }
+
+            long limite = System.currentTimeMillis() + timeoutLoteMs;
+            while (!pendientes.isEmpty()) {
+                long restante = limite - System.currentTimeMillis();
+                Future<Map<String, Object>> terminada = restante > 0
+                        ? completadas.poll(restante, TimeUnit.MILLISECONDS) : null;
+                if (terminada == null) {
+                    // Tiempo agotado: informar y dejar de esperar lo que quede (se cancela en el finally)
+                    for (Map.Entry<Future<Map<String, Object>>, String> pendiente : pendientes.entrySet()) {
+                        alResultado.accept(errorLote(pendiente.getValue(), "Tiempo de espera agotado consultando la placa"));
+                    }
+                    break;
+                }
+                String placa = pendientes.remove(terminada);
+                try {
+                    alResultado.accept(terminada.get());
+                } catch (ExecutionException e) {
+                    alResultado.accept(errorLote(placa, e.getCause().getMessage()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Si el cliente se desconectó o se agotó el tiempo no tiene sentido empezar las consultas que
+            // aún no arrancaron. Las que ya están en curso no se interrumpen: pueden ser la llamada líder de
+            // SingleFlight que esperan otras búsquedas, y cortarla haría fallar a todas y contaría como un
+            // fallo de la API en el circuit breaker. Terminan por su propio timeout HTTP y dejan la caché lista.
+            pendientes.keySet().forEach(f -> f.cancel(false));
+            List<HistorialBusqueda> lote;
+            synchronized (historiales) {
+                lote = new ArrayList<>(historiales);
+            }
+            if (!lote.isEmpty()) {
+                try {
+                    escrituraDiferidaService.encolarLoteHistorial(lote);
+                } catch (Exception historyError) {
+                    System.err.println("Error guardando historial del lote (no crítico): " + historyError.getMessage());
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> consultarParaLote(String placa, String userId, List<HistorialBusqueda> historiales) {
+        try {
+            ConsultaPlaca consulta = consultarApi(placa);
+            synchronized (historiales) {
+                historiales.add(crearHistorial(userId, placa, consulta.json));
+            }
+            return resultadoLote(placa, consulta, consulta.degradado ? "degradado" : "api");
+        } catch (RuntimeException e) {
+            return errorLote(placa, e.getMessage());
+        }
+    }
+
+    private Map<String, Object> resultadoLote(String placa, ConsultaPlaca consulta, String fuente) {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("placa", placa);
+        resultado.put("success", true);
+        resultado.put("fuente", fuente);
+        resultado.put("vehicle", construirVehicleInfo(consulta, placa));
+        return resultado;
+    }
+
+    private Map<String, Object> errorLote(String placa, String mensaje) {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("placa", placa);
+        resultado.put("success", false);
+        resultado.put("error", mensaje != null ? mensaje : "Error al buscar la placa");
+        return resultado;
+    }
+
+    @PreDestroy
+    public void detener() {
+        consultasLote.shutdownNow();
+    }
+    
+    // Consulta a la API compartiendo la llamada entre búsquedas concurrentes; si la API no está
+    // disponible (circuito abierto o bulkhead lleno) cae al último snapshot guardado
+    private ConsultaPlaca consultarApi(String placa) {
+        try {
+            return consultasEnCurso.ejecutar(placa, () -> consultarApiYGuardar(placa));
+        } catch (PlacaApiNoDisponibleException e) {
+            ConsultaPlaca snapshot = consultarUltimoSnapshot(placa);
+            if (snapshot == null) {
+                throw e;
+            }
+            System.out.println("API de placas no disponible, sirviendo snapshot guardado: " + placa);
+            return snapshot;
+        }
+    }
+    
+    private Map<String, Object> construirVehicleInfo(ConsultaPlaca consulta, String placa) {
+        Map<String, Object> vehicleInfo = convertirAVehicleInfo(consulta.apiResponse, placa);
+        if (consulta.degradado) {
+            vehicleInfo.put("degradado", true);
+            vehicleInfo.put("datos_actualizados_en", consulta.actualizadoEn);
+        }
+        return vehicleInfo;
+    }
+    
+    private ConsultaPlaca consultarCache(String placa) {
+        String jsonCache = placaCacheService.obtener(placa);
+        if (jsonCache == null) {
+            return null;
+        }
+        try {
+            return new ConsultaPlaca(jsonCache, parsearRespuesta(jsonCache));
+        } catch (RuntimeException e) {
+            // Entrada corrupta: descartarla y consultar la API
+            placaCacheService.invalidar(placa);
+            return null;
+        }
+    }
+    
+    // Último snapshot en vehiculos.datos_api sin importar su antigüedad; solo se usa si la API no está disponible
+    private ConsultaPlaca consultarUltimoSnapshot(String placa) {
+        try {
+            Optional<Vehiculo> vehiculo = vehiculoRepository.findByPlaca(placa);
+            if (vehiculo.isEmpty() || vehiculo.get().getDatosApi() == null || vehiculo.get().getDatosApi().isEmpty()) {
+                return null;
+            }
+            String json = vehiculo.get().getDatosApi().toString();
+            return new ConsultaPlaca(json, parsearRespuesta(json), true, vehiculo.get().getFechaActualizacionApi());
+        } catch (Exception e) {
+            System.err.println("Error leyendo snapshot de respaldo (no crítico): " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // Solo la llamada líder de SingleFlight ejecuta este método, así que la placa se guarda una sola vez
+    private ConsultaPlaca consultarApiYGuardar(String placa) {
+        String jsonResponse = placaAPIService.consultarPlacaReal(placa);
+
+        System.out.println("JSON obtenido (primeros 500 chars): " + 
+                (jsonResponse != null && jsonResponse.length() > 500 ? 
+                 jsonResponse.substring(0, 500) + "..." : jsonResponse));
+
+        // Parsear el JSON a objeto
+        PlacaAPIResponse apiResponse = parsearRespuesta(jsonResponse);
+
+        // Guardar en caché y encolar el snapshot para la BD (no crítico si falla)
+        placaCacheService.guardar(placa, jsonResponse);
+        try {
+            Vehiculo vehicle = createVehicleFromApiResponse(placa, apiResponse);
+            escrituraDiferidaService.encolarVehiculo(vehicle);
+            System.out.println("Vehículo encolado para guardar: " + vehicle.getMarca() + " " + vehicle.getModelo());
+        } catch (Exception dbError) {
+            System.err.println("Error guardando en BD (no crítico): " + dbError.getMessage());
+            // Continuar aunque falle el guardado
+        }
+
+        return new ConsultaPlaca(jsonResponse, apiResponse);
+    }
+    
+    private PlacaAPIResponse parsearRespuesta(String jsonResponse) {
+        // Verificar si el JSON está vacío o es inválido
+        if (jsonResponse == null || jsonResponse.trim().isEmpty()) {
+            throw new RuntimeException("La API devolvió una respuesta vacía");
+        }
+
+        // Verificar si el JSON es válido
+        if (!jsonResponse.trim().startsWith("{") && !jsonResponse.trim().startsWith("[")) {
+            System.err.println("JSON inválido recibido: " + jsonResponse);
+            throw new RuntimeException("La API devolvió un formato de respuesta inválido");
+        }
+
+        try {
+            PlacaAPIResponse apiResponse = objectMapper.readValue(jsonResponse, PlacaAPIResponse.class);
+            System.out.println("Objeto parseado exitosamente. Propiedades: " + apiResponse.getProperties().keySet());
+            return apiResponse;
+        } catch (Exception parseError) {
+            System.err.println("Error parseando JSON: " + parseError.getMessage());
+            System.err.println("JSON recibido: " + jsonResponse);
+            throw new RuntimeException("Error al procesar la respuesta de la API: " + parseError.getMessage(), parseError);
+        }
+    }
+    
     private Map<String, Object> convertirAVehicleInfo(PlacaAPIResponse apiResponse, String placa) {
         Map<String, Object> vehicleInfo = new HashMap<>();
 
@@ -216,21 +461,34 @@ public class PlateSearchService {
     }
     
     private void saveSearchHistory(String userId, String plateNumber, String resultJson) {
+        escrituraDiferidaService.encolarHistorial(crearHistorial(userId, plateNumber, resultJson));
+    }
+    
+    private HistorialBusqueda crearHistorial(String userId, String plateNumber, String resultJson) {
+        JsonNode jsonNode;
         try {
-            JsonNode jsonNode = objectMapper.readTree(resultJson);
-            HistorialBusqueda history = new HistorialBusqueda(userId, plateNumber, jsonNode);
-            historialBusquedaRepository.save(history);
+            jsonNode = objectMapper.readTree(resultJson);
         } catch (Exception e) {
             // Si hay error parseando JSON, crear un nodo vacío
-            HistorialBusqueda history = new HistorialBusqueda(userId, plateNumber, objectMapper.createObjectNode());
-            historialBusquedaRepository.save(history);
+            jsonNode = objectMapper.createObjectNode();
         }
+        return new HistorialBusqueda(userId, plateNumber, jsonNode);
     }
     
     public List<HistorialBusqueda> getSearchHistory(String userId) {
         return historialBusquedaRepository.findTop5ByIdUsuarioOrderByFechaConsultaDesc(userId);
     }
     
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new HashMap<>(placaCacheService.obtenerEstadisticas());
+        stats.put("consultasEnCurso", consultasEnCurso.getEnCurso());
+        stats.put("consultasApi", consultasEnCurso.getEjecuciones());
+        stats.put("consultasCompartidas", consultasEnCurso.getCompartidas());
+        stats.put("escrituraDiferida", escrituraDiferidaService.obtenerEstadisticas());
+        stats.put("apiPlacas", placaAPIService.obtenerEstadisticas());
+        return stats;
+    }
+    
     public List<Vehiculo> getRecentVehicles() {
         return vehiculoRepository.findTop10ByOrderByFechaActualizacionApiDesc();
     }
@@ -242,4 +500,23 @@ public class PlateSearchService {
             throw new RuntimeException("Error al obtener respuesta cruda de la API: " + e.getMessage(), e);
         }
     }
+    
+    // Resultado de una consulta compartido entre todas las búsquedas concurrentes de la misma placa
+    private static final class ConsultaPlaca {
+        private final String json;
+        private final PlacaAPIResponse apiResponse;
+        private final boolean degradado;
+        private final LocalDateTime actualizadoEn;
+
+        private ConsultaPlaca(String json, PlacaAPIResponse apiResponse) {
+            this(json, apiResponse, false, null);
+        }
+
+        private ConsultaPlaca(String json, PlacaAPIResponse apiResponse, boolean degradado, LocalDateTime actualizadoEn) {
+            this.json = json;
+            this.apiResponse = apiResponse;
+            this.degradado = degradado;
+            this.actualizadoEn = actualizadoEn;
+        }
+    }
 }
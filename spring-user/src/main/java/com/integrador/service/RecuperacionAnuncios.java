@@ -0,0 +1,303 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import com.integrador.dto.ChatMessage;
+import com.integrador.entity.Anuncio;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Selección de los anuncios que se le pasan al modelo en el chat. En vez de enviar todo el catálogo en cada
+ * turno: se detectan filtros en el texto (tipo de vehículo, presupuesto, año, kilometraje), se aplican sobre
+ * los bitsets de FacetasAnuncios y los candidatos se ordenan con el índice BM25 usando el mensaje y los
+ * turnos anteriores del usuario, más qué tan bien se ajustan a los filtros. Solo los primeros entran al
+ * prompt, hasta un presupuesto de tokens. Si el mensaje se entendió con confianza suficiente, la selección
+ * queda marcada para responderla directamente, sin llamar al modelo.
+ */
+@Service
+public class RecuperacionAnuncios {
+
+    // Los turnos anteriores orientan, pero pesa más lo que se acaba de pedir
+    private static final double PESO_HISTORIAL = 0.5;
+    private static final int TURNOS_HISTORIAL = 3;
+    private static final int LONGITUD_DESCRIPCION = 100;
+    // Aproximación habitual para texto en español: ~4 caracteres por token
+    private static final int CARACTERES_POR_TOKEN = 4;
+
+    // Peso del ajuste a los filtros (precio, año, kilometraje) frente a la puntuación de texto
+    private static final double PESO_AJUSTE = 1.0;
+
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    @Autowired
+    private IndiceAnuncios indiceAnuncios;
+
+    @Autowired
+    private FacetasAnuncios facetasAnuncios;
+
+    @Value("${chat.contexto.max-anuncios:12}")
+    private int maxAnuncios = 12;
+
+    @Value("${chat.contexto.max-tokens:1200}")
+    private int maxTokens = 1200;
+
+    @Value("${chat.local.confianza-minima:0.75}")
+    private double confianzaMinima = 0.75;
+
+    private final AtomicLong selecciones = new AtomicLong();
+    private final AtomicLong tokensEnviados = new AtomicLong();
+
+    /**
+     * Los anuncios más relevantes para el mensaje y su texto para el prompt, dentro del presupuesto de tokens.
+     */
+    public Seleccion seleccionar(String mensaje, List<ChatMessage> historial) {
+        List<String> anteriores = turnosAnteriores(historial);
+        List<String> tipos = facetasAnuncios.tiposVehiculo();
+
+        // Filtros de los turnos anteriores, con prioridad para los del mensaje actual
+        AnuncioFiltro filtro = new AnuncioFiltro();
+        for (String texto : anteriores) {
+            combinar(filtro, extraerFiltro(texto, tipos));
+        }
+        ConsultaVehiculoParser.Consulta consulta = ConsultaVehiculoParser.interpretar(mensaje, tipos);
+        combinar(filtro, consulta.getFiltro());
+
+        List<Anuncio> disponibles = catalogoAnunciosCache.obtener().getAnuncios();
+        List<Anuncio> candidatos = filtro.estaVacio() ? disponibles : facetasAnuncios.buscar(filtro);
+        boolean filtrosRelajados = false;
+        if (candidatos.isEmpty() && !filtro.estaVacio()) {
+            // Nada cumple todo: se le muestran al modelo los más cercanos por texto para que lo explique
+            candidatos = disponibles;
+            filtrosRelajados = true;
+        }
+
+        Map<Long, Double> puntuaciones = indiceAnuncios.puntuar(mensaje);
+        if (!anteriores.isEmpty()) {
+            indiceAnuncios.puntuar(String.join(" ", anteriores))
+                    .forEach((id, puntos) -> puntuaciones.merge(id, PESO_HISTORIAL * puntos, Double::sum));
+        }
+        if (!filtro.estaVacio() && !filtrosRelajados) {
+            for (Anuncio anuncio : candidatos) {
+                puntuaciones.merge(anuncio.getIdAnuncio(), PESO_AJUSTE * ajuste(filtro, anuncio), Double::sum);
+            }
+        }
+        List<Anuncio> mejores = mejores(candidatos, puntuaciones, maxAnuncios);
+
+        // Se agregan líneas mientras quepan en el presupuesto; al menos una si hay candidatos
+        StringBuilder contexto = new StringBuilder();
+        List<Anuncio> incluidos = new ArrayList<>();
+        int limiteCaracteres = maxTokens * CARACTERES_POR_TOKEN;
+        for (Anuncio anuncio : mejores) {
+            String linea = formatear(anuncio);
+            if (!incluidos.isEmpty() && contexto.length() + linea.length() > limiteCaracteres) {
+                break;
+            }
+            contexto.append(linea);
+            incluidos.add(anuncio);
+        }
+        if (incluidos.isEmpty()) {
+            contexto.append("No hay anuncios disponibles en este momento.\n");
+        }
+
+        selecciones.incrementAndGet();
+        tokensEnviados.addAndGet(contexto.length() / CARACTERES_POR_TOKEN);
+        // Una consulta que son solo filtros bien entendidos y con resultados no necesita al modelo
+        boolean respuestaDirecta = consulta.getConfianza() >= confianzaMinima && !filtrosRelajados && !incluidos.isEmpty();
+        return new Seleccion(incluidos, filtro, filtrosRelajados, candidatos.size(), disponibles.size(),
+                contexto.toString(), consulta, respuestaDirecta);
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        long cantidad = selecciones.get();
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("selecciones", cantidad);
+        estadisticas.put("tokensPromedio", cantidad == 0 ? 0 : tokensEnviados.get() / cantidad);
+        estadisticas.put("maxAnuncios", maxAnuncios);
+        estadisticas.put("maxTokens", maxTokens);
+        estadisticas.put("confianzaMinima", confianzaMinima);
+        return estadisticas;
+    }
+
+    /**
+     * Filtros que se pueden leer directamente del texto (ver ConsultaVehiculoParser).
+     */
+    static AnuncioFiltro extraerFiltro(String texto, List<String> tiposCatalogo) {
+        return ConsultaVehiculoParser.interpretar(texto, tiposCatalogo).getFiltro();
+    }
+
+    /**
+     * Qué tan bien se ajusta un anuncio que ya cumple los filtros, entre 0 y 1: más barato respecto del
+     * presupuesto, más nuevo respecto del año mínimo y con menos kilómetros respecto del máximo.
+     */
+    static double ajuste(AnuncioFiltro filtro, Anuncio anuncio) {
+        double suma = 0;
+        int criterios = 0;
+        if (filtro.getPrecioMax() != null && filtro.getPrecioMax().signum() > 0 && anuncio.getPrecio() != null) {
+            suma += 1 - Math.min(1, anuncio.getPrecio().doubleValue() / filtro.getPrecioMax().doubleValue());
+            criterios++;
+        }
+        if (filtro.getAnioMin() != null && anuncio.getAnio() != null) {
+            int tope = filtro.getAnioMax() != null ? filtro.getAnioMax() : Year.now().getValue();
+            suma += tope > filtro.getAnioMin()
+                    ? Math.min(1, Math.max(0, (double) (anuncio.getAnio() - filtro.getAnioMin()) / (tope - filtro.getAnioMin())))
+                    : 1;
+            criterios++;
+        }
+        if (filtro.getKilometrajeMax() != null && filtro.getKilometrajeMax() > 0 && anuncio.getKilometraje() != null) {
+            suma += 1 - Math.min(1, (double) anuncio.getKilometraje() / filtro.getKilometrajeMax());
+            criterios++;
+        }
+        return criterios == 0 ? 0 : suma / criterios;
+    }
+
+    private static void combinar(AnuncioFiltro destino, AnuncioFiltro nuevo) {
+        if (nuevo.getTipoVehiculo() != null) {
+            destino.setTipoVehiculo(nuevo.getTipoVehiculo());
+        }
+        // Los rangos se reemplazan enteros: "entre 10 y 15 mil" después de "hasta 20 mil" no combina ambos
+        if (nuevo.getPrecioMin() != null || nuevo.getPrecioMax() != null) {
+            destino.setPrecioMin(nuevo.getPrecioMin());
+            destino.setPrecioMax(nuevo.getPrecioMax());
+        }
+        if (nuevo.getAnioMin() != null || nuevo.getAnioMax() != null) {
+            destino.setAnioMin(nuevo.getAnioMin());
+            destino.setAnioMax(nuevo.getAnioMax());
+        }
+        if (nuevo.getKilometrajeMax() != null) {
+            destino.setKilometrajeMax(nuevo.getKilometrajeMax());
+        }
+    }
+
+    private static List<String> turnosAnteriores(List<ChatMessage> historial) {
+        if (historial == null || historial.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> anteriores = new ArrayList<>();
+        for (int i = historial.size() - 1; i >= 0 && anteriores.size() < TURNOS_HISTORIAL; i--) {
+            ChatMessage turno = historial.get(i);
+            if ("user".equals(turno.getRole()) && turno.getContent() != null) {
+                anteriores.add(0, turno.getContent());
+            }
+        }
+        return anteriores;
+    }
+
+    // Los "limite" de mayor puntuación (a igual puntuación, los más recientes) sin ordenar todo el catálogo
+    private static List<Anuncio> mejores(List<Anuncio> candidatos, Map<Long, Double> puntuaciones, int limite) {
+        Comparator<Anuncio> orden = Comparator.comparingDouble((Anuncio a) -> puntuaciones.getOrDefault(a.getIdAnuncio(), 0.0))
+                .reversed()
+                .thenComparing(CatalogoAnunciosCache.ORDEN_LISTADO);
+        PriorityQueue<Anuncio> mejores = new PriorityQueue<>(limite + 1, orden.reversed());
+        for (Anuncio anuncio : candidatos) {
+            mejores.add(anuncio);
+            if (mejores.size() > limite) {
+                mejores.poll();
+            }
+        }
+        List<Anuncio> resultado = new ArrayList<>(mejores);
+        resultado.sort(orden);
+        return resultado;
+    }
+
+    static String formatear(Anuncio anuncio) {
+        String descripcion = anuncio.getDescripcion() != null ? anuncio.getDescripcion() : "";
+        StringBuilder linea = new StringBuilder(160 + Math.min(descripcion.length(), LONGITUD_DESCRIPCION));
+        linea.append("ID: ").append(anuncio.getIdAnuncio())
+                .append(" | Modelo: ").append(anuncio.getModelo())
+                .append(" | Año: ").append(anuncio.getAnio())
+                .append(" | Precio: ").append(anuncio.getPrecio() != null ? anuncio.getPrecio().toPlainString() : "No especificado")
+                .append(" | Kilometraje: ").append(anuncio.getKilometraje()).append(" km")
+                .append(" | Tipo: ").append(anuncio.getTipoVehiculo() != null ? anuncio.getTipoVehiculo() : "No especificado")
+                .append(" | Descripción: ");
+        if (descripcion.length() > LONGITUD_DESCRIPCION) {
+            linea.append(descripcion, 0, LONGITUD_DESCRIPCION).append("...");
+        } else {
+            linea.append(descripcion);
+        }
+        return linea.append('\n').toString();
+    }
+
+    public static final class Seleccion {
+        private final List<Anuncio> anuncios;
+        private final AnuncioFiltro filtro;
+        private final boolean filtrosRelajados;
+        private final int candidatos;
+        private final int disponibles;
+        private final String contexto;
+        private final ConsultaVehiculoParser.Consulta consulta;
+        private final boolean respuestaDirecta;
+
+        private Seleccion(List<Anuncio> anuncios, AnuncioFiltro filtro, boolean filtrosRelajados,
+                          int candidatos, int disponibles, String contexto,
+                          ConsultaVehiculoParser.Consulta consulta, boolean respuestaDirecta) {
+            this.anuncios = anuncios;
+            this.filtro = filtro;
+            this.filtrosRelajados = filtrosRelajados;
+            this.candidatos = candidatos;
+            this.disponibles = disponibles;
+            this.contexto = contexto;
+            this.consulta = consulta;
+            this.respuestaDirecta = respuestaDirecta;
+        }
+
+        public List<Anuncio> getAnuncios() {
+            return anuncios;
+        }
+
+        public AnuncioFiltro getFiltro() {
+            return filtro;
+        }
+
+        public boolean isFiltrosRelajados() {
+            return filtrosRelajados;
+        }
+
+        public int getCandidatos() {
+            return candidatos;
+        }
+
+        public int getDisponibles() {
+            return disponibles;
+        }
+
+        /** Una línea por anuncio incluido, lista para el mensaje de sistema. */
+        public String getContexto() {
+            return contexto;
+        }
+
+        /** Interpretación del mensaje actual (sin los turnos anteriores). */
+        public ConsultaVehiculoParser.Consulta getConsulta() {
+            return consulta;
+        }
+
+        /** Si la consulta se entendió lo bastante bien como para responderla sin el modelo. */
+        public boolean isRespuestaDirecta() {
+            return respuestaDirecta;
+        }
+
+        /** Encabezado para el prompt: qué se está mostrando y con qué filtros. */
+        public String getEncabezado() {
+            StringBuilder encabezado = new StringBuilder("Anuncios más relevantes para la consulta (")
+                    .append(anuncios.size()).append(" de ").append(disponibles).append(" disponibles");
+            if (!filtro.estaVacio()) {
+                encabezado.append("; filtros detectados: ").append(ConsultaVehiculoParser.describir(filtro));
+                if (filtrosRelajados) {
+                    encabezado.append("; ninguno los cumple todos, se muestran los más parecidos");
+                }
+            }
+            return encabezado.append(')').toString();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.integrador.service;
+
+import com.integrador.dto.ChatMessage;
+import com.integrador.dto.ChatResponse;
+import com.integrador.entity.Anuncio;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de respuestas del modelo para preguntas repetidas ("busco una SUV barata"). La clave es lo que
+ * ve el modelo: los filtros detectados, los anuncios incluidos en el prompt (id y fecha de actualización)
+ * y el final de la conversación normalizado (sin tildes, mayúsculas, palabras vacías ni plurales).
+ * Editar, quitar o agregar un anuncio relevante cambia la selección y con ella la clave, así que no hace
+ * falta vaciar la caché con cada versión del catálogo: las entradas que quedan inalcanzables salen por
+ * LRU o por TTL.
+ * <p>
+ * De la conversación solo entran en la clave los últimos turnosClave mensajes, aunque el modelo ve todo
+ * el historial y el resumen de la sesión. Es a propósito: con la conversación completa casi ninguna
+ * clave se repetiría entre sesiones. El costo es que dos conversaciones que terminan igual pero
+ * empezaron distinto comparten respuesta; subir chat.cache.turnos-clave lo acota a cambio de menos aciertos.
+ */
+@Service
+public class RespuestasChatCache {
+
+    @Value("${chat.cache.max-entradas:1000}")
+    private int maxEntradas = 1000;
+
+    @Value("${chat.cache.ttl-minutos:30}")
+    private long ttlMinutos = 30;
+
+    // Mensajes del historial que entran en la clave, además del actual
+    @Value("${chat.cache.turnos-clave:2}")
+    private int turnosClave = 2;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+    private final AtomicLong expiradas = new AtomicLong();
+    private final AtomicLong latenciaAhorradaMs = new AtomicLong();
+
+    // LinkedHashMap en orden de acceso: el primer elemento es siempre el menos usado recientemente
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+            if (size() > maxEntradas) {
+                expulsiones.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Clave del mensaje en la conversación actual, con los anuncios que se le mostrarán al modelo.
+     * Se calcula una vez por pedido y se usa tanto para buscar como para guardar.
+     */
+    public String clave(RecuperacionAnuncios.Seleccion seleccion, String mensaje, List<ChatMessage> historial) {
+        StringBuilder clave = new StringBuilder(ConsultaVehiculoParser.describir(seleccion.getFiltro()));
+        if (seleccion.isFiltrosRelajados()) {
+            clave.append(" (relajados)");
+        }
+        clave.append('|');
+        for (Anuncio anuncio : seleccion.getAnuncios()) {
+            clave.append(anuncio.getIdAnuncio()).append('@').append(anuncio.getFechaActualizacion()).append(',');
+        }
+        if (historial != null) {
+            for (int i = Math.max(0, historial.size() - turnosClave); i < historial.size(); i++) {
+                ChatMessage turno = historial.get(i);
+                clave.append('|').append(turno.getRole()).append(':').append(normalizar(turno.getContent()));
+            }
+        }
+        return clave.append("|user:").append(normalizar(mensaje)).toString();
+    }
+
+    /**
+     * La respuesta guardada para esa clave, o null si no hay o venció.
+     */
+    public ChatResponse obtener(String clave) {
+        synchronized (entradas) {
+            Entrada entrada = entradas.get(clave);
+            if (entrada != null) {
+                if (entrada.expiraEn > System.currentTimeMillis()) {
+                    aciertos.incrementAndGet();
+                    latenciaAhorradaMs.addAndGet(entrada.latenciaMs);
+                    // Copia: ChatResponse es mutable
+                    return new ChatResponse(entrada.respuesta, new ArrayList<>(entrada.ids));
+                }
+                entradas.remove(clave);
+                expiradas.incrementAndGet();
+            }
+        }
+        fallos.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Guarda una respuesta completa del modelo junto con lo que tardó en generarla.
+     */
+    public void guardar(String clave, ChatResponse respuesta, long latenciaMs) {
+        if (clave == null || respuesta == null || respuesta.getResponse() == null) {
+            return;
+        }
+        List<Long> ids = respuesta.getRecommendedAnuncioIds() != null ? List.copyOf(respuesta.getRecommendedAnuncioIds()) : List.of();
+        Entrada entrada = new Entrada(respuesta.getResponse(), ids,
+                latenciaMs, System.currentTimeMillis() + ttlMinutos * 60_000L);
+        synchronized (entradas) {
+            entradas.put(clave, entrada);
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        long hits = aciertos.get();
+        long misses = fallos.get();
+        long total = hits + misses;
+
+        Map<String, Object> estadisticas = new HashMap<>();
+        synchronized (entradas) {
+            estadisticas.put("entradas", entradas.size());
+        }
+        estadisticas.put("maxEntradas", maxEntradas);
+        estadisticas.put("aciertos", hits);
+        estadisticas.put("fallos", misses);
+        estadisticas.put("expulsiones", expulsiones.get());
+        estadisticas.put("expiradas", expiradas.get());
+        estadisticas.put("tasaAciertos", total == 0 ? 0.0 : (double) hits / total);
+        estadisticas.put("latenciaAhorradaMs", latenciaAhorradaMs.get());
+        return estadisticas;
+    }
+
+    // "¿Busco una SUV barata?" y "busco SUV baratas" dan la misma clave
+    private static String normalizar(String texto) {
+        return String.join(" ", TextoBusqueda.tokenizar(texto));
+    }
+
+    private static final class Entrada {
+        private final String respuesta;
+        private final List<Long> ids;
+        private final long latenciaMs;
+        private final long expiraEn;
+
+        private Entrada(String respuesta, List<Long> ids, long latenciaMs, long expiraEn) {
+            this.respuesta = respuesta;
+            this.ids = ids;
+            this.latenciaMs = latenciaMs;
+            this.expiraEn = expiraEn;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.integrador.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integrador.dto.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sesiones del asistente de chat guardadas en el servidor: el cliente manda solo el mensaje nuevo y el
+ * id de sesión. Cada sesión conserva los últimos turnos dentro de un presupuesto de tokens; los más
+ * viejos se compactan en un resumen corto. Las sesiones inactivas (o las menos usadas, si se llega al
+ * máximo) salen de memoria y, si está habilitado, se guardan en chat_sesiones para retomarlas después.
+ */
+@Service
+public class SesionesChat {
+
+    private static final String SQL_GUARDAR =
+        "INSERT INTO chat_sesiones (id_sesion, resumen, turnos, fecha_actualizacion) " +
+        "VALUES (?, ?, CAST(? AS jsonb), now()) " +
+        "ON CONFLICT (id_sesion) DO UPDATE SET resumen = EXCLUDED.resumen, turnos = EXCLUDED.turnos, " +
+        "fecha_actualizacion = EXCLUDED.fecha_actualizacion";
+    private static final String SQL_CARGAR = "SELECT resumen, CAST(turnos AS text) FROM chat_sesiones WHERE id_sesion = ?";
+    private static final String SQL_PURGAR =
+        "DELETE FROM chat_sesiones WHERE fecha_actualizacion < now() - CAST(? AS integer) * INTERVAL '1 day'";
+
+    private static final int CARACTERES_POR_TOKEN = 4;
+    private static final int MAXIMO_POR_LINEA_RESUMEN = 200;
+    private static final int LARGO_MAXIMO_ID = 64;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${chat.sesiones.max-sesiones:10000}")
+    private int maxSesiones = 10000;
+
+    @Value("${chat.sesiones.inactividad-minutos:30}")
+    private long inactividadMinutos = 30;
+
+    @Value("${chat.sesiones.max-tokens:1500}")
+    private int maxTokens = 1500;
+
+    @Value("${chat.sesiones.persistir:true}")
+    private boolean persistir = true;
+
+    @Value("${chat.sesiones.retencion-dias:7}")
+    private int retencionDias = 7;
+
+    @Value("${chat.sesiones.purga-minutos:60}")
+    private long purgaMinutos = 60;
+
+    // Sesiones desalojadas que pueden esperar su guardado en segundo plano; pasado esto, se guardan en el
+    // hilo que desaloja
+    @Value("${chat.sesiones.max-guardados-pendientes:1000}")
+    private int maxGuardadosPendientes = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // LinkedHashMap en orden de acceso: la primera es siempre la usada hace más tiempo
+    private final LinkedHashMap<String, Sesion> sesiones = new LinkedHashMap<>(64, 0.75f, true);
+    // Desalojadas que todavía no se guardaron: si vuelven antes se retoman de acá y no de la BD
+    private final Map<String, Sesion> porGuardar = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService barredor;
+
+    private final AtomicLong creadas = new AtomicLong();
+    private final AtomicLong recuperadas = new AtomicLong();
+    private final AtomicLong desalojadas = new AtomicLong();
+    private final AtomicLong guardadas = new AtomicLong();
+    private final AtomicLong compactaciones = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+
+    @PostConstruct
+    public void iniciar() {
+        barredor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "sesiones-chat");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        barredor.scheduleWithFixedDelay(this::barrerSeguro, 1, 1, TimeUnit.MINUTES);
+        if (persistir) {
+            barredor.scheduleWithFixedDelay(this::purgarSeguro, purgaMinutos, purgaMinutos, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        barredor.shutdown();
+        try {
+            barredor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Guardar las sesiones abiertas antes de que se cierre el pool de conexiones
+        if (persistir) {
+            List<Sesion> abiertas;
+            synchronized (sesiones) {
+                abiertas = new ArrayList<>(sesiones.values());
+            }
+            abiertas.addAll(porGuardar.values());
+            for (Sesion sesion : abiertas) {
+                guardar(sesion);
+            }
+        }
+    }
+
+    /**
+     * La sesión con ese id: de memoria, o de la BD si se había guardado. Sin id, o con uno desconocido
+     * o vencido, se abre una sesión nueva (con id propio: los ids no los elige el cliente).
+     */
+    public Sesion obtener(String idSesion) {
+        if (idSesion != null && !idSesion.isBlank() && idSesion.length() <= LARGO_MAXIMO_ID) {
+            Sesion sesion;
+            synchronized (sesiones) {
+                sesion = sesiones.get(idSesion);
+            }
+            if (sesion == null) {
+                Sesion desalojada = porGuardar.get(idSesion);
+                if (desalojada != null) {
+                    sesion = agregar(desalojada);
+                }
+            }
+            if (sesion == null && persistir) {
+                sesion = cargar(idSesion);
+            }
+            if (sesion != null) {
+                sesion.ultimoAcceso = System.currentTimeMillis();
+                return sesion;
+            }
+        }
+        return crear(null);
+    }
+
+    /**
+     * Sesión nueva a partir del historial que manda un cliente que todavía no usa sesiones.
+     */
+    public Sesion crear(List<ChatMessage> historial) {
+        Sesion sesion = new Sesion(UUID.randomUUID().toString());
+        if (historial != null) {
+            for (ChatMessage mensaje : historial) {
+                if (mensaje != null && mensaje.getRole() != null && mensaje.getContent() != null) {
+                    sesion.turnos.addLast(new ChatMessage(mensaje.getRole(), mensaje.getContent()));
+                }
+            }
+            compactar(sesion);
+            sesion.modificada = !sesion.turnos.isEmpty();
+        }
+        agregar(sesion);
+        creadas.incrementAndGet();
+        return sesion;
+    }
+
+    /**
+     * Agrega el mensaje del usuario y la respuesta del asistente, y compacta si se pasó del presupuesto.
+     */
+    public void registrarTurno(Sesion sesion, String mensaje, String respuesta) {
+        synchronized (sesion) {
+            sesion.turnos.addLast(new ChatMessage("user", mensaje != null ? mensaje : ""));
+            sesion.turnos.addLast(new ChatMessage("assistant", respuesta != null ? respuesta : ""));
+            compactar(sesion);
+            sesion.modificada = true;
+        }
+        sesion.ultimoAcceso = System.currentTimeMillis();
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new HashMap<>();
+        synchronized (sesiones) {
+            estadisticas.put("sesiones", sesiones.size());
+        }
+        estadisticas.put("pendientesDeGuardar", porGuardar.size());
+        estadisticas.put("creadas", creadas.get());
+        estadisticas.put("recuperadas", recuperadas.get());
+        estadisticas.put("desalojadas", desalojadas.get());
+        estadisticas.put("guardadas", guardadas.get());
+        estadisticas.put("compactaciones", compactaciones.get());
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("maxSesiones", maxSesiones);
+        estadisticas.put("maxTokens", maxTokens);
+        estadisticas.put("persistir", persistir);
+        return estadisticas;
+    }
+
+    private void barrerSeguro() {
+        try {
+            barrer();
+        } catch (Exception e) {
+            // Nunca dejar morir el hilo programado
+            errores.incrementAndGet();
+            System.err.println("Error barriendo sesiones de chat: " + e.getMessage());
+        }
+    }
+
+    void barrer() {
+        long limite = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(inactividadMinutos);
+        List<Sesion> inactivas = new ArrayList<>();
+        synchronized (sesiones) {
+            for (Iterator<Sesion> it = sesiones.values().iterator(); it.hasNext(); ) {
+                Sesion sesion = it.next();
+                if (sesion.ultimoAcceso < limite) {
+                    it.remove();
+                    inactivas.add(sesion);
+                    if (persistir) {
+                        // Sin pasar por ningún momento en que no esté ni en memoria ni en porGuardar
+                        porGuardar.put(sesion.id, sesion);
+                    }
+                }
+            }
+        }
+        // Ya estamos en el hilo de fondo: se guardan aquí mismo, fuera del cerrojo
+        for (Sesion sesion : inactivas) {
+            desalojadas.incrementAndGet();
+            if (persistir) {
+                guardarDesalojada(sesion);
+            }
+        }
+    }
+
+    private void purgarSeguro() {
+        try {
+            jdbcTemplate.update(SQL_PURGAR, retencionDias);
+        } catch (Exception e) {
+            errores.incrementAndGet();
+            System.err.println("Error purgando sesiones de chat: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Agrega la sesión (o devuelve la que ya estaba con ese id) y, si se pasó del máximo, saca la usada
+     * hace más tiempo. El guardado de la desalojada no se hace con el cerrojo tomado ni en el pedido.
+     */
+    private Sesion agregar(Sesion sesion) {
+        Sesion existente;
+        Sesion desalojada = null;
+        synchronized (sesiones) {
+            existente = sesiones.putIfAbsent(sesion.id, sesion);
+            if (existente == null && sesiones.size() > maxSesiones) {
+                Iterator<Sesion> masVieja = sesiones.values().iterator();
+                desalojada = masVieja.next();
+                masVieja.remove();
+                if (persistir) {
+                    porGuardar.put(desalojada.id, desalojada);
+                }
+            }
+        }
+        if (desalojada != null) {
+            desalojadas.incrementAndGet();
+            guardarDespues(desalojada);
+        }
+        return existente != null ? existente : sesion;
+    }
+
+    // La sesión ya está en porGuardar (se agregó al sacarla del mapa)
+    private void guardarDespues(Sesion sesion) {
+        if (!persistir) {
+            return;
+        }
+        if (porGuardar.size() <= maxGuardadosPendientes) {
+            try {
+                barredor.execute(() -> guardarDesalojada(sesion));
+                return;
+            } catch (RejectedExecutionException e) {
+                // Cerrando: se guarda aquí
+            }
+        }
+        guardarDesalojada(sesion);
+    }
+
+    private void guardarDesalojada(Sesion sesion) {
+        guardar(sesion);
+        // Un pedido que todavía tenía la sesión pudo registrar un turno mientras se guardaba
+        if (sesion.isModificada()) {
+            guardar(sesion);
+        }
+        porGuardar.remove(sesion.id, sesion);
+    }
+
+    private void guardar(Sesion sesion) {
+        String resumen;
+        String turnos;
+        synchronized (sesion) {
+            if (!sesion.modificada) {
+                return;
+            }
+            try {
+                turnos = objectMapper.writeValueAsString(sesion.turnos);
+            } catch (Exception e) {
+                errores.incrementAndGet();
+                return;
+            }
+            resumen = sesion.resumen.toString();
+            sesion.modificada = false;
+        }
+        try {
+            jdbcTemplate.update(SQL_GUARDAR, sesion.id, resumen, turnos);
+            guardadas.incrementAndGet();
+        } catch (Exception e) {
+            errores.incrementAndGet();
+            System.err.println("Error guardando la sesión de chat " + sesion.id + ": " + e.getMessage());
+        }
+    }
+
+    private Sesion cargar(String idSesion) {
+        try {
+            List<String[]> filas = jdbcTemplate.query(SQL_CARGAR,
+                (fila, numero) -> new String[]{fila.getString(1), fila.getString(2)}, idSesion);
+            if (filas.isEmpty()) {
+                return null;
+            }
+            Sesion cargada = new Sesion(idSesion);
+            cargada.resumen.append(filas.get(0)[0] != null ? filas.get(0)[0] : "");
+            cargada.turnos.addAll(objectMapper.readValue(filas.get(0)[1], new TypeReference<List<ChatMessage>>() {}));
+            recuperadas.incrementAndGet();
+            // Si otro pedido la cargó al mismo tiempo, se usa esa
+            return agregar(cargada);
+        } catch (Exception e) {
+            errores.incrementAndGet();
+            System.err.println("Error cargando la sesión de chat " + idSesion + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Mientras los turnos pasen del presupuesto, el más viejo pasa al resumen (recortado). El resumen
+     * a su vez se limita a un tercio del presupuesto, descartando sus líneas más viejas.
+     */
+    private void compactar(Sesion sesion) {
+        int tokens = 0;
+        for (ChatMessage turno : sesion.turnos) {
+            tokens += tokens(turno);
+        }
+        boolean compactada = false;
+        // Siempre quedan al menos el último mensaje y su respuesta
+        while (tokens > maxTokens && sesion.turnos.size() > 2) {
+            ChatMessage turno = sesion.turnos.removeFirst();
+            tokens -= tokens(turno);
+            sesion.resumen.append("assistant".equals(turno.getRole()) ? "- Asistente: " : "- Usuario: ")
+                    .append(recortar(turno.getContent())).append('\n');
+            compactada = true;
+        }
+        int maximoResumen = maxTokens / 3 * CARACTERES_POR_TOKEN;
+        while (sesion.resumen.length() > maximoResumen) {
+            int finDeLinea = sesion.resumen.indexOf("\n");
+            sesion.resumen.delete(0, finDeLinea < 0 ? sesion.resumen.length() : finDeLinea + 1);
+        }
+        if (compactada) {
+            compactaciones.incrementAndGet();
+        }
+    }
+
+    private static int tokens(ChatMessage turno) {
+        // Unos tokens fijos por mensaje por el rol y el formato
+        return (turno.getContent() != null ? turno.getContent().length() : 0) / CARACTERES_POR_TOKEN + 4;
+    }
+
+    private static String recortar(String texto) {
+        String limpio = texto == null ? "" : texto.replaceAll("\\s+", " ").trim();
+        return limpio.length() <= MAXIMO_POR_LINEA_RESUMEN ? limpio : limpio.substring(0, MAXIMO_POR_LINEA_RESUMEN) + "…";
+    }
+
+    public static final class Sesion {
+        private final String id;
+        private final Deque<ChatMessage> turnos = new ArrayDeque<>();
+        private final StringBuilder resumen = new StringBuilder();
+        private volatile long ultimoAcceso = System.currentTimeMillis();
+        // Cambió desde la última vez que se guardó en la BD
+        private boolean modificada = false;
+
+        private Sesion(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        private synchronized boolean isModificada() {
+            return modificada;
+        }
+
+        /**
+         * Lo que se manda al modelo como historial: el resumen de lo compactado (si hay) y los turnos recientes.
+         */
+        public synchronized List<ChatMessage> historial() {
+            List<ChatMessage> historial = new ArrayList<>(turnos.size() + 1);
+            if (resumen.length() > 0) {
+                historial.add(new ChatMessage("system", "Resumen de la conversación anterior:\n" + resumen));
+            }
+            historial.addAll(turnos);
+            return historial;
+        }
+    }
+}
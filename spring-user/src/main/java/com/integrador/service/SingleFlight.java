@@ -0,0 +1,66 @@
+package com.integrador.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Agrupa llamadas concurrentes con la misma clave: solo la primera ejecuta la tarea
+ * y las demás esperan y comparten su resultado (o su excepción).
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> enCurso = new ConcurrentHashMap<>();
+    private final AtomicLong ejecuciones = new AtomicLong();
+    private final AtomicLong compartidas = new AtomicLong();
+
+    public V ejecutar(K clave, Supplier<V> tarea) {
+        CompletableFuture<V> propia = new CompletableFuture<>();
+        CompletableFuture<V> existente = enCurso.putIfAbsent(clave, propia);
+        if (existente != null) {
+            compartidas.incrementAndGet();
+            return esperar(existente);
+        }
+
+        ejecuciones.incrementAndGet();
+        try {
+            V resultado = tarea.get();
+            propia.complete(resultado);
+            return resultado;
+        } catch (RuntimeException | Error e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propia);
+        }
+    }
+
+    public int getEnCurso() {
+        return enCurso.size();
+    }
+
+    public long getEjecuciones() {
+        return ejecuciones.get();
+    }
+
+    public long getCompartidas() {
+        return compartidas.get();
+    }
+
+    private V esperar(CompletableFuture<V> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if (causa instanceof Error) {
+                throw (Error) causa;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.integrador.service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+/**
+ * Extrae vehicleJson o faultstring de una respuesta SOAP en una sola pasada con StAX,
+ * sin construir un DOM. La fábrica se configura una vez y se comparte entre hilos.
+ */
+final class SoapRespuestaParser {
+
+    private static final XMLInputFactory FACTORY = crearFactory();
+
+    private SoapRespuestaParser() {
+    }
+
+    private static XMLInputFactory crearFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // Las respuestas SOAP no usan DTD: deshabilitarlas evita XXE y trabajo innecesario
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    static Resultado parsear(String soap) throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(new StringReader(soap));
+        String faultCode = null;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String nombre = reader.getLocalName();
+                if ("vehicleJson".equals(nombre) || "VehicleJson".equals(nombre)) {
+                    return new Resultado(reader.getElementText(), null, null);
+                }
+                if ("faultstring".equals(nombre)) {
+                    // faultstring es lo más específico del Fault: no hace falta seguir leyendo
+                    return new Resultado(null, reader.getElementText(), faultCode);
+                }
+                if ("faultcode".equals(nombre)) {
+                    faultCode = reader.getElementText();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new Resultado(null, null, faultCode);
+    }
+
+    /**
+     * Decodifica en una sola pasada las entidades XML que a veces llegan doblemente escapadas
+     * dentro del texto (&amp;quot; etc.). Si no hay '&' devuelve el mismo String sin copiarlo.
+     */
+    static String decodificarEntidades(String texto) {
+        int amp = texto.indexOf('&');
+        if (amp == -1) {
+            return texto;
+        }
+        StringBuilder sb = new StringBuilder(texto.length());
+        sb.append(texto, 0, amp);
+        int i = amp;
+        while (i < texto.length()) {
+            char c = texto.charAt(i);
+            if (c == '&') {
+                if (texto.startsWith("&quot;", i)) {
+                    sb.append('"');
+                    i += 6;
+                    continue;
+                } else if (texto.startsWith("&amp;", i)) {
+                    sb.append('&');
+                    i += 5;
+                    continue;
+                } else if (texto.startsWith("&lt;", i)) {
+                    sb.append('<');
+                    i += 4;
+                    continue;
+                } else if (texto.startsWith("&gt;", i)) {
+                    sb.append('>');
+                    i += 4;
+                    continue;
+                } else if (texto.startsWith("&apos;", i)) {
+                    sb.append('\'');
+                    i += 6;
+                    continue;
+                }
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    static final class Resultado {
+        private final String vehicleJson;
+        private final String faultString;
+        private final String faultCode;
+
+        private Resultado(String vehicleJson, String faultString, String faultCode) {
+            this.vehicleJson = vehicleJson;
+            this.faultString = faultString;
+            this.faultCode = faultCode;
+        }
+
+        String getVehicleJson() {
+            return vehicleJson;
+        }
+
+        String getFaultString() {
+            return faultString;
+        }
+
+        String getFaultCode() {
+            return faultCode;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.integrador.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Normalización de texto en español para la búsqueda: minúsculas, sin tildes ni diéresis
+ * ("Camión" y "camion" son el mismo término), sin palabras vacías y con un recorte simple de plurales.
+ * Se aplica igual al indexar y al consultar.
+ */
+public final class TextoBusqueda {
+
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{Alnum}]+");
+
+    private static final Set<String> PALABRAS_VACIAS = Set.of(
+            "a", "al", "con", "de", "del", "el", "en", "es", "la", "las", "lo", "los", "muy", "o", "para",
+            "por", "que", "se", "sin", "su", "sus", "un", "una", "unos", "unas", "y");
+
+    private TextoBusqueda() {
+    }
+
+    /**
+     * Minúsculas y sin marcas diacríticas: "Ñandú Éxito" → "nandu exito".
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String descompuesto = Normalizer.normalize(texto.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return MARCAS_DIACRITICAS.matcher(descompuesto).replaceAll("");
+    }
+
+    /**
+     * Términos de búsqueda de un texto, en orden y con repeticiones (cuentan para la frecuencia).
+     */
+    public static List<String> tokenizar(String texto) {
+        List<String> terminos = new ArrayList<>();
+        for (String palabra : SEPARADORES.split(normalizar(texto))) {
+            if (palabra.isEmpty() || PALABRAS_VACIAS.contains(palabra)) {
+                continue;
+            }
+            terminos.add(raiz(palabra));
+        }
+        return terminos;
+    }
+
+    /**
+     * Recorte ligero de plurales: "camionetas" → "camioneta", "motores" → "motor", "camiones" → "camion".
+     * Los números y las palabras cortas (modelos como "rav4", "cx5") no se tocan.
+     */
+    static String raiz(String palabra) {
+        int n = palabra.length();
+        if (n <= 3 || Character.isDigit(palabra.charAt(n - 1))) {
+            return palabra;
+        }
+        if (n > 5 && palabra.endsWith("es") && !esVocal(palabra.charAt(n - 3))) {
+            return palabra.substring(0, n - 2);
+        }
+        if (n > 4 && palabra.endsWith("s") && esVocal(palabra.charAt(n - 2))) {
+            return palabra.substring(0, n - 1);
+        }
+        return palabra;
+    }
+
+    private static boolean esVocal(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+}
@@ -0,0 +1,192 @@
+package com.integrador.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Trie de prefijos inmutable para el autocompletado. Cada nodo guarda sus hijos en arreglos ordenados
+ * (búsqueda binaria por carácter) y las mejores sugerencias de su subárbol ya calculadas, así que una
+ * consulta solo recorre los caracteres del prefijo. Cada frase se indexa desde el inicio de cada palabra:
+ * "corolla" sugiere "Toyota Corolla".
+ */
+public final class TrieAutocompletado {
+
+    public static final int MAX_SUGERENCIAS = 10;
+
+    private static final char[] SIN_ETIQUETAS = new char[0];
+    private static final Nodo[] SIN_HIJOS = new Nodo[0];
+    private static final int[] SIN_SUGERENCIAS = new int[0];
+
+    private final Nodo raiz;
+    private final Sugerencia[] sugerencias;
+    private final int nodos;
+
+    private TrieAutocompletado(Nodo raiz, Sugerencia[] sugerencias, int nodos) {
+        this.raiz = raiz;
+        this.sugerencias = sugerencias;
+        this.nodos = nodos;
+    }
+
+    /**
+     * Construye el trie a partir de frases con su frecuencia. Las frases que coinciden al normalizarlas
+     * se combinan sumando sus frecuencias; se muestra la primera forma recibida.
+     */
+    public static TrieAutocompletado construir(Map<String, Long> frecuencias) {
+        Map<String, Sugerencia> porClave = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entrada : frecuencias.entrySet()) {
+            String clave = clave(entrada.getKey());
+            if (clave.isEmpty()) {
+                continue;
+            }
+            Sugerencia existente = porClave.get(clave);
+            long frecuencia = entrada.getValue() != null ? entrada.getValue() : 0;
+            porClave.put(clave, existente == null
+                    ? new Sugerencia(entrada.getKey().trim().replaceAll("\\s+", " "), frecuencia)
+                    : new Sugerencia(existente.texto, existente.frecuencia + frecuencia));
+        }
+
+        // Se insertan de mayor a menor frecuencia: las primeras que llegan a un nodo son sus mejores
+        List<Map.Entry<String, Sugerencia>> ordenadas = new ArrayList<>(porClave.entrySet());
+        ordenadas.sort(Comparator.comparing((Map.Entry<String, Sugerencia> e) -> e.getValue().frecuencia).reversed()
+                .thenComparing(Map.Entry::getKey));
+        Sugerencia[] sugerencias = new Sugerencia[ordenadas.size()];
+        NodoMutable raiz = new NodoMutable();
+        int[] contador = {1};
+        for (int i = 0; i < ordenadas.size(); i++) {
+            sugerencias[i] = ordenadas.get(i).getValue();
+            String clave = ordenadas.get(i).getKey();
+            for (int inicio = 0; inicio < clave.length(); inicio++) {
+                if (inicio == 0 || clave.charAt(inicio - 1) == ' ') {
+                    insertar(raiz, clave, inicio, i, contador);
+                }
+            }
+        }
+        return new TrieAutocompletado(raiz.congelar(), sugerencias, contador[0]);
+    }
+
+    /**
+     * Sugerencias cuyo texto (o alguna de sus palabras) empieza por el prefijo, de más a menos frecuente.
+     */
+    public List<Sugerencia> sugerir(String prefijo, int limite) {
+        String clave = clave(prefijo);
+        if (clave.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Nodo nodo = raiz;
+        for (int i = 0; i < clave.length() && nodo != null; i++) {
+            nodo = nodo.hijo(clave.charAt(i));
+        }
+        if (nodo == null) {
+            return Collections.emptyList();
+        }
+        int cantidad = Math.min(limite, nodo.mejores.length);
+        List<Sugerencia> resultado = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            resultado.add(sugerencias[nodo.mejores[i]]);
+        }
+        return resultado;
+    }
+
+    public int getTamano() {
+        return sugerencias.length;
+    }
+
+    public int getNodos() {
+        return nodos;
+    }
+
+    // Misma normalización que la búsqueda (sin tildes, minúsculas) y espacios simples
+    static String clave(String texto) {
+        return TextoBusqueda.normalizar(texto).replaceAll("[^\\p{Alnum}]+", " ").trim();
+    }
+
+    private static void insertar(NodoMutable raiz, String clave, int inicio, int sugerencia, int[] contador) {
+        NodoMutable nodo = raiz;
+        for (int i = inicio; i < clave.length(); i++) {
+            char c = clave.charAt(i);
+            NodoMutable hijo = nodo.hijos.get(c);
+            if (hijo == null) {
+                hijo = new NodoMutable();
+                nodo.hijos.put(c, hijo);
+                contador[0]++;
+            }
+            hijo.agregar(sugerencia);
+            nodo = hijo;
+        }
+    }
+
+    public static final class Sugerencia {
+        private final String texto;
+        private final long frecuencia;
+
+        private Sugerencia(String texto, long frecuencia) {
+            this.texto = texto;
+            this.frecuencia = frecuencia;
+        }
+
+        public String getTexto() {
+            return texto;
+        }
+
+        public long getFrecuencia() {
+            return frecuencia;
+        }
+    }
+
+    private static final class Nodo {
+        private final char[] etiquetas;
+        private final Nodo[] hijos;
+        private final int[] mejores;
+
+        private Nodo(char[] etiquetas, Nodo[] hijos, int[] mejores) {
+            this.etiquetas = etiquetas;
+            this.hijos = hijos;
+            this.mejores = mejores;
+        }
+
+        private Nodo hijo(char c) {
+            int posicion = Arrays.binarySearch(etiquetas, c);
+            return posicion >= 0 ? hijos[posicion] : null;
+        }
+    }
+
+    // Solo se usa durante la construcción
+    private static final class NodoMutable {
+        private final TreeMap<Character, NodoMutable> hijos = new TreeMap<>();
+        private final int[] mejores = new int[MAX_SUGERENCIAS];
+        private int cantidad = 0;
+
+        private void agregar(int sugerencia) {
+            if (cantidad == MAX_SUGERENCIAS) {
+                return;
+            }
+            for (int i = 0; i < cantidad; i++) {
+                if (mejores[i] == sugerencia) {
+                    return;
+                }
+            }
+            mejores[cantidad++] = sugerencia;
+        }
+
+        private Nodo congelar() {
+            if (hijos.isEmpty()) {
+                return new Nodo(SIN_ETIQUETAS, SIN_HIJOS, cantidad == 0 ? SIN_SUGERENCIAS : Arrays.copyOf(mejores, cantidad));
+            }
+            char[] etiquetas = new char[hijos.size()];
+            Nodo[] congelados = new Nodo[hijos.size()];
+            int i = 0;
+            for (Map.Entry<Character, NodoMutable> entrada : hijos.entrySet()) {
+                etiquetas[i] = entrada.getKey();
+                congelados[i] = entrada.getValue().congelar();
+                i++;
+            }
+            return new Nodo(etiquetas, congelados, Arrays.copyOf(mejores, cantidad));
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import com.integrador.entity.Imagen;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Genera en segundo plano versiones reducidas de las imágenes de los anuncios (thumb, medium, full),
+ * re-codificadas a JPEG y sin metadatos, en uploads/variantes/<archivo>-<variante>.jpg.
+ * Los nombres son deterministas, así que las URLs se deducen de la imagen original sin columnas nuevas.
+ * Las imágenes del catálogo en memoria son compartidas entre pedidos: sus variantes se asignan al publicarse
+ * cada versión del catálogo y al terminar de generarse, nunca desde los hilos de los pedidos.
+ */
+@Service
+public class VariantesImagenService implements CatalogoAnunciosCache.Oyente {
+
+    static final String DIRECTORIO_VARIANTES = "variantes";
+
+    // Ancho máximo de cada variante; nunca se amplía una imagen más pequeña
+    private static final Map<String, Integer> ANCHOS = new LinkedHashMap<>();
+
+    static {
+        ANCHOS.put("thumb", 320);
+        ANCHOS.put("medium", 800);
+        ANCHOS.put("full", 1600);
+    }
+
+    @Autowired
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    @Value("${app.upload.dir:uploads}")
+    private String uploadDir;
+
+    @Value("${imagenes.variantes.calidad:0.8}")
+    private float calidad = 0.8f;
+
+    // Las subidas no son de confianza: una imagen pequeña en bytes puede declarar dimensiones enormes
+    @Value("${imagenes.variantes.max-pixeles:50000000}")
+    private long maxPixeles = 50_000_000L;
+
+    @Value("${imagenes.variantes.reintento-fallidas-minutos:60}")
+    private long reintentoFallidasMinutos = 60;
+
+    private final ThreadPoolExecutor trabajadores;
+
+    // Archivos con variantes ya generadas, en cola o que no se pudieron decodificar (con el momento del fallo)
+    private final Map<String, Map<String, String>> generadas = new ConcurrentHashMap<>();
+    private final Set<String> pendientes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> fallidas = new ConcurrentHashMap<>();
+
+    // Imágenes del catálogo vigente por archivo, para asignarles las variantes cuando terminen de generarse
+    private volatile Map<String, List<Imagen>> imagenesCatalogo = Map.of();
+
+    private final AtomicLong generadasTotal = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+
+    public VariantesImagenService(@Value("${imagenes.variantes.hilos:2}") int hilos,
+                                  @Value("${imagenes.variantes.cola:200}") int capacidadCola) {
+        this.trabajadores = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola), r -> {
+                    Thread hilo = new Thread(r, "variantes-imagen");
+                    hilo.setDaemon(true);
+                    hilo.setPriority(Thread.MIN_PRIORITY);
+                    return hilo;
+                });
+    }
+
+    @PostConstruct
+    public void registrar() {
+        catalogoAnunciosCache.registrarOyente(this);
+    }
+
+    @PreDestroy
+    public void detener() {
+        trabajadores.shutdownNow();
+    }
+
+    /**
+     * Programa la generación de variantes de las imágenes cuando se confirme la transacción actual.
+     */
+    public void programar(Collection<Imagen> imagenes) {
+        if (imagenes == null || imagenes.isEmpty()) {
+            return;
+        }
+        Collection<String> archivos = imagenes.stream().map(Imagen::getUrlImagen).map(this::nombreArchivo)
+                .filter(nombre -> nombre != null).toList();
+        DespuesDelCommit.ejecutar(() -> archivos.forEach(this::encolar));
+    }
+
+    @Override
+    public void catalogoCargado(CatalogoAnunciosCache.Snapshot snapshot) {
+        Map<String, List<Imagen>> porArchivo = new HashMap<>();
+        for (Anuncio anuncio : snapshot.getAnuncios()) {
+            if (anuncio.getImagenes() == null) {
+                continue;
+            }
+            for (Imagen imagen : anuncio.getImagenes()) {
+                String archivo = nombreArchivo(imagen.getUrlImagen());
+                if (archivo != null) {
+                    porArchivo.computeIfAbsent(archivo, a -> new ArrayList<>()).add(imagen);
+                }
+            }
+        }
+        // Primero se publica el índice y después se completa: una variante que termina mientras tanto
+        // la asigna el trabajador (ve el índice nuevo) o este hilo (ve la variante en generadas)
+        imagenesCatalogo = porArchivo;
+        completar(snapshot.getAnuncios());
+    }
+
+    /**
+     * Completa las URLs de variantes de las imágenes de los anuncios. Las imágenes que aún no tienen
+     * variantes (por ejemplo, subidas antes de este cambio) se encolan para generarlas. Solo para anuncios
+     * leídos en el propio pedido: los del catálogo en memoria ya vienen completos.
+     */
+    public void completar(Collection<Anuncio> anuncios) {
+        for (Anuncio anuncio : anuncios) {
+            if (anuncio.getImagenes() == null) {
+                continue;
+            }
+            for (Imagen imagen : anuncio.getImagenes()) {
+                Map<String, String> variantes = obtenerVariantes(imagen.getUrlImagen());
+                if (imagen.getVariantes() != variantes) {
+                    imagen.setVariantes(variantes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Borra las variantes de una imagen cuyo archivo original se eliminó.
+     */
+    public void eliminarVariantes(String urlImagen) {
+        String archivo = nombreArchivo(urlImagen);
+        if (archivo == null) {
+            return;
+        }
+        generadas.remove(archivo);
+        fallidas.remove(archivo);
+        for (String variante : ANCHOS.keySet()) {
+            try {
+                Files.deleteIfExists(rutaVariante(archivo, variante));
+            } catch (IOException e) {
+                System.err.println("Error al eliminar variante " + variante + " de " + archivo + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> obtenerEstadisticas() {
+        Map<String, Object> estadisticas = new HashMap<>();
+        estadisticas.put("generadas", generadasTotal.get());
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("descartadas", descartadas.get());
+        estadisticas.put("rechazadas", rechazadas.get());
+        estadisticas.put("fallidas", fallidas.size());
+        estadisticas.put("enCola", trabajadores.getQueue().size());
+        return estadisticas;
+    }
+
+    private Map<String, String> obtenerVariantes(String urlImagen) {
+        String archivo = nombreArchivo(urlImagen);
+        if (archivo == null) {
+            return null;
+        }
+        Map<String, String> variantes = generadas.get(archivo);
+        if (variantes != null || pendientes.contains(archivo)) {
+            return variantes;
+        }
+        Long fallo = fallidas.get(archivo);
+        if (fallo != null) {
+            if (System.currentTimeMillis() - fallo < reintentoFallidasMinutos * 60_000L) {
+                return null;
+            }
+            // Pudo ser un error pasajero (disco lleno, archivo aún copiándose): se vuelve a intentar
+            fallidas.remove(archivo, fallo);
+        }
+        // Primera vez que se ve este archivo en este proceso: puede que ya se generaran en un arranque anterior
+        // (thumb es la última que se escribe)
+        if (Files.exists(rutaVariante(archivo, "thumb"))) {
+            variantes = urls(archivo);
+            generadas.put(archivo, variantes);
+            return variantes;
+        }
+        encolar(archivo);
+        return null;
+    }
+
+    private void encolar(String archivo) {
+        if (!pendientes.add(archivo)) {
+            return;
+        }
+        try {
+            trabajadores.execute(() -> {
+                try {
+                    generar(archivo);
+                } finally {
+                    pendientes.remove(archivo);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Cola llena: se reintentará la próxima vez que se liste la imagen
+            pendientes.remove(archivo);
+            descartadas.incrementAndGet();
+        }
+    }
+
+    void generar(String archivo) {
+        Path original = Paths.get(uploadDir, archivo);
+        try {
+            BufferedImage imagen = Files.exists(original) ? leer(original) : null;
+            if (imagen == null) {
+                // Formato que ImageIO no sabe leer (p. ej. WebP/HEIC), demasiado grande o archivo inexistente
+                fallidas.put(archivo, System.currentTimeMillis());
+                return;
+            }
+            Files.createDirectories(rutaVariante(archivo, "thumb").getParent());
+            // De mayor a menor, reduciendo cada vez desde la variante anterior
+            BufferedImage fuente = imagen;
+            String[] nombres = ANCHOS.keySet().toArray(new String[0]);
+            for (int i = nombres.length - 1; i >= 0; i--) {
+                fuente = reducir(fuente, ANCHOS.get(nombres[i]));
+                escribirJpeg(fuente, rutaVariante(archivo, nombres[i]));
+            }
+            Map<String, String> variantes = urls(archivo);
+            generadas.put(archivo, variantes);
+            generadasTotal.incrementAndGet();
+            for (Imagen enCatalogo : imagenesCatalogo.getOrDefault(archivo, List.of())) {
+                enCatalogo.setVariantes(variantes);
+            }
+        } catch (Exception e) {
+            fallidas.put(archivo, System.currentTimeMillis());
+            errores.incrementAndGet();
+            System.err.println("Error generando variantes de " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    // Lee las dimensiones de la cabecera antes de decodificar, y decodifica submuestreando lo que sobra
+    // respecto de la variante más grande; null si el formato no se conoce o la imagen excede el límite
+    private BufferedImage leer(Path original) throws IOException {
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> lectores = entrada != null ? ImageIO.getImageReaders(entrada) : null;
+            if (lectores == null || !lectores.hasNext()) {
+                return null;
+            }
+            ImageReader reader = lectores.next();
+            try {
+                reader.setInput(entrada, true, true);
+                int ancho = reader.getWidth(0);
+                int alto = reader.getHeight(0);
+                if ((long) ancho * alto > maxPixeles) {
+                    rechazadas.incrementAndGet();
+                    System.err.println("Imagen " + original.getFileName() + " rechazada: " + ancho + "x" + alto + " píxeles");
+                    return null;
+                }
+                ImageReadParam parametros = reader.getDefaultReadParam();
+                int paso = Math.max(1, ancho / ANCHOS.get("full"));
+                parametros.setSourceSubsampling(paso, paso, 0, 0);
+                return reader.read(0, parametros);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage reducir(BufferedImage imagen, int anchoMaximo) {
+        double escala = Math.min(1.0, (double) anchoMaximo / imagen.getWidth());
+        int ancho = Math.max(1, (int) Math.round(imagen.getWidth() * escala));
+        int alto = Math.max(1, (int) Math.round(imagen.getHeight() * escala));
+        // Siempre se copia a RGB: descarta alfa y perfiles de color para que el JPEG sea estándar
+        BufferedImage destino = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = destino.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, ancho, alto);
+            g.drawImage(imagen, 0, 0, ancho, alto, null);
+        } finally {
+            g.dispose();
+        }
+        return destino;
+    }
+
+    // Se escribe sin metadatos (EXIF, GPS) y se publica con un move atómico para no servir archivos a medias
+    private void escribirJpeg(BufferedImage imagen, Path destino) throws IOException {
+        Path temporal = destino.resolveSibling("." + destino.getFileName() + ".tmp");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream salida = ImageIO.createImageOutputStream(temporal.toFile())) {
+            writer.setOutput(salida);
+            ImageWriteParam parametros = writer.getDefaultWriteParam();
+            parametros.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parametros.setCompressionQuality(calidad);
+            parametros.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(imagen, null, null), parametros);
+        } finally {
+            writer.dispose();
+        }
+        try {
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Map<String, String> urls(String archivo) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        for (String variante : ANCHOS.keySet()) {
+            urls.put(variante, "/uploads/" + DIRECTORIO_VARIANTES + "/" + nombreVariante(archivo, variante));
+        }
+        return Collections.unmodifiableMap(urls);
+    }
+
+    private Path rutaVariante(String archivo, String variante) {
+        return Paths.get(uploadDir, DIRECTORIO_VARIANTES, nombreVariante(archivo, variante));
+    }
+
+    static String nombreVariante(String archivo, String variante) {
+        int punto = archivo.lastIndexOf('.');
+        String base = punto > 0 ? archivo.substring(0, punto) : archivo;
+        return base + "-" + variante + ".jpg";
+    }
+
+    private String nombreArchivo(String urlImagen) {
+        if (urlImagen == null || !urlImagen.startsWith("/uploads/")) {
+            return null;
+        }
+        String archivo = urlImagen.substring("/uploads/".length());
+        return archivo.isEmpty() || archivo.contains("..") ? null : archivo;
+    }
+}
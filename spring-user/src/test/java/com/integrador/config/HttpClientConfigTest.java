@@ -0,0 +1,132 @@
+package com.integrador.config;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpClientConfigTest {
+
+    private HttpClientConfig httpClientConfig;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private HttpServer servidor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        httpClientConfig = new HttpClientConfig();
+        ReflectionTestUtils.setField(httpClientConfig, "placaApiUrl", "https://www.placaapi.pe/api/reg.asmx");
+        ReflectionTestUtils.setField(httpClientConfig, "deepseekApiUrl", "https://api.deepseek.com/v1/chat/completions");
+        ReflectionTestUtils.setField(httpClientConfig, "maxConexiones", 50);
+        ReflectionTestUtils.setField(httpClientConfig, "maxConexionesPorRuta", 10);
+        ReflectionTestUtils.setField(httpClientConfig, "maxConexionesPlaca", 8);
+        ReflectionTestUtils.setField(httpClientConfig, "maxConexionesDeepseek", 20);
+        ReflectionTestUtils.setField(httpClientConfig, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(httpClientConfig, "poolTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(httpClientConfig, "ttlConexionSegundos", 300L);
+        ReflectionTestUtils.setField(httpClientConfig, "inactividadSegundos", 30L);
+        ReflectionTestUtils.setField(httpClientConfig, "readTimeoutPlacaMs", 15000L);
+        ReflectionTestUtils.setField(httpClientConfig, "readTimeoutDeepseekMs", 60000L);
+        connectionManager = httpClientConfig.httpConnectionManager();
+        httpClient = httpClientConfig.httpClient(connectionManager);
+
+        servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/rapida", intercambio -> {
+            byte[] cuerpo = "ok".getBytes(StandardCharsets.UTF_8);
+            intercambio.sendResponseHeaders(200, cuerpo.length);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(cuerpo);
+            }
+        });
+        // Un byte cada 100 ms: nunca se pasa del read timeout, pero tarda 5 s en total
+        servidor.createContext("/goteo", intercambio -> {
+            intercambio.sendResponseHeaders(200, 0);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                for (int i = 0; i < 50; i++) {
+                    salida.write('x');
+                    salida.flush();
+                    Thread.sleep(100);
+                }
+            } catch (Exception e) {
+                // El cliente abortó
+            }
+        });
+        servidor.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        servidor.stop(0);
+        httpClient.close();
+        connectionManager.close();
+        httpClientConfig.detener();
+    }
+
+    @Test
+    void testPool_LimitesGeneralesYPorIntegracion() {
+        assertEquals(50, connectionManager.getMaxTotal());
+        assertEquals(10, connectionManager.getDefaultMaxPerRoute());
+        assertEquals(8, connectionManager.getMaxPerRoute(ruta("www.placaapi.pe")));
+        assertEquals(20, connectionManager.getMaxPerRoute(ruta("api.deepseek.com")));
+    }
+
+    @Test
+    void testPlazo_AbortaLaRespuestaQueLlegaDeAPocos() {
+        RestTemplate restTemplate = new RestTemplate(httpClientConfig.crearRequestFactory(httpClient, 1000, 1000));
+
+        long inicio = System.currentTimeMillis();
+        // Según el momento del corte falla la ejecución (ResourceAccessException) o la lectura del cuerpo
+        assertThrows(RestClientException.class, () -> restTemplate.getForObject(url("/goteo"), String.class));
+        assertTrue(System.currentTimeMillis() - inicio < 4000);
+
+        // La conexión abortada no vuelve al pool y las siguientes llamadas funcionan
+        assertEquals("ok", restTemplate.getForObject(url("/rapida"), String.class));
+        assertEquals(0, connectionManager.getTotalStats().getLeased());
+    }
+
+    @Test
+    void testPlazo_LasConexionesTerminadasVuelvenAlPool() throws Exception {
+        RestTemplate restTemplate = new RestTemplate(httpClientConfig.crearRequestFactory(httpClient, 5000, 1000));
+        assertEquals("ok", restTemplate.getForObject(url("/rapida"), String.class));
+
+        // El corte vence después de la respuesta y no toca la conexión reutilizable
+        Thread.sleep(1500);
+        assertEquals(1, connectionManager.getTotalStats().getAvailable());
+        assertEquals("ok", restTemplate.getForObject(url("/rapida"), String.class));
+        assertEquals(1, connectionManager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    void testPlazo_SeCancelaAlCerrarLaRespuesta() {
+        RestTemplate restTemplate = new RestTemplate(httpClientConfig.crearRequestFactory(httpClient, 5000, 60_000));
+        ScheduledThreadPoolExecutor plazos = (ScheduledThreadPoolExecutor) ReflectionTestUtils.getField(httpClientConfig, "plazos");
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ok", restTemplate.getForObject(url("/rapida"), String.class));
+        }
+        // Ningún corte queda en la cola esperando su minuto
+        assertEquals(0, plazos.getQueue().size());
+    }
+
+    private String url(String ruta) {
+        return "http://127.0.0.1:" + servidor.getAddress().getPort() + ruta;
+    }
+
+    private static HttpRoute ruta(String host) {
+        return new HttpRoute(new HttpHost("https", host, 443), null, true);
+    }
+}
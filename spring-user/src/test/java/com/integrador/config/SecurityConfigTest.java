@@ -0,0 +1,69 @@
+package com.integrador.config;
+
+import com.integrador.controller.PublicController;
+import com.integrador.service.AlmacenImagenesService;
+import com.integrador.service.CatalogoAnunciosCache;
+import com.integrador.service.ContadoresAnuncios;
+import com.integrador.service.FragmentosAnuncios;
+import com.integrador.service.VariantesImagenService;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(PublicController.class)
+@Import({SecurityConfig.class, JwtExceptionHandler.class})
+class SecurityConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private JwtDecoder jwtDecoder;
+
+    @MockitoBean
+    private PoolingHttpClientConnectionManager httpConnectionManager;
+
+    @MockitoBean
+    private AlmacenImagenesService almacenImagenesService;
+
+    @MockitoBean
+    private VariantesImagenService variantesImagenService;
+
+    @MockitoBean
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    @MockitoBean
+    private FragmentosAnuncios fragmentosAnuncios;
+
+    @MockitoBean
+    private ContadoresAnuncios contadoresAnuncios;
+
+    @Test
+    void testEstadisticas_SinAutenticacionNoSeResponden() throws Exception {
+        mockMvc.perform(get("/api/public/http-pool")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/public/imagenes")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/public/catalogo")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/plate-search/cache/stats")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/chat/estadisticas")).andExpect(status().isUnauthorized());
+        // El resto de /api/public sigue abierto
+        mockMvc.perform(get("/api/public/health")).andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser
+    void testEstadisticas_ConAutenticacion() throws Exception {
+        when(httpConnectionManager.getTotalStats()).thenReturn(new PoolStats(1, 0, 9, 50));
+        mockMvc.perform(get("/api/public/http-pool")).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,109 @@
+package com.integrador.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integrador.entity.Anuncio;
+import com.integrador.service.AnuncioService;
+import com.integrador.service.ContadoresAnuncios;
+import com.integrador.service.FragmentosAnuncios;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnuncioControllerTest {
+
+    @Mock
+    private AnuncioService anuncioService;
+
+    @Mock
+    private ContadoresAnuncios contadoresAnuncios;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final AnuncioController anuncioController = new AnuncioController();
+
+    @BeforeEach
+    void setUp() {
+        FragmentosAnuncios fragmentosAnuncios = new FragmentosAnuncios();
+        ReflectionTestUtils.setField(fragmentosAnuncios, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(anuncioController, "anuncioService", anuncioService);
+        ReflectionTestUtils.setField(anuncioController, "contadoresAnuncios", contadoresAnuncios);
+        ReflectionTestUtils.setField(anuncioController, "fragmentosAnuncios", fragmentosAnuncios);
+        ReflectionTestUtils.setField(anuncioController, "objectMapper", objectMapper);
+    }
+
+    @Test
+    void testObtenerAnuncioPorId_RespondeElFragmentoEnStreaming() throws Exception {
+        when(anuncioService.obtenerAnuncioPorId(7L)).thenReturn(crearAnuncio(7L, "Kia Rio"));
+        when(contadoresAnuncios.vistas(7L)).thenReturn(12L);
+
+        ResponseEntity<StreamingResponseBody> respuesta = anuncioController.obtenerAnuncioPorId(7L);
+
+        assertEquals(200, respuesta.getStatusCode().value());
+        assertEquals(MediaType.APPLICATION_JSON, respuesta.getHeaders().getContentType());
+        JsonNode json = leer(respuesta);
+        assertTrue(json.get("success").asBoolean());
+        assertEquals(12, json.at("/estadisticas/vistas").asInt());
+        assertEquals("Kia Rio", json.at("/anuncio/modelo").asText());
+        verify(contadoresAnuncios).registrarVista(7L);
+    }
+
+    @Test
+    void testErrores_SeRespondenComoJson() throws Exception {
+        when(anuncioService.obtenerAnuncioPorId(8L)).thenThrow(new IllegalArgumentException("Anuncio no encontrado"));
+        when(anuncioService.obtenerMasVistos(null)).thenThrow(new RuntimeException("sin conexión"));
+
+        ResponseEntity<StreamingResponseBody> noEncontrado = anuncioController.obtenerAnuncioPorId(8L);
+        assertEquals(404, noEncontrado.getStatusCode().value());
+        assertEquals("Anuncio no encontrado", leer(noEncontrado).get("error").asText());
+
+        ResponseEntity<StreamingResponseBody> fallo = anuncioController.obtenerMasVistos(null);
+        assertEquals(500, fallo.getStatusCode().value());
+        assertEquals("Error al obtener los anuncios más vistos: sin conexión", leer(fallo).get("error").asText());
+
+        ResponseEntity<StreamingResponseBody> sinConsulta = anuncioController.buscarAnuncios(" ", null, null, null);
+        assertEquals(400, sinConsulta.getStatusCode().value());
+    }
+
+    @Test
+    void testObtenerMasVistos_ListadoConCacheControl() throws Exception {
+        when(anuncioService.obtenerMasVistos(2)).thenReturn(List.of(crearAnuncio(1L, "Toyota Corolla"), crearAnuncio(2L, "Kia Rio")));
+
+        ResponseEntity<StreamingResponseBody> respuesta = anuncioController.obtenerMasVistos(2);
+
+        assertEquals("max-age=60, public", respuesta.getHeaders().getCacheControl());
+        JsonNode json = leer(respuesta);
+        assertEquals(2, json.get("anuncios").size());
+        assertEquals(1, json.at("/estadisticas/0/idAnuncio").asInt());
+    }
+
+    private JsonNode leer(ResponseEntity<StreamingResponseBody> respuesta) throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        respuesta.getBody().writeTo(salida);
+        return objectMapper.readTree(salida.toByteArray());
+    }
+
+    private Anuncio crearAnuncio(Long id, String modelo) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setModelo(modelo);
+        anuncio.setFechaActualizacion(LocalDateTime.of(2025, 11, 20, 10, 0));
+        anuncio.setActivo(true);
+        return anuncio;
+    }
+}
@@ -0,0 +1,107 @@
+package com.integrador.controller;
+
+import com.integrador.service.AlmacenImagenesService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagenesControllerTest {
+
+    private static final String HASH = "ab".repeat(32);
+
+    @TempDir
+    Path directorio;
+
+    private final ImagenesController imagenesController = new ImagenesController();
+
+    private final byte[] contenido = "0123456789".getBytes();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AlmacenImagenesService almacen = new AlmacenImagenesService();
+        ReflectionTestUtils.setField(almacen, "uploadDir", directorio.toString());
+        ReflectionTestUtils.setField(imagenesController, "almacenImagenesService", almacen);
+
+        Path archivo = directorio.resolve(AlmacenImagenesService.rutaRelativa(HASH, ".jpg"));
+        Files.createDirectories(archivo.getParent());
+        Files.write(archivo, contenido);
+        Files.write(directorio.resolve("antigua.png"), contenido);
+    }
+
+    @Test
+    void testServir_ContenidoInmutableYCondicional() throws Exception {
+        MockHttpServletResponse respuesta = servir(peticion("/uploads/ab/ab/" + HASH + ".jpg"));
+
+        assertEquals(200, respuesta.getStatus());
+        assertEquals(ImagenesController.CACHE_INMUTABLE, respuesta.getHeader("Cache-Control"));
+        assertEquals("\"" + HASH + "\"", respuesta.getHeader("ETag"));
+        assertEquals("image/jpeg", respuesta.getContentType());
+        assertArrayEquals(contenido, respuesta.getContentAsByteArray());
+
+        MockHttpServletRequest condicional = peticion("/uploads/ab/ab/" + HASH + ".jpg");
+        condicional.addHeader("If-None-Match", "\"" + HASH + "\"");
+        MockHttpServletResponse noModificada = servir(condicional);
+        assertEquals(304, noModificada.getStatus());
+        assertEquals(0, noModificada.getContentAsByteArray().length);
+    }
+
+    @Test
+    void testServir_RangoYUrlAntigua() throws Exception {
+        MockHttpServletRequest conRango = peticion("/uploads/antigua.png");
+        conRango.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse parcial = servir(conRango);
+
+        assertEquals(206, parcial.getStatus());
+        assertEquals("bytes 2-5/10", parcial.getHeader("Content-Range"));
+        assertEquals("2345", parcial.getContentAsString());
+        assertEquals(ImagenesController.CACHE_LEGADO, parcial.getHeader("Cache-Control"));
+
+        MockHttpServletRequest fueraDeRango = peticion("/uploads/antigua.png");
+        fueraDeRango.addHeader("Range", "bytes=50-");
+        assertEquals(416, servir(fueraDeRango).getStatus());
+
+        assertEquals(404, servir(peticion("/uploads/../antigua.png")).getStatus());
+        assertEquals(404, servir(peticion("/uploads/no-existe.jpg")).getStatus());
+    }
+
+    @Test
+    void testServir_UsaSendfileCuandoTomcatLoSoporta() throws Exception {
+        MockHttpServletRequest peticion = peticion("/uploads/antigua.png");
+        peticion.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse respuesta = servir(peticion);
+
+        assertEquals(10L, respuesta.getContentLengthLong());
+        assertEquals(0, respuesta.getContentAsByteArray().length);
+        assertEquals(0L, peticion.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, peticion.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void testParsearRango() {
+        assertArrayEquals(new long[]{0, 99}, ImagenesController.parsearRango("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{900, 999}, ImagenesController.parsearRango("bytes=-100", 1000));
+        assertArrayEquals(new long[]{500, 999}, ImagenesController.parsearRango("bytes=500-5000", 1000));
+        // Varios rangos o cabeceras mal formadas: se envía el archivo completo
+        assertEquals(0, ImagenesController.parsearRango("bytes=0-1,5-6", 1000).length);
+        assertEquals(0, ImagenesController.parsearRango("items=0-1", 1000).length);
+        assertNull(ImagenesController.parsearRango("bytes=1000-", 1000));
+    }
+
+    private MockHttpServletRequest peticion(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+
+    private MockHttpServletResponse servir(MockHttpServletRequest peticion) throws Exception {
+        MockHttpServletResponse respuesta = new MockHttpServletResponse();
+        imagenesController.servirImagen(peticion, respuesta);
+        return respuesta;
+    }
+}
@@ -0,0 +1,59 @@
+package com.integrador.controller;
+
+import com.integrador.service.PlacaApiNoDisponibleException;
+import com.integrador.service.PlateSearchService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlateSearchControllerTest {
+
+    @Mock
+    private PlateSearchService plateSearchService;
+
+    private final PlateSearchController plateSearchController = new PlateSearchController();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(plateSearchController, "plateSearchService", plateSearchService);
+    }
+
+    @Test
+    void testSearchPlate_ApiNoDisponibleSinSnapshotResponde503() {
+        when(plateSearchService.searchPlate(eq("ABC123"), eq("guest"), anyBoolean()))
+                .thenThrow(new PlacaApiNoDisponibleException("La API de placas no está disponible temporalmente."));
+
+        ResponseEntity<Map<String, Object>> respuesta = plateSearchController.searchPlate(Map.of("plateNumber", "abc123"));
+
+        assertEquals(503, respuesta.getStatusCode().value());
+        assertEquals("30", respuesta.getHeaders().getFirst("Retry-After"));
+        assertEquals("La API de placas no está disponible temporalmente.", respuesta.getBody().get("error"));
+    }
+
+    @Test
+    void testSearchPlate_SnapshotDegradadoResponde200() {
+        Map<String, Object> vehiculo = new HashMap<>();
+        vehiculo.put("marca", "Kia");
+        vehiculo.put("degradado", true);
+        when(plateSearchService.searchPlate(eq("ABC123"), eq("guest"), anyBoolean())).thenReturn(vehiculo);
+
+        ResponseEntity<Map<String, Object>> respuesta = plateSearchController.searchPlate(Map.of("plateNumber", "ABC123"));
+
+        assertEquals(200, respuesta.getStatusCode().value());
+        assertNull(respuesta.getHeaders().getFirst("Retry-After"));
+        assertEquals(true, ((Map<?, ?>) respuesta.getBody().get("vehicle")).get("degradado"));
+    }
+}
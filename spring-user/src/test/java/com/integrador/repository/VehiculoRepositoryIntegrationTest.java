@@ -0,0 +1,51 @@
+package com.integrador.repository;
+
+import com.integrador.entity.Vehiculo;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Necesita la BD PostgreSQL del perfil por defecto: ON CONFLICT y jsonb no tienen equivalente embebido
+@SpringBootTest
+@Transactional
+class VehiculoRepositoryIntegrationTest {
+
+    private static final String PLACA = "TST001";
+
+    @Autowired
+    private VehiculoRepository vehiculoRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void testUpsertPorPlaca_ConservaLasColumnasQueLaApiNoDevolvio() {
+        assertEquals(1, vehiculoRepository.upsertPorPlaca(PLACA, "KIA RIO 2019", "KIA", "RIO", "2019",
+                "KNADN512AK6000001", "PARTICULAR", "JUAN PEREZ", "LIMA", "https://placas/img/1.jpg",
+                "{\"marca\":\"KIA\"}"));
+
+        // Segunda consulta: la API vino incompleta (sin marca, VIN ni propietario) y con otro modelo
+        assertEquals(1, vehiculoRepository.upsertPorPlaca(PLACA, null, null, "RIO SEDAN", null,
+                null, null, null, null, null, "{\"modelo\":\"RIO SEDAN\"}"));
+        entityManager.clear();
+
+        Vehiculo vehiculo = vehiculoRepository.findByPlaca(PLACA).orElseThrow();
+        assertEquals("KIA", vehiculo.getMarca());
+        assertEquals("RIO SEDAN", vehiculo.getModelo());
+        assertEquals("KIA RIO 2019", vehiculo.getDescripcionApi());
+        assertEquals("2019", vehiculo.getAnioRegistroApi());
+        assertEquals("KNADN512AK6000001", vehiculo.getVin());
+        assertEquals("PARTICULAR", vehiculo.getUso());
+        assertEquals("JUAN PEREZ", vehiculo.getPropietario());
+        assertEquals("LIMA", vehiculo.getDeliveryPoint());
+        assertEquals("https://placas/img/1.jpg", vehiculo.getImageUrlApi());
+        // El JSON de la API siempre es el de la última consulta
+        assertEquals("RIO SEDAN", vehiculo.getDatosApi().get("modelo").asText());
+        assertFalse(vehiculo.getDatosApi().has("marca"));
+        assertEquals(1, vehiculoRepository.findAll().stream().filter(v -> PLACA.equals(v.getPlaca())).count());
+    }
+}
@@ -0,0 +1,33 @@
+package com.integrador.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VehiculoRepositoryTest {
+
+    // Las que el upsert reemplaza siempre o no toca: el resto debe conservar el valor existente si llega null
+    private static final Set<String> SIN_COALESCE = Set.of("placa", "datos_api", "fecha_registro_api", "fecha_actualizacion_api");
+
+    @Test
+    void testConflictoPlaca_CadaColumnaDeLaApiConservaElValorExistente() {
+        String columnas = VehiculoRepository.INSERTAR_VEHICULO.substring(
+                VehiculoRepository.INSERTAR_VEHICULO.indexOf('(') + 1, VehiculoRepository.INSERTAR_VEHICULO.indexOf(')'));
+        List<String> lista = Arrays.stream(columnas.split(",")).map(String::trim).toList();
+        assertTrue(lista.containsAll(SIN_COALESCE));
+
+        for (String columna : lista) {
+            if (!SIN_COALESCE.contains(columna)) {
+                assertTrue(VehiculoRepository.CONFLICTO_PLACA.contains(
+                        columna + " = COALESCE(EXCLUDED." + columna + ", vehiculos." + columna + ")"), columna);
+            }
+        }
+        // La fecha del primer registro no se pisa
+        assertFalse(VehiculoRepository.CONFLICTO_PLACA.contains("fecha_registro_api ="));
+        assertTrue(VehiculoRepository.CONFLICTO_PLACA.contains("datos_api = EXCLUDED.datos_api"));
+    }
+}
@@ -0,0 +1,134 @@
+package com.integrador.service;
+
+import com.integrador.repository.ImagenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AlmacenImagenesServiceTest {
+
+    @TempDir
+    Path directorio;
+
+    @Mock
+    private ImagenRepository imagenRepository;
+
+    @Mock
+    private VariantesImagenService variantesImagenService;
+
+    @InjectMocks
+    private AlmacenImagenesService almacenImagenesService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(almacenImagenesService, "uploadDir", directorio.toString());
+        ReflectionTestUtils.setField(almacenImagenesService, "graciaMinutos", 0L);
+    }
+
+    @Test
+    void testLiberar_SoloBorraSinReferencias() throws Exception {
+        Path compartida = crearArchivo("ab/cd/abcd1.jpg");
+        Path huerfana = crearArchivo("ab/ef/abef2.jpg");
+        when(imagenRepository.countByUrlImagen("/uploads/ab/cd/abcd1.jpg")).thenReturn(1L);
+        when(imagenRepository.countByUrlImagen("/uploads/ab/ef/abef2.jpg")).thenReturn(0L);
+
+        // Sin transacción activa se encola de inmediato; detener() espera a que se vacíe la cola
+        almacenImagenesService.iniciar();
+        almacenImagenesService.liberar(List.of("/uploads/ab/cd/abcd1.jpg", "/uploads/ab/ef/abef2.jpg"));
+        almacenImagenesService.detener();
+
+        assertTrue(Files.exists(compartida));
+        assertFalse(Files.exists(huerfana));
+        verify(variantesImagenService).eliminarVariantes("/uploads/ab/ef/abef2.jpg");
+        verify(variantesImagenService, never()).eliminarVariantes("/uploads/ab/cd/abcd1.jpg");
+    }
+
+    @Test
+    void testLiberar_MiraLaReservaYNoLaFecha() throws Exception {
+        // Con el periodo de gracia real: una foto reemplazada al poco de subirla se borra igual
+        ReflectionTestUtils.setField(almacenImagenesService, "graciaMinutos", 60L);
+        Path reemplazada = crearArchivo("ab/cd/abcd4.jpg");
+        Path reutilizada = crearArchivo("ab/ef/abef5.jpg");
+        when(imagenRepository.countByUrlImagen(anyString())).thenReturn(0L);
+        // Una subida sin confirmar acaba de reutilizar este contenido
+        AlmacenImagenesService.reservar(reutilizada);
+
+        almacenImagenesService.iniciar();
+        almacenImagenesService.liberar(List.of("/uploads/ab/cd/abcd4.jpg", "/uploads/ab/ef/abef5.jpg"));
+        almacenImagenesService.detener();
+
+        assertFalse(Files.exists(reemplazada));
+        assertTrue(Files.exists(reutilizada));
+        assertEquals(1L, almacenImagenesService.obtenerEstadisticas().get("reservadasOmitidas"));
+
+        // Soltada la reserva ya se puede borrar, aunque el archivo siga siendo reciente
+        AlmacenImagenesService.soltar(reutilizada);
+        almacenImagenesService.iniciar();
+        almacenImagenesService.liberar(List.of("/uploads/ab/ef/abef5.jpg"));
+        almacenImagenesService.detener();
+        assertFalse(Files.exists(reutilizada));
+    }
+
+    @Test
+    void testBarrer_BorraHuerfanosYRespetaGracia() throws Exception {
+        Path usada = crearArchivo("ab/cd/abcd1.jpg");
+        Path huerfana = crearArchivo("ab/ef/abef2.jpg");
+        Path antigua = crearArchivo("legado.png");
+        Path temporal = crearArchivo("ab/ef/.ingesta-1.tmp");
+        Path varianteHuerfana = crearArchivo("variantes/ab/ef/abef2-thumb.jpg");
+        Path varianteUsada = crearArchivo("variantes/ab/cd/abcd1-thumb.jpg");
+        when(imagenRepository.findUrlsReferenciadas(anyCollection())).thenAnswer(invocacion -> {
+            Collection<String> urls = invocacion.getArgument(0);
+            return urls.stream().filter(url -> url.equals("/uploads/ab/cd/abcd1.jpg")).toList();
+        });
+
+        almacenImagenesService.barrer();
+
+        assertTrue(Files.exists(usada));
+        assertTrue(Files.exists(varianteUsada));
+        assertFalse(Files.exists(huerfana));
+        assertFalse(Files.exists(antigua));
+        assertFalse(Files.exists(temporal));
+        verify(variantesImagenService).eliminarVariantes("/uploads/ab/ef/abef2.jpg");
+
+        // Con el periodo de gracia, lo recién escrito no se toca
+        ReflectionTestUtils.setField(almacenImagenesService, "graciaMinutos", 60L);
+        Path reciente = crearArchivo("ab/ef/abef3.jpg");
+        almacenImagenesService.barrer();
+        assertTrue(Files.exists(reciente));
+        // La variante huérfana se recoge en cuanto ya no existe su original
+        ReflectionTestUtils.setField(almacenImagenesService, "graciaMinutos", 0L);
+        almacenImagenesService.barrer();
+        assertFalse(Files.exists(varianteHuerfana));
+    }
+
+    @Test
+    void testResolver_RechazaRutasFueraDelAlmacen() {
+        assertNull(almacenImagenesService.resolver("/uploads/../application.properties"));
+        assertNull(almacenImagenesService.resolver("https://otro.sitio/imagen.jpg"));
+        assertEquals(directorio.toAbsolutePath().resolve("ab/cd/x.jpg"),
+                almacenImagenesService.resolver("/uploads/ab/cd/x.jpg"));
+    }
+
+    private Path crearArchivo(String relativa) throws Exception {
+        Path ruta = directorio.resolve(relativa);
+        Files.createDirectories(ruta.getParent());
+        return Files.write(ruta, new byte[]{1, 2, 3});
+    }
+}
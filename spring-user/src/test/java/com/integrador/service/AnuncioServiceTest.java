@@ -0,0 +1,73 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import com.integrador.dto.PaginaAnuncios;
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.AnuncioRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AnuncioServiceTest {
+
+    @Mock
+    private AnuncioRepository anuncioRepository;
+
+    @Mock
+    private VariantesImagenService variantesImagenService;
+
+    @InjectMocks
+    private AnuncioService anuncioService;
+
+    @Test
+    void testObtenerPagina_ConservaOrdenYGeneraCursor() {
+        LocalDateTime fecha = LocalDateTime.of(2025, 11, 20, 10, 30);
+        when(anuncioRepository.findIdsPaginaActivos(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(),
+                isNull(), isNull(), any(Pageable.class))).thenReturn(List.of(9L, 7L, 5L));
+        // La consulta con JOIN FETCH devuelve los anuncios en otro orden
+        when(anuncioRepository.findByIdsWithImagenes(List.of(9L, 7L)))
+                .thenReturn(List.of(crearAnuncio(7L, fecha), crearAnuncio(9L, fecha.plusDays(1))));
+
+        PaginaAnuncios pagina = anuncioService.obtenerPaginaAnunciosActivos(new AnuncioFiltro(), null, 2);
+
+        assertEquals(List.of(9L, 7L), pagina.getAnuncios().stream().map(Anuncio::getIdAnuncio).toList());
+        assertTrue(pagina.isTieneMas());
+        assertNotNull(pagina.getSiguienteCursor());
+
+        // El cursor lleva la posición del último anuncio de la página
+        when(anuncioRepository.findIdsPaginaActivos(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(),
+                eq(fecha), eq(7L), any(Pageable.class))).thenReturn(List.of());
+
+        PaginaAnuncios siguiente = anuncioService.obtenerPaginaAnunciosActivos(
+                new AnuncioFiltro(), pagina.getSiguienteCursor(), 2);
+
+        assertTrue(siguiente.getAnuncios().isEmpty());
+        assertFalse(siguiente.isTieneMas());
+    }
+
+    @Test
+    void testObtenerPagina_CursorInvalido() {
+        assertThrows(IllegalArgumentException.class,
+                () -> anuncioService.obtenerPaginaAnunciosActivos(new AnuncioFiltro(), "no-es-un-cursor", 10));
+    }
+
+    private Anuncio crearAnuncio(Long id, LocalDateTime fechaCreacion) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setFechaCreacion(fechaCreacion);
+        return anuncio;
+    }
+}
@@ -0,0 +1,135 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.AnuncioRepository;
+import com.integrador.repository.VehiculoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AutocompletadoServiceTest {
+
+    @Mock
+    private AnuncioRepository anuncioRepository;
+
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+    private AutocompletadoService autocompletadoService;
+
+    @BeforeEach
+    void setUp() {
+        catalogoAnunciosCache = new CatalogoAnunciosCache();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "anuncioRepository", anuncioRepository);
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+        autocompletadoService = new AutocompletadoService();
+        ReflectionTestUtils.setField(autocompletadoService, "catalogoAnunciosCache", catalogoAnunciosCache);
+        ReflectionTestUtils.setField(autocompletadoService, "vehiculoRepository", vehiculoRepository);
+        autocompletadoService.registrar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        autocompletadoService.detener();
+    }
+
+    @Test
+    void testTrie_PrefijosPorPalabraYFrecuencia() {
+        Map<String, Long> frecuencias = new LinkedHashMap<>();
+        frecuencias.put("Toyota Corolla", 5L);
+        frecuencias.put("Toyota", 9L);
+        frecuencias.put("Toyota Hilux", 7L);
+        frecuencias.put("TOYOTA COROLLA", 1L);
+        frecuencias.put("Citroën C3", 2L);
+        TrieAutocompletado trie = TrieAutocompletado.construir(frecuencias);
+
+        assertEquals(List.of("Toyota", "Toyota Hilux", "Toyota Corolla"), textos(trie.sugerir("toy", 10)));
+        // Las formas que solo difieren en mayúsculas se combinan
+        assertEquals(6L, trie.sugerir("corolla", 1).get(0).getFrecuencia());
+        assertEquals(List.of("Toyota Corolla"), textos(trie.sugerir("Cor", 10)));
+        assertEquals(List.of("Citroën C3"), textos(trie.sugerir("citroen", 10)));
+        assertEquals(List.of("Toyota"), textos(trie.sugerir("t", 1)));
+        assertTrue(trie.sugerir("xyz", 10).isEmpty());
+        assertTrue(trie.sugerir("  ", 10).isEmpty());
+    }
+
+    @Test
+    void testSugerir_CombinaAnunciosYVehiculosYSeReconstruyeConElCatalogo() throws Exception {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(crearAnuncio(1L, "Kia Rio"), crearAnuncio(2L, "Kia Rio")));
+        when(vehiculoRepository.contarPorMarcaYModelo()).thenReturn(List.<Object[]>of(
+                new Object[]{"KIA", "SPORTAGE", 3L},
+                new Object[]{"NISSAN", null, 1L}));
+
+        assertEquals(List.of("Kia", "Kia Sportage", "Kia Rio"), textos(autocompletadoService.sugerir("kia", 10)));
+        assertEquals(List.of("Nissan"), textos(autocompletadoService.sugerir("nis", 10)));
+
+        // El cambio del catálogo reconstruye el trie en segundo plano
+        catalogoAnunciosCache.anuncioGuardado(crearAnuncio(3L, "Mazda CX-5"));
+        esperarConstrucciones(2);
+        assertEquals(List.of("Mazda CX-5"), textos(autocompletadoService.sugerir("cx", 10)));
+
+        // Los vehículos solo se recuentan cuando vence su TTL
+        verify(vehiculoRepository, times(1)).contarPorMarcaYModelo();
+        assertEquals(2L, autocompletadoService.obtenerEstadisticas().get("construcciones"));
+    }
+
+    @Test
+    void testSugerir_VencidoElConteoNoConsultaEnElPedidoYConservaLoAnteriorSiFalla() throws Exception {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(crearAnuncio(1L, "Kia Rio")));
+        when(vehiculoRepository.contarPorMarcaYModelo())
+                .thenReturn(List.<Object[]>of(new Object[]{"KIA", "SPORTAGE", 3L}))
+                .thenAnswer(invocacion -> {
+                    // El recuento vencido corre en el hilo del autocompletado, no en el del pedido
+                    assertEquals("autocompletado", Thread.currentThread().getName());
+                    throw new RuntimeException("sin conexión");
+                });
+        assertEquals(List.of("Kia Sportage"), textos(autocompletadoService.sugerir("sport", 10)));
+
+        // Vence el TTL: el pedido responde con el trie vigente y la reconstrucción va aparte
+        ReflectionTestUtils.setField(autocompletadoService, "proximoConteoVehiculos", 0L);
+        assertEquals(List.of("Kia Sportage"), textos(autocompletadoService.sugerir("sport", 10)));
+        esperarConstrucciones(2);
+
+        // Falló el recuento: se conservan las frecuencias anteriores en el trie nuevo
+        assertEquals(List.of("Kia Sportage"), textos(autocompletadoService.sugerir("sport", 10)));
+        verify(vehiculoRepository, times(2)).contarPorMarcaYModelo();
+        long reintento = (long) ReflectionTestUtils.getField(autocompletadoService, "proximoConteoVehiculos");
+        assertTrue(reintento - System.currentTimeMillis() <= 60_000);
+    }
+
+    private void esperarConstrucciones(long esperadas) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while ((long) autocompletadoService.obtenerEstadisticas().get("construcciones") < esperadas
+                && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(esperadas, autocompletadoService.obtenerEstadisticas().get("construcciones"));
+    }
+
+    private List<String> textos(List<TrieAutocompletado.Sugerencia> sugerencias) {
+        return sugerencias.stream().map(TrieAutocompletado.Sugerencia::getTexto).toList();
+    }
+
+    private Anuncio crearAnuncio(Long id, String modelo) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setModelo(modelo);
+        anuncio.setFechaCreacion(LocalDateTime.of(2025, 11, 20, 10, 0));
+        anuncio.setActivo(true);
+        return anuncio;
+    }
+}
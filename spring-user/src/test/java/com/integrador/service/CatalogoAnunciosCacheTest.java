@@ -0,0 +1,123 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.AnuncioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogoAnunciosCacheTest {
+
+    @Mock
+    private AnuncioRepository anuncioRepository;
+
+    @InjectMocks
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+
+    private final LocalDateTime fecha = LocalDateTime.of(2025, 11, 20, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+    }
+
+    @Test
+    void testObtener_CargaUnaSolaVez() {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(crearAnuncio(1L, fecha)));
+
+        CatalogoAnunciosCache.Snapshot primero = catalogoAnunciosCache.obtener();
+        CatalogoAnunciosCache.Snapshot segundo = catalogoAnunciosCache.obtener();
+
+        assertSame(primero, segundo);
+        verify(anuncioRepository, times(1)).findAllActivos();
+    }
+
+    @Test
+    void testParches_CambianVersionSinConsultarBD() {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(crearAnuncio(1L, fecha), crearAnuncio(2L, fecha.minusDays(1))));
+        CatalogoAnunciosCache.Snapshot inicial = catalogoAnunciosCache.obtener();
+
+        // Sin transacción activa el parche se aplica de inmediato
+        catalogoAnunciosCache.anuncioGuardado(crearAnuncio(3L, fecha.plusDays(1)));
+        CatalogoAnunciosCache.Snapshot conNuevo = catalogoAnunciosCache.obtener();
+        assertNotEquals(inicial.getEtag(), conNuevo.getEtag());
+        assertEquals(List.of(3L, 1L, 2L), conNuevo.getAnuncios().stream().map(Anuncio::getIdAnuncio).toList());
+
+        catalogoAnunciosCache.anuncioEliminado(1L);
+        assertEquals(List.of(3L, 2L), catalogoAnunciosCache.obtener().getAnuncios().stream().map(Anuncio::getIdAnuncio).toList());
+
+        verify(anuncioRepository, times(1)).findAllActivos();
+    }
+
+    @Test
+    void testObtener_VencidoSirveElAnteriorYConservaLaVersionSiNadaCambio() throws Exception {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(crearAnuncio(1L, fecha)));
+        CatalogoAnunciosCache.Snapshot inicial = catalogoAnunciosCache.obtener();
+
+        CountDownLatch leyendo = new CountDownLatch(1);
+        CountDownLatch soltar = new CountDownLatch(1);
+        doAnswer(invocacion -> {
+            leyendo.countDown();
+            soltar.await(5, TimeUnit.SECONDS);
+            return List.of(crearAnuncio(1L, fecha));
+        }).when(anuncioRepository).findAllActivos();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", -1L);
+
+        // Mientras la BD tarda, las lecturas no esperan: reciben la versión anterior
+        assertSame(inicial, catalogoAnunciosCache.obtener());
+        assertTrue(leyendo.await(5, TimeUnit.SECONDS));
+        assertSame(inicial, catalogoAnunciosCache.obtener());
+
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+        soltar.countDown();
+        CatalogoAnunciosCache.Snapshot recargado = esperarOtroSnapshot(inicial);
+
+        // Mismos anuncios: misma versión y mismo ETag, y el TTL vuelve a empezar
+        assertEquals(inicial.getEtag(), recargado.getEtag());
+        assertSame(inicial.getAnuncios(), recargado.getAnuncios());
+        assertEquals(1L, catalogoAnunciosCache.obtenerEstadisticas().get("cargasSinCambios"));
+
+        Anuncio editado = crearAnuncio(1L, fecha);
+        editado.setFechaActualizacion(fecha.plusHours(1));
+        doReturn(List.of(editado)).when(anuncioRepository).findAllActivos();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", -1L);
+        catalogoAnunciosCache.obtener();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+
+        CatalogoAnunciosCache.Snapshot cambiado = esperarOtroSnapshot(recargado);
+        assertNotEquals(inicial.getEtag(), cambiado.getEtag());
+        assertSame(editado, cambiado.buscar(1L));
+    }
+
+    private CatalogoAnunciosCache.Snapshot esperarOtroSnapshot(CatalogoAnunciosCache.Snapshot anterior) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        CatalogoAnunciosCache.Snapshot actual = catalogoAnunciosCache.obtener();
+        while (actual == anterior && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+            actual = catalogoAnunciosCache.obtener();
+        }
+        assertNotSame(anterior, actual);
+        return actual;
+    }
+
+    private Anuncio crearAnuncio(Long id, LocalDateTime fechaCreacion) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setFechaCreacion(fechaCreacion);
+        anuncio.setActivo(true);
+        return anuncio;
+    }
+}
@@ -0,0 +1,209 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import com.integrador.dto.ChatResponse;
+import com.integrador.entity.Anuncio;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatServiceTest {
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private RecuperacionAnuncios recuperacionAnuncios;
+
+    @Mock
+    private RespuestasChatCache respuestasChatCache;
+
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        chatService = new ChatService();
+        ReflectionTestUtils.setField(chatService, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(chatService, "recuperacionAnuncios", recuperacionAnuncios);
+        ReflectionTestUtils.setField(chatService, "respuestasChatCache", respuestasChatCache);
+        ReflectionTestUtils.setField(chatService, "deepseekApiUrl", "https://api.deepseek.com/v1/chat/completions");
+    }
+
+    @Test
+    void testFiltroRecomendacion_RetieneElMarcadorPartidoEntreTrozos() {
+        List<String> enviados = new ArrayList<>();
+        ChatService.FiltroRecomendacion filtro = new ChatService.FiltroRecomendacion(enviados::add);
+
+        for (String trozo : List.of("Te recomiendo el [usado] Kia", " Rio.\n\n[REC", "OMMEND: 3,", " 7]")) {
+            filtro.agregar(trozo);
+        }
+        filtro.terminar();
+
+        assertEquals("Te recomiendo el [usado] Kia Rio.\n\n", String.join("", enviados));
+        assertEquals(List.of(3L, 7L), filtro.getIds());
+        // Nada del marcador llegó a enviarse, ni siquiera el "[" inicial
+        assertTrue(enviados.stream().noneMatch(e -> e.contains("[R")));
+
+        // Un "[" al final que no llegó a ser marcador se envía al terminar
+        List<String> otros = new ArrayList<>();
+        ChatService.FiltroRecomendacion incompleto = new ChatService.FiltroRecomendacion(otros::add);
+        incompleto.agregar("Opciones: [RE");
+        assertEquals("Opciones: ", String.join("", otros));
+        incompleto.terminar();
+        assertEquals("Opciones: [RE", String.join("", otros));
+        assertTrue(incompleto.getIds().isEmpty());
+    }
+
+    @Test
+    void testProcessMessageStream_ReenviaDeltasYDevuelveIds() {
+        ReflectionTestUtils.setField(chatService, "deepseekApiKey", "clave");
+        RecuperacionAnuncios.Seleccion seleccion = mock(RecuperacionAnuncios.Seleccion.class);
+        when(seleccion.getEncabezado()).thenReturn("Vehículos disponibles");
+        when(seleccion.getContexto()).thenReturn("ID: 2 | Modelo: Kia Rio");
+        when(recuperacionAnuncios.seleccionar(anyString(), any())).thenReturn(seleccion);
+        String eventos = """
+                : keep-alive
+
+                data: {"choices":[{"delta":{"role":"assistant"}}]}
+
+                data: {"choices":[{"delta":{"content":"El Kia Rio "}}]}
+
+                data: {"choices":[{"delta":{"content":"te conviene. [RECOMMEND: 2]"}}]}
+
+                data: [DONE]
+
+                """;
+        when(restTemplate.execute(anyString(), eq(HttpMethod.POST), any(RequestCallback.class), any(ResponseExtractor.class)))
+                .thenAnswer(invocacion -> {
+                    ResponseExtractor<?> extractor = invocacion.getArgument(3);
+                    ClientHttpResponse respuesta = mock(ClientHttpResponse.class);
+                    when(respuesta.getBody()).thenReturn(new ByteArrayInputStream(eventos.getBytes(StandardCharsets.UTF_8)));
+                    return extractor.extractData(respuesta);
+                });
+
+        when(respuestasChatCache.clave(seleccion, "algo económico", null)).thenReturn("1|user:algo economico");
+
+        List<String> enviados = new ArrayList<>();
+        ChatResponse respuesta = chatService.processMessageStream("algo económico", null, enviados::add);
+
+        assertEquals(List.of("El Kia Rio ", "te conviene. "), enviados);
+        assertEquals("El Kia Rio te conviene.", respuesta.getResponse());
+        assertEquals(List.of(2L), respuesta.getRecommendedAnuncioIds());
+        // La respuesta completa queda en caché para la próxima vez
+        verify(respuestasChatCache).guardar(eq("1|user:algo economico"), eq(respuesta), anyLong());
+    }
+
+    @Test
+    void testProcessMessageStream_StreamCortadoNoSeGuardaEnCache() {
+        ReflectionTestUtils.setField(chatService, "deepseekApiKey", "clave");
+        RecuperacionAnuncios.Seleccion seleccion = mock(RecuperacionAnuncios.Seleccion.class);
+        when(recuperacionAnuncios.seleccionar(anyString(), any())).thenReturn(seleccion);
+        when(respuestasChatCache.clave(seleccion, "algo económico", null)).thenReturn("1|user:algo economico");
+        // El proveedor cierra la conexión sin mandar [DONE]
+        String eventos = """
+                data: {"choices":[{"delta":{"content":"El Kia Rio "}}]}
+
+                """;
+        when(restTemplate.execute(anyString(), eq(HttpMethod.POST), any(RequestCallback.class), any(ResponseExtractor.class)))
+                .thenAnswer(invocacion -> {
+                    ResponseExtractor<?> extractor = invocacion.getArgument(3);
+                    ClientHttpResponse respuesta = mock(ClientHttpResponse.class);
+                    when(respuesta.getBody()).thenReturn(new ByteArrayInputStream(eventos.getBytes(StandardCharsets.UTF_8)));
+                    return extractor.extractData(respuesta);
+                });
+
+        List<String> enviados = new ArrayList<>();
+        ChatResponse respuesta = chatService.processMessageStream("algo económico", null, enviados::add);
+
+        // Se cierra con lo recibido, pero no queda en caché como si fuera completa
+        assertEquals("El Kia Rio", respuesta.getResponse());
+        verify(respuestasChatCache, never()).guardar(anyString(), any(), anyLong());
+    }
+
+    @Test
+    void testProcessMessage_PreguntaRepetidaSaleDeLaCache() {
+        ReflectionTestUtils.setField(chatService, "deepseekApiKey", "clave");
+        RecuperacionAnuncios.Seleccion seleccion = mock(RecuperacionAnuncios.Seleccion.class);
+        when(recuperacionAnuncios.seleccionar(anyString(), any())).thenReturn(seleccion);
+        when(respuestasChatCache.clave(seleccion, "busco una SUV barata", null)).thenReturn("1|user:busco suv barata");
+        when(respuestasChatCache.obtener("1|user:busco suv barata"))
+                .thenReturn(new ChatResponse("Te recomiendo el Kia Rio.", List.of(2L)));
+
+        ChatResponse respuesta = chatService.processMessage("busco una SUV barata", null);
+
+        assertEquals("Te recomiendo el Kia Rio.", respuesta.getResponse());
+        assertEquals(0L, chatService.obtenerEstadisticas().get("llamadasModelo"));
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void testProcessMessageStream_SinClaveRespondeConElRankingLocal() {
+        RecuperacionAnuncios.Seleccion seleccion = seleccion(false);
+        when(recuperacionAnuncios.seleccionar(anyString(), any())).thenReturn(seleccion);
+
+        List<String> enviados = new ArrayList<>();
+        ChatResponse respuesta = chatService.processMessageStream("busco una suv familiar", null, enviados::add);
+
+        assertEquals(List.of(respuesta.getResponse()), enviados);
+        assertTrue(respuesta.getResponse().startsWith("Encontré 1 vehículo(s) con tipo SUV."));
+        assertEquals(List.of(5L), respuesta.getRecommendedAnuncioIds());
+        assertEquals(1L, chatService.obtenerEstadisticas().get("respaldos"));
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void testProcessMessage_ConsultaDeSoloFiltrosNoLlamaAlModelo() {
+        ReflectionTestUtils.setField(chatService, "deepseekApiKey", "clave");
+        RecuperacionAnuncios.Seleccion seleccion = seleccion(true);
+        when(recuperacionAnuncios.seleccionar(anyString(), any())).thenReturn(seleccion);
+
+        ChatResponse respuesta = chatService.processMessage("busco una suv", null);
+
+        assertTrue(respuesta.getResponse().contains("- Kia Sportage 2020, $18000, 40000 km"));
+        assertEquals(List.of(5L), respuesta.getRecommendedAnuncioIds());
+        assertEquals(1L, chatService.obtenerEstadisticas().get("respuestasLocales"));
+        assertEquals(0L, chatService.obtenerEstadisticas().get("llamadasModelo"));
+        verifyNoInteractions(restTemplate);
+    }
+
+    private RecuperacionAnuncios.Seleccion seleccion(boolean respuestaDirecta) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(5L);
+        anuncio.setModelo("Kia Sportage");
+        anuncio.setAnio(2020);
+        anuncio.setPrecio(new BigDecimal("18000"));
+        anuncio.setKilometraje(40000);
+        anuncio.setTipoVehiculo("SUV");
+        AnuncioFiltro filtro = new AnuncioFiltro();
+        filtro.setTipoVehiculo("SUV");
+
+        RecuperacionAnuncios.Seleccion seleccion = mock(RecuperacionAnuncios.Seleccion.class);
+        when(seleccion.isRespuestaDirecta()).thenReturn(respuestaDirecta);
+        when(seleccion.getAnuncios()).thenReturn(List.of(anuncio));
+        when(seleccion.getFiltro()).thenReturn(filtro);
+        when(seleccion.getCandidatos()).thenReturn(1);
+        return seleccion;
+    }
+}
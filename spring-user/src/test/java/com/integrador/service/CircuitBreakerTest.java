@@ -0,0 +1,59 @@
+package com.integrador.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void testSeAbreTrasFallosConsecutivos() {
+        AtomicLong reloj = new AtomicLong(0);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(3, 1000, reloj::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(circuitBreaker.permitirLlamada());
+            circuitBreaker.registrarFallo();
+        }
+
+        assertEquals(CircuitBreaker.Estado.ABIERTO, circuitBreaker.getEstado());
+        assertFalse(circuitBreaker.permitirLlamada());
+    }
+
+    @Test
+    void testSemiAbierto_PermiteUnaSolaPrueba() {
+        AtomicLong reloj = new AtomicLong(0);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1000, reloj::get);
+        circuitBreaker.permitirLlamada();
+        circuitBreaker.registrarFallo();
+
+        reloj.set(1000);
+        assertTrue(circuitBreaker.permitirLlamada());
+        assertEquals(CircuitBreaker.Estado.SEMI_ABIERTO, circuitBreaker.getEstado());
+        // Mientras la prueba está en curso no pasa nadie más
+        assertFalse(circuitBreaker.permitirLlamada());
+
+        circuitBreaker.registrarExito();
+        assertEquals(CircuitBreaker.Estado.CERRADO, circuitBreaker.getEstado());
+        assertTrue(circuitBreaker.permitirLlamada());
+    }
+
+    @Test
+    void testSemiAbierto_FalloVuelveAAbrir() {
+        AtomicLong reloj = new AtomicLong(0);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1000, reloj::get);
+        circuitBreaker.permitirLlamada();
+        circuitBreaker.registrarFallo();
+
+        reloj.set(1500);
+        assertTrue(circuitBreaker.permitirLlamada());
+        circuitBreaker.registrarFallo();
+
+        assertEquals(CircuitBreaker.Estado.ABIERTO, circuitBreaker.getEstado());
+        assertFalse(circuitBreaker.permitirLlamada());
+        reloj.set(2500);
+        assertTrue(circuitBreaker.permitirLlamada());
+    }
+}
@@ -0,0 +1,78 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsultaVehiculoParserTest {
+
+    private final List<String> tipos = List.of("SUV", "Sedán", "Camioneta");
+
+    @Test
+    void testInterpretar_Rangos() {
+        AnuncioFiltro filtro = ConsultaVehiculoParser.interpretar(
+                "camionetas entre 10 y 20 mil, del 2015 al 2019, entre 30 y 60 mil km", tipos).getFiltro();
+        assertEquals("Camioneta", filtro.getTipoVehiculo());
+        assertEquals(0, new BigDecimal("10000").compareTo(filtro.getPrecioMin()));
+        assertEquals(0, new BigDecimal("20000").compareTo(filtro.getPrecioMax()));
+        assertEquals(2015, filtro.getAnioMin());
+        assertEquals(2019, filtro.getAnioMax());
+        assertEquals(60000, filtro.getKilometrajeMax());
+
+        AnuncioFiltro exacto = ConsultaVehiculoParser.interpretar("un sedán modelo 2018 desde $8.000", tipos).getFiltro();
+        assertEquals(2018, exacto.getAnioMin());
+        assertEquals(2018, exacto.getAnioMax());
+        assertEquals(0, new BigDecimal("8000").compareTo(exacto.getPrecioMin()));
+        assertNull(exacto.getPrecioMax());
+
+        // "hasta 2015" es un año máximo, no un presupuesto
+        AnuncioFiltro anterior = ConsultaVehiculoParser.interpretar("SUV hasta 2015", tipos).getFiltro();
+        assertEquals(2015, anterior.getAnioMax());
+        assertNull(anterior.getPrecioMax());
+        assertEquals("tipo SUV, año hasta 2015", ConsultaVehiculoParser.describir(anterior));
+    }
+
+    @Test
+    void testInterpretar_KilometrajeMinimoNoEsPrecio() {
+        for (String texto : List.of("busco suv con mas de 50 mil km", "suv desde 20000 km")) {
+            ConsultaVehiculoParser.Consulta consulta = ConsultaVehiculoParser.interpretar(texto, tipos);
+            assertNull(consulta.getFiltro().getPrecioMin(), texto);
+            assertNull(consulta.getFiltro().getPrecioMax(), texto);
+            assertEquals("SUV", consulta.getFiltro().getTipoVehiculo(), texto);
+            // Sin filtro local para el mínimo, la consulta pasa al modelo
+            assertEquals(0.0, consulta.getConfianza(), texto);
+        }
+        assertEquals(50000, ConsultaVehiculoParser.interpretar("busco suv con mas de 50 mil km", tipos).getKilometrajeMin());
+        assertEquals(20000, ConsultaVehiculoParser.interpretar("suv desde 20000 km", tipos).getKilometrajeMin());
+
+        // Un número con "km" que ningún patrón de kilometraje tomó tampoco es presupuesto
+        AnuncioFiltro conUnidad = ConsultaVehiculoParser.interpretar("sedan hasta 90 mil km, o hasta 100 mil kms", tipos).getFiltro();
+        assertEquals(90000, conUnidad.getKilometrajeMax());
+        assertNull(conUnidad.getPrecioMax());
+    }
+
+    @Test
+    void testInterpretar_Confianza() {
+        ConsultaVehiculoParser.Consulta soloFiltros = ConsultaVehiculoParser.interpretar(
+                "Busco una SUV de hasta 20 mil dólares, del 2018 en adelante", tipos);
+        assertEquals(3, soloFiltros.getCriterios());
+        assertTrue(soloFiltros.getSinInterpretar().isEmpty());
+        assertEquals(1.0, soloFiltros.getConfianza(), 1e-9);
+
+        // Preferencias que solo entiende el modelo bajan la confianza
+        ConsultaVehiculoParser.Consulta conPreferencias = ConsultaVehiculoParser.interpretar(
+                "algo familiar y económico hasta 20 mil", tipos);
+        assertEquals(List.of("familiar", "economico"), conPreferencias.getSinInterpretar());
+        assertTrue(conPreferencias.getConfianza() < 0.75);
+
+        ConsultaVehiculoParser.Consulta pregunta = ConsultaVehiculoParser.interpretar(
+                "¿Cuál es la diferencia entre una SUV y un sedán hasta 15 mil?", tipos);
+        assertTrue(pregunta.isPreguntaAbierta());
+        assertEquals(0.0, pregunta.getConfianza());
+        assertEquals(0.0, ConsultaVehiculoParser.interpretar("hola", tipos).getConfianza());
+    }
+}
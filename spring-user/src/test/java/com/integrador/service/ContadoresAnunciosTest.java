@@ -0,0 +1,195 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContadoresAnunciosTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ContadoresAnuncios contadoresAnuncios;
+
+    @BeforeEach
+    void setUp() {
+        contadoresAnuncios = new ContadoresAnuncios();
+        ReflectionTestUtils.setField(contadoresAnuncios, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    void testVolcar_UnUpsertConLoAcumuladoEnVariosHilos() throws Exception {
+        ExecutorService hilos = Executors.newFixedThreadPool(4);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            tareas.add(hilos.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    contadoresAnuncios.registrarVista(1L);
+                }
+                contadoresAnuncios.registrarVista(2L);
+                contadoresAnuncios.registrarContacto(2L);
+            }));
+        }
+        for (Future<?> tarea : tareas) {
+            tarea.get();
+        }
+        hilos.shutdown();
+        assertEquals(4000, contadoresAnuncios.vistas(1L));
+
+        // La BD ya tenía 10 vistas del anuncio 1: RETURNING devuelve el total.
+        // lenient: la carga inicial usa otra sobrecarga de query
+        lenient().doAnswer(invocacion -> {
+            RowCallbackHandler filas = invocacion.getArgument(1);
+            filas.processRow(fila(1L, 4010L, 0L));
+            filas.processRow(fila(2L, 4L, 4L));
+            return null;
+        }).when(jdbcTemplate).query(startsWith("INSERT"), any(RowCallbackHandler.class), any(Object[].class));
+
+        contadoresAnuncios.volcar();
+
+        ArgumentCaptor<Object[]> parametros = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(1)).query(startsWith("INSERT"), any(RowCallbackHandler.class), parametros.capture());
+        assertEquals(6, parametros.getValue().length);
+        assertEquals(4010, contadoresAnuncios.vistas(1L));
+        assertEquals(4, contadoresAnuncios.contactos(2L));
+        assertEquals(0L, contadoresAnuncios.obtenerEstadisticas().get("vistasPendientes"));
+
+        // Sin incrementos nuevos no se escribe nada
+        contadoresAnuncios.volcar();
+        verify(jdbcTemplate, times(1)).query(startsWith("INSERT"), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void testVolcar_SiFallaConservaLosIncrementos() {
+        lenient().doThrow(new DataAccessResourceFailureException("sin conexiones"))
+                .when(jdbcTemplate).query(startsWith("INSERT"), any(RowCallbackHandler.class), any(Object[].class));
+        contadoresAnuncios.registrarVista(7L);
+        contadoresAnuncios.registrarVista(7L);
+
+        contadoresAnuncios.volcar();
+
+        assertEquals(2, contadoresAnuncios.vistas(7L));
+        assertEquals(2L, contadoresAnuncios.obtenerEstadisticas().get("vistasPendientes"));
+        assertEquals(1L, contadoresAnuncios.obtenerEstadisticas().get("errores"));
+        // Los totales de la BD se cargan al iniciar, no al volcar
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void testIniciar_CargaLosTotalesDeLaBd() {
+        doAnswer(invocacion -> {
+            RowCallbackHandler filas = invocacion.getArgument(1);
+            filas.processRow(fila(3L, 12L, 2L));
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT"), any(RowCallbackHandler.class));
+
+        contadoresAnuncios.iniciar();
+        try {
+            contadoresAnuncios.registrarVista(3L);
+            assertEquals(13, contadoresAnuncios.vistas(3L));
+            assertEquals(2, contadoresAnuncios.contactos(3L));
+        } finally {
+            ReflectionTestUtils.setField(contadoresAnuncios, "jdbcTemplate", mock(JdbcTemplate.class));
+            contadoresAnuncios.detener();
+        }
+    }
+
+    @Test
+    void testVolcar_NoPierdeIncrementosConcurrentes() throws Exception {
+        AtomicLong escritas = new AtomicLong();
+        doAnswer(invocacion -> {
+            Object[] argumentos = invocacion.getArguments();
+            // Tras la sentencia y el RowCallbackHandler van id, vistas y contactos de cada fila
+            for (int i = 2; i < argumentos.length; i += 3) {
+                escritas.addAndGet((Long) argumentos[i + 1]);
+            }
+            return null;
+        }).when(jdbcTemplate).query(startsWith("INSERT"), any(RowCallbackHandler.class), any(Object[].class));
+
+        ExecutorService hilos = Executors.newFixedThreadPool(4);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            tareas.add(hilos.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    contadoresAnuncios.registrarVista((long) (i % 3));
+                }
+            }));
+        }
+        // Volcar mientras los otros hilos siguen sumando
+        while (tareas.stream().anyMatch(t -> !t.isDone())) {
+            contadoresAnuncios.volcar();
+        }
+        for (Future<?> tarea : tareas) {
+            tarea.get();
+        }
+        hilos.shutdown();
+        contadoresAnuncios.volcar();
+
+        assertEquals(80_000, escritas.get());
+    }
+
+    @Test
+    void testMasVistos_OrdenYLimite() {
+        LocalDateTime fecha = LocalDateTime.of(2025, 11, 20, 10, 0);
+        List<Anuncio> anuncios = List.of(crearAnuncio(1L, fecha), crearAnuncio(2L, fecha.minusDays(1)),
+                crearAnuncio(3L, fecha.minusDays(2)), crearAnuncio(4L, fecha.minusDays(3)));
+        vistas(1L, 1);
+        vistas(2L, 5);
+        vistas(3L, 3);
+        vistas(4L, 3);
+
+        assertEquals(List.of(2L, 3L), ids(contadoresAnuncios.masVistos(anuncios, 2)));
+        // A igual cantidad de vistas, el más reciente primero; sin vistas no aparece
+        assertEquals(List.of(2L, 3L, 4L, 1L), ids(contadoresAnuncios.masVistos(anuncios, 10)));
+        assertTrue(contadoresAnuncios.masVistos(List.of(crearAnuncio(9L, fecha)), 10).isEmpty());
+    }
+
+    private void vistas(Long idAnuncio, int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            contadoresAnuncios.registrarVista(idAnuncio);
+        }
+    }
+
+    private List<Long> ids(List<Anuncio> anuncios) {
+        return anuncios.stream().map(Anuncio::getIdAnuncio).toList();
+    }
+
+    private ResultSet fila(long idAnuncio, long vistas, long contactos) throws Exception {
+        ResultSet fila = mock(ResultSet.class);
+        when(fila.getLong(1)).thenReturn(idAnuncio);
+        when(fila.getLong(2)).thenReturn(vistas);
+        when(fila.getLong(3)).thenReturn(contactos);
+        return fila;
+    }
+
+    private Anuncio crearAnuncio(Long id, LocalDateTime fechaCreacion) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setFechaCreacion(fechaCreacion);
+        return anuncio;
+    }
+}
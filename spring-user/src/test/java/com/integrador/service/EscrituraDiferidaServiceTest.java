@@ -0,0 +1,173 @@
+package com.integrador.service;
+
+import com.integrador.entity.HistorialBusqueda;
+import com.integrador.entity.Vehiculo;
+import com.integrador.repository.HistorialBusquedaRepository;
+import com.integrador.repository.VehiculoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EscrituraDiferidaServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private HistorialBusquedaRepository historialBusquedaRepository;
+
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+
+    private EscrituraDiferidaService escrituraDiferidaService;
+
+    // Parámetros de cada INSERT que llegó a la BD (sin la sentencia)
+    private final List<List<Object>> sentencias = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        escrituraDiferidaService = new EscrituraDiferidaService();
+        ReflectionTestUtils.setField(escrituraDiferidaService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(escrituraDiferidaService, "historialBusquedaRepository", historialBusquedaRepository);
+        ReflectionTestUtils.setField(escrituraDiferidaService, "vehiculoRepository", vehiculoRepository);
+        ReflectionTestUtils.setField(escrituraDiferidaService, "capacidad", 2);
+        ReflectionTestUtils.setField(escrituraDiferidaService, "tamanoLote", 100);
+        // El hilo programado no llega a correr durante la prueba: se drena a mano
+        ReflectionTestUtils.setField(escrituraDiferidaService, "intervaloMs", 60_000L);
+        ReflectionTestUtils.setField(escrituraDiferidaService, "esperaEncolarMs", 0L);
+        escrituraDiferidaService.iniciar();
+    }
+
+    @Test
+    void testColaLlena_EscribeEnElHiloQueLlamaYDetenerVaciaLaCola() {
+        registrarSentencias();
+        escrituraDiferidaService.encolarHistorial(new HistorialBusqueda("u1", "ABC123", "{}"));
+        escrituraDiferidaService.encolarHistorial(new HistorialBusqueda("u1", "DEF456", "{}"));
+        HistorialBusqueda sinLugar = new HistorialBusqueda("u1", "GHI789", "{}");
+        escrituraDiferidaService.encolarHistorial(sinLugar);
+
+        verify(historialBusquedaRepository).save(sinLugar);
+        assertEquals(1L, escrituraDiferidaService.obtenerEstadisticas().get("escriturasSincronas"));
+        assertTrue(sentencias.isEmpty());
+
+        escrituraDiferidaService.detener();
+
+        // Lo encolado sale en un solo INSERT multi-fila
+        assertEquals(1, sentencias.size());
+        assertEquals(List.of("ABC123", "DEF456"), List.of(sentencias.get(0).get(1), sentencias.get(0).get(5)));
+        assertEquals(2L, escrituraDiferidaService.obtenerEstadisticas().get("historialesEscritos"));
+        assertEquals(0, escrituraDiferidaService.obtenerEstadisticas().get("historialesPendientes"));
+    }
+
+    @Test
+    void testEncolarLoteHistorial_UsaLaColaAcotadaYEscribeLoQueNoCabe() {
+        registrarSentencias();
+        escrituraDiferidaService.encolarLoteHistorial(List.of(
+                new HistorialBusqueda("u1", "ABC123", "{}"),
+                new HistorialBusqueda("u1", "DEF456", "{}"),
+                new HistorialBusqueda("u1", "GHI789", "{}"),
+                new HistorialBusqueda("u1", "JKL012", "{}")));
+
+        // Las dos que no caben salen juntas en un INSERT en el hilo que llama
+        assertEquals(1, sentencias.size());
+        assertEquals(List.of("GHI789", "JKL012"), List.of(sentencias.get(0).get(1), sentencias.get(0).get(5)));
+        assertEquals(1L, escrituraDiferidaService.obtenerEstadisticas().get("escriturasSincronas"));
+        assertEquals(2, escrituraDiferidaService.obtenerEstadisticas().get("historialesPendientes"));
+
+        escrituraDiferidaService.drenar();
+        assertEquals(2, sentencias.size());
+        assertEquals(4L, escrituraDiferidaService.obtenerEstadisticas().get("historialesEscritos"));
+    }
+
+    @Test
+    void testDrenar_UltimoSnapshotPorPlaca() {
+        registrarSentencias();
+        escrituraDiferidaService.encolarVehiculo(crearVehiculo("ABC123", "Toyota"));
+        escrituraDiferidaService.encolarVehiculo(crearVehiculo("ABC123", "Kia"));
+
+        escrituraDiferidaService.drenar();
+
+        assertEquals(1, sentencias.size());
+        // Once parámetros por fila: una sola fila, con el snapshot más reciente
+        assertEquals(11, sentencias.get(0).size());
+        assertEquals("Kia", sentencias.get(0).get(2));
+        assertEquals(1L, escrituraDiferidaService.obtenerEstadisticas().get("vehiculosEscritos"));
+    }
+
+    @Test
+    void testDrenar_FilaInvalidaSeDescartaSolaYErrorTemporalSeReintenta() {
+        doAnswer(invocacion -> {
+            List<Object> parametros = parametros(invocacion.getArguments());
+            if (parametros.size() > 4) {
+                throw new DataIntegrityViolationException("lote");
+            }
+            if ("MALA".equals(parametros.get(1))) {
+                throw new DataIntegrityViolationException("placa demasiado larga");
+            }
+            sentencias.add(parametros);
+            return 1;
+        }).when(jdbcTemplate).update(anyString(), any(Object[].class));
+
+        escrituraDiferidaService.encolarHistorial(new HistorialBusqueda("u1", "ABC123", "{}"));
+        escrituraDiferidaService.encolarHistorial(new HistorialBusqueda("u1", "MALA", "{}"));
+        escrituraDiferidaService.drenar();
+
+        // La fila buena se guarda aparte; solo se pierde la inválida
+        assertEquals(1, sentencias.size());
+        assertEquals("ABC123", sentencias.get(0).get(1));
+        assertEquals(1L, escrituraDiferidaService.obtenerEstadisticas().get("descartados"));
+        assertEquals(1L, escrituraDiferidaService.obtenerEstadisticas().get("historialesEscritos"));
+
+        // Con la BD caída el lote queda para el próximo ciclo, por delante de lo encolado después
+        reset(jdbcTemplate);
+        sentencias.clear();
+        doThrow(new DataAccessResourceFailureException("sin conexión"))
+                .when(jdbcTemplate).update(anyString(), any(Object[].class));
+        escrituraDiferidaService.encolarVehiculo(crearVehiculo("ABC123", "Toyota"));
+        escrituraDiferidaService.drenar();
+        assertEquals(1L, escrituraDiferidaService.obtenerEstadisticas().get("reintentos"));
+
+        reset(jdbcTemplate);
+        registrarSentencias();
+        escrituraDiferidaService.encolarVehiculo(crearVehiculo("ABC123", "Kia"));
+        escrituraDiferidaService.drenar();
+
+        assertEquals(1, sentencias.size());
+        assertEquals("Kia", sentencias.get(0).get(2));
+        assertEquals(1L, escrituraDiferidaService.obtenerEstadisticas().get("descartados"));
+    }
+
+    private void registrarSentencias() {
+        doAnswer(invocacion -> {
+            sentencias.add(parametros(invocacion.getArguments()));
+            return 1;
+        }).when(jdbcTemplate).update(anyString(), any(Object[].class));
+    }
+
+    private static List<Object> parametros(Object[] argumentos) {
+        return Arrays.asList(Arrays.copyOfRange(argumentos, 1, argumentos.length));
+    }
+
+    private Vehiculo crearVehiculo(String placa, String marca) {
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setPlaca(placa);
+        vehiculo.setMarca(marca);
+        return vehiculo;
+    }
+}
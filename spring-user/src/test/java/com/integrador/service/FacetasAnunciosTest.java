@@ -0,0 +1,123 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.AnuncioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FacetasAnunciosTest {
+
+    @Mock
+    private AnuncioRepository anuncioRepository;
+
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+    private FacetasAnuncios facetasAnuncios;
+
+    @BeforeEach
+    void setUp() {
+        catalogoAnunciosCache = new CatalogoAnunciosCache();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "anuncioRepository", anuncioRepository);
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+        facetasAnuncios = new FacetasAnuncios();
+        ReflectionTestUtils.setField(facetasAnuncios, "catalogoAnunciosCache", catalogoAnunciosCache);
+        facetasAnuncios.registrar();
+
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(
+                crearAnuncio(1L, "Sedán", 2018, "15000.00", 60000),
+                crearAnuncio(2L, "Sedán", 2012, "9500.00", 120000),
+                crearAnuncio(3L, "Camioneta", 2021, "35000.00", 10000)));
+    }
+
+    @Test
+    void testContar_SinFiltroYConFiltroDisyuntivo() {
+        Map<String, Object> todo = facetasAnuncios.contar(new AnuncioFiltro());
+        assertEquals(3, todo.get("total"));
+        assertEquals(2, cantidad(todo, "tipoVehiculo", "Sedán"));
+        assertEquals(1, cantidad(todo, "anio", "2015-2020"));
+
+        AnuncioFiltro filtro = new AnuncioFiltro();
+        filtro.setTipoVehiculo("Sedán");
+        filtro.setPrecioMin(new BigDecimal("10000"));
+        Map<String, Object> filtrado = facetasAnuncios.contar(filtro);
+
+        assertEquals(1, filtrado.get("total"));
+        // La faceta de tipo ignora su propio filtro: se ven las alternativas con el resto de la selección
+        assertEquals(1, cantidad(filtrado, "tipoVehiculo", "Sedán"));
+        assertEquals(1, cantidad(filtrado, "tipoVehiculo", "Camioneta"));
+        // La de precio ignora el rango de precio pero respeta el tipo
+        assertEquals(1, cantidad(filtrado, "precio", "-10000"));
+        assertEquals(1, cantidad(filtrado, "precio", "10000-20000"));
+        assertEquals(0, cantidad(filtrado, "precio", "30000-50000"));
+    }
+
+    @Test
+    void testRangos_BordesRevisadosUnoAUno() {
+        AnuncioFiltro filtro = new AnuncioFiltro();
+        filtro.setPrecioMin(new BigDecimal("14999.99"));
+        filtro.setPrecioMax(new BigDecimal("15000.00"));
+        assertEquals(1, facetasAnuncios.contar(filtro).get("total"));
+
+        filtro.setPrecioMax(new BigDecimal("14999.999"));
+        assertEquals(0, facetasAnuncios.contar(filtro).get("total"));
+
+        AnuncioFiltro anios = new AnuncioFiltro();
+        anios.setAnioMin(2012);
+        anios.setAnioMax(2018);
+        anios.setKilometrajeMax(100000);
+        assertEquals(1, facetasAnuncios.contar(anios).get("total"));
+    }
+
+    @Test
+    void testParches_DesactivarYEditarSinRecargar() {
+        facetasAnuncios.contar(new AnuncioFiltro());
+
+        Anuncio desactivado = crearAnuncio(2L, "Sedán", 2012, "9500.00", 120000);
+        desactivado.setActivo(false);
+        catalogoAnunciosCache.anuncioGuardado(desactivado);
+        catalogoAnunciosCache.anuncioGuardado(crearAnuncio(3L, "SUV", 2021, "35000.00", 10000));
+        catalogoAnunciosCache.anuncioGuardado(crearAnuncio(4L, "SUV", 2023, "90000.00", 0));
+
+        Map<String, Object> resultado = facetasAnuncios.contar(new AnuncioFiltro());
+        assertEquals(3, resultado.get("total"));
+        assertEquals(1, cantidad(resultado, "tipoVehiculo", "Sedán"));
+        assertEquals(2, cantidad(resultado, "tipoVehiculo", "SUV"));
+        assertEquals(0, cantidad(resultado, "tipoVehiculo", "Camioneta"));
+        assertEquals(1, cantidad(resultado, "precio", "80000-"));
+        verify(anuncioRepository, times(1)).findAllActivos();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int cantidad(Map<String, Object> resultado, String faceta, String valor) {
+        Map<String, Object> facetas = (Map<String, Object>) resultado.get("facetas");
+        return ((List<Map<String, Object>>) facetas.get(faceta)).stream()
+                .filter(conteo -> valor.equals(conteo.get("valor")))
+                .map(conteo -> (Integer) conteo.get("cantidad"))
+                .findFirst().orElse(0);
+    }
+
+    private Anuncio crearAnuncio(Long id, String tipo, int anio, String precio, int kilometraje) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setTipoVehiculo(tipo);
+        anuncio.setAnio(anio);
+        anuncio.setPrecio(new BigDecimal(precio));
+        anuncio.setKilometraje(kilometraje);
+        anuncio.setFechaCreacion(LocalDateTime.of(2025, 11, 20, 10, 0).minusDays(id));
+        anuncio.setActivo(true);
+        return anuncio;
+    }
+}
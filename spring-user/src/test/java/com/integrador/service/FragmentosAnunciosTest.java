@@ -0,0 +1,160 @@
+package com.integrador.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integrador.entity.Anuncio;
+import com.integrador.entity.Imagen;
+import com.integrador.repository.AnuncioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FragmentosAnunciosTest {
+
+    @Mock
+    private AnuncioRepository anuncioRepository;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+    private FragmentosAnuncios fragmentosAnuncios;
+
+    private final LocalDateTime fecha = LocalDateTime.of(2025, 11, 20, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        catalogoAnunciosCache = new CatalogoAnunciosCache();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "anuncioRepository", anuncioRepository);
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+        fragmentosAnuncios = new FragmentosAnuncios();
+        ReflectionTestUtils.setField(fragmentosAnuncios, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(fragmentosAnuncios, "catalogoAnunciosCache", catalogoAnunciosCache);
+        fragmentosAnuncios.registrar();
+    }
+
+    @Test
+    void testListado_MismoJsonQueJacksonYReutilizaFragmentos() throws Exception {
+        List<Anuncio> anuncios = List.of(crearAnuncio(1L, "Toyota Corolla"), crearAnuncio(2L, "Kia Rio"));
+        Map<String, Object> campos = new LinkedHashMap<>();
+        campos.put("success", true);
+        campos.put("siguienteCursor", null);
+
+        JsonNode esperado = objectMapper.readTree(objectMapper.writeValueAsBytes(Map.of("success", true, "anuncios", anuncios)));
+        JsonNode primero = objectMapper.readTree(escribir(campos, anuncios));
+        JsonNode segundo = objectMapper.readTree(escribir(campos, anuncios));
+
+        assertEquals(esperado.get("anuncios"), primero.get("anuncios"));
+        assertTrue(primero.get("success").asBoolean());
+        assertTrue(primero.get("siguienteCursor").isNull());
+        assertEquals(primero, segundo);
+        assertEquals(2L, fragmentosAnuncios.obtenerEstadisticas().get("serializaciones"));
+        assertEquals(2L, fragmentosAnuncios.obtenerEstadisticas().get("aciertos"));
+    }
+
+    @Test
+    void testFragmento_SeRegeneraCuandoCambiaElAnuncioOSusVariantes() throws Exception {
+        Anuncio anuncio = crearAnuncio(1L, "Toyota Corolla");
+        assertFalse(objectMapper.readTree(fragmentosAnuncios.fragmento(anuncio)).at("/imagenes/0").has("variantes"));
+
+        // Terminaron de generarse las variantes de la imagen
+        anuncio.getImagenes().get(0).setVariantes(Map.of("thumb", "/uploads/ab/abc-thumb.webp"));
+        assertEquals("/uploads/ab/abc-thumb.webp",
+                objectMapper.readTree(fragmentosAnuncios.fragmento(anuncio)).at("/imagenes/0/variantes/thumb").asText());
+
+        // Otra instancia del mismo anuncio, editada
+        Anuncio editado = crearAnuncio(1L, "Toyota Corolla Cross");
+        editado.setFechaActualizacion(fecha.plusHours(1));
+        assertEquals("Toyota Corolla Cross", objectMapper.readTree(fragmentosAnuncios.fragmento(editado)).get("modelo").asText());
+        assertEquals(3L, fragmentosAnuncios.obtenerEstadisticas().get("serializaciones"));
+    }
+
+    @Test
+    void testCatalogo_ParchesYCargasInvalidan() {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(crearAnuncio(1L, "Toyota Corolla"), crearAnuncio(2L, "Kia Rio")));
+        List<Anuncio> anuncios = catalogoAnunciosCache.obtener().getAnuncios();
+        anuncios.forEach(fragmentosAnuncios::fragmento);
+        assertEquals(2, fragmentosAnuncios.obtenerEstadisticas().get("fragmentos"));
+
+        catalogoAnunciosCache.anuncioEliminado(2L);
+        assertEquals(1, fragmentosAnuncios.obtenerEstadisticas().get("fragmentos"));
+        assertEquals(1L, fragmentosAnuncios.obtenerEstadisticas().get("invalidaciones"));
+
+        catalogoAnunciosCache.invalidar();
+        catalogoAnunciosCache.obtener();
+        assertEquals(0, fragmentosAnuncios.obtenerEstadisticas().get("fragmentos"));
+    }
+
+    @Test
+    void testFragmentos_AlLlenarseDescartaElMenosUsado() {
+        ReflectionTestUtils.setField(fragmentosAnuncios, "maxEntradas", 2);
+        Anuncio corolla = crearAnuncio(1L, "Toyota Corolla");
+        Anuncio rio = crearAnuncio(2L, "Kia Rio");
+        fragmentosAnuncios.fragmento(corolla);
+        fragmentosAnuncios.fragmento(rio);
+        // El Corolla se vuelve a pedir: el menos usado pasa a ser el Rio
+        fragmentosAnuncios.fragmento(corolla);
+        fragmentosAnuncios.fragmento(crearAnuncio(3L, "Hyundai Accent"));
+
+        Map<String, Object> estadisticas = fragmentosAnuncios.obtenerEstadisticas();
+        assertEquals(2, estadisticas.get("fragmentos"));
+        assertEquals(1L, estadisticas.get("expulsiones"));
+        fragmentosAnuncios.fragmento(corolla);
+        fragmentosAnuncios.fragmento(rio);
+        // Corolla seguía guardado; Rio hubo que serializarlo otra vez
+        assertEquals(2L, fragmentosAnuncios.obtenerEstadisticas().get("aciertos"));
+        assertEquals(4L, fragmentosAnuncios.obtenerEstadisticas().get("serializaciones"));
+    }
+
+    @Test
+    void testFirma_ComparaLosValoresYNoUnHash() {
+        Anuncio anuncio = crearAnuncio(1L, "Toyota Corolla");
+        assertEquals(FragmentosAnuncios.firma(anuncio), FragmentosAnuncios.firma(crearAnuncio(1L, "Toyota Corolla")));
+
+        Anuncio otraImagen = crearAnuncio(1L, "Toyota Corolla");
+        otraImagen.getImagenes().get(0).setUrlImagen("/uploads/ab/abd.jpg");
+        assertNotEquals(FragmentosAnuncios.firma(anuncio), FragmentosAnuncios.firma(otraImagen));
+
+        Anuncio inactivo = crearAnuncio(1L, "Toyota Corolla");
+        inactivo.setActivo(false);
+        assertNotEquals(FragmentosAnuncios.firma(anuncio), FragmentosAnuncios.firma(inactivo));
+    }
+
+    private byte[] escribir(Map<String, Object> campos, List<Anuncio> anuncios) throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        fragmentosAnuncios.escribirListado(salida, campos, "anuncios", anuncios);
+        return salida.toByteArray();
+    }
+
+    private Anuncio crearAnuncio(Long id, String modelo) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setModelo(modelo);
+        anuncio.setTitulo(modelo + " 2020");
+        anuncio.setAnio(2020);
+        anuncio.setPrecio(new BigDecimal("45000.00"));
+        anuncio.setDescripcion("Único dueño");
+        anuncio.setFechaCreacion(fecha);
+        anuncio.setFechaActualizacion(fecha);
+        anuncio.setActivo(true);
+        Imagen imagen = new Imagen();
+        imagen.setUrlImagen("/uploads/ab/abc.jpg");
+        imagen.setOrden(1);
+        anuncio.addImagen(imagen);
+        return anuncio;
+    }
+}
@@ -0,0 +1,134 @@
+package com.integrador.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagenIngestaServiceTest {
+
+    @TempDir
+    Path directorio;
+
+    private ImagenIngestaService imagenIngestaService;
+
+    @BeforeEach
+    void setUp() {
+        imagenIngestaService = new ImagenIngestaService(2);
+        ReflectionTestUtils.setField(imagenIngestaService, "uploadDir", directorio.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        imagenIngestaService.detener();
+    }
+
+    @Test
+    void testGuardar_CalculaTamanoYHashEnLaMismaPasada() throws Exception {
+        byte[] contenido1 = new byte[200_000];
+        for (int i = 0; i < contenido1.length; i++) {
+            contenido1[i] = (byte) (i % 251);
+        }
+        byte[] contenido2 = "segunda imagen".getBytes();
+
+        List<ImagenIngestaService.ImagenGuardada> guardadas = imagenIngestaService.guardar(List.of(
+                new MockMultipartFile("imagen1", "auto.jpg", "image/jpeg", contenido1),
+                new MockMultipartFile("imagen2", "interior.png", "image/png", contenido2)));
+
+        assertEquals(2, guardadas.size());
+        assertEquals(contenido1.length, guardadas.get(0).getTamano());
+        String hash = sha256(contenido1);
+        assertEquals(hash, guardadas.get(0).getSha256());
+        // Direccionado por contenido y repartido en subdirectorios por el hash
+        assertEquals("/uploads/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".jpg",
+                guardadas.get(0).getUrl());
+        assertTrue(guardadas.get(0).isNueva());
+        assertArrayEquals(contenido2, Files.readAllBytes(guardadas.get(1).getRuta()));
+
+        // No quedan temporales en el directorio
+        try (Stream<Path> archivos = Files.walk(directorio)) {
+            assertEquals(2, archivos.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testGuardar_MismoContenidoSeAlmacenaUnaVez() throws Exception {
+        byte[] contenido = "la misma foto".getBytes();
+
+        ImagenIngestaService.ImagenGuardada primera = imagenIngestaService.guardar(List.of(
+                new MockMultipartFile("imagen1", "foto.JPG", "image/jpeg", contenido))).get(0);
+        ImagenIngestaService.ImagenGuardada segunda = imagenIngestaService.guardar(List.of(
+                new MockMultipartFile("imagen1", "copia.jpg", "image/jpeg", contenido))).get(0);
+
+        assertEquals(primera.getUrl(), segunda.getUrl());
+        assertFalse(segunda.isNueva());
+        assertTrue(Files.exists(primera.getRuta()));
+        // Cada subida reserva el archivo hasta que termine su transacción (aquí no hay: se suelta ya)
+        assertTrue(AlmacenImagenesService.reservado(primera.getRuta()));
+        imagenIngestaService.soltarAlTerminar(List.of(primera));
+        assertTrue(AlmacenImagenesService.reservado(primera.getRuta()));
+        imagenIngestaService.soltarAlTerminar(List.of(segunda));
+        assertFalse(AlmacenImagenesService.reservado(primera.getRuta()));
+        // Un solo archivo y ningún temporal de la segunda subida
+        try (Stream<Path> archivos = Files.walk(directorio)) {
+            assertEquals(1, archivos.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void testGuardar_DesdeDiscoCopiaConElCanal() throws Exception {
+        byte[] contenido = new byte[300_000];
+        for (int i = 0; i < contenido.length; i++) {
+            contenido[i] = (byte) (i % 239);
+        }
+        // Como la deja el contenedor cuando la subida supera el umbral de memoria: en un archivo temporal
+        Path subida = Files.write(Files.createTempFile("subida", ".tmp"), contenido);
+        MockMultipartFile enDisco = new MockMultipartFile("imagen1", "grande.jpeg", "image/jpeg", contenido) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new FileInputStream(subida.toFile());
+            }
+        };
+        try {
+            ImagenIngestaService.ImagenGuardada guardada = imagenIngestaService.guardar(List.of(enDisco)).get(0);
+            imagenIngestaService.soltarAlTerminar(List.of(guardada));
+
+            assertEquals(contenido.length, guardada.getTamano());
+            assertEquals(sha256(contenido), guardada.getSha256());
+            assertArrayEquals(contenido, Files.readAllBytes(guardada.getRuta()));
+        } finally {
+            Files.deleteIfExists(subida);
+        }
+    }
+
+    @Test
+    void testGuardar_RechazaExtensionesQueNoSonImagen() {
+        byte[] contenido = "<script>alert(1)</script>".getBytes();
+
+        assertThrows(IllegalArgumentException.class, () -> imagenIngestaService.guardar(List.of(
+                new MockMultipartFile("imagen1", "auto.jpg", "image/jpeg", contenido),
+                new MockMultipartFile("imagen2", "pagina.HTML", "text/html", contenido))));
+        assertThrows(IllegalArgumentException.class, () -> imagenIngestaService.guardar(List.of(
+                new MockMultipartFile("imagen1", "logo.svg", "image/svg+xml", contenido))));
+        // No se escribió ninguna, tampoco la válida que venía junto a la rechazada
+        assertFalse(Files.exists(directorio) && directorio.toFile().list().length > 0);
+    }
+
+    private String sha256(byte[] contenido) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(contenido));
+    }
+}
@@ -0,0 +1,104 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.AnuncioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IndiceAnunciosTest {
+
+    @Mock
+    private AnuncioRepository anuncioRepository;
+
+    private CatalogoAnunciosCache catalogoAnunciosCache;
+    private IndiceAnuncios indiceAnuncios;
+
+    private final LocalDateTime fecha = LocalDateTime.of(2025, 11, 20, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        catalogoAnunciosCache = new CatalogoAnunciosCache();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "anuncioRepository", anuncioRepository);
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+        indiceAnuncios = new IndiceAnuncios();
+        ReflectionTestUtils.setField(indiceAnuncios, "catalogoAnunciosCache", catalogoAnunciosCache);
+        indiceAnuncios.registrar();
+    }
+
+    @Test
+    void testBuscar_AcentosPrefijosYRanking() {
+        cargarCatalogo();
+        // Sin tildes y en plural encuentra "Sedán"
+        assertEquals(List.of(1L, 3L), ids(indiceAnuncios.buscar("sedanes", 0, 10)));
+        // Prefijo: "toyo" encuentra Toyota; pesa más en el modelo que en la descripción
+        IndiceAnuncios.ResultadoBusqueda toyota = indiceAnuncios.buscar("toyo", 0, 10);
+        assertEquals(3, toyota.getTotal());
+        assertEquals(3L, ids(toyota).get(2));
+        // Todos los términos deben coincidir
+        assertEquals(List.of(2L), ids(indiceAnuncios.buscar("Toyota camionetas", 0, 10)));
+        assertEquals(List.of(1L), ids(indiceAnuncios.buscar("motor", 0, 10)));
+        assertEquals(0, indiceAnuncios.buscar("de la", 0, 10).getTotal());
+        // Paginación
+        assertEquals(1, indiceAnuncios.buscar("toyota", 2, 10).getAnuncios().size());
+    }
+
+    @Test
+    void testParches_ActualizanElIndiceSinReconstruir() {
+        cargarCatalogo();
+        indiceAnuncios.buscar("kia", 0, 10);
+
+        catalogoAnunciosCache.anuncioGuardado(crearAnuncio(4L, "Nissan Frontier", "Camioneta", "4x4 diésel", fecha.plusDays(1)));
+        catalogoAnunciosCache.anuncioEliminado(2L);
+        catalogoAnunciosCache.anuncioGuardado(crearAnuncio(3L, "Kia Picanto", "Hatchback", "Recién pintado", fecha));
+
+        assertEquals(List.of(4L), ids(indiceAnuncios.buscar("camioneta", 0, 10)));
+        assertEquals(List.of(4L), ids(indiceAnuncios.buscar("diesel", 0, 10)));
+        assertEquals(List.of(3L), ids(indiceAnuncios.buscar("picanto", 0, 10)));
+        assertEquals(0, indiceAnuncios.buscar("rio", 0, 10).getTotal());
+        assertEquals(0, indiceAnuncios.buscar("hilux", 0, 10).getTotal());
+
+        assertEquals(1L, indiceAnuncios.obtenerEstadisticas().get("reconstrucciones"));
+        assertEquals(3L, indiceAnuncios.obtenerEstadisticas().get("actualizaciones"));
+        verify(anuncioRepository, times(1)).findAllActivos();
+    }
+
+    @Test
+    void testTokenizar() {
+        assertEquals(List.of("camion", "rojo", "motor", "2018"), TextoBusqueda.tokenizar("¡Camión ROJO con motores del 2018!"));
+        assertEquals(List.of("nandu", "exito"), TextoBusqueda.tokenizar("Ñandú Éxito"));
+    }
+
+    private void cargarCatalogo() {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(
+                crearAnuncio(1L, "Toyota Corolla", "Sedán", "Único dueño, motores revisados", fecha),
+                crearAnuncio(2L, "Toyota Hilux", "Camioneta", "Ideal para carga y trabajo en campo", fecha.minusDays(1)),
+                crearAnuncio(3L, "Kia Rio", "Sedán", "Económico, perfecto para la ciudad. Nada de Toyota", fecha.minusDays(2))));
+    }
+
+    private List<Long> ids(IndiceAnuncios.ResultadoBusqueda resultado) {
+        return resultado.getAnuncios().stream().map(Anuncio::getIdAnuncio).toList();
+    }
+
+    private Anuncio crearAnuncio(Long id, String modelo, String tipo, String descripcion, LocalDateTime fechaCreacion) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setModelo(modelo);
+        anuncio.setTitulo(modelo + " 2020");
+        anuncio.setTipoVehiculo(tipo);
+        anuncio.setDescripcion(descripcion);
+        anuncio.setFechaCreacion(fechaCreacion);
+        anuncio.setActivo(true);
+        return anuncio;
+    }
+}
@@ -0,0 +1,75 @@
+package com.integrador.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integrador.entity.Vehiculo;
+import com.integrador.repository.VehiculoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlacaCacheServiceTest {
+
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+
+    @InjectMocks
+    private PlacaCacheService placaCacheService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(placaCacheService, "maxEntradas", 2);
+        ReflectionTestUtils.setField(placaCacheService, "ttlMinutos", 60L);
+        ReflectionTestUtils.setField(placaCacheService, "ttlBaseDatosHoras", 24L);
+    }
+
+    @Test
+    void testObtener_AciertoEnMemoria() {
+        placaCacheService.guardar("ABC123", "{\"CarMake\":\"Toyota\"}");
+
+        assertEquals("{\"CarMake\":\"Toyota\"}", placaCacheService.obtener("abc123"));
+        verify(vehiculoRepository, never()).findByPlaca(anyString());
+        assertEquals(1L, placaCacheService.obtenerEstadisticas().get("aciertosMemoria"));
+    }
+
+    @Test
+    void testGuardar_ExpulsaLaMenosUsada() {
+        when(vehiculoRepository.findByPlaca("AAA111")).thenReturn(Optional.empty());
+
+        placaCacheService.guardar("AAA111", "{}");
+        placaCacheService.guardar("BBB222", "{}");
+        placaCacheService.obtener("BBB222");
+        placaCacheService.guardar("CCC333", "{}");
+
+        assertNull(placaCacheService.obtener("AAA111"));
+        Map<String, Object> estadisticas = placaCacheService.obtenerEstadisticas();
+        assertEquals(1L, estadisticas.get("expulsiones"));
+        assertEquals(1L, estadisticas.get("fallos"));
+    }
+
+    @Test
+    void testObtener_AciertoEnBaseDeDatos() throws Exception {
+        Vehiculo vehiculo = new Vehiculo();
+        vehiculo.setPlaca("XYZ789");
+        vehiculo.setDatosApi(new ObjectMapper().readTree("{\"CarMake\":\"Kia\"}"));
+        vehiculo.setFechaActualizacionApi(LocalDateTime.now().minusHours(1));
+        when(vehiculoRepository.findByPlaca("XYZ789")).thenReturn(Optional.of(vehiculo));
+
+        assertEquals("{\"CarMake\":\"Kia\"}", placaCacheService.obtener("XYZ789"));
+        // La segunda consulta ya se sirve desde memoria
+        assertEquals("{\"CarMake\":\"Kia\"}", placaCacheService.obtener("XYZ789"));
+        verify(vehiculoRepository, times(1)).findByPlaca("XYZ789");
+    }
+}
@@ -0,0 +1,113 @@
+package com.integrador.service;
+
+import com.integrador.repository.HistorialBusquedaRepository;
+import com.integrador.repository.VehiculoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PlateSearchLoteTest {
+
+    @Mock
+    private VehiculoRepository vehiculoRepository;
+
+    @Mock
+    private HistorialBusquedaRepository historialBusquedaRepository;
+
+    @Mock
+    private PlacaAPIService placaAPIService;
+
+    @Mock
+    private PlacaCacheService placaCacheService;
+
+    @Mock
+    private EscrituraDiferidaService escrituraDiferidaService;
+
+    @InjectMocks
+    private PlateSearchService plateSearchService;
+
+    @BeforeEach
+    void setUp() {
+        plateSearchService.iniciar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        plateSearchService.detener();
+    }
+
+    @Test
+    void testPrepararLote_NormalizaYQuitaDuplicados() {
+        List<String> placas = plateSearchService.prepararLote(List.of("abc-123", "ABC123", " xyz 789 ", ""));
+
+        assertEquals(List.of("ABC123", "XYZ789"), placas);
+        assertThrows(IllegalArgumentException.class, () -> plateSearchService.prepararLote(List.of()));
+    }
+
+    @Test
+    void testBuscarPlacasEnLote_CacheInmediataYErroresPorPlaca() {
+        when(placaCacheService.obtener("ABC123")).thenReturn("{\"CarMake\":\"Toyota\",\"CarModel\":\"Corolla\"}");
+        when(placaAPIService.consultarPlacaReal("XYZ789")).thenReturn("{\"CarMake\":\"Kia\",\"CarModel\":\"Rio\"}");
+        when(placaAPIService.consultarPlacaReal("ERR000")).thenThrow(new RuntimeException("Error de conexión"));
+
+        List<Map<String, Object>> resultados = new ArrayList<>();
+        plateSearchService.buscarPlacasEnLote(List.of("ABC123", "XYZ789", "ERR000"), "guest", resultados::add);
+
+        assertEquals(3, resultados.size());
+        // La placa en caché se entrega antes que las que van a la API
+        assertEquals("ABC123", resultados.get(0).get("placa"));
+        assertEquals("cache", resultados.get(0).get("fuente"));
+
+        Map<String, Object> error = resultados.stream()
+                .filter(r -> "ERR000".equals(r.get("placa"))).findFirst().orElseThrow();
+        assertEquals(false, error.get("success"));
+        assertEquals("Error de conexión", error.get("error"));
+
+        // El historial de las búsquedas exitosas se guarda en un solo lote
+        verify(escrituraDiferidaService, times(1)).encolarLoteHistorial(argThat(lote -> lote.size() == 2));
+        verify(escrituraDiferidaService, never()).encolarHistorial(any());
+    }
+
+    @Test
+    void testBuscarPlacasEnLote_TiempoAgotadoNoInterrumpeLaConsultaEnCurso() throws Exception {
+        ReflectionTestUtils.setField(plateSearchService, "timeoutLoteMs", 50L);
+        CountDownLatch terminada = new CountDownLatch(1);
+        AtomicBoolean interrumpida = new AtomicBoolean(false);
+        when(placaAPIService.consultarPlacaReal("LEN000")).thenAnswer(invocacion -> {
+            try {
+                Thread.sleep(300);
+                return "{\"CarMake\":\"Kia\",\"CarModel\":\"Rio\"}";
+            } catch (InterruptedException e) {
+                interrumpida.set(true);
+                throw e;
+            } finally {
+                terminada.countDown();
+            }
+        });
+
+        List<Map<String, Object>> resultados = new ArrayList<>();
+        plateSearchService.buscarPlacasEnLote(List.of("LEN000"), "guest", resultados::add);
+
+        assertEquals(1, resultados.size());
+        assertEquals("Tiempo de espera agotado consultando la placa", resultados.get(0).get("error"));
+        // La llamada sigue hasta el final: otras búsquedas de la misma placa pueden estar esperándola
+        assertTrue(terminada.await(5, TimeUnit.SECONDS));
+        assertFalse(interrumpida.get());
+    }
+}
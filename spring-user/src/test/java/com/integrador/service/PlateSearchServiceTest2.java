@@ -1,5 +1,6 @@
 package com.integrador.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.integrador.entity.Vehiculo;
 import com.integrador.repository.HistorialBusquedaRepository;
 import com.integrador.repository.VehiculoRepository;
@@ -10,8 +11,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,6 +32,12 @@ class PlateSearchServiceTest2 {
     @Mock
     private PlacaAPIService placaAPIService;
 
+    @Mock
+    private PlacaCacheService placaCacheService;
+
+    @Mock
+    private EscrituraDiferidaService escrituraDiferidaService;
+
     @InjectMocks
     private PlateSearchService plateSearchService;
 
@@ -50,7 +62,40 @@ class PlateSearchServiceTest2 {
 
         // Verificar que se lanzó excepción y no se guardó vehículo
         assertNotNull(exception);
-        verify(vehiculoRepository, never()).save(any(Vehiculo.class));
+        verify(escrituraDiferidaService, never()).encolarVehiculo(any(Vehiculo.class));
     }
-}
 
+    @Test
+    void testSearchPlate_CircuitoAbiertoSirveElUltimoSnapshot() throws Exception {
+        // Preparar: la API no se consulta (circuito abierto) pero la placa se guardó antes
+        LocalDateTime actualizadoEn = LocalDateTime.of(2025, 11, 20, 10, 0);
+        Vehiculo guardado = new Vehiculo();
+        guardado.setPlaca(testPlateNumber);
+        guardado.setDatosApi(new ObjectMapper().readTree("{\"CarMake\":\"Kia\",\"CarModel\":\"Rio\"}"));
+        guardado.setFechaActualizacionApi(actualizadoEn);
+        when(placaAPIService.consultarPlacaReal(testPlateNumber))
+                .thenThrow(new PlacaApiNoDisponibleException("La API de placas no está disponible temporalmente."));
+        when(vehiculoRepository.findByPlaca(testPlateNumber)).thenReturn(Optional.of(guardado));
+
+        // Ejecutar
+        Map<String, Object> result = plateSearchService.searchPlate(testPlateNumber, testUserId);
+
+        // Verificar: datos viejos marcados como degradados y sin volver a guardar el vehículo
+        assertEquals("Kia", result.get("marca"));
+        assertEquals(true, result.get("degradado"));
+        assertEquals(actualizadoEn, result.get("datos_actualizados_en"));
+        verify(escrituraDiferidaService, never()).encolarVehiculo(any(Vehiculo.class));
+        verify(placaCacheService, never()).guardar(anyString(), anyString());
+    }
+
+    @Test
+    void testSearchPlate_CircuitoAbiertoSinSnapshotPropagaLaExcepcion() {
+        when(placaAPIService.consultarPlacaReal(testPlateNumber))
+                .thenThrow(new PlacaApiNoDisponibleException("La API de placas no está disponible temporalmente."));
+        when(vehiculoRepository.findByPlaca(testPlateNumber)).thenReturn(Optional.empty());
+
+        // El controlador la traduce a 503 con Retry-After
+        assertThrows(PlacaApiNoDisponibleException.class,
+                () -> plateSearchService.searchPlate(testPlateNumber, testUserId));
+    }
+}
@@ -26,6 +26,12 @@ class PlateSearchServiceTest3 {
     @Mock
     private PlacaAPIService placaAPIService;
 
+    @Mock
+    private PlacaCacheService placaCacheService;
+
+    @Mock
+    private EscrituraDiferidaService escrituraDiferidaService;
+
     @InjectMocks
     private PlateSearchService plateSearchService;
 
@@ -50,7 +56,7 @@ class PlateSearchServiceTest3 {
         });
 
         assertTrue(exception.getMessage().contains("No se pudo obtener información"));
-        verify(vehiculoRepository, never()).save(any(Vehiculo.class));
+        verify(escrituraDiferidaService, never()).encolarVehiculo(any(Vehiculo.class));
     }
 }
 
@@ -0,0 +1,114 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import com.integrador.dto.ChatMessage;
+import com.integrador.entity.Anuncio;
+import com.integrador.repository.AnuncioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecuperacionAnunciosTest {
+
+    @Mock
+    private AnuncioRepository anuncioRepository;
+
+    private RecuperacionAnuncios recuperacionAnuncios;
+
+    private final LocalDateTime fecha = LocalDateTime.of(2025, 11, 20, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        CatalogoAnunciosCache catalogoAnunciosCache = new CatalogoAnunciosCache();
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "anuncioRepository", anuncioRepository);
+        ReflectionTestUtils.setField(catalogoAnunciosCache, "ttlSegundos", 300L);
+        IndiceAnuncios indiceAnuncios = new IndiceAnuncios();
+        ReflectionTestUtils.setField(indiceAnuncios, "catalogoAnunciosCache", catalogoAnunciosCache);
+        FacetasAnuncios facetasAnuncios = new FacetasAnuncios();
+        ReflectionTestUtils.setField(facetasAnuncios, "catalogoAnunciosCache", catalogoAnunciosCache);
+        recuperacionAnuncios = new RecuperacionAnuncios();
+        ReflectionTestUtils.setField(recuperacionAnuncios, "catalogoAnunciosCache", catalogoAnunciosCache);
+        ReflectionTestUtils.setField(recuperacionAnuncios, "indiceAnuncios", indiceAnuncios);
+        ReflectionTestUtils.setField(recuperacionAnuncios, "facetasAnuncios", facetasAnuncios);
+    }
+
+    @Test
+    void testExtraerFiltro() {
+        List<String> tipos = List.of("SUV", "Sedán", "Camioneta");
+
+        AnuncioFiltro filtro = RecuperacionAnuncios.extraerFiltro(
+                "Busco una SUV de hasta 20 mil dólares, del 2018 en adelante y con menos de 80.000 km", tipos);
+        assertEquals("SUV", filtro.getTipoVehiculo());
+        assertEquals(0, new BigDecimal("20000").compareTo(filtro.getPrecioMax()));
+        assertEquals(2018, filtro.getAnioMin());
+        assertEquals(80000, filtro.getKilometrajeMax());
+
+        // "hasta 2015" no es un presupuesto; los plurales encuentran el tipo
+        AnuncioFiltro sedanes = RecuperacionAnuncios.extraerFiltro("sedanes hasta 2015", tipos);
+        assertEquals("Sedán", sedanes.getTipoVehiculo());
+        assertNull(sedanes.getPrecioMax());
+
+        assertTrue(RecuperacionAnuncios.extraerFiltro("hola, ¿qué me recomiendas?", tipos).estaVacio());
+    }
+
+    @Test
+    void testSeleccionar_FiltraOrdenaYRespetaPresupuesto() {
+        when(anuncioRepository.findAllActivos()).thenReturn(List.of(
+                crearAnuncio(1L, "Toyota RAV4", "SUV", 2019, "25000", "Familiar, siete asientos", fecha),
+                crearAnuncio(2L, "Kia Sportage", "SUV", 2020, "18000", "Económica y familiar", fecha.minusDays(1)),
+                crearAnuncio(3L, "Hyundai Tucson", "SUV", 2016, "15000", "Buen estado", fecha.minusDays(2)),
+                crearAnuncio(4L, "Toyota Corolla", "Sedán", 2021, "17000", "Familiar", fecha.minusDays(3))));
+
+        RecuperacionAnuncios.Seleccion seleccion = recuperacionAnuncios.seleccionar(
+                "algo familiar hasta 20 mil", List.of(new ChatMessage("user", "Busco una SUV"),
+                        new ChatMessage("assistant", "¿Qué presupuesto tienes?")));
+
+        // El tipo sale del turno anterior y el presupuesto del mensaje; "familiar" ordena
+        assertEquals("SUV", seleccion.getFiltro().getTipoVehiculo());
+        assertEquals(List.of(2L, 3L), ids(seleccion.getAnuncios()));
+        assertEquals(2, seleccion.getCandidatos());
+        assertEquals(4, seleccion.getDisponibles());
+        assertTrue(seleccion.getContexto().startsWith("ID: 2 | Modelo: Kia Sportage | Año: 2020 | Precio: 18000"));
+        assertTrue(seleccion.getEncabezado().contains("2 de 4 disponibles"));
+
+        // Sin nada que cumpla los filtros se muestran los más parecidos
+        RecuperacionAnuncios.Seleccion relajada = recuperacionAnuncios.seleccionar("SUV hasta 5 mil", null);
+        assertTrue(relajada.isFiltrosRelajados());
+        assertEquals(4, relajada.getAnuncios().size());
+
+        // Con un presupuesto de tokens mínimo entra solo el primero
+        ReflectionTestUtils.setField(recuperacionAnuncios, "maxTokens", 10);
+        assertEquals(List.of(2L), ids(recuperacionAnuncios.seleccionar("SUV familiar hasta 20 mil", null).getAnuncios()));
+    }
+
+    private List<Long> ids(List<Anuncio> anuncios) {
+        return anuncios.stream().map(Anuncio::getIdAnuncio).toList();
+    }
+
+    private Anuncio crearAnuncio(Long id, String modelo, String tipo, int anio, String precio, String descripcion,
+                                 LocalDateTime fechaCreacion) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setModelo(modelo);
+        anuncio.setTitulo(modelo + " " + anio);
+        anuncio.setTipoVehiculo(tipo);
+        anuncio.setAnio(anio);
+        anuncio.setKilometraje(60000);
+        anuncio.setPrecio(new BigDecimal(precio));
+        anuncio.setDescripcion(descripcion);
+        anuncio.setFechaCreacion(fechaCreacion);
+        anuncio.setActivo(true);
+        return anuncio;
+    }
+}
@@ -0,0 +1,102 @@
+package com.integrador.service;
+
+import com.integrador.dto.AnuncioFiltro;
+import com.integrador.dto.ChatMessage;
+import com.integrador.dto.ChatResponse;
+import com.integrador.entity.Anuncio;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RespuestasChatCacheTest {
+
+    private RespuestasChatCache respuestasChatCache;
+
+    private final LocalDateTime fecha = LocalDateTime.of(2025, 11, 20, 10, 0);
+
+    @BeforeEach
+    void setUp() {
+        respuestasChatCache = new RespuestasChatCache();
+    }
+
+    @Test
+    void testObtener_PreguntasCasiIgualesComparten() {
+        RecuperacionAnuncios.Seleccion seleccion = seleccion(crearAnuncio(1L, fecha), crearAnuncio(2L, fecha));
+        String clave = respuestasChatCache.clave(seleccion, "¿Busco una SUV barata?", null);
+        assertNull(respuestasChatCache.obtener(clave));
+        respuestasChatCache.guardar(clave, new ChatResponse("Te recomiendo el Kia Rio.", List.of(2L)), 2500);
+
+        ChatResponse repetida = respuestasChatCache.obtener(respuestasChatCache.clave(seleccion, "busco SUV baratas", null));
+        assertEquals("Te recomiendo el Kia Rio.", repetida.getResponse());
+        assertEquals(List.of(2L), repetida.getRecommendedAnuncioIds());
+
+        // En otro punto de la conversación es otra pregunta
+        List<ChatMessage> historial = List.of(new ChatMessage("assistant", "¿Qué presupuesto tienes?"));
+        assertNull(respuestasChatCache.obtener(respuestasChatCache.clave(seleccion, "busco SUV baratas", historial)));
+
+        assertEquals(1L, respuestasChatCache.obtenerEstadisticas().get("aciertos"));
+        assertEquals(2L, respuestasChatCache.obtenerEstadisticas().get("fallos"));
+        assertEquals(2500L, respuestasChatCache.obtenerEstadisticas().get("latenciaAhorradaMs"));
+    }
+
+    @Test
+    void testClave_CambiaSoloSiCambiaLoQueVeElModelo() {
+        String clave = respuestasChatCache.clave(
+                seleccion(crearAnuncio(1L, fecha), crearAnuncio(2L, fecha)), "busco una SUV", null);
+
+        // Una recarga del catálogo con los mismos anuncios da la misma clave
+        assertEquals(clave, respuestasChatCache.clave(
+                seleccion(crearAnuncio(1L, fecha), crearAnuncio(2L, fecha)), "busco una SUV", null));
+        // Un anuncio editado o que deja de estar incluido, no
+        assertNotEquals(clave, respuestasChatCache.clave(
+                seleccion(crearAnuncio(1L, fecha), crearAnuncio(2L, fecha.plusHours(1))), "busco una SUV", null));
+        assertNotEquals(clave, respuestasChatCache.clave(
+                seleccion(crearAnuncio(1L, fecha)), "busco una SUV", null));
+    }
+
+    @Test
+    void testTtlYTamanoMaximo() {
+        ReflectionTestUtils.setField(respuestasChatCache, "maxEntradas", 2);
+        respuestasChatCache.guardar("a", new ChatResponse("A", List.of()), 10);
+        respuestasChatCache.guardar("b", new ChatResponse("B", List.of()), 10);
+        respuestasChatCache.obtener("a");
+        respuestasChatCache.guardar("c", new ChatResponse("C", List.of()), 10);
+
+        // Sale la menos usada
+        assertNull(respuestasChatCache.obtener("b"));
+        assertNotNull(respuestasChatCache.obtener("a"));
+        assertEquals(1L, respuestasChatCache.obtenerEstadisticas().get("expulsiones"));
+
+        ReflectionTestUtils.setField(respuestasChatCache, "ttlMinutos", 0L);
+        respuestasChatCache.guardar("d", new ChatResponse("D", List.of()), 10);
+        assertNull(respuestasChatCache.obtener("d"));
+        assertEquals(1L, respuestasChatCache.obtenerEstadisticas().get("expiradas"));
+    }
+
+    private RecuperacionAnuncios.Seleccion seleccion(Anuncio... anuncios) {
+        AnuncioFiltro filtro = new AnuncioFiltro();
+        filtro.setTipoVehiculo("SUV");
+        RecuperacionAnuncios.Seleccion seleccion = mock(RecuperacionAnuncios.Seleccion.class);
+        when(seleccion.getFiltro()).thenReturn(filtro);
+        when(seleccion.getAnuncios()).thenReturn(List.of(anuncios));
+        return seleccion;
+    }
+
+    private Anuncio crearAnuncio(Long id, LocalDateTime fechaActualizacion) {
+        Anuncio anuncio = new Anuncio();
+        anuncio.setIdAnuncio(id);
+        anuncio.setModelo("Kia Rio");
+        anuncio.setFechaActualizacion(fechaActualizacion);
+        anuncio.setActivo(true);
+        return anuncio;
+    }
+}
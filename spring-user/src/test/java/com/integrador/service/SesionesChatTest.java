@@ -0,0 +1,168 @@
+package com.integrador.service;
+
+import com.integrador.dto.ChatMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SesionesChatTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SesionesChat sesionesChat;
+
+    @BeforeEach
+    void setUp() {
+        sesionesChat = new SesionesChat();
+        ReflectionTestUtils.setField(sesionesChat, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @Test
+    void testRegistrarTurno_CompactaLoViejoDentroDelPresupuesto() {
+        ReflectionTestUtils.setField(sesionesChat, "maxTokens", 60);
+        SesionesChat.Sesion sesion = sesionesChat.obtener(null);
+
+        sesionesChat.registrarTurno(sesion, "Busco una SUV familiar", "¿Qué presupuesto tienes?");
+        assertEquals(2, sesion.historial().size());
+
+        sesionesChat.registrarTurno(sesion, "Hasta 20 mil dólares, del 2018 en adelante", "Te recomiendo el Kia Sportage 2020 por 18000");
+        sesionesChat.registrarTurno(sesion, "¿Y con menos kilometraje?", "El Hyundai Tucson tiene 40000 km");
+
+        List<ChatMessage> historial = sesion.historial();
+        // El resumen va primero y los últimos turnos quedan completos
+        assertEquals("system", historial.get(0).getRole());
+        assertTrue(historial.get(0).getContent().contains("- Usuario: Busco una SUV familiar"));
+        assertEquals("El Hyundai Tucson tiene 40000 km", historial.get(historial.size() - 1).getContent());
+        int caracteres = historial.subList(1, historial.size()).stream().mapToInt(m -> m.getContent().length()).sum();
+        assertTrue(caracteres / 4 + 4 * (historial.size() - 1) <= 60);
+        assertTrue((Long) sesionesChat.obtenerEstadisticas().get("compactaciones") > 0);
+
+        // Se sigue usando la misma sesión por su id
+        assertSame(sesion, sesionesChat.obtener(sesion.getId()));
+    }
+
+    @Test
+    void testBarrer_GuardaLasInactivasYSeRetomanDesdeLaBd() throws Exception {
+        ReflectionTestUtils.setField(sesionesChat, "inactividadMinutos", 0L);
+        SesionesChat.Sesion sesion = sesionesChat.crear(List.of(
+                new ChatMessage("assistant", "¡Hola! ¿Qué buscas?"), new ChatMessage("user", "Un sedán")));
+        Thread.sleep(5);
+
+        sesionesChat.barrer();
+
+        ArgumentCaptor<String> turnos = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(startsWith("INSERT"), eq(sesion.getId()), eq(""), turnos.capture());
+        assertTrue(turnos.getValue().contains("Un sedán"));
+        assertEquals(0, sesionesChat.obtenerEstadisticas().get("sesiones"));
+
+        // Al volver, la sesión se lee de chat_sesiones con sus turnos
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(sesion.getId()))).thenAnswer(invocacion -> {
+            RowMapper<?> mapper = invocacion.getArgument(1);
+            ResultSet fila = mock(ResultSet.class);
+            when(fila.getString(1)).thenReturn("");
+            when(fila.getString(2)).thenReturn(turnos.getValue());
+            return List.of(mapper.mapRow(fila, 0));
+        });
+        SesionesChat.Sesion retomada = sesionesChat.obtener(sesion.getId());
+        assertEquals(sesion.getId(), retomada.getId());
+        assertEquals("Un sedán", retomada.historial().get(1).getContent());
+        assertEquals(1L, sesionesChat.obtenerEstadisticas().get("recuperadas"));
+    }
+
+    @Test
+    void testCrear_AlLlegarAlMaximoSaleLaMenosUsada() throws Exception {
+        ReflectionTestUtils.setField(sesionesChat, "maxSesiones", 2);
+        ReflectionTestUtils.setField(sesionesChat, "persistir", false);
+        SesionesChat.Sesion primera = sesionesChat.obtener(null);
+        Thread.sleep(5);
+        SesionesChat.Sesion segunda = sesionesChat.obtener(null);
+        Thread.sleep(5);
+        sesionesChat.obtener(primera.getId());
+
+        sesionesChat.obtener(null);
+
+        assertEquals(2, sesionesChat.obtenerEstadisticas().get("sesiones"));
+        assertSame(primera, sesionesChat.obtener(primera.getId()));
+        // Un id desconocido abre una sesión nueva con otro id
+        assertNotEquals(segunda.getId(), sesionesChat.obtener(segunda.getId()).getId());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testCrear_LaDesalojadaSeGuardaEnSegundoPlano() throws Exception {
+        ReflectionTestUtils.setField(sesionesChat, "maxSesiones", 1);
+        CountDownLatch guardando = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+        when(jdbcTemplate.update(startsWith("INSERT"), any(Object[].class))).thenAnswer(invocacion -> {
+            guardando.countDown();
+            seguir.await(5, TimeUnit.SECONDS);
+            return 1;
+        });
+        sesionesChat.iniciar();
+        try {
+            SesionesChat.Sesion primera = sesionesChat.crear(List.of(new ChatMessage("user", "Un sedán")));
+
+            // El pedido que desaloja no espera el INSERT
+            sesionesChat.crear(null);
+            assertTrue(guardando.await(5, TimeUnit.SECONDS));
+            assertEquals(1L, sesionesChat.obtenerEstadisticas().get("desalojadas"));
+
+            // Si vuelve mientras se guarda, se retoma la misma sin ir a la BD
+            assertSame(primera, sesionesChat.obtener(primera.getId()));
+            verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+        } finally {
+            seguir.countDown();
+            sesionesChat.detener();
+        }
+    }
+
+    @Test
+    void testBarrer_MientrasSeGuardaSeRetomaDeMemoriaYNoSePierdeElTurno() throws Exception {
+        ReflectionTestUtils.setField(sesionesChat, "inactividadMinutos", 0L);
+        CountDownLatch guardando = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+        when(jdbcTemplate.update(startsWith("INSERT"), any(Object[].class))).thenAnswer(invocacion -> {
+            guardando.countDown();
+            seguir.await(5, TimeUnit.SECONDS);
+            return 1;
+        });
+        SesionesChat.Sesion sesion = sesionesChat.crear(List.of(new ChatMessage("user", "Un sedán")));
+        Thread.sleep(5);
+
+        Thread barrido = new Thread(sesionesChat::barrer);
+        barrido.start();
+        assertTrue(guardando.await(5, TimeUnit.SECONDS));
+
+        // Un pedido que ya tenía la sesión registra un turno durante el guardado
+        sesionesChat.registrarTurno(sesion, "¿Y en rojo?", "Hay uno en rojo");
+        assertSame(sesion, sesionesChat.obtener(sesion.getId()));
+        seguir.countDown();
+        barrido.join(5000);
+
+        // Se guardó dos veces: el segundo INSERT lleva el turno nuevo
+        ArgumentCaptor<Object[]> parametros = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).update(startsWith("INSERT"), parametros.capture());
+        assertTrue(((String) parametros.getAllValues().get(1)[2]).contains("Hay uno en rojo"));
+        verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+}
@@ -0,0 +1,68 @@
+package com.integrador.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testEjecutar_LlamadasConcurrentesCompartenResultado() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger llamadas = new AtomicInteger();
+        CountDownLatch liberar = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<String>> resultados = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                resultados.add(executor.submit(() -> singleFlight.ejecutar("ABC123", () -> {
+                    llamadas.incrementAndGet();
+                    try {
+                        liberar.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "{\"CarMake\":\"Toyota\"}";
+                })));
+            }
+
+            // Esperar a que las demás llamadas se unan a la que está en curso
+            long limite = System.currentTimeMillis() + 5000;
+            while (singleFlight.getCompartidas() < 3 && System.currentTimeMillis() < limite) {
+                Thread.sleep(10);
+            }
+            liberar.countDown();
+
+            for (Future<String> resultado : resultados) {
+                assertEquals("{\"CarMake\":\"Toyota\"}", resultado.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, llamadas.get());
+            assertEquals(0, singleFlight.getEnCurso());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testEjecutar_PropagaExcepcion() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () ->
+            singleFlight.ejecutar("XYZ789", () -> {
+                throw new RuntimeException("Error de conexión");
+            }));
+
+        assertEquals("Error de conexión", exception.getMessage());
+        assertEquals(0, singleFlight.getEnCurso());
+    }
+}
@@ -0,0 +1,46 @@
+package com.integrador.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SoapRespuestaParserTest {
+
+    @Test
+    void testParsear_ExtraeVehicleJson() throws Exception {
+        String soap = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">" +
+                "<soap:Body><CheckPeruResponse xmlns=\"http://regcheck.org.uk\"><CheckPeruResult>" +
+                "<vehicleJson>{&quot;CarMake&quot;:&quot;Toyota&quot;}</vehicleJson>" +
+                "</CheckPeruResult></CheckPeruResponse></soap:Body></soap:Envelope>";
+
+        SoapRespuestaParser.Resultado resultado = SoapRespuestaParser.parsear(soap);
+
+        assertEquals("{\"CarMake\":\"Toyota\"}", resultado.getVehicleJson());
+        assertNull(resultado.getFaultString());
+    }
+
+    @Test
+    void testParsear_ExtraeFaultString() throws Exception {
+        String soap = "<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>" +
+                "<soap:Fault><faultcode>soap:Server</faultcode>" +
+                "<faultstring>Peru Lookup failed</faultstring></soap:Fault>" +
+                "</soap:Body></soap:Envelope>";
+
+        SoapRespuestaParser.Resultado resultado = SoapRespuestaParser.parsear(soap);
+
+        assertNull(resultado.getVehicleJson());
+        assertEquals("Peru Lookup failed", resultado.getFaultString());
+        assertEquals("soap:Server", resultado.getFaultCode());
+    }
+
+    @Test
+    void testDecodificarEntidades() {
+        String texto = "sin entidades";
+        assertSame(texto, SoapRespuestaParser.decodificarEntidades(texto));
+        assertEquals("{\"a\":\"<b> & 'c'\"}",
+                SoapRespuestaParser.decodificarEntidades("{&quot;a&quot;:&quot;&lt;b&gt; &amp; &apos;c&apos;&quot;}"));
+        assertEquals("&quot;", SoapRespuestaParser.decodificarEntidades("&amp;quot;"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.integrador.service;
+
+import com.integrador.entity.Anuncio;
+import com.integrador.entity.Imagen;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class VariantesImagenServiceTest {
+
+    @TempDir
+    Path directorio;
+
+    private VariantesImagenService variantesImagenService;
+
+    @BeforeEach
+    void setUp() {
+        variantesImagenService = new VariantesImagenService(1, 10);
+        ReflectionTestUtils.setField(variantesImagenService, "uploadDir", directorio.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        variantesImagenService.detener();
+    }
+
+    @Test
+    void testGenerar_CreaVariantesReducidasSinAmpliar() throws Exception {
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_ARGB), "png",
+                directorio.resolve("auto.png").toFile());
+        ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "jpg",
+                directorio.resolve("pequena.jpg").toFile());
+
+        variantesImagenService.generar("auto.png");
+        variantesImagenService.generar("pequena.jpg");
+
+        Path variantes = directorio.resolve(VariantesImagenService.DIRECTORIO_VARIANTES);
+        assertEquals(320, ImageIO.read(variantes.resolve("auto-thumb.jpg").toFile()).getWidth());
+        assertEquals(800, ImageIO.read(variantes.resolve("auto-medium.jpg").toFile()).getWidth());
+        BufferedImage full = ImageIO.read(variantes.resolve("auto-full.jpg").toFile());
+        assertEquals(1600, full.getWidth());
+        assertEquals(800, full.getHeight());
+        assertEquals(200, ImageIO.read(variantes.resolve("pequena-thumb.jpg").toFile()).getWidth());
+
+        Imagen imagen = new Imagen();
+        imagen.setUrlImagen("/uploads/auto.png");
+        Anuncio anuncio = new Anuncio();
+        anuncio.addImagen(imagen);
+        variantesImagenService.completar(List.of(anuncio));
+
+        assertEquals("/uploads/variantes/auto-thumb.jpg", imagen.getVariantes().get("thumb"));
+    }
+
+    @Test
+    void testGenerar_RechazaImagenesDemasiadoGrandesSinDecodificarlas() throws Exception {
+        ReflectionTestUtils.setField(variantesImagenService, "maxPixeles", 1_000_000L);
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png",
+                directorio.resolve("enorme.png").toFile());
+        // Más ancha que la variante full: se decodifica submuestreada y se reduce igual
+        ImageIO.write(new BufferedImage(4000, 200, BufferedImage.TYPE_INT_RGB), "png",
+                directorio.resolve("panoramica.png").toFile());
+
+        variantesImagenService.generar("enorme.png");
+        variantesImagenService.generar("panoramica.png");
+
+        Path variantes = directorio.resolve(VariantesImagenService.DIRECTORIO_VARIANTES);
+        assertFalse(Files.exists(variantes.resolve("enorme-thumb.jpg")));
+        assertEquals(1L, variantesImagenService.obtenerEstadisticas().get("rechazadas"));
+        assertEquals(1600, ImageIO.read(variantes.resolve("panoramica-full.jpg").toFile()).getWidth());
+    }
+
+    @Test
+    void testCatalogo_AsignaVariantesAlPublicarseYAlGenerarse() throws Exception {
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png",
+                directorio.resolve("auto.png").toFile());
+        variantesImagenService.generar("auto.png");
+
+        Imagen generada = new Imagen();
+        generada.setUrlImagen("/uploads/auto.png");
+        Imagen faltante = new Imagen();
+        faltante.setUrlImagen("/uploads/nueva.png");
+        Anuncio anuncio = new Anuncio();
+        anuncio.addImagen(generada);
+        anuncio.addImagen(faltante);
+        CatalogoAnunciosCache.Snapshot snapshot = mock(CatalogoAnunciosCache.Snapshot.class);
+        when(snapshot.getAnuncios()).thenReturn(List.of(anuncio));
+
+        // Al publicarse la versión: la ya generada se asigna, la otra queda en cola y falla (no existe)
+        variantesImagenService.catalogoCargado(snapshot);
+        assertEquals("/uploads/variantes/auto-thumb.jpg", generada.getVariantes().get("thumb"));
+        esperarCola();
+        assertNull(faltante.getVariantes());
+        assertEquals(1, variantesImagenService.obtenerEstadisticas().get("fallidas"));
+
+        // Vencido el plazo de reintento, la próxima versión la vuelve a encolar; al terminar se asigna sola
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png",
+                directorio.resolve("nueva.png").toFile());
+        ReflectionTestUtils.setField(variantesImagenService, "reintentoFallidasMinutos", 0L);
+        Thread.sleep(5);
+        variantesImagenService.catalogoCargado(snapshot);
+        esperarCola();
+        assertEquals("/uploads/variantes/nueva-thumb.jpg", faltante.getVariantes().get("thumb"));
+    }
+
+    // Un archivo sale de "pendientes" cuando el trabajador termina con él
+    private void esperarCola() throws InterruptedException {
+        Set<?> pendientes = (Set<?>) ReflectionTestUtils.getField(variantesImagenService, "pendientes");
+        long limite = System.currentTimeMillis() + 5000;
+        while (!pendientes.isEmpty() && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+    }
+}